@@ -0,0 +1,71 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Fixtures Class
+ *
+ * The checked-in HTML fixtures used by the benchmarks (src/jmh/resources/fixtures) - Product Item webpages
+ * (product-small, product-medium and product-large) and product listing webpages (listing-5, listing-50 and
+ * listing-500, by number of products), laid out in the same way as the Sainsbury's webpages.
+ *
+ * Also provides a FetchTransport serving the fixtures from memory, so that the PageScraper can be benchmarked
+ * without a network.
+ *
+ * @author John Moores
+ */
+final class Fixtures {
+    // Base of the page addresses the fixtures are served under - Never actually requested.
+    static final String BASE_URL = "http://fixtures.invalid/";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param name The fixture name, e.g. "product-small".
+     * @return The fixture's bytes (UTF-8 HTML).
+     */
+    static byte[] load(String name) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".html")) {
+            if (in == null) {
+                throw new IOException("No such fixture " + name);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * @return The page address a fixture is served under by a Transport.
+     */
+    static String url(String name) {
+        return BASE_URL + name + ".html";
+    }
+
+    /**
+     * FetchTransport serving one fixture, whatever the page address requested.
+     */
+    static final class Transport implements FetchTransport {
+        private static final Map<String, String> HEADERS = Collections.singletonMap("Content-Type", "text/html; charset=UTF-8");
+
+        private final byte[] body;
+
+        Transport(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public FetchResponse fetch(String url, Map<String, String> requestHeaders) {
+            return new FetchResponse(url, 200, HEADERS, body);
+        }
+    }
+}
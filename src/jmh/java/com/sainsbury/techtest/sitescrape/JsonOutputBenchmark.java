@@ -0,0 +1,117 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JsonOutputBenchmark Class
+ *
+ * Throughput of writing the JSON output for a number of Product Items:
+ *
+ *     toJSON          - ProductInfo.toJSON() of each Product Item, as a string.
+ *     jsonTree        - The whole JSON document built in memory (JsonTreeResultWriter).
+ *     streamingWriter - The JSON document written as it goes (StreamingJsonResultWriter) to a Writer that
+ *                       discards it.
+ *
+ * @author John Moores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonOutputBenchmark {
+
+    @Param({"5", "50", "500"})
+    public int products;
+
+    private ProductInfo[] productInfos;
+    private BigDecimal total;
+
+    @Setup
+    public void setUp() {
+        productInfos = new ProductInfo[products];
+        long pence = 0;
+
+        for (int i = 0; i < products; i++) {
+            productInfos[i] = new ProductInfo("Sainsbury's Product " + i, "38.3kb", (1 + i % 9) + ".50", "Description of product " + i);
+            pence += productInfos[i].getPrice().getPence();
+        }
+        total = BigDecimal.valueOf(pence, 2);
+    }
+
+    @Benchmark
+    public int toJSON() {
+        int length = 0;
+
+        for (ProductInfo productInfo: productInfos) {
+            length += productInfo.toJSON().toString().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public String jsonTree() {
+        JsonTreeResultWriter writer = new JsonTreeResultWriter();
+        write(writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public int streamingWriter() {
+        NullWriter out = new NullWriter();
+        write(new StreamingJsonResultWriter(out));
+        return out.count;
+    }
+
+    private void write(ScrapeResultWriter writer) {
+        try {
+            writer.begin();
+            for (int i = 0; i < productInfos.length; i++) {
+                writer.product(Fixtures.BASE_URL + "product-" + i + ".html", productInfos[i]);
+            }
+            writer.end(total);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Writer that only counts the characters written.
+     */
+    private static final class NullWriter extends Writer {
+        private int count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str) {
+            count += str.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ListingBenchmark Class
+ *
+ * Throughput of reading a product listing webpage, for each fixture size (number of products):
+ *
+ *     parseListing    - Parsing the webpage into a jsoup Document.
+ *     findProductUrls - Finding the Product Item page addresses in an already parsed Document.
+ *
+ * @author John Moores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark {
+
+    @Param({"5", "50", "500"})
+    public int products;
+
+    private byte[] body;
+    private String url;
+    private PageScraper pageScraper;
+    private Document doc;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Fixtures.load("listing-" + products);
+        url = Fixtures.url("listing-" + products);
+        pageScraper = PageScraper.builder().url(new URL(url)).transport(new Fixtures.Transport(body)).build();
+        doc = Jsoup.parse(new ByteArrayInputStream(body), "UTF-8", url);
+    }
+
+    @Benchmark
+    public Document parseListing() throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(body), "UTF-8", url);
+    }
+
+    @Benchmark
+    public List<String> findProductUrls() {
+        return pageScraper.findProductUrls(doc);
+    }
+}
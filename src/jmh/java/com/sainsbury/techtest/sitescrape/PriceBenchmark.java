@@ -0,0 +1,64 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * PriceBenchmark Class
+ *
+ * Throughput of the Unit Price handling:
+ *
+ *     parseUnitPrice - Converting Unit Price texts (as on the webpages, e.g. "£3.50/unit") to pence (Price).
+ *     accumulateTotal - Adding the Unit Prices of a 500 product listing to a Price Total, as output.
+ *
+ * @author John Moores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceBenchmark {
+    private static final int PRODUCTS = 500;
+
+    private final String[] unitPriceTexts = new String[PRODUCTS];
+    private final long[] unitPrices = new long[PRODUCTS];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PRODUCTS; i++) {
+            // As on the listing-500 fixture, with an occasional single decimal place and invalid price.
+            unitPriceTexts[i] = i % 50 == 49 ? "£Free/unit" : "£" + (1 + i % 9) + "." + (i % 10 == 0 ? "5" : String.format("%02d", (i * 37) % 100)) + "/unit";
+            long pence = Price.parsePence(unitPriceTexts[i]);
+            unitPrices[i] = pence == Price.INVALID ? 0 : pence;
+        }
+    }
+
+    @Benchmark
+    public void parseUnitPrice(Blackhole bh) {
+        for (String unitPriceText: unitPriceTexts) {
+            bh.consume(Price.parsePence(unitPriceText));
+        }
+    }
+
+    @Benchmark
+    public String accumulateTotal() {
+        long priceTotal = 0;
+
+        for (long unitPrice: unitPrices) {
+            priceTotal += unitPrice;
+        }
+        return Price.format(priceTotal);
+    }
+}
@@ -0,0 +1,69 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ProductDocumentBenchmark Class
+ *
+ * Throughput of the jsoup Document extraction steps for a Product Item webpage, for each fixture size:
+ *
+ *     parseDocument       - Parsing the webpage into a jsoup Document.
+ *     extractFromDocument - Applying the ExtractionPlan to an already parsed Document.
+ *
+ * @author John Moores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductDocumentBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private byte[] body;
+    private String url;
+    private ExtractionPlan plan;
+    private Document doc;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Fixtures.load("product-" + size);
+        url = Fixtures.url("product-" + size);
+        plan = PageScraper.builder().url(new URL(Fixtures.url("listing-5"))).build().getExtractionPlan();
+        doc = Jsoup.parse(new ByteArrayInputStream(body), "UTF-8", url);
+    }
+
+    @Benchmark
+    public Document parseDocument() throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(body), "UTF-8", url);
+    }
+
+    @Benchmark
+    public void extractFromDocument(Blackhole bh) {
+        Element titleContainer = plan.findTitleContainer(doc);
+        bh.consume(plan.findTitle(titleContainer).text());
+        bh.consume(plan.findPricePerUnit(doc).text());
+        bh.consume(plan.findTextDescription(doc).text());
+    }
+}
@@ -0,0 +1,58 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ProductExtractionBenchmark Class
+ *
+ * Throughput of PageScraper.createProductInfo() end to end, with the Product Item webpage served from memory,
+ * for each fixture size and extraction strategy (streaming, or jsoup Document) - See ProductDocumentBenchmark
+ * for the steps of the jsoup Document strategy.
+ *
+ * @author John Moores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductExtractionBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"streaming", "jsoup"})
+    public String strategy;
+
+    private byte[] body;
+    private String url;
+    private PageScraper pageScraper;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Fixtures.load("product-" + size);
+        url = Fixtures.url("product-" + size);
+        pageScraper = PageScraper.builder().url(new URL(Fixtures.url("listing-5")))
+            .transport(new Fixtures.Transport(body)).retryPolicy(RetryPolicy.NONE)
+            .streamingExtraction(strategy.equals("streaming")).build();
+    }
+
+    @Benchmark
+    public ProductInfo createProductInfo() {
+        return pageScraper.createProductInfo(url);
+    }
+}
@@ -0,0 +1,160 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BatchScraper Class
+ *
+ * Scrapes many product listing webpages, one after another, with the one PageScraper - So the connection pool,
+ * response cache, request scheduler and the warmed-up JVM are shared by all of them rather than paying for a
+ * new JVM per webpage. Each product listing webpage gets its own result, with its own "total":
+ *
+ *     Output directory - One JSON document per webpage (as output for a single webpage), in a file named
+ *                        after its position in the batch and its URL, e.g. 0001-www.example.com_fruit.html.json
+ *     Writer (stdout)  - One line per webpage, in batch order, holding its JSON document (unindented) with the
+ *                        webpage's URL as "listing":
+ *
+ *     {"listing": "http://...", "results": [...], "total": "15.10"}
+ *
+ * A URL that is not valid is logged and skipped.
+ *
+ * @author John Moores
+ */
+public class BatchScraper {
+    // File names are cut down to this many characters of the URL.
+    private static final int MAX_NAME_LENGTH = 100;
+
+    private final PageScraper pageScraper;
+
+    /**
+     * Class constructor.
+     *
+     * @param pageScraper The PageScraper used for every product listing webpage.
+     */
+    public BatchScraper(PageScraper pageScraper) {
+        this.pageScraper = pageScraper;
+    }
+
+    /**
+     * Reads the URLs of a batch - One per line. Blank lines and lines starting with # are ignored.
+     *
+     * @param reader Where the URLs are read from (e.g. a file or stdin).
+     * @return The URLs as given.
+     */
+    public static List<String> readUrls(Reader reader) throws IOException {
+        List<String> urlStrs = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(reader);
+
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                urlStrs.add(line);
+            }
+        }
+        return urlStrs;
+    } // readUrls() method
+
+    /**
+     * Scrapes each product listing webpage, writing one line of JSON per webpage.
+     *
+     * @param urlStrs The URLs of the product listing webpages.
+     * @param out Where the lines of JSON are written - Flushed after each webpage.
+     * @return Number of webpages scraped.
+     * @throws IOException If the output cannot be written.
+     */
+    public int scrape(List<String> urlStrs, Writer out) throws IOException {
+        int scraped = 0;
+
+        for (String urlStr: urlStrs) {
+            URL url = toUrl(urlStr);
+            if (url == null) {
+                continue;
+            }
+
+            JsonTreeResultWriter writer = new JsonTreeResultWriter();
+            pageScraper.scrape(url, writer);
+
+            writer.getJSON().put("listing", urlStr);
+            writer.getJSON().write(out);
+            out.write(System.lineSeparator());
+            out.flush();
+            scraped++;
+        }
+        return scraped;
+    } // scrape(List, Writer) method
+
+    /**
+     * Scrapes each product listing webpage, writing a JSON document per webpage into a directory.
+     *
+     * @param urlStrs The URLs of the product listing webpages.
+     * @param outputDir The directory the JSON documents are written into - Created if need be.
+     * @return Number of webpages scraped.
+     * @throws IOException If the directory or a JSON document cannot be written.
+     */
+    public int scrape(List<String> urlStrs, File outputDir) throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create output directory " + outputDir);
+        }
+
+        int scraped = 0;
+
+        for (int i = 0; i < urlStrs.size(); i++) {
+            URL url = toUrl(urlStrs.get(i));
+            if (url == null) {
+                continue;
+            }
+
+            File file = new File(outputDir, fileName(i + 1, urlStrs.get(i)));
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                pageScraper.scrape(url, new StreamingJsonResultWriter(out));
+                out.write(System.lineSeparator());
+            }
+            scraped++;
+        }
+        return scraped;
+    } // scrape(List, File) method
+
+    /**
+     * @return The file name for the JSON document of a product listing webpage - Its position in the batch
+     *         (so names are unique and sort in batch order) and its URL without the scheme, made safe.
+     */
+    static String fileName(int position, String urlStr) {
+        String name = urlStr.replaceFirst("^[A-Za-z][A-Za-z0-9+.-]*://", "").replaceAll("[^A-Za-z0-9._-]+", "_");
+
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH);
+        }
+        return String.format("%04d-%s.json", position, name);
+    }
+
+    private static URL toUrl(String urlStr) {
+        try {
+            return new URL(urlStr);
+        } catch (MalformedURLException mue) {
+            Logger.getLogger(BatchScraper.class.getName()).log(Level.SEVERE, "Skipping invalid URL " + urlStr, mue);
+            return null;
+        }
+    }
+
+    /**
+     *  Accessor Methods
+     */
+
+    public PageScraper getPageScraper() {
+        return pageScraper;
+    }
+
+} // BatchScraper class
@@ -0,0 +1,239 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinarySnapshotReader Class
+ *
+ * Reads a binary snapshot file written by a BinarySnapshotWriter (see there for the layout). The file is
+ * memory-mapped, so opening it reads only the header, and each Product Item is read from the mapped file when
+ * asked for - By its number, or by its URL through the URL index. The operating system keeps the file in its
+ * page cache, so loading the same snapshot many times costs little.
+ *
+ * Thread-safe - Only absolute reads of the mapped file are used.
+ *
+ * NOTE: Java cannot unmap a file - close() closes the file, but the mapping is released when the
+ * BinarySnapshotReader is garbage collected.
+ *
+ * @author John Moores
+ */
+public class BinarySnapshotReader implements Closeable {
+    private final RandomAccessFile raf;
+    private final ByteBuffer buffer;
+
+    private final int count;
+    private final int failedCount;
+    private final int slots;
+    private final long priceTotal;
+    private final int sizesOffset;
+    private final int stringsOffset;
+    private final int failedOffset;
+    private final int indexOffset;
+    private final int heapOffset;
+
+    /**
+     * Opens a binary snapshot file.
+     *
+     * @param file The binary snapshot file.
+     * @throws IOException If the file cannot be read or is not a binary snapshot.
+     */
+    public BinarySnapshotReader(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+
+        try {
+            long length = raf.length();
+            if (length < BinarySnapshotWriter.HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a binary snapshot - " + file + " is " + length + " bytes");
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            if (buffer.getInt(0) != BinarySnapshotWriter.MAGIC) {
+                throw new IOException("Not a binary snapshot - " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != BinarySnapshotWriter.VERSION) {
+                throw new IOException("Unsupported binary snapshot version " + version + " in " + file);
+            }
+
+            count = buffer.getInt(8);
+            failedCount = buffer.getInt(12);
+            slots = buffer.getInt(16);
+            priceTotal = buffer.getLong(24);
+            sizesOffset = (int) Math.min(Integer.MAX_VALUE, BinarySnapshotWriter.HEADER_SIZE + 8L * count);
+            stringsOffset = (int) buffer.getLong(32);
+            failedOffset = (int) buffer.getLong(40);
+            indexOffset = (int) buffer.getLong(48);
+            heapOffset = (int) buffer.getLong(56);
+
+            // Check the sections are where they should be, so a damaged file fails here rather than later.
+            if (count < 0 || failedCount < 0 || Integer.bitCount(slots) != 1
+                || buffer.getLong(64) != length
+                || stringsOffset != sizesOffset + 4L * count
+                || failedOffset != stringsOffset + 4L * BinarySnapshotWriter.STRINGS_PER_PRODUCT * count
+                || indexOffset != failedOffset + 4L * failedCount
+                || heapOffset != indexOffset + 4L * slots) {
+                throw new IOException("Corrupt binary snapshot - " + file);
+            }
+        } catch (IOException ioe) {
+            raf.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * @return Number of Product Items.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return Number of Product Items that failed.
+     */
+    public int failedSize() {
+        return failedCount;
+    }
+
+    /**
+     * @return The Price Total of all the Product Items, in pence.
+     */
+    public long getPriceTotalPence() {
+        return priceTotal;
+    }
+
+    /**
+     * Finds a Product Item by its URL through the URL index.
+     *
+     * @return The Product Item number, or -1 if there is no Product Item with the URL.
+     */
+    public int find(String url) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        int mask = slots - 1;
+
+        for (int slot = BinarySnapshotWriter.slot(BinarySnapshotWriter.urlHash(bytes), slots); ; slot = (slot + 1) & mask) {
+            int entry = buffer.getInt(indexOffset + 4 * slot);
+
+            if (entry == 0) {
+                return -1;
+            }
+            if (matches(stringOffset(entry - 1, BinarySnapshotWriter.URL), bytes)) {
+                return entry - 1;
+            }
+        }
+    } // find() method
+
+    /**
+     * @return The ProductInfo object for the URL, or null if there is no Product Item with the URL.
+     */
+    public ProductInfo get(String url) {
+        int i = find(url);
+        return i < 0 ? null : get(i);
+    }
+
+    /**
+     * @return The ProductInfo object of a Product Item - Read from the file.
+     */
+    public ProductInfo get(int i) {
+        checkIndex(i);
+
+        int sizeCode = buffer.getInt(sizesOffset + 4 * i);
+        String size = sizeCode == BinarySnapshotWriter.NONE ? string(stringOffset(i, BinarySnapshotWriter.SIZE_TEXT)) : ProductStore.decodeSize(sizeCode);
+
+        return new ProductInfo(string(stringOffset(i, BinarySnapshotWriter.TITLE)), size, Price.ofPence(getPricePence(i)), string(stringOffset(i, BinarySnapshotWriter.DESCRIPTION)));
+    }
+
+    public String getUrl(int i) {
+        checkIndex(i);
+        return string(stringOffset(i, BinarySnapshotWriter.URL));
+    }
+
+    /**
+     * @return The Unit Price of a Product Item in pence - Read without reading anything else.
+     */
+    public long getPricePence(int i) {
+        checkIndex(i);
+        return buffer.getLong(BinarySnapshotWriter.HEADER_SIZE + 8 * i);
+    }
+
+    public String getFailedUrl(int i) {
+        if (i < 0 || i >= failedCount) {
+            throw new IndexOutOfBoundsException("Failed " + i + " of " + failedCount);
+        }
+        return string(buffer.getInt(failedOffset + 4 * i));
+    }
+
+    /**
+     * Writes the Product Items to a ScrapeResultWriter as if scraped - See ProductStore.writeTo().
+     */
+    public void writeTo(ScrapeResultWriter writer) throws IOException {
+        if (count == 0 && failedCount == 0) {
+            writer.empty();
+            return;
+        }
+
+        writer.begin();
+        for (int i = 0; i < count; i++) {
+            writer.product(getUrl(i), get(i));
+        }
+        for (int i = 0; i < failedCount; i++) {
+            writer.failed(getFailedUrl(i), new IOException("Failed when scraped"));
+        }
+        writer.end(BigDecimal.valueOf(priceTotal, 2));
+    } // writeTo() method
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Product Item " + i + " of " + count);
+        }
+    }
+
+    private int stringOffset(int i, int string) {
+        return buffer.getInt(stringsOffset + 4 * (BinarySnapshotWriter.STRINGS_PER_PRODUCT * i + string));
+    }
+
+    private String string(int offset) {
+        if (offset == BinarySnapshotWriter.NONE) {
+            return null;
+        }
+
+        int position = heapOffset + offset;
+        byte[] bytes = new byte[buffer.getInt(position)];
+
+        // A duplicate so that the position of the shared buffer is never changed.
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(int offset, byte[] bytes) {
+        if (offset == BinarySnapshotWriter.NONE) {
+            return false;
+        }
+
+        int position = heapOffset + offset;
+        if (buffer.getInt(position) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(position + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+} // BinarySnapshotReader class
@@ -0,0 +1,296 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BinarySnapshotWriter Class
+ *
+ * ScrapeResultWriter that writes the results of a scrape to a binary snapshot file, which a
+ * BinarySnapshotReader memory-maps so that one Product Item (e.g. its Unit Price) can be read without reading
+ * the rest - Unlike the JSON document, which has to be parsed in full.
+ *
+ * The Product Items are collected in a ProductStore and the file is written when the scrape ends. If given a
+ * ScrapeResultWriter, every call is passed on to it as well - So the JSON document can still be output as the
+ * scrape progresses.
+ *
+ * File layout (big-endian, all offsets from the start of the file):
+ *
+ *     Header (72 bytes) - Magic "SSNP", version, Product Item count, failed count, URL index slots, 0, Price
+ *                         Total (pence), then the offsets of the strings, failed, URL index and heap sections
+ *                         and the file length.
+ *     Unit Prices       - long (pence) per Product Item.
+ *     Page Sizes        - int per Product Item - (tenths of a kb << 1) | 1 if "kb", or -1 if held as text.
+ *     Strings           - 4 int heap offsets per Product Item - URL, Title, Page Size text and Description
+ *                         (-1 for none).
+ *     Failed            - int heap offset per failed Product Item URL.
+ *     URL index         - Open addressing hash table of Product Item number + 1 (0 for an empty slot), by
+ *                         urlHash() of the URL, at most half full.
+ *     Heap              - The strings - int length then UTF-8 bytes. Descriptions are held once each.
+ *
+ * Written to a temporary file and moved into place, so a reader never sees a partly written snapshot.
+ *
+ * @author John Moores
+ */
+public class BinarySnapshotWriter implements ScrapeResultWriter {
+    static final int MAGIC = 0x53534E50; // "SSNP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 72;
+    static final int STRINGS_PER_PRODUCT = 4;
+    static final int URL = 0;
+    static final int TITLE = 1;
+    static final int SIZE_TEXT = 2;
+    static final int DESCRIPTION = 3;
+    static final int NONE = -1;
+
+    private final File file;
+    private final ScrapeResultWriter next;
+    private final ProductStore store = new ProductStore();
+
+    /**
+     * @param file The binary snapshot file - Replaced if it exists.
+     */
+    public BinarySnapshotWriter(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param file The binary snapshot file - Replaced if it exists.
+     * @param next ScrapeResultWriter also receiving the output, or null.
+     */
+    public BinarySnapshotWriter(File file, ScrapeResultWriter next) {
+        this.file = file;
+        this.next = next;
+    }
+
+    /**
+     * @return As the next ScrapeResultWriter - The order of the snapshot does not matter.
+     */
+    @Override
+    public boolean isOrdered() {
+        return next == null || next.isOrdered();
+    }
+
+    @Override
+    public void empty() throws IOException {
+        write(store, file);
+        if (next != null) {
+            next.empty();
+        }
+    }
+
+    @Override
+    public void begin() throws IOException {
+        if (next != null) {
+            next.begin();
+        }
+    }
+
+    @Override
+    public void product(String url, ProductInfo productInfo) throws IOException {
+        store.product(url, productInfo);
+        if (next != null) {
+            next.product(url, productInfo);
+        }
+    }
+
+    @Override
+    public void failed(String url, IOException cause) throws IOException {
+        store.failed(url, cause);
+        if (next != null) {
+            next.failed(url, cause);
+        }
+    }
+
+    @Override
+    public void end(BigDecimal total) throws IOException {
+        write(store, file);
+        if (next != null) {
+            next.end(total);
+        }
+    }
+
+    /**
+     * Writes the Product Items of a ProductStore to a binary snapshot file.
+     *
+     * @param store The Product Items.
+     * @param file The binary snapshot file - Replaced if it exists.
+     * @throws IOException If the file cannot be written, or would be bigger than 2GB.
+     */
+    public static void write(ProductStore store, File file) throws IOException {
+        int count = store.size();
+        int failedCount = store.failedSize();
+        int slots = indexSlots(count);
+
+        long pricesOffset = HEADER_SIZE;
+        long sizesOffset = pricesOffset + 8L * count;
+        long stringsOffset = sizesOffset + 4L * count;
+        long failedOffset = stringsOffset + 4L * STRINGS_PER_PRODUCT * count;
+        long indexOffset = failedOffset + 4L * failedCount;
+        long heapOffset = indexOffset + 4L * slots;
+
+        // The heap is written first (to a file of its own) since its offsets are needed by the strings section.
+        File directory = file.getAbsoluteFile().getParentFile();
+        File heapTmp = File.createTempFile("snapshot-heap", ".tmp", directory);
+        File tmp = File.createTempFile("snapshot", ".tmp", directory);
+
+        try {
+            int[] strings = new int[STRINGS_PER_PRODUCT * count];
+            int[] failed = new int[failedCount];
+            int[] index = new int[slots];
+            long heapLength;
+
+            try (HeapWriter heap = new HeapWriter(heapTmp)) {
+                for (int row = 0; row < count; row++) {
+                    ProductInfo productInfo = store.get(row);
+                    String url = store.getUrl(row);
+
+                    strings[STRINGS_PER_PRODUCT * row + URL] = heap.add(url);
+                    strings[STRINGS_PER_PRODUCT * row + TITLE] = heap.add(productInfo.getTitle());
+                    strings[STRINGS_PER_PRODUCT * row + SIZE_TEXT] = store.getSizeCode(row) == NONE ? heap.add(productInfo.getSize()) : NONE;
+                    strings[STRINGS_PER_PRODUCT * row + DESCRIPTION] = heap.addShared(productInfo.getDescription());
+
+                    if (url != null) {
+                        int slot = slot(urlHash(url.getBytes(StandardCharsets.UTF_8)), slots);
+                        while (index[slot] != 0) {
+                            slot = (slot + 1) & (slots - 1);
+                        }
+                        index[slot] = row + 1;
+                    }
+                }
+                for (int i = 0; i < failedCount; i++) {
+                    failed[i] = heap.add(store.getFailedUrl(i));
+                }
+                heapLength = heap.length;
+            }
+
+            long fileLength = heapOffset + heapLength;
+            if (fileLength > Integer.MAX_VALUE) {
+                throw new IOException("Binary snapshot of " + count + " Product Items would be bigger than 2GB");
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(failedCount);
+                out.writeInt(slots);
+                out.writeInt(0);
+                out.writeLong(store.getPriceTotalPence());
+                out.writeLong(stringsOffset);
+                out.writeLong(failedOffset);
+                out.writeLong(indexOffset);
+                out.writeLong(heapOffset);
+                out.writeLong(fileLength);
+
+                for (int row = 0; row < count; row++) {
+                    out.writeLong(store.getPricePence(row));
+                }
+                for (int row = 0; row < count; row++) {
+                    out.writeInt(store.getSizeCode(row));
+                }
+                for (int offset: strings) {
+                    out.writeInt(offset);
+                }
+                for (int offset: failed) {
+                    out.writeInt(offset);
+                }
+                for (int entry: index) {
+                    out.writeInt(entry);
+                }
+                Files.copy(heapTmp.toPath(), out);
+            }
+
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            heapTmp.delete();
+            tmp.delete();
+        }
+    } // write() method
+
+    /**
+     * @return Number of URL index slots - A power of 2 at least twice the number of Product Items.
+     */
+    static int indexSlots(int count) {
+        return Integer.highestOneBit(Math.max(8, count) * 2 - 1) << 1;
+    }
+
+    static int slot(long hash, int slots) {
+        return (int) (hash ^ (hash >>> 32)) & (slots - 1);
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of a URL for the URL index (64 bit FNV-1a). NOTE: Part of the file format - Must
+     * not be changed without changing the VERSION.
+     */
+    static long urlHash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b: bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the strings of the heap section, keeping track of their offsets.
+     */
+    private static class HeapWriter implements AutoCloseable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> shared = new HashMap<String, Integer>();
+        private long length;
+
+        HeapWriter(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+
+        /**
+         * @return The offset of the string within the heap, or NONE for null.
+         */
+        int add(String value) throws IOException {
+            if (value == null) {
+                return NONE;
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Binary snapshot heap bigger than 2GB");
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int offset = (int) length;
+
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            length += 4 + bytes.length;
+            return offset;
+        }
+
+        /**
+         * As add(), but a string already added with addShared() is not added again.
+         */
+        int addShared(String value) throws IOException {
+            Integer offset = shared.get(value);
+
+            if (offset == null) {
+                offset = add(value);
+                shared.put(value, offset);
+            }
+            return offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    } // HeapWriter class
+
+} // BinarySnapshotWriter class
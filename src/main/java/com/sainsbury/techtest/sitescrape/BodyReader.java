@@ -0,0 +1,280 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * BodyReader Class
+ *
+ * Reads a response body so that the memory it takes is known in advance:
+ *
+ *     Decompression - A gzip or deflate Content-Encoding is removed as the body is read (streamed), so the
+ *                     compressed body is never held in memory as well.
+ *     Size cap      - A body larger than the maximum body size (after decompression) fails with a
+ *                     BodyTooLargeException as soon as the limit is passed, without reading the rest. A
+ *                     Content-Length over the limit fails before anything is read.
+ *     Pooled chunks - The body is read into fixed size chunks taken from a pool shared by all the BodyReader
+ *                     objects, then copied once into a byte array of exactly the right size. The chunks go
+ *                     back to the pool, so reading a body does not grow (and throw away) ever larger buffers.
+ *
+ * So each body being read takes at most about twice the maximum body size, and the heap taken by the webpages
+ * in flight is bounded by the number of them (e.g. the concurrency) times that.
+ *
+ * Both the bytes received (compressed) and the bytes of the body (decompressed) are counted - See Body.
+ *
+ * Thread-safe - One BodyReader is used by all the threads of a FetchTransport.
+ *
+ * @author John Moores
+ */
+public class BodyReader {
+    // Default maximum body size (after decompression) - Well above any Product Item webpage.
+    public static final long DEFAULT_MAX_BODY_SIZE = 4 * 1024 * 1024;
+
+    // Content-Encodings that can be removed - For the Accept-Encoding request header.
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    // Size of the pooled chunks, and the most kept in the pool (4MB).
+    static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 256;
+
+    private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<byte[]>(MAX_POOLED_CHUNKS);
+
+    private final long maxBodySize;
+
+    /**
+     * BodyTooLargeException Class
+     *
+     * A response body (after decompression) larger than the maximum body size.
+     */
+    public static class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public BodyTooLargeException(String url, long maxBodySize) {
+            super("Response body larger than " + maxBodySize + " bytes: " + url);
+        }
+    }
+
+    /**
+     * Body Class
+     *
+     * A response body as read by a BodyReader.
+     */
+    public static class Body {
+        private final byte[] bytes;
+        private final long receivedBytes;
+
+        Body(byte[] bytes, long receivedBytes) {
+            this.bytes = bytes;
+            this.receivedBytes = receivedBytes;
+        }
+
+        /**
+         * @return The body, decompressed.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return Bytes of the body as received - Before decompression.
+         */
+        public long getReceivedBytes() {
+            return receivedBytes;
+        }
+    }
+
+    public BodyReader() {
+        this(DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * @param maxBodySize Maximum size in bytes of a body (after decompression) - Must be at least 1.
+     */
+    public BodyReader(long maxBodySize) {
+        if (maxBodySize < 1) {
+            throw new IllegalArgumentException("maxBodySize must be at least 1: " + maxBodySize);
+        }
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Reads a response body, removing its Content-Encoding. The stream is read to the end (or to the maximum body
+     * size) but not closed.
+     *
+     * @param url The page address - For the error messages.
+     * @param in The response body as received.
+     * @param contentEncoding The Content-Encoding response header - null (or "identity") for none.
+     * @param contentLength The Content-Length response header - -1 if not known.
+     * @return The Body.
+     * @throws BodyTooLargeException If the body is larger than the maximum body size.
+     * @throws IOException If the body cannot be read or its Content-Encoding is not gzip or deflate.
+     */
+    public Body read(String url, InputStream in, String contentEncoding, long contentLength) throws IOException {
+        if (contentLength > maxBodySize) {
+            // Too large even if it is compressed - No need to read it.
+            throw new BodyTooLargeException(url, maxBodySize);
+        }
+
+        CountingInputStream received = new CountingInputStream(in);
+        String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        Inflater inflater = null;
+        InputStream decoded;
+
+        switch (encoding) {
+            case "identity":
+            case "":
+                decoded = received;
+                break;
+            case "gzip":
+            case "x-gzip":
+                decoded = new GZIPInputStream(received, CHUNK_SIZE);
+                break;
+            case "deflate":
+                // Meant to be zlib wrapped, but some servers send raw deflate - Tell them apart by the header.
+                PushbackInputStream pushback = new PushbackInputStream(received, 2);
+                inflater = new Inflater(!isZlibHeader(pushback));
+                decoded = new InflaterInputStream(pushback, inflater, CHUNK_SIZE);
+                break;
+            default:
+                throw new IOException("Unsupported Content-Encoding \"" + contentEncoding + "\": " + url);
+        }
+
+        List<byte[]> chunks = new ArrayList<byte[]>();
+
+        try {
+            long size = 0;
+            byte[] chunk = null;
+            int used = CHUNK_SIZE;
+
+            while (true) {
+                if (used == CHUNK_SIZE) {
+                    chunk = takeChunk();
+                    chunks.add(chunk);
+                    used = 0;
+                }
+
+                int n = decoded.read(chunk, used, CHUNK_SIZE - used);
+                if (n < 0) {
+                    break;
+                }
+
+                used += n;
+                size += n;
+                if (size > maxBodySize) {
+                    throw new BodyTooLargeException(url, maxBodySize);
+                }
+            }
+
+            // The one copy of the body that is kept.
+            byte[] bytes = new byte[(int) size];
+            int offset = 0;
+            for (byte[] full: chunks) {
+                int length = (int) Math.min(CHUNK_SIZE, size - offset);
+                System.arraycopy(full, 0, bytes, offset, length);
+                offset += length;
+            }
+
+            return new Body(bytes, received.getCount());
+        } finally {
+            for (byte[] full: chunks) {
+                POOL.offer(full);
+            }
+            if (decoded instanceof GZIPInputStream) {
+                // Frees its Inflater - The underlying stream is left to the caller.
+                ((GZIPInputStream) decoded).close();
+            }
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    } // read() method
+
+    /**
+     * @return Whether the stream starts with a zlib header (RFC 1950) - Looked at without being consumed.
+     */
+    private static boolean isZlibHeader(PushbackInputStream in) throws IOException {
+        int cmf = in.read();
+        if (cmf < 0) {
+            return true;
+        }
+        int flg = in.read();
+        if (flg >= 0) {
+            in.unread(flg);
+        }
+        in.unread(cmf);
+
+        return flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private static byte[] takeChunk() {
+        byte[] chunk = POOL.poll();
+        return chunk != null ? chunk : new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * @return Number of chunks in the pool - For checking that chunks are reused.
+     */
+    static int getPooledChunks() {
+        return POOL.size();
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Counts the bytes read through it. Closing it does not close the underlying stream (left to the caller).
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            // Left to the caller.
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+} // BodyReader class
@@ -0,0 +1,278 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * CheckpointLog Class
+ *
+ * An append-only log of the Product Items completed by a scrape, so that a scrape that dies part way through
+ * (e.g. out of memory, killed, or a deploy) can be resumed rather than started again. Each Product Item is
+ * added as it is output, with its URL and ProductInfo. A resumed scrape reads the log back, and the Product Items
+ * already completed are output from it without being fetched again - So the output, and the Price Total, are
+ * those of a scrape that was never interrupted.
+ *
+ * Crash safety:
+ *     Writes  - Each record is written to the file as it is added (no buffering in the JVM), so a killed
+ *               process loses nothing that was added.
+ *     fsync   - Forcing the records to disk is done in batches - Once syncEvery records or syncMillis have passed
+ *               since the last fsync (checked as records are added), and on close. So a crash of the machine
+ *               loses at most the last batch, without paying for an fsync per Product Item.
+ *     Records - Each record has its length and a CRC32 of its content. A record cut short (or garbled) by a
+ *               crash is found when the log is read back, and it and anything after it are truncated away.
+ *
+ * Failed Product Items are not added, so a resumed scrape tries them again.
+ *
+ * File layout: magic (int), version (int), then for each record - length (int), CRC32 (int), then the record -
+ * url, title, size, unit price and description (each an int length and UTF-8 bytes).
+ *
+ * Thread-safe - Records may be added by several scrapes at once.
+ *
+ * @author John Moores
+ */
+public class CheckpointLog implements Closeable {
+    public static final int DEFAULT_SYNC_EVERY = 64;
+    public static final long DEFAULT_SYNC_MILLIS = 1000;
+
+    private static final int MAGIC = 0x53434B50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    // Largest record read back - Anything larger is taken to be garbled.
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private final int syncEvery;
+    private final long syncMillis;
+
+    // The Product Items completed, by URL - Those read back on resume and those added since.
+    private final Map<String, ProductInfo> completed = new ConcurrentHashMap<String, ProductInfo>();
+    private final int recovered;
+
+    // Guarded by "this".
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private int unsynced = 0;
+    private long lastSyncNanos = System.nanoTime();
+    private long syncs = 0;
+
+    /**
+     * Opens a CheckpointLog with the default fsync batching.
+     *
+     * @param file The log file.
+     * @param resume true to read back the Product Items already in the file, false to start it again (empty).
+     * @throws IOException If the file cannot be read or written, or is not a checkpoint log.
+     */
+    public CheckpointLog(File file, boolean resume) throws IOException {
+        this(file, resume, DEFAULT_SYNC_EVERY, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * Opens a CheckpointLog.
+     *
+     * @param file The log file.
+     * @param resume true to read back the Product Items already in the file, false to start it again (empty).
+     * @param syncEvery Records added between each fsync - Must be at least 1 (1 for an fsync per record).
+     * @param syncMillis Milliseconds between each fsync while records are being added - 0 for no time limit.
+     * @throws IOException If the file cannot be read or written, or is not a checkpoint log.
+     */
+    public CheckpointLog(File file, boolean resume, int syncEvery, long syncMillis) throws IOException {
+        if (syncEvery < 1) {
+            throw new IllegalArgumentException("syncEvery must be at least 1: " + syncEvery);
+        }
+        if (syncMillis < 0) {
+            throw new IllegalArgumentException("syncMillis must not be negative: " + syncMillis);
+        }
+        this.file = file;
+        this.syncEvery = syncEvery;
+        this.syncMillis = syncMillis;
+
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+
+        try {
+            if (resume && raf.length() > 0) {
+                recovered = recover();
+            } else {
+                // A fresh log - Just the header.
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                channel.force(true);
+                recovered = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads back the records in the file, truncating any cut short or garbled record (and anything after it).
+     *
+     * @return The number of records read back.
+     */
+    private int recover() throws IOException {
+        raf.seek(0);
+        if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+            throw new IOException("Not a checkpoint log: " + file);
+        }
+        int version = raf.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint log version " + version + " in " + file);
+        }
+
+        int count = 0;
+        long good = HEADER_SIZE;
+        long length = raf.length();
+        CRC32 crc = new CRC32();
+
+        while (good + 8 <= length) {
+            int recordLength = raf.readInt();
+            int recordCrc = raf.readInt();
+
+            if (recordLength < 0 || recordLength > MAX_RECORD_SIZE || good + 8 + recordLength > length) {
+                break;
+            }
+
+            byte[] record = new byte[recordLength];
+            raf.readFully(record);
+            crc.reset();
+            crc.update(record, 0, recordLength);
+            if ((int) crc.getValue() != recordCrc) {
+                break;
+            }
+
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                String url = ProductSnapshot.readString(in);
+                completed.put(url, new ProductInfo(ProductSnapshot.readString(in), ProductSnapshot.readString(in),
+                    ProductSnapshot.readString(in), ProductSnapshot.readString(in)));
+            } catch (EOFException eofe) {
+                break;
+            }
+
+            good += 8 + recordLength;
+            count++;
+        }
+
+        if (good < length) {
+            // Cut short by a crash - New records follow the last good one.
+            raf.setLength(good);
+            channel.force(true);
+        }
+        raf.seek(good);
+        return count;
+    } // recover() method
+
+    /**
+     * @return The ProductInfo object of a Product Item already completed, or null if it has not been.
+     */
+    ProductInfo completed(String url) {
+        return completed.get(url);
+    }
+
+    /**
+     * Adds a completed Product Item to the log - Unless it is already there (e.g. read back on resume).
+     *
+     * @throws IOException If the record cannot be written.
+     */
+    synchronized void append(String url, ProductInfo productInfo) throws IOException {
+        if (completed.containsKey(url)) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        ProductSnapshot.writeString(record, url);
+        ProductSnapshot.writeString(record, productInfo.getTitle());
+        ProductSnapshot.writeString(record, productInfo.getSize());
+        ProductSnapshot.writeString(record, productInfo.getUnitPrice());
+        ProductSnapshot.writeString(record, productInfo.getDescription());
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + bytes.size());
+        buffer.putInt(bytes.size()).putInt((int) crc.getValue()).put(bytes.toByteArray());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        completed.put(url, productInfo);
+        unsynced++;
+
+        if (unsynced >= syncEvery || (syncMillis > 0 && System.nanoTime() - lastSyncNanos >= syncMillis * 1000000)) {
+            sync();
+        }
+    } // append() method
+
+    /**
+     * Forces the records added so far to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            syncs++;
+            unsynced = 0;
+        }
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Forces the records to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                sync();
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     *  Accessor Methods
+     */
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Number of Product Items completed - Read back and added since.
+     */
+    public int size() {
+        return completed.size();
+    }
+
+    /**
+     * @return Number of Product Items read back when the log was opened.
+     */
+    public int getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * @return Number of times the records have been forced to disk.
+     */
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+} // CheckpointLog class
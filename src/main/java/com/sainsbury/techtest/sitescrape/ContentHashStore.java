@@ -0,0 +1,312 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ContentHashStore Class
+ *
+ * The ProductInfo extracted from each Product Item webpage, keyed by the Product Item URL, together with a hash
+ * of the webpage's body. When a webpage is fetched again and its body has the same hash, the PageScraper uses
+ * the stored ProductInfo rather than parsing and extracting the webpage again.
+ *
+ * Unlike the ResponseCache (which relies on the server answering conditional requests with 304 Not Modified),
+ * this works for servers that always send the whole webpage (200) - The webpage is still fetched, but the
+ * parse is skipped when nothing has changed.
+ *
+ * The hash is xxHash64 - A fast non-cryptographic 64-bit hash (several GB a second, a few microseconds for a
+ * webpage), rather than a cryptographic one such as SHA-256, as there is no adversary to guard against - Only
+ * unchanged webpages to recognise. The chance of two different bodies of the same URL having the same hash
+ * is around 1 in 2^64.
+ *
+ * Kept in memory (e.g. for the resident ScrapeServer) and optionally in a file between runs (see read() and
+ * write()). At most maxEntries Product Items are stored - Once full, Product Items already stored are still
+ * updated, but new ones are not added.
+ *
+ * The stored ProductInfo objects depend on how they were extracted, as well as on the webpage - So a store is
+ * for one extraction plan (the Product Item locators and extraction mode - See
+ * PageScraper.getExtractionFingerprint()). A new store is bound to the plan of the first PageScraper built
+ * with it, and one read from a file to the plan it is read for; a file written for a different plan is
+ * ignored, as its ProductInfo objects could be out of date even for unchanged webpages.
+ *
+ * File layout: version (int), plan fingerprint (long), entry count (int), then for each entry - url (an int
+ * length and UTF-8 bytes), content hash (long), then title, size, unit price and description (each an int
+ * length and UTF-8 bytes).
+ *
+ * Thread-safe - Used by all the threads of a scrape.
+ *
+ * @author John Moores
+ */
+public class ContentHashStore {
+    public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+    private static final int STORE_VERSION = 2;
+
+    // xxHash64 primes.
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final int maxEntries;
+
+    // Fingerprint of the extraction plan the ProductInfo objects were extracted with - Guarded by "this".
+    private boolean planBound = false;
+    private long planFingerprint;
+
+    /**
+     * ContentHashStore Entry Class
+     */
+    private static final class Entry {
+        private final long contentHash;
+        private final ProductInfo productInfo;
+
+        Entry(long contentHash, ProductInfo productInfo) {
+            this.contentHash = contentHash;
+            this.productInfo = productInfo;
+        }
+    }
+
+    public ContentHashStore() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries Maximum number of Product Items stored - Must be at least 1.
+     */
+    public ContentHashStore(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Reads a ContentHashStore from a file, for an extraction plan.
+     *
+     * @param file The store file.
+     * @param planFingerprint Fingerprint of the extraction plan (see PageScraper.getExtractionFingerprint()).
+     * @return The ContentHashStore, bound to the plan - Empty if the file does not exist, or was written for a
+     *         different plan (or by an earlier version, without a plan).
+     * @throws IOException If the file cannot be read or is not a store file.
+     */
+    public static ContentHashStore read(File file, long planFingerprint) throws IOException {
+        ContentHashStore store = new ContentHashStore();
+        store.bindPlan(planFingerprint);
+
+        if (!file.exists()) {
+            return store;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version == 1) {
+                Logger.getLogger(ContentHashStore.class.getName()).log(Level.INFO, "Content hashes in " + file + " have no extraction plan - Not used");
+                return store;
+            }
+            if (version != STORE_VERSION) {
+                throw new IOException("Unsupported content hash store version " + version + " in " + file);
+            }
+            if (in.readLong() != planFingerprint) {
+                Logger.getLogger(ContentHashStore.class.getName()).log(Level.INFO, "Content hashes in " + file + " are for a different extraction plan - Not used");
+                return store;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = ProductSnapshot.readString(in);
+                long contentHash = in.readLong();
+                ProductInfo productInfo = new ProductInfo(ProductSnapshot.readString(in), ProductSnapshot.readString(in),
+                    ProductSnapshot.readString(in), ProductSnapshot.readString(in));
+                store.put(url, contentHash, productInfo);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Writes the ContentHashStore to a file - Written to a temporary file and moved into place, so the previous
+     * file is kept if anything goes wrong.
+     *
+     * @param file The store file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("content-hashes", ".tmp", directory);
+
+        try {
+            // A copy, so the count written matches the entries written while scrapes carry on.
+            Map<String, Entry> copy = new HashMap<String, Entry>(entries);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(STORE_VERSION);
+                out.writeLong(getPlanFingerprint());
+                out.writeInt(copy.size());
+
+                for (Map.Entry<String, Entry> entry: copy.entrySet()) {
+                    ProductInfo productInfo = entry.getValue().productInfo;
+
+                    ProductSnapshot.writeString(out, entry.getKey());
+                    out.writeLong(entry.getValue().contentHash);
+                    ProductSnapshot.writeString(out, productInfo.getTitle());
+                    ProductSnapshot.writeString(out, productInfo.getSize());
+                    ProductSnapshot.writeString(out, productInfo.getUnitPrice());
+                    ProductSnapshot.writeString(out, productInfo.getDescription());
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Binds the store to an extraction plan - If it is not already bound.
+     *
+     * @throws IllegalArgumentException If the store is bound to a different extraction plan.
+     */
+    synchronized void bindPlan(long argPlanFingerprint) {
+        if (!planBound) {
+            planBound = true;
+            planFingerprint = argPlanFingerprint;
+        } else if (planFingerprint != argPlanFingerprint) {
+            throw new IllegalArgumentException("ContentHashStore is for a different extraction plan");
+        }
+    }
+
+    /**
+     * @return The stored ProductInfo object for the URL if its webpage body has the same hash, otherwise null.
+     */
+    ProductInfo unchanged(String url, long contentHash) {
+        Entry entry = entries.get(url);
+
+        return entry != null && entry.contentHash == contentHash ? entry.productInfo : null;
+    }
+
+    /**
+     * Stores the ProductInfo object extracted from a webpage body with the given hash - Replacing any stored
+     * for the URL. Not added if the store is full and the URL is not already stored.
+     */
+    void put(String url, long contentHash, ProductInfo productInfo) {
+        Entry entry = new Entry(contentHash, productInfo);
+
+        if (entries.size() < maxEntries) {
+            entries.put(url, entry);
+        } else {
+            entries.replace(url, entry);
+        }
+    }
+
+    /**
+     * Hashes a webpage body (xxHash64, seed 0).
+     *
+     * @param body The webpage body.
+     * @return The hash.
+     */
+    static long hash(byte[] body) {
+        int length = body.length;
+        int i = 0;
+        long h;
+
+        if (length >= 32) {
+            // Four lanes of 8 bytes at a time.
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+
+            for (int limit = length - 32; i <= limit; i += 32) {
+                v1 = round(v1, getLong(body, i));
+                v2 = round(v2, getLong(body, i + 8));
+                v3 = round(v3, getLong(body, i + 16));
+                v4 = round(v4, getLong(body, i + 24));
+            }
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = PRIME64_5;
+        }
+
+        h += length;
+
+        // The remaining (up to 31) bytes.
+        for (; i + 8 <= length; i += 8) {
+            h ^= round(0, getLong(body, i));
+            h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+        }
+        if (i + 4 <= length) {
+            h ^= (getInt(body, i) & 0xFFFFFFFFL) * PRIME64_1;
+            h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+            i += 4;
+        }
+        for (; i < length; i++) {
+            h ^= (body[i] & 0xFFL) * PRIME64_5;
+            h = Long.rotateLeft(h, 11) * PRIME64_1;
+        }
+
+        // Avalanche.
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    } // hash() method
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    private static long getLong(byte[] b, int i) {
+        // Little-endian.
+        return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24
+            | (b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40 | (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return Fingerprint of the extraction plan the store is for - 0 if not yet bound to one.
+     */
+    public synchronized long getPlanFingerprint() {
+        return planBound ? planFingerprint : 0;
+    }
+
+} // ContentHashStore class
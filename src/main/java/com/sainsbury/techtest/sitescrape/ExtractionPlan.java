@@ -0,0 +1,182 @@
+package com.sainsbury.techtest.sitescrape;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.Selector;
+
+/**
+ * ExtractionPlan Class
+ * 
+ * The PageScraper locators compiled, once, into the form used to query the webpages - jsoup Evaluators for the
+ * Selector CSS queries and a StreamingProductExtractor for the Product Item webpages - so that no locator is
+ * re-parsed while scraping.
+ * 
+ * Immutable (and jsoup Evaluators hold no state), so one ExtractionPlan can be used by any number of threads
+ * at the same time.
+ * 
+ * Simple locators (see SimpleSelector), and simple locators joined by descendant and child combinators (see
+ * SelectorChain), are compiled here with jsoup's public API only. Other locators are checked once (so an
+ * invalid one is reported when the PageScraper is built) and then left to jsoup to parse on each query.
+ * 
+ * @author John Moores
+ */
+public final class ExtractionPlan {
+    // Locators as given - Kept for the PageScraper accessor methods.
+    private final String productTitleDescriptionContainerLocator;
+    private final String productTitleElementTagLocator;
+    private final String productPricePerUnitLocator;
+    private final String productTextDescriptionLocator;
+    private final String productListLocator;
+    private final String productListTag;
+    private final String productInfoLocator;
+    private final String productInfoElementLocator;
+    
+    // Compiled locators - null where the locator could not be compiled (queried by String instead).
+    private final Evaluator productTitleDescriptionContainer;
+    private final Evaluator productPricePerUnit;
+    private final Evaluator productTextDescription;
+    private final Evaluator productList;
+    private final Evaluator productInfo;
+    
+    // Streaming extraction of the Product Item webpages - null where the locators cannot be streamed.
+    private final StreamingProductExtractor streamingExtractor;
+    
+    /**
+     * Class constructor - Compiles the locators.
+     * 
+     * @throws org.jsoup.select.Selector.SelectorParseException If a locator is not a valid Selector CSS query.
+     */
+    ExtractionPlan(String productTitleDescriptionContainerLocator, String productTitleElementTagLocator,
+                   String productPricePerUnitLocator, String productTextDescriptionLocator,
+                   String productListLocator, String productListTag,
+                   String productInfoLocator, String productInfoElementLocator) {
+        this.productTitleDescriptionContainerLocator = productTitleDescriptionContainerLocator;
+        this.productTitleElementTagLocator = productTitleElementTagLocator;
+        this.productPricePerUnitLocator = productPricePerUnitLocator;
+        this.productTextDescriptionLocator = productTextDescriptionLocator;
+        this.productListLocator = productListLocator;
+        this.productListTag = productListTag;
+        this.productInfoLocator = productInfoLocator;
+        this.productInfoElementLocator = productInfoElementLocator;
+        
+        productTitleDescriptionContainer = compile(productTitleDescriptionContainerLocator);
+        productPricePerUnit = compile(productPricePerUnitLocator);
+        productTextDescription = compile(productTextDescriptionLocator);
+        productList = compile(productListLocator);
+        productInfo = compile(productInfoLocator);
+        
+        streamingExtractor = StreamingProductExtractor.compile(SimpleSelector.parse(productTitleDescriptionContainerLocator),
+            SimpleSelector.parse(productTitleElementTagLocator), SimpleSelector.parse(productPricePerUnitLocator),
+            SimpleSelector.parse(productTextDescriptionLocator));
+    }
+    
+    /**
+     * Compiles a Selector CSS query into a jsoup Evaluator.
+     * 
+     * @return The Evaluator, or null if it could not be compiled (queried by String instead).
+     * @throws org.jsoup.select.Selector.SelectorParseException If the query is not a valid Selector CSS query.
+     */
+    static Evaluator compile(String query) {
+        SimpleSelector simpleSelector = SimpleSelector.parse(query);
+        if (simpleSelector != null) {
+            return simpleSelector;
+        }
+        
+        SelectorChain selectorChain = SelectorChain.parse(query);
+        if (selectorChain != null) {
+            return selectorChain;
+        }
+        
+        // Invalid query (SelectorParseException) - Report it now rather than on every query.
+        Selector.select(query, new Element(Tag.valueOf("html"), ""));
+        return null;
+    }
+    
+    private static Element first(Evaluator evaluator, String query, Element root) {
+        Elements elements = evaluator != null ? Collector.collect(evaluator, root) : root.select(query);
+        return elements.first();
+    }
+    
+    /**
+     *  Queries - Each returns the first matching element, or null if there is none.
+     */
+    
+    public Element findProductList(Element root) {
+        return first(productList, productListLocator, root);
+    }
+    
+    public Elements findProductItems(Element productListElement) {
+        return productListElement.getElementsByTag(productListTag);
+    }
+    
+    public Element findProductInfo(Element productItemElement) {
+        return first(productInfo, productInfoLocator, productItemElement);
+    }
+    
+    public Element findProductLink(Element productInfoElement) {
+        return productInfoElement.getElementsByTag(productInfoElementLocator).first();
+    }
+    
+    public Element findTitleContainer(Element root) {
+        return first(productTitleDescriptionContainer, productTitleDescriptionContainerLocator, root);
+    }
+    
+    public Element findTitle(Element titleContainerElement) {
+        return titleContainerElement.getElementsByTag(productTitleElementTagLocator).first();
+    }
+    
+    public Element findPricePerUnit(Element root) {
+        return first(productPricePerUnit, productPricePerUnitLocator, root);
+    }
+    
+    public Element findTextDescription(Element root) {
+        return first(productTextDescription, productTextDescriptionLocator, root);
+    }
+    
+    /**
+     * @return The StreamingProductExtractor for the Product Item webpages, or null if the locators cannot be
+     *         handled when streaming.
+     */
+    public StreamingProductExtractor getStreamingExtractor() {
+        return streamingExtractor;
+    }
+
+    /**
+     *  Accessor Methods
+     */
+    
+    public String getProductTitleDescriptionContainerLocator() {
+        return productTitleDescriptionContainerLocator;
+    }
+    
+    public String getProductTitleElementTagLocator() {
+        return productTitleElementTagLocator;
+    }
+    
+    public String getProductPricePerUnitLocator() {
+        return productPricePerUnitLocator;
+    }
+    
+    public String getProductTextDescriptionLocator() {
+        return productTextDescriptionLocator;
+    }
+    
+    public String getProductListLocator() {
+        return productListLocator;
+    }
+    
+    public String getProductListTag() {
+        return productListTag;
+    }
+    
+    public String getProductInfoLocator() {
+        return productInfoLocator;
+    }
+    
+    public String getProductInfoElementLocator() {
+        return productInfoElementLocator;
+    }
+}
@@ -0,0 +1,158 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * FetchResponse Class
+ * 
+ * A response as returned by a FetchTransport - The status, headers and whole body.
+ * 
+ * @author John Moores
+ */
+public class FetchResponse {
+    private final String url;
+    private final int statusCode;
+    
+    // Response headers by name (case insensitive) - The first value of each.
+    private final Map<String, String> headers;
+    
+    private final byte[] body;
+    
+    // Bytes of the body as received - Before any Content-Encoding (e.g. gzip) was removed.
+    private final long receivedBytes;
+    
+    // Charset given by the Content-Type header - null when not given.
+    private final String charset;
+    
+    /**
+     * Class constructor.
+     * 
+     * @param url The page address requested.
+     * @param statusCode The HTTP status code.
+     * @param headers The response headers - Copied.
+     * @param body The response body, after any Content-Encoding (e.g. gzip) has been removed.
+     */
+    public FetchResponse(String url, int statusCode, Map<String, String> headers, byte[] body) {
+        this(url, statusCode, headers, body, body.length);
+    }
+    
+    /**
+     * Class constructor.
+     * 
+     * @param url The page address requested.
+     * @param statusCode The HTTP status code.
+     * @param headers The response headers - Copied.
+     * @param body The response body, after any Content-Encoding (e.g. gzip) has been removed.
+     * @param receivedBytes Bytes of the body as received, before any Content-Encoding was removed.
+     */
+    public FetchResponse(String url, int statusCode, Map<String, String> headers, byte[] body, long receivedBytes) {
+        this.url = url;
+        this.statusCode = statusCode;
+        
+        Map<String, String> caseInsensitive = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.putAll(headers);
+        this.headers = Collections.unmodifiableMap(caseInsensitive);
+        
+        this.body = body;
+        this.receivedBytes = receivedBytes;
+        this.charset = charsetOf(header("Content-Type"));
+    }
+    
+    /**
+     * @return The charset parameter of a Content-Type, or null if it has none.
+     */
+    static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        
+        for (String parameter: contentType.split(";")) {
+            String[] nameValue = parameter.trim().split("=", 2);
+            
+            if (nameValue.length == 2 && nameValue[0].trim().equalsIgnoreCase("charset")) {
+                String value = nameValue[1].trim().replace("\"", "").replace("'", "");
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return The media type of the Content-Type (e.g. "text/html"), lower case, or null if there is none.
+     */
+    public String getMimeType() {
+        String contentType = header("Content-Type");
+        
+        if (contentType == null) {
+            return null;
+        }
+        return contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Gets the Content-Length of the response, but only where it describes the body as received - i.e. it is a
+     * valid number and the body has not been transformed by a Content-Encoding (e.g. gzip).
+     * 
+     * @return The Content-Length, or -1 if it is not present or not trusted.
+     */
+    public long getContentLength() {
+        String contentEncoding = header("Content-Encoding");
+        String contentLength = header("Content-Length");
+        
+        if (contentLength == null || (contentEncoding != null && !contentEncoding.equalsIgnoreCase("identity"))) {
+            return -1;
+        }
+        
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+    
+    /**
+     * @return The first value of the named response header, or null if it is not present.
+     */
+    public String header(String name) {
+        return headers.get(name);
+    }
+    
+    /**
+     *  Accessor Methods
+     */
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+    
+    /**
+     * @return The response body. NOTE: Not copied, so must not be modified.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+    
+    public String getCharset() {
+        return charset;
+    }
+    
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+    
+    @Override
+    public String toString() {
+        return "FetchResponse{" + "url=" + url + ", statusCode=" + statusCode + ", bytes=" + body.length + ", receivedBytes=" + receivedBytes + ", charset=" + charset + '}';
+    }
+}
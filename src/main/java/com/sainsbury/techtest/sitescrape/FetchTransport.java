@@ -0,0 +1,34 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * FetchTransport Interface
+ * 
+ * How the PageScraper fetches webpages over HTTP(S). Implementations:
+ *     OkHttpFetchTransport - The default. A pooled HTTP client which keeps connections alive between requests
+ *                            (no new TCP / TLS handshake per webpage), uses HTTP/2 where the server supports
+ *                            it and asks for gzip compressed responses.
+ *     JsoupFetchTransport  - The original jsoup fetch, one connection per webpage. The fallback.
+ * 
+ * Implementations must be thread-safe - One FetchTransport is used by all the threads of a scrape, and
+ * should be shared by PageScraper objects so that they share its connections.
+ * 
+ * @author John Moores
+ */
+public interface FetchTransport {
+    
+    /**
+     * Fetches a webpage with a GET request, following redirects.
+     * 
+     * Responses are returned whatever their status (e.g. 304 Not Modified or 404 Not Found) - The caller
+     * decides what is an error. The whole response body has been read by the time this method returns.
+     * 
+     * @param url The page address of the webpage.
+     * @param requestHeaders Headers to add to the request (e.g. If-None-Match) - May be empty.
+     * @return The response.
+     * @throws IOException If there is no response (e.g. the host cannot be reached, or it timed out).
+     */
+    FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException;
+}
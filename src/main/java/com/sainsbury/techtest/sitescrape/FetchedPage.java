@@ -0,0 +1,104 @@
+package com.sainsbury.techtest.sitescrape;
+
+/**
+ * FetchedPage Class
+ * 
+ * Describes a webpage as fetched over HTTP(S) - The raw response body (bytes) together with the response
+ * values needed to parse it (charset) and to revalidate it later (ETag and Last-Modified).
+ * 
+ * FetchedPage objects are immutable so they can be shared between threads and with the ResponseCache (only the
+ * hash of the body is worked out when first needed, and kept).
+ * 
+ * @author John Moores
+ */
+public class FetchedPage {
+    private final String url;
+    private final byte[] body;
+    
+    // Values from the response headers - null when the header was not present.
+    private final String charset;
+    private final String etag;
+    private final String lastModified;
+    
+    // Content-Length of the response - -1 when not present, or not trusted to describe the body.
+    private final long contentLength;
+    
+    // Hash of the body (see ContentHashStore.hash()) - Worked out when first needed, as it is only needed for
+    // incremental scrapes and with a ContentHashStore.
+    private volatile long contentHash;
+    private volatile boolean contentHashed = false;
+    
+    public FetchedPage(String url, byte[] body, String charset, String etag, String lastModified) {
+        this(url, body, charset, etag, lastModified, -1);
+    }
+    
+    public FetchedPage(String url, byte[] body, String charset, String etag, String lastModified, long contentLength) {
+        this.url = url;
+        this.body = body;
+        this.charset = charset;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentLength = contentLength;
+    }
+    
+    /**
+     * Gets the size of the webpage in bytes, as received.
+     * 
+     * The Content-Length is used when present and no smaller than the body actually read (the body can be cut
+     * short by a maximum body size, the Content-Length cannot be less than what was received). Otherwise the
+     * number of body bytes read is used.
+     * 
+     * @return Size of the webpage in bytes.
+     */
+    public long getSizeInBytes() {
+        return contentLength >= body.length ? contentLength : body.length;
+    }
+
+    /**
+     * @return Hash of the body - See ContentHashStore.hash().
+     */
+    public long getContentHash() {
+        if (!contentHashed) {
+            // Two threads may both work it out, but they get the same value.
+            contentHash = ContentHashStore.hash(body);
+            contentHashed = true;
+        }
+        return contentHash;
+    }
+    
+    /**
+     *  Accessor Methods
+     */
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    /**
+     * @return The response body. NOTE: Not copied, so must not be modified.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+    
+    public String getCharset() {
+        return charset;
+    }
+    
+    public String getEtag() {
+        return etag;
+    }
+    
+    public String getLastModified() {
+        return lastModified;
+    }
+    
+    public long getContentLength() {
+        return contentLength;
+    }
+    
+    @Override
+    public String toString() {
+        return "FetchedPage{" + "url=" + url + ", bytes=" + body.length + ", charset=" + charset + ", etag=" + etag + ", lastModified=" + lastModified + ", contentLength=" + contentLength + '}';
+    }
+}
@@ -0,0 +1,208 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * IncrementalScraper Class
+ *
+ * Scrapes a product listing webpage and outputs only what has changed since the previous run, rather than
+ * every Product Item:
+ *
+ *     {
+ *         "added": [{"url": ..., "title": ..., "size": ..., "unit_price": ..., "description": ...}, ...],
+ *         "changed": [{"url": ..., ...}, ...],
+ *         "removed": ["url", ...],
+ *         "total": "15.10"
+ *     }
+ *
+ * "total" is the Price Total of all the Product Items now listed (changed or not). Product Items that could not
+ * be fetched are listed under "failed" (if any) and are neither changed nor removed.
+ *
+ * The ProductInfo objects of each run are kept in a ProductSnapshot file with a hash of each webpage's content.
+ * A Product Item whose webpage content is unchanged is not extracted again - Unless the snapshot was written with
+ * a different extraction plan (e.g. other locators). The snapshot file is only replaced once a run has
+ * completed, so a failed run can simply be repeated.
+ *
+ * @author John Moores
+ */
+public class IncrementalScraper {
+    private final PageScraper pageScraper;
+    private final File snapshotFile;
+
+    /**
+     * Class constructor.
+     *
+     * @param pageScraper The PageScraper used to scrape the webpages.
+     * @param snapshotFile The file holding the ProductSnapshot of the previous run - Need not exist yet.
+     */
+    public IncrementalScraper(PageScraper pageScraper, File snapshotFile) {
+        this.pageScraper = pageScraper;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Scrapes the PageScraper's product listing webpage - See scrape(URL).
+     *
+     * @return String of JSON.
+     */
+    public String scrape() throws IOException {
+        return scrape(pageScraper.getUrl());
+    } // scrape() method
+
+    /**
+     * Scrapes a product listing webpage, outputs the changes since the previous run and replaces the snapshot.
+     *
+     * @param listingUrl URL of the product listing webpage.
+     * @return String of JSON - Indented by 4 spaces. Empty ({}) if there is no Product List on the webpage, in
+     *         which case the snapshot is left as it was.
+     * @throws IOException If the snapshot file cannot be read or written.
+     */
+    public String scrape(URL listingUrl) throws IOException {
+        JSONObject delta = scrapeDelta(listingUrl);
+        return delta.toString(4);
+    } // scrape(URL) method
+
+    /**
+     * As scrape(URL), writing the JSON to the given Writer.
+     */
+    public void scrape(URL listingUrl, Writer out) throws IOException {
+        scrapeDelta(listingUrl).write(out, 4, 0);
+        out.flush();
+    } // scrape(URL, Writer) method
+
+    private JSONObject scrapeDelta(URL listingUrl) throws IOException {
+        ProductSnapshot previous = ProductSnapshot.read(snapshotFile);
+        ProductSnapshot.Recorder recorder = new ProductSnapshot.Recorder();
+
+        long planFingerprint = pageScraper.getExtractionFingerprint();
+        if (previous.size() > 0 && !previous.isForPlan(planFingerprint)) {
+            Logger.getLogger(IncrementalScraper.class.getName()).log(Level.INFO, "Snapshot " + snapshotFile
+                + " is for a different extraction plan - Every Product Item is extracted again");
+        }
+
+        DeltaWriter delta = new DeltaWriter(previous, recorder);
+        pageScraper.toBuilder().incremental(previous, recorder).build().scrape(listingUrl, delta);
+
+        if (delta.next != null) {
+            new ProductSnapshot(delta.next, planFingerprint).write(snapshotFile);
+        }
+        return delta.json;
+    } // scrapeDelta() method
+
+    /**
+     * @return true if the two ProductInfo objects describe the Product Item in the same way.
+     */
+    static boolean sameProduct(ProductInfo a, ProductInfo b) {
+        return Objects.equals(a.getTitle(), b.getTitle()) && Objects.equals(a.getSize(), b.getSize())
+            && Objects.equals(a.getUnitPrice(), b.getUnitPrice()) && Objects.equals(a.getDescription(), b.getDescription());
+    }
+
+    /**
+     * ScrapeResultWriter comparing each Product Item with the previous snapshot, building the JSON of the
+     * changes and the entries of the next snapshot.
+     */
+    private static class DeltaWriter implements ScrapeResultWriter {
+        private final ProductSnapshot previous;
+        private final ProductSnapshot.Recorder recorder;
+
+        private final JSONObject json = new JSONObject();
+        private final JSONArray added = new JSONArray();
+        private final JSONArray changed = new JSONArray();
+        private final JSONArray failed = new JSONArray();
+
+        // Entries of the next snapshot - null until the scrape has completed.
+        private Map<String, ProductSnapshot.Entry> next;
+        private final Map<String, ProductSnapshot.Entry> building = new LinkedHashMap<String, ProductSnapshot.Entry>();
+
+        DeltaWriter(ProductSnapshot previous, ProductSnapshot.Recorder recorder) {
+            this.previous = previous;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void empty() {
+            // Nothing to add - An empty JSON document ({}), and the snapshot is kept.
+        }
+
+        @Override
+        public void begin() {
+            // Nothing to do - Everything is added at the end.
+        }
+
+        @Override
+        public void product(String url, ProductInfo productInfo) {
+            ProductSnapshot.Entry previousEntry = previous.get(url);
+
+            if (previousEntry == null) {
+                added.put(toJSON(url, productInfo));
+            } else if (!sameProduct(previousEntry.getProductInfo(), productInfo)) {
+                changed.put(toJSON(url, productInfo));
+            }
+
+            building.put(url, new ProductSnapshot.Entry(recorder.getContentHash(url), productInfo));
+        }
+
+        @Override
+        public void failed(String url, IOException cause) {
+            failed.put(url);
+
+            // Not known to be changed or removed - Keep what was known of it.
+            ProductSnapshot.Entry previousEntry = previous.get(url);
+            if (previousEntry != null) {
+                building.put(url, previousEntry);
+            }
+        }
+
+        @Override
+        public void end(BigDecimal total) {
+            JSONArray removed = new JSONArray();
+
+            for (String url: previous.getEntries().keySet()) {
+                if (!building.containsKey(url)) {
+                    removed.put(url);
+                }
+            }
+
+            json.put("added", added);
+            json.put("changed", changed);
+            json.put("removed", removed);
+            if (failed.length() > 0) {
+                json.put("failed", failed);
+            }
+            // NOTE: The Price Total (total) is a string so the two decimal places are preserved - See PageScraper.
+            json.put("total", total.toString());
+
+            next = building;
+        }
+
+        private static JSONObject toJSON(String url, ProductInfo productInfo) {
+            JSONObject job = productInfo.toJSON();
+            job.put("url", url);
+            return job;
+        }
+    }
+
+    /**
+     *  Accessor Methods
+     */
+
+    public PageScraper getPageScraper() {
+        return pageScraper;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+} // IncrementalScraper class
@@ -0,0 +1,70 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * JsonTreeResultWriter Class
+ * 
+ * ScrapeResultWriter that builds the complete JSON document in memory (JSONObject), as returned by the
+ * PageScraper's scrape() method. The JSON document is obtained with the toString() method once the scrape is
+ * complete.
+ * 
+ * @author John Moores
+ */
+public class JsonTreeResultWriter implements ScrapeResultWriter {
+    private JSONObject json = new JSONObject();
+    private JSONArray results = new JSONArray();
+    private JSONArray failed = new JSONArray();
+    
+    @Override
+    public void empty() {
+        // Nothing to add - An empty JSON document ({}).
+    }
+    
+    @Override
+    public void begin() {
+        // Nothing to do - The results array is added at the end.
+    }
+    
+    @Override
+    public void product(String url, ProductInfo productInfo) {
+        // Add JSON representation of the ProductInfo object to the results array (JSONArray).
+        results.put(productInfo.toJSON());
+    }
+    
+    @Override
+    public void failed(String url, IOException cause) {
+        // Listed under "failed" so that it is clear the total is missing them.
+        failed.put(url);
+    }
+    
+    @Override
+    public void end(BigDecimal total) {
+        // NOTE: The Price Total (total) is converted to a string (String object) because this ensures
+        //       that the decimal places are preserved (two decimals) - See PageScraper.
+        json.put("total", total.toString());
+        json.put("results", results);
+        
+        if (failed.length() > 0) {
+            json.put("failed", failed);
+        }
+    }
+    
+    /**
+     * @return The JSON document - Empty until the scrape is complete.
+     */
+    public JSONObject getJSON() {
+        return json;
+    }
+    
+    /**
+     * @return String of JSON - Indented by 4 spaces.
+     */
+    @Override
+    public String toString() {
+        return json.toString(4);
+    }
+}
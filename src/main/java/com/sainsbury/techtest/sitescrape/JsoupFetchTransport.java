@@ -0,0 +1,60 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.util.Map;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+/**
+ * JsoupFetchTransport Class
+ * 
+ * FetchTransport using jsoup's own fetch (Jsoup.connect()) - A new connection for every webpage, with jsoup's
+ * default timeout. The fallback for when the OkHttpFetchTransport is not wanted or not available.
+ * 
+ * jsoup asks for gzip only and decompresses the body itself, so the bytes received are not known (the body
+ * size is given instead). A body larger than the maximum body size fails with a BodyReader.BodyTooLargeException,
+ * as with the OkHttpFetchTransport - Rather than jsoup's default of silently cutting it short at 1MB.
+ * 
+ * @author John Moores
+ */
+public class JsoupFetchTransport implements FetchTransport {
+    private final long maxBodySize;
+    
+    public JsoupFetchTransport() {
+        this(BodyReader.DEFAULT_MAX_BODY_SIZE);
+    }
+    
+    /**
+     * @param maxBodySize Maximum size in bytes of a response body (after decompression) - Must be at least 1.
+     */
+    public JsoupFetchTransport(long maxBodySize) {
+        if (maxBodySize < 1 || maxBodySize >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBodySize must be between 1 and " + (Integer.MAX_VALUE - 1) + ": " + maxBodySize);
+        }
+        this.maxBodySize = maxBodySize;
+    }
+    
+    @Override
+    public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+        // Errors and content types are left to the caller - See FetchTransport.fetch().
+        // One byte over the maximum body size is read, to tell a body at the limit from one cut short.
+        Connection con = Jsoup.connect(url).ignoreHttpErrors(true).ignoreContentType(true).maxBodySize((int) maxBodySize + 1);
+        
+        for (Map.Entry<String, String> header: requestHeaders.entrySet()) {
+            con.header(header.getKey(), header.getValue());
+        }
+        
+        Connection.Response res = con.execute();
+        byte[] body = res.bodyAsBytes();
+        
+        if (body.length > maxBodySize) {
+            throw new BodyReader.BodyTooLargeException(url, maxBodySize);
+        }
+        
+        return new FetchResponse(url, res.statusCode(), res.headers(), body);
+    }
+    
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+}
@@ -0,0 +1,61 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LatencyTracker Class
+ *
+ * Keeps the latencies of the most recent requests (a fixed size ring) so that their percentiles can be used,
+ * e.g. by the RetryPolicy to decide when a request is slow enough to be hedged.
+ *
+ * Thread-safe.
+ *
+ * @author John Moores
+ */
+class LatencyTracker {
+    // Fewer latencies than this and the percentiles are not trusted.
+    static final int MIN_SAMPLES = 20;
+
+    private final long[] latencyNanos;
+    private int next;
+    private int count;
+
+    /**
+     * @param capacity Number of recent latencies kept.
+     */
+    LatencyTracker(int capacity) {
+        latencyNanos = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        latencyNanos[next] = nanos;
+        next = (next + 1) % latencyNanos.length;
+        count = Math.min(count + 1, latencyNanos.length);
+    }
+
+    /**
+     * @param percentile e.g. 95 for the 95th percentile.
+     * @return The latency in milliseconds that the given percentage of the recent requests completed within, or
+     *         -1 if there are too few to tell (fewer than MIN_SAMPLES).
+     */
+    long percentileMillis(double percentile) {
+        long[] sorted;
+
+        synchronized (this) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(latencyNanos, count);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,286 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+
+/**
+ * ListingCrawler Class
+ *
+ * Crawls a whole department rather than a single product listing webpage. Starting from one or more seed
+ * product listing webpages, it follows the "next page" links (pagination) and, optionally, the sub-category
+ * links found on each listing webpage, and scrapes the Product Items of every listing webpage it visits.
+ *
+ * Every URL is remembered in a UrlFrontier, so no listing webpage is visited twice and a Product Item that
+ * appears in several categories (or pages) is fetched and output only once. The output is one combined result
+ * with a single Price Total over all the Product Items.
+ *
+ * Links are only followed to the hosts of the seed webpages. The Product Items themselves are fetched and
+ * processed by the given PageScraper (its locators, concurrency and ResponseCache). Immutable, so one
+ * ListingCrawler can be shared by several threads - Each crawl has its own UrlFrontier.
+ *
+ * @author John Moores
+ */
+public class ListingCrawler {
+    // False positive rate of the Bloom filter UrlFrontier - About one missed webpage in 100,000.
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.00001;
+
+    private final PageScraper pageScraper;
+
+    // Locators (Selector CSS queries) for the links to follow - As given, and compiled (null where there is
+    // no locator, or it could not be compiled).
+    private final String nextPageLocator;
+    private final String subCategoryLocator;
+    private final Evaluator nextPage;
+    private final Evaluator subCategory;
+
+    // Maximum number of product listing webpages visited by one crawl.
+    private final int maxListingPages;
+
+    // Expected number of URLs for a Bloom filter UrlFrontier - 0 for an exact UrlFrontier.
+    private final long bloomFilterUrls;
+
+    /**
+     * ListingCrawler Builder Class
+     */
+    public static class Builder {
+        private final PageScraper pageScraper;
+
+        // Steady state values - The "next page" link of the Sainsbury's product listing webpages, and no
+        // sub-categories.
+        private String nextPageLocator = "ul.pages li.next a";
+        private String subCategoryLocator;
+        private int maxListingPages = 1000;
+        private long bloomFilterUrls;
+
+        Builder(PageScraper pageScraper) {
+            this.pageScraper = pageScraper;
+        }
+
+        /**
+         * @param argNextPageLocator Locator of the "next page" link(s) - null or empty to not follow pagination.
+         */
+        public Builder nextPageLocator(String argNextPageLocator) {
+            nextPageLocator = argNextPageLocator;
+            return this;
+        }
+
+        /**
+         * @param argSubCategoryLocator Locator of the sub-category links - null or empty to not follow them.
+         */
+        public Builder subCategoryLocator(String argSubCategoryLocator) {
+            subCategoryLocator = argSubCategoryLocator;
+            return this;
+        }
+
+        public Builder maxListingPages(int argMaxListingPages) {
+            if (argMaxListingPages < 1) {
+                throw new IllegalArgumentException("Maximum listing pages must be at least 1 but was " + argMaxListingPages);
+            }
+            maxListingPages = argMaxListingPages;
+            return this;
+        }
+
+        /**
+         * @param expectedUrls Remember the URLs in a Bloom filter sized for this many URLs (for very large
+         *                     crawls) instead of exactly - 0 to remember them exactly.
+         */
+        public Builder bloomFilter(long expectedUrls) {
+            if (expectedUrls < 0) {
+                throw new IllegalArgumentException("Bloom filter size must not be negative but was " + expectedUrls);
+            }
+            bloomFilterUrls = expectedUrls;
+            return this;
+        }
+
+        /**
+         * @throws org.jsoup.select.Selector.SelectorParseException If a locator is not a valid Selector CSS query.
+         */
+        public ListingCrawler build() {
+            return new ListingCrawler(this);
+        }
+    }
+
+    /**
+     * @param pageScraper The PageScraper used for the listing and Product Item webpages.
+     * @return A Builder with the steady state values.
+     */
+    public static Builder builder(PageScraper pageScraper) {
+        return new Builder(pageScraper);
+    }
+
+    private ListingCrawler(Builder builder) {
+        pageScraper = builder.pageScraper;
+        nextPageLocator = builder.nextPageLocator;
+        subCategoryLocator = builder.subCategoryLocator;
+        nextPage = compile(nextPageLocator);
+        subCategory = compile(subCategoryLocator);
+        maxListingPages = builder.maxListingPages;
+        bloomFilterUrls = builder.bloomFilterUrls;
+    }
+
+    private static Evaluator compile(String locator) {
+        if (locator == null || locator.trim().isEmpty()) {
+            return null;
+        }
+        return ExtractionPlan.compile(locator);
+    }
+
+    /**
+     * Crawls from the given seed product listing webpages, passing each distinct Product Item to the writer
+     * (in the order found) and the Price Total over all of them once the crawl is done.
+     *
+     * @param seeds URLs of the product listing webpages to start from.
+     * @param writer The ScrapeResultWriter receiving the output.
+     * @throws IOException If the writer fails - Problems with the webpages are logged instead.
+     */
+    public void crawl(List<URL> seeds, ScrapeResultWriter writer) throws IOException {
+        UrlFrontier frontier = bloomFilterUrls > 0
+            ? UrlFrontier.bloom(bloomFilterUrls, BLOOM_FALSE_POSITIVE_RATE) : UrlFrontier.exact();
+
+        // Hosts links may be followed to.
+        Set<String> hosts = new HashSet<String>();
+
+        for (URL seed: seeds) {
+            hosts.add(seed.getHost().toLowerCase(Locale.ROOT));
+            frontier.addListing(seed.toString());
+        }
+
+        long priceTotal = 0; // In pence.
+        boolean begun = false;
+        int listingPages = 0;
+        String listingUrl;
+
+        while (listingPages < maxListingPages && (listingUrl = frontier.nextListing()) != null) {
+            listingPages++;
+
+            Document doc;
+            try {
+                doc = pageScraper.fetchListing(listingUrl);
+            } catch (IOException ioe) {
+                // Log the exception but carry on with the rest of the crawl.
+                Logger.getLogger(ListingCrawler.class.getName()).log(Level.SEVERE, "Error Processing Listing Page " + listingUrl, ioe);
+                continue;
+            }
+
+            // Queue the pagination and sub-category links.
+            follow(doc, nextPage, nextPageLocator, frontier, hosts);
+            follow(doc, subCategory, subCategoryLocator, frontier, hosts);
+
+            List<String> listedUrls = pageScraper.findProductUrls(doc);
+
+            if (listedUrls == null) {
+                // No Product List on this webpage (e.g. a category index) - Only its links are of use.
+                continue;
+            }
+
+            // Only the Product Items not already seen on an earlier listing webpage.
+            List<String> prodInfoUrls = new ArrayList<String>(listedUrls.size());
+
+            for (String listedUrl: listedUrls) {
+                String prodInfoUrl = frontier.addProduct(listedUrl);
+
+                if (prodInfoUrl != null) {
+                    prodInfoUrls.add(prodInfoUrl);
+                }
+            }
+
+            if (!begun) {
+                writer.begin();
+                begun = true;
+            }
+
+            priceTotal += pageScraper.writeProductInfos(prodInfoUrls, writer);
+        }
+
+        if (frontier.nextListing() != null) {
+            Logger.getLogger(ListingCrawler.class.getName()).log(Level.WARNING, "Crawl stopped after the maximum of " + maxListingPages + " listing pages");
+        }
+
+        if (begun) {
+            writer.end(BigDecimal.valueOf(priceTotal, 2));
+        } else {
+            // No Product List anywhere - Same output as scrape() for a webpage without one.
+            writer.empty();
+        }
+    } // crawl() method
+
+    /**
+     * Crawls from the given seed product listing webpages - See crawl(List, ScrapeResultWriter).
+     *
+     * @return String of JSON.
+     */
+    public String crawl(List<URL> seeds) {
+        JsonTreeResultWriter writer = new JsonTreeResultWriter();
+
+        try {
+            crawl(seeds, writer);
+        } catch (IOException ioe) {
+            // Not possible - The JsonTreeResultWriter only writes to memory.
+            Logger.getLogger(ListingCrawler.class.getName()).log(Level.SEVERE, "Error Writing JSON with IOException", ioe);
+        }
+
+        return writer.toString();
+    } // crawl(List) method
+
+    /**
+     * Adds the links of the elements found by the locator to the frontier, where they are on one of the hosts.
+     */
+    private static void follow(Document doc, Evaluator evaluator, String locator, UrlFrontier frontier, Set<String> hosts) {
+        if (locator == null || locator.trim().isEmpty()) {
+            return;
+        }
+
+        Elements links = evaluator != null ? Collector.collect(evaluator, doc) : doc.select(locator);
+
+        for (Element link: links) {
+            String href = link.absUrl("href");
+
+            try {
+                if (!href.isEmpty() && hosts.contains(new URL(href).getHost().toLowerCase(Locale.ROOT))) {
+                    frontier.addListing(href);
+                }
+            } catch (IOException ioe) {
+                // Not a URL that can be followed.
+                Logger.getLogger(ListingCrawler.class.getName()).log(Level.FINE, "Link not followed " + href, ioe);
+            }
+        }
+    } // follow() method
+
+    /**
+     *  Accessor Methods
+     */
+
+    public PageScraper getPageScraper() {
+        return pageScraper;
+    }
+
+    public String getNextPageLocator() {
+        return nextPageLocator;
+    }
+
+    public String getSubCategoryLocator() {
+        return subCategoryLocator;
+    }
+
+    public int getMaxListingPages() {
+        return maxListingPages;
+    }
+
+    public long getBloomFilterUrls() {
+        return bloomFilterUrls;
+    }
+
+} // ListingCrawler class
@@ -1,7 +1,19 @@
 package com.sainsbury.techtest.sitescrape;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
 
 /**
  * Main class
@@ -13,11 +25,199 @@ import java.net.URL;
 public class Main {
     public static final void main(String[] args) {
         String urlStr = "http://hiring-tests.s3-website-eu-west-1.amazonaws.com/2015_Developer_Scrape/5_products.html";
+        int concurrency = 1;
+        int parseThreads = 0;
+        String cacheDir = null;
+        long cacheTtlSeconds = 0;
+        long cacheMaxMb = 100;
+        boolean crawl = false;
+        String nextPageLocator = null;
+        String subCategoryLocator = null;
+        int maxPages = 0;
+        long bloomFilterUrls = 0;
+        double maxRate = 0;
+        int burst = 1;
+        int maxPerHost = 0;
+        String transport = "okhttp";
+        long maxBodyKb = 0;
+        int retries = RetryPolicy.DEFAULT.getMaxAttempts() - 1;
+        long deadlineMillis = 0;
+        double hedgePercentile = 0;
+        String snapshotFile = null;
+        String contentHashFile = null;
+        String batchFile = null;
+        String outputDir = null;
+        String binarySnapshotFile = null;
+        boolean printMetrics = false;
+        boolean ndjson = false;
+        int servePort = -1;
+        long resultTtlSeconds = 60;
+        int workers = 4;
+        int shards = 0;
+        String checkpointFile = null;
+        boolean resume = false;
         
-        if (args.length == 1) {
-            // If user provides a URL, then okay to use it so override the intitialised value with the value
-            // provided by the user.
-            urlStr = args[0];
+        // URLs given by the user - Only the last one is used unless crawling, when they are all seeds.
+        List<String> urlStrs = new ArrayList<String>();
+        
+        for (String arg: args) {
+            try {
+                if (arg.startsWith("--concurrency=")) {
+                    // Number of Product Item webpages to fetch and process in parallel.
+                    concurrency = Integer.parseInt(arg.substring("--concurrency=".length()));
+                } else if (arg.startsWith("--parse-threads=")) {
+                    // Threads extracting the Product Items in a staged pipeline ("auto" for one per core).
+                    String value = arg.substring("--parse-threads=".length());
+                    parseThreads = value.equals("auto") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(value);
+                } else if (arg.startsWith("--cache-dir=")) {
+                    // Directory for the on-disk cache of Product Item webpages.
+                    cacheDir = arg.substring("--cache-dir=".length());
+                } else if (arg.startsWith("--cache-ttl=")) {
+                    // Seconds for which a cached Product Item webpage is used without revalidation.
+                    cacheTtlSeconds = Long.parseLong(arg.substring("--cache-ttl=".length()));
+                } else if (arg.startsWith("--cache-max-mb=")) {
+                    // Maximum size of the on-disk cache in megabytes.
+                    cacheMaxMb = Long.parseLong(arg.substring("--cache-max-mb=".length()));
+                } else if (arg.startsWith("--max-rate=")) {
+                    // Maximum requests per second to each host.
+                    maxRate = Double.parseDouble(arg.substring("--max-rate=".length()));
+                } else if (arg.startsWith("--burst=")) {
+                    // Requests that may be sent to a host at once, within the maximum rate.
+                    burst = Integer.parseInt(arg.substring("--burst=".length()));
+                } else if (arg.startsWith("--max-per-host=")) {
+                    // Maximum requests in progress to each host at the same time.
+                    maxPerHost = Integer.parseInt(arg.substring("--max-per-host=".length()));
+                } else if (arg.startsWith("--transport=")) {
+                    // How the webpages are fetched - okhttp (pooled, the default) or jsoup.
+                    transport = arg.substring("--transport=".length());
+                    if (!transport.equals("okhttp") && !transport.equals("jsoup")) {
+                        throw new IllegalArgumentException(transport);
+                    }
+                } else if (arg.startsWith("--max-body-kb=")) {
+                    // Maximum size of a webpage (after decompression) in kilobytes - A larger one fails.
+                    maxBodyKb = Long.parseLong(arg.substring("--max-body-kb=".length()));
+                    if (maxBodyKb < 1 || maxBodyKb >= Integer.MAX_VALUE / 1024) {
+                        throw new IllegalArgumentException(arg);
+                    }
+                } else if (arg.startsWith("--retries=")) {
+                    // Retries of a failed request (with a random, doubling delay).
+                    retries = Integer.parseInt(arg.substring("--retries=".length()));
+                } else if (arg.startsWith("--deadline-ms=")) {
+                    // Time allowed for all the attempts at a webpage.
+                    deadlineMillis = Long.parseLong(arg.substring("--deadline-ms=".length()));
+                } else if (arg.startsWith("--hedge-percentile=")) {
+                    // Send a duplicate request when one is slower than this percentile of the recent requests.
+                    hedgePercentile = Double.parseDouble(arg.substring("--hedge-percentile=".length()));
+                    if (hedgePercentile < 0 || hedgePercentile >= 100) {
+                        throw new IllegalArgumentException(arg);
+                    }
+                } else if (arg.startsWith("--incremental=")) {
+                    // Output only the changes since the previous run, whose results are kept in this file.
+                    snapshotFile = arg.substring("--incremental=".length());
+                } else if (arg.startsWith("--content-hashes=")) {
+                    // Skip parsing Product Item webpages whose body is unchanged since the previous run, whose
+                    // content hashes are kept in this file.
+                    contentHashFile = arg.substring("--content-hashes=".length());
+                } else if (arg.startsWith("--batch=")) {
+                    // Scrape each product listing webpage listed in this file (- for stdin), one per line.
+                    batchFile = arg.substring("--batch=".length());
+                } else if (arg.startsWith("--output-dir=")) {
+                    // Directory for the JSON document of each product listing webpage of a batch.
+                    outputDir = arg.substring("--output-dir=".length());
+                } else if (arg.startsWith("--binary-snapshot=")) {
+                    // Also write the results to this binary snapshot file (see BinarySnapshotReader).
+                    binarySnapshotFile = arg.substring("--binary-snapshot=".length());
+                } else if (arg.equals("--ndjson")) {
+                    // Output one line of JSON per Product Item, as each one completes, then a summary line.
+                    ndjson = true;
+                } else if (arg.startsWith("--serve=")) {
+                    // Keep running, answering scrape requests over HTTP on this port (see ScrapeServer).
+                    servePort = Integer.parseInt(arg.substring("--serve=".length()));
+                    if (servePort < 0 || servePort > 65535) {
+                        throw new IllegalArgumentException(arg);
+                    }
+                } else if (arg.startsWith("--result-ttl=")) {
+                    // Seconds for which the server answers from its cache of results.
+                    resultTtlSeconds = Long.parseLong(arg.substring("--result-ttl=".length()));
+                } else if (arg.startsWith("--workers=")) {
+                    // Maximum scrapes at once in the server.
+                    workers = Integer.parseInt(arg.substring("--workers=".length()));
+                } else if (arg.startsWith("--shards=")) {
+                    // Share the Product Items out between this many worker processes (see ShardedScraper).
+                    shards = Integer.parseInt(arg.substring("--shards=".length()));
+                    if (shards < 1) {
+                        throw new IllegalArgumentException(arg);
+                    }
+                } else if (arg.startsWith("--checkpoint=")) {
+                    // Record each Product Item in this file as it is output, so the scrape can be resumed.
+                    checkpointFile = arg.substring("--checkpoint=".length());
+                } else if (arg.equals("--resume")) {
+                    // Carry on from the checkpoint file, rather than starting again.
+                    resume = true;
+                } else if (arg.equals("--metrics")) {
+                    // Print the timings of each stage of the scrape (to stderr) at the end of the run.
+                    printMetrics = true;
+                } else if (arg.equals("--crawl")) {
+                    // Follow the pagination (and sub-category) links from the product listing webpage(s).
+                    crawl = true;
+                } else if (arg.startsWith("--next-page-locator=")) {
+                    nextPageLocator = arg.substring("--next-page-locator=".length());
+                } else if (arg.startsWith("--sub-category-locator=")) {
+                    subCategoryLocator = arg.substring("--sub-category-locator=".length());
+                } else if (arg.startsWith("--max-pages=")) {
+                    // Maximum number of product listing webpages visited when crawling.
+                    maxPages = Integer.parseInt(arg.substring("--max-pages=".length()));
+                } else if (arg.startsWith("--bloom-filter=")) {
+                    // Expected number of URLs when crawling - Remember them in a Bloom filter of that size.
+                    bloomFilterUrls = Long.parseLong(arg.substring("--bloom-filter=".length()));
+                } else {
+                    // If user provides a URL, then okay to use it so override the intitialised value with the value
+                    // provided by the user.
+                    urlStr = arg;
+                    urlStrs.add(arg);
+                }
+            } catch (IllegalArgumentException iae) {
+                // Includes NumberFormatException for the numeric options.
+                System.out.println("The option \"" + arg + "\" is invalid. Exiting....");
+                return;
+            }
+        }
+        
+        if (crawl && snapshotFile != null) {
+            System.out.println("The options --crawl and --incremental cannot be used together. Exiting....");
+            return;
+        }
+        if (batchFile != null && (crawl || snapshotFile != null)) {
+            System.out.println("The option --batch cannot be used with --crawl or --incremental. Exiting....");
+            return;
+        }
+        if (binarySnapshotFile != null && (batchFile != null || snapshotFile != null)) {
+            System.out.println("The option --binary-snapshot cannot be used with --batch or --incremental. Exiting....");
+            return;
+        }
+        if (ndjson && (batchFile != null || snapshotFile != null)) {
+            System.out.println("The option --ndjson cannot be used with --batch or --incremental. Exiting....");
+            return;
+        }
+        if (servePort >= 0 && (batchFile != null || crawl || snapshotFile != null || ndjson || binarySnapshotFile != null)) {
+            System.out.println("The option --serve cannot be used with --batch, --crawl, --incremental, --ndjson or --binary-snapshot. Exiting....");
+            return;
+        }
+        if (shards > 0 && (batchFile != null || crawl || snapshotFile != null || servePort >= 0)) {
+            System.out.println("The option --shards cannot be used with --batch, --crawl, --incremental or --serve. Exiting....");
+            return;
+        }
+        if (checkpointFile != null && (batchFile != null || snapshotFile != null || servePort >= 0 || shards > 0)) {
+            System.out.println("The option --checkpoint cannot be used with --batch, --incremental, --serve or --shards. Exiting....");
+            return;
+        }
+        if (resume && checkpointFile == null) {
+            System.out.println("The option --resume can only be used with --checkpoint. Exiting....");
+            return;
+        }
+        if (outputDir != null && batchFile == null) {
+            System.out.println("The option --output-dir can only be used with --batch. Exiting....");
+            return;
         }
         
         try {
@@ -26,12 +226,162 @@ public class Main {
             
             // Instantiate the PageScraper object to commence processing of the webpage specified by the
             // URL (url).
-            PageScraper webPageScraper = new PageScraper(url);
+            PageScraper.Builder builder = PageScraper.builder().url(url).concurrency(Math.max(1, concurrency))
+                .parseThreads(Math.max(0, parseThreads));
+            
+            // Opened before the scrape starts - Without --resume an existing checkpoint file is started again.
+            CheckpointLog checkpointLog = checkpointFile != null ? new CheckpointLog(new File(checkpointFile), resume) : null;
+            builder.checkpointLog(checkpointLog);
+            
+            if (cacheDir != null) {
+                builder.responseCache(new ResponseCache(new File(cacheDir), cacheTtlSeconds * 1000, cacheMaxMb * 1024 * 1024));
+            }
+            
+            builder.retryPolicy(RetryPolicy.builder().maxAttempts(Math.max(0, retries) + 1)
+                .deadlineMillis(Math.max(0, deadlineMillis)).hedgePercentile(hedgePercentile).build());
+            
+            long maxBodySize = maxBodyKb > 0 ? maxBodyKb * 1024 : BodyReader.DEFAULT_MAX_BODY_SIZE;
+            
+            if (transport.equals("jsoup")) {
+                builder.transport(new JsoupFetchTransport(maxBodySize));
+            } else if (maxBodyKb > 0) {
+                // Not the shared OkHttpFetchTransport - It has the default maximum body size.
+                builder.transport(new OkHttpFetchTransport(OkHttpFetchTransport.DEFAULT_TIMEOUT_MILLIS, maxBodySize));
+            }
             
-            // Output the JSON to the terminal.
-            System.out.println(webPageScraper.scrape());
+            if (maxRate > 0 || maxPerHost > 0) {
+                // Schedule the requests per host - The overall number in progress is limited by the concurrency.
+                builder.requestScheduler(new RequestScheduler(maxRate, Math.max(1, burst),
+                    maxPerHost > 0 ? maxPerHost : Integer.MAX_VALUE, Integer.MAX_VALUE));
+            }
+            
+            PageScraper webPageScraper = builder.build();
+            
+            // The server always keeps the content hashes in memory, as it scrapes the same webpages again and again.
+            // Those in a file are only used if they are for the same extraction plan - So are read once it is known.
+            ContentHashStore contentHashStore = contentHashFile != null
+                ? ContentHashStore.read(new File(contentHashFile), webPageScraper.getExtractionFingerprint())
+                : servePort >= 0 ? new ContentHashStore() : null;
+            if (contentHashStore != null) {
+                webPageScraper = webPageScraper.toBuilder().contentHashStore(contentHashStore).build();
+            }
+            
+            // Expose the metrics of the scrape over JMX (e.g. for JConsole) - Not essential, so carry on without.
+            try {
+                webPageScraper.getMetrics().register("main");
+            } catch (JMException jme) {
+                Logger.getLogger(Main.class.getName()).log(Level.WARNING, "Unable to register the metrics with JMX", jme);
+            }
+            
+            if (servePort >= 0) {
+                // Keep running (until stopped) with the one warm PageScraper answering the scrape requests.
+                ScrapeServer server = ScrapeServer.builder(webPageScraper).port(servePort)
+                    .ttlMillis(Math.max(0, resultTtlSeconds) * 1000).workers(Math.max(1, workers)).build();
+                
+                String serverContentHashFile = contentHashFile;
+                
+                server.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop();
+                    writeContentHashes(contentHashStore, serverContentHashFile);
+                }));
+                System.out.println("Listening on http://localhost:" + server.getPort() + "/scrape?url=<product listing URL>");
+                return;
+            }
+            
+            // Output the JSON to the terminal as the scrape progresses - Each Product Item is written as soon
+            // as it has been processed rather than holding the whole JSON document in memory.
+            Writer out = new OutputStreamWriter(System.out, "UTF-8");
+            ScrapeResultWriter writer = ndjson ? new NdjsonResultWriter(out) : new StreamingJsonResultWriter(out);
+            
+            if (binarySnapshotFile != null) {
+                // The binary snapshot file is written at the end, as well as the JSON.
+                writer = new BinarySnapshotWriter(new File(binarySnapshotFile), writer);
+            }
+            
+            if (batchFile != null) {
+                // All the product listing webpages in this JVM, with the one PageScraper.
+                List<String> batchUrls;
+                
+                try (InputStreamReader in = new InputStreamReader(batchFile.equals("-") ? System.in : new FileInputStream(batchFile), StandardCharsets.UTF_8)) {
+                    batchUrls = BatchScraper.readUrls(in);
+                }
+                
+                BatchScraper batchScraper = new BatchScraper(webPageScraper);
+                
+                if (outputDir != null) {
+                    batchScraper.scrape(batchUrls, new File(outputDir));
+                } else {
+                    batchScraper.scrape(batchUrls, out);
+                }
+            } else if (crawl) {
+                List<URL> seeds = new ArrayList<URL>();
+                
+                if (urlStrs.isEmpty()) {
+                    seeds.add(url);
+                }
+                for (String seed: urlStrs) {
+                    urlStr = seed;
+                    seeds.add(new URL(seed));
+                }
+                
+                ListingCrawler.Builder crawlerBuilder = ListingCrawler.builder(webPageScraper).bloomFilter(Math.max(0, bloomFilterUrls));
+                
+                if (nextPageLocator != null) {
+                    crawlerBuilder.nextPageLocator(nextPageLocator);
+                }
+                if (subCategoryLocator != null) {
+                    crawlerBuilder.subCategoryLocator(subCategoryLocator);
+                }
+                if (maxPages > 0) {
+                    crawlerBuilder.maxListingPages(maxPages);
+                }
+                
+                crawlerBuilder.build().crawl(seeds, writer);
+            } else if (snapshotFile != null) {
+                new IncrementalScraper(webPageScraper, new File(snapshotFile)).scrape(url, out);
+            } else if (shards > 0) {
+                new ShardedScraper(webPageScraper, shards).scrape(writer);
+            } else {
+                webPageScraper.scrape(writer);
+            }
+            if (batchFile == null && !ndjson) {
+                // A batch (and NDJSON) already ends each line of its output.
+                out.write(System.lineSeparator());
+            }
+            out.flush();
+            
+            writeContentHashes(contentHashStore, contentHashFile);
+            
+            if (checkpointLog != null) {
+                // Completed - Nothing to resume.
+                checkpointLog.close();
+                checkpointLog.getFile().delete();
+            }
+            
+            if (printMetrics) {
+                System.err.println(webPageScraper.getMetrics().getSummary());
+            }
         } catch (MalformedURLException ex) {
             System.out.println("The web-address (URL) \"" + urlStr + "\" is invalid since program caught a MalformedURLException exception. Exiting....");
+        } catch (IOException ioe) {
+            System.out.println("Unable to complete since program caught an IOException exception (" + ioe.getMessage() + "). Exiting....");
+        }
+    }
+    
+    /**
+     * Writes the content hashes of the Product Item webpages for the next run - If a file was given.
+     */
+    private static void writeContentHashes(ContentHashStore contentHashStore, String contentHashFile) {
+        if (contentHashFile == null) {
+            return;
+        }
+        
+        try {
+            contentHashStore.write(new File(contentHashFile));
+        } catch (IOException ioe) {
+            // The results are already out - The next run just parses every webpage again.
+            Logger.getLogger(Main.class.getName()).log(Level.WARNING, "Unable to write the content hashes to " + contentHashFile, ioe);
         }
     }
-}
\ No newline at end of file
+}
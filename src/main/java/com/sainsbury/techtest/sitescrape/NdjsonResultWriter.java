@@ -0,0 +1,97 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import org.json.JSONObject;
+
+/**
+ * NdjsonResultWriter Class
+ *
+ * ScrapeResultWriter that writes newline-delimited JSON (NDJSON) - One compact JSON object per line, each line
+ * written and flushed as soon as it is known, so a consumer can process each Product Item without waiting for
+ * the rest of the scrape:
+ *
+ *     {"url":"http://.../apricot.html","title":"...","size":"38.3kb","unit_price":"3.50","description":"..."}
+ *     {"url":"http://.../orange.html","error":"HTTP error fetching URL"}
+ *     {"total":"15.10","products":5,"failed":1}
+ *
+ * A Product Item line has the ProductInfo's JSON with its page address as "url". A Product Item whose webpage
+ * could not be fetched has an "error" line instead. The last line is the summary - The Price Total and the
+ * number of Product Item and failed lines - So a consumer can tell that the output is complete. A webpage with
+ * no Product List has just the summary, with a "total" of "0.00".
+ *
+ * Since every line has the page address, the order does not matter - The PageScraper writes each Product Item
+ * as it completes rather than in listing order (see isOrdered()).
+ *
+ * @author John Moores
+ */
+public class NdjsonResultWriter implements ScrapeResultWriter {
+    private static final char NEWLINE = '\n';
+
+    private final Writer writer;
+    private int productCount = 0;
+    private int failedCount = 0;
+
+    public NdjsonResultWriter(Writer argWriter) {
+        writer = argWriter;
+    }
+
+    @Override
+    public boolean isOrdered() {
+        return false;
+    }
+
+    @Override
+    public void empty() throws IOException {
+        end(BigDecimal.valueOf(0, 2));
+    }
+
+    @Override
+    public void begin() {
+        // Nothing to write - Every line stands alone.
+    }
+
+    @Override
+    public void product(String url, ProductInfo productInfo) throws IOException {
+        JSONObject job = productInfo.toJSON();
+        job.put("url", url);
+        writeLine(job);
+
+        productCount++;
+    }
+
+    @Override
+    public void failed(String url, IOException cause) throws IOException {
+        JSONObject job = new JSONObject();
+        job.put("url", url);
+        job.put("error", String.valueOf(cause.getMessage()));
+        writeLine(job);
+
+        failedCount++;
+    }
+
+    @Override
+    public void end(BigDecimal total) throws IOException {
+        // NOTE: The Price Total (total) is written as a string so the two decimal places are preserved.
+        JSONObject job = new JSONObject();
+        job.put("total", total.toString());
+        job.put("products", productCount);
+        job.put("failed", failedCount);
+        writeLine(job);
+    }
+
+    private void writeLine(JSONObject job) throws IOException {
+        // Compact - No indentation.
+        job.write(writer);
+        writer.write(NEWLINE);
+        writer.flush();
+    }
+
+    /**
+     * @return Number of Product Item lines written so far.
+     */
+    public int getProductCount() {
+        return productCount;
+    }
+}
@@ -0,0 +1,129 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * OkHttpFetchTransport Class
+ * 
+ * FetchTransport backed by a pooled OkHttp client (the default):
+ *     Keep-alive  - Connections are kept in a pool and reused for the following requests to the same host, so
+ *                   there is no TCP / TLS handshake per webpage.
+ *     HTTP/2      - Used where the server supports it (negotiated by TLS ALPN), with all the requests to a
+ *                   host multiplexed over one connection.
+ *     gzip        - Responses are asked for gzip (or deflate) compressed, and decompressed as they are read by a
+ *                   BodyReader, which also caps the size of the body (see BodyReader).
+ * 
+ * One OkHttpFetchTransport (see shared()) is used by all PageScraper objects that are not given another, so
+ * that they share the connection pool.
+ * 
+ * @author John Moores
+ */
+public class OkHttpFetchTransport implements FetchTransport {
+    // Connect and read timeout - The same as jsoup's default.
+    public static final int DEFAULT_TIMEOUT_MILLIS = 3000;
+    
+    // Idle connections kept in the pool, and for how long.
+    private static final int MAX_IDLE_CONNECTIONS = 32;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    
+    private static volatile OkHttpFetchTransport shared;
+    
+    private final OkHttpClient client;
+    private final BodyReader bodyReader;
+    
+    public OkHttpFetchTransport() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * @param timeoutMillis Connect and read timeout in milliseconds.
+     */
+    public OkHttpFetchTransport(int timeoutMillis) {
+        this(timeoutMillis, BodyReader.DEFAULT_MAX_BODY_SIZE);
+    }
+    
+    /**
+     * @param timeoutMillis Connect and read timeout in milliseconds.
+     * @param maxBodySize Maximum size in bytes of a response body (after decompression) - A larger one fails
+     *                    with a BodyReader.BodyTooLargeException.
+     */
+    public OkHttpFetchTransport(int timeoutMillis, long maxBodySize) {
+        bodyReader = new BodyReader(maxBodySize);
+        client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .connectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .readTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .followRedirects(true)
+            .followSslRedirects(true)
+            .build();
+    }
+    
+    /**
+     * @return The OkHttpFetchTransport shared by the PageScraper objects.
+     */
+    public static OkHttpFetchTransport shared() {
+        if (shared == null) {
+            synchronized (OkHttpFetchTransport.class) {
+                if (shared == null) {
+                    shared = new OkHttpFetchTransport();
+                }
+            }
+        }
+        return shared;
+    }
+    
+    @Override
+    public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+        // Asking for the compressed response here (rather than leaving it to OkHttp) means OkHttp passes the body
+        // on as received, and the BodyReader decompresses it - So it can be counted and capped as it is read.
+        Request.Builder request = new Request.Builder().url(url).get().header("Accept-Encoding", BodyReader.ACCEPT_ENCODING);
+        
+        for (Map.Entry<String, String> header: requestHeaders.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        
+        try (Response response = client.newCall(request.build()).execute()) {
+            ResponseBody responseBody = response.body();
+            String contentEncoding = response.header("Content-Encoding");
+            BodyReader.Body body = responseBody != null
+                ? bodyReader.read(url, responseBody.byteStream(), contentEncoding, responseBody.contentLength())
+                : new BodyReader.Body(new byte[0], 0);
+            
+            Headers headers = response.headers();
+            Map<String, String> firstValues = new HashMap<String, String>();
+            
+            for (int i = headers.size() - 1; i >= 0; i--) {
+                // Backwards, so the first value of a repeated header is the one kept.
+                firstValues.put(headers.name(i), headers.value(i));
+            }
+            
+            if (contentEncoding != null && !contentEncoding.trim().equalsIgnoreCase("identity")) {
+                // The body has been decompressed - Remove the headers describing it as received, so the headers
+                // always describe the body returned.
+                firstValues.keySet().removeIf(name -> name.equalsIgnoreCase("Content-Encoding") || name.equalsIgnoreCase("Content-Length"));
+            }
+            
+            return new FetchResponse(url, response.code(), firstValues, body.getBytes(), body.getReceivedBytes());
+        }
+    }
+    
+    /**
+     * @return The number of connections in the pool - For checking that connections are reused.
+     */
+    public int getConnectionCount() {
+        return client.connectionPool().connectionCount();
+    }
+    
+    public long getMaxBodySize() {
+        return bodyReader.getMaxBodySize();
+    }
+}
@@ -1,13 +1,28 @@
 package com.sainsbury.techtest.sitescrape;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.json.*;
 import org.jsoup.*;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -22,27 +37,370 @@ import org.jsoup.select.Elements;
  * following the individual product items' URL links. Individual instances of the ProductInfo class are created
  * using the createProductInfo() method. The ProductInfo objects are added to an instance of a JSONObject
  * together with a total summing all the unit prices and returned from the scrape method as a string (String object)
- * of JSON.
+ * of JSON. Alternatively, scrape(ScrapeResultWriter) passes each ProductInfo object to a ScrapeResultWriter as soon
+ * as it has been created (e.g. StreamingJsonResultWriter to write the JSON as the scrape progresses).
+ * 
+ * The webpages are fetched with a FetchTransport - By default a pooled OkHttp client shared by all the PageScraper
+ * objects (see OkHttpFetchTransport).
  * 
  * @author John Moores
  */
 public class PageScraper {
-    private URL url;
-    
-    // Initialised private class variables - Intialised to steady state values so all in one place
-    // for ease of use. These values are used to locate items in the webpage using Selector CSS queries.
-    private String productTitleDescriptionContainerLocator = "div.productTitleDescriptionContainer";
-    private String productTitleElementTagLocator = "h1";
-    private String productPricePerUnitLocator = "p.pricePerUnit";
-    private String productTextDescriptionLocator = "div.productText";
-    private String productListLocator = "ul.productLister";
-    private String productListTag = "li";
-    private String productInfoLocator = "div.productInfo";
-    private String productInfoElementLocator = "a";
-    
-    // Class constructor - initialised with URL object specifying the webpage to be processed.
+    private static final BigDecimal KILOBYTE = BigDecimal.valueOf(1024);
+    
+    // Number of recent request latencies kept for the RetryPolicy hedging.
+    private static final int LATENCY_SAMPLES = 256;
+    
+    // How long a host is paused for after a 429 / 503 response without a Retry-After (milliseconds).
+    private static final long DEFAULT_BACK_OFF_MILLIS = 1000;
+    
+    // Version of the way ProductInfo objects are made from the extracted text (Size, Unit Price, ...) - Part of
+    // the extraction fingerprint, so changing it means ProductInfo objects stored by earlier versions are not used.
+    private static final int EXTRACTION_FORMAT = 1;
+    
+    private final URL url;
+    
+    // The locators, used to locate items in the webpage using Selector CSS queries, compiled once into an
+    // ExtractionPlan - See PageScraper.Builder for their steady state values.
+    private final ExtractionPlan plan;
+    
+    // Maximum number of Product Item webpages fetched and processed at the same time. A value of 1 (the
+    // default) keeps the original serial behaviour - one Product Item webpage after another.
+    private final int concurrency;
+    
+    // Staged pipeline (see ScrapePipeline) - When parseThreads is greater than 0 the Product Item webpages are
+    // fetched by concurrency threads and extracted by parseThreads threads, with at most queueCapacity fetched
+    // webpages waiting between the stages. 0 (the default) fetches and extracts each webpage on the one thread.
+    private final int parseThreads;
+    private final int queueCapacity;
+    
+    // Optional on-disk cache of the Product Item webpages - null when caching is not used.
+    private final ResponseCache responseCache;
+    
+    // Whether to try the streaming extraction (StreamingProductExtractor) before the webpage document.
+    private final boolean streamingExtraction;
+    
+    // How the webpages are fetched - Shared by all the threads of a scrape.
+    private final FetchTransport transport;
+    
+    // Retries, deadline and hedging of the requests, with the recent request latencies (for hedging) and the
+    // number of retries and hedged requests made.
+    private final RetryPolicy retryPolicy;
+    private final LatencyTracker latencies = new LatencyTracker(LATENCY_SAMPLES);
+    private final AtomicInteger retries = new AtomicInteger();
+    
+    // Incremental scrape (see IncrementalScraper) - The ProductSnapshot of the previous run, whose ProductInfo
+    // objects are used as is for unchanged webpages, and the Recorder of the content hashes for the next one.
+    // Both null otherwise.
+    private final ProductSnapshot previousSnapshot;
+    private final ProductSnapshot.Recorder snapshotRecorder;
+    
+    // Optional ContentHashStore of the ProductInfo objects extracted, by the hash of their webpage - Used as is
+    // for a webpage fetched again with the same body, skipping the parse. null when not used.
+    private final ContentHashStore contentHashStore;
+    
+    // Fingerprint of how the Product Items are extracted - See getExtractionFingerprint().
+    private final long extractionFingerprint;
+    
+    // Optional CheckpointLog of the Product Items completed - Each one output is added to it, and those already
+    // in it (from a scrape being resumed) are output from it without being fetched again. null when not used.
+    private final CheckpointLog checkpointLog;
+    
+    // Optional RequestScheduler deciding when each webpage may be requested (per-host rate and in-flight
+    // limits) - null when requests are sent as soon as they are made.
+    private final RequestScheduler requestScheduler;
+    
+    // Timings of each stage of the scrapes, counters and failures - See ScrapeMetrics.
+    private final ScrapeMetrics metrics;
+    
+    /**
+     * PageScraper Builder Class
+     * 
+     * Builds PageScraper objects. A PageScraper cannot be changed once built, so a single PageScraper can be
+     * shared by any number of threads.
+     */
+    public static class Builder {
+        private URL url;
+        
+        // Initialised private class variables - Intialised to steady state values so all in one place
+        // for ease of use. These values are used to locate items in the webpage using Selector CSS queries.
+        private String productTitleDescriptionContainerLocator = "div.productTitleDescriptionContainer";
+        private String productTitleElementTagLocator = "h1";
+        private String productPricePerUnitLocator = "p.pricePerUnit";
+        private String productTextDescriptionLocator = "div.productText";
+        private String productListLocator = "ul.productLister";
+        private String productListTag = "li";
+        private String productInfoLocator = "div.productInfo";
+        private String productInfoElementLocator = "a";
+        
+        private int concurrency = 1;
+        private int parseThreads;
+        private int queueCapacity = 64;
+        private ResponseCache responseCache;
+        private boolean streamingExtraction = true;
+        private RequestScheduler requestScheduler;
+        private FetchTransport transport;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private ProductSnapshot previousSnapshot;
+        private ProductSnapshot.Recorder snapshotRecorder;
+        private ContentHashStore contentHashStore;
+        private CheckpointLog checkpointLog;
+        private ScrapeMetrics metrics;
+        
+        Builder() {
+        }
+        
+        Builder(PageScraper pageScraper) {
+            url = pageScraper.url;
+            productTitleDescriptionContainerLocator = pageScraper.plan.getProductTitleDescriptionContainerLocator();
+            productTitleElementTagLocator = pageScraper.plan.getProductTitleElementTagLocator();
+            productPricePerUnitLocator = pageScraper.plan.getProductPricePerUnitLocator();
+            productTextDescriptionLocator = pageScraper.plan.getProductTextDescriptionLocator();
+            productListLocator = pageScraper.plan.getProductListLocator();
+            productListTag = pageScraper.plan.getProductListTag();
+            productInfoLocator = pageScraper.plan.getProductInfoLocator();
+            productInfoElementLocator = pageScraper.plan.getProductInfoElementLocator();
+            concurrency = pageScraper.concurrency;
+            parseThreads = pageScraper.parseThreads;
+            queueCapacity = pageScraper.queueCapacity;
+            responseCache = pageScraper.responseCache;
+            streamingExtraction = pageScraper.streamingExtraction;
+            requestScheduler = pageScraper.requestScheduler;
+            transport = pageScraper.transport;
+            retryPolicy = pageScraper.retryPolicy;
+            previousSnapshot = pageScraper.previousSnapshot;
+            snapshotRecorder = pageScraper.snapshotRecorder;
+            contentHashStore = pageScraper.contentHashStore;
+            checkpointLog = pageScraper.checkpointLog;
+            metrics = pageScraper.metrics;
+        }
+        
+        /**
+         * @param argUrl URL of the product listing webpage scraped by scrape().
+         */
+        public Builder url(URL argUrl) {
+            url = argUrl;
+            return this;
+        }
+        
+        /**
+         * @param argConcurrency Maximum number of Product Item webpages fetched and processed at the same time.
+         */
+        public Builder concurrency(int argConcurrency) {
+            if (argConcurrency < 1) {
+                throw new IllegalArgumentException("Concurrency must be at least 1 but was " + argConcurrency);
+            }
+            concurrency = argConcurrency;
+            return this;
+        }
+        
+        /**
+         * @param argParseThreads Threads extracting the Product Items in a staged pipeline, with the webpages
+         *                        fetched by the concurrency threads - 0 (the default) for no pipeline. For
+         *                        example the number of cores (Runtime.availableProcessors()).
+         */
+        public Builder parseThreads(int argParseThreads) {
+            if (argParseThreads < 0) {
+                throw new IllegalArgumentException("Parse threads must not be negative but was " + argParseThreads);
+            }
+            parseThreads = argParseThreads;
+            return this;
+        }
+        
+        /**
+         * @param argQueueCapacity Maximum fetched webpages waiting to be extracted in the staged pipeline.
+         */
+        public Builder queueCapacity(int argQueueCapacity) {
+            if (argQueueCapacity < 1) {
+                throw new IllegalArgumentException("Queue capacity must be at least 1 but was " + argQueueCapacity);
+            }
+            queueCapacity = argQueueCapacity;
+            return this;
+        }
+        
+        /**
+         * @param argContentHashStore ContentHashStore of the ProductInfo objects extracted - null (the default)
+         *                            to always extract the Product Items. Bound to the PageScraper's extraction
+         *                            plan when built - See ContentHashStore.
+         */
+        public Builder contentHashStore(ContentHashStore argContentHashStore) {
+            contentHashStore = argContentHashStore;
+            return this;
+        }
+        
+        /**
+         * @param argCheckpointLog CheckpointLog recording the Product Items completed, so the scrape can be resumed
+         *                         - null (the default) for none.
+         */
+        public Builder checkpointLog(CheckpointLog argCheckpointLog) {
+            checkpointLog = argCheckpointLog;
+            return this;
+        }
+        
+        public Builder responseCache(ResponseCache argResponseCache) {
+            responseCache = argResponseCache;
+            return this;
+        }
+        
+        public Builder streamingExtraction(boolean argStreamingExtraction) {
+            streamingExtraction = argStreamingExtraction;
+            return this;
+        }
+        
+        /**
+         * @param argRequestScheduler RequestScheduler shared by all the requests (listing and Product Item
+         *                            webpages) - Can also be shared with other PageScraper objects.
+         */
+        public Builder requestScheduler(RequestScheduler argRequestScheduler) {
+            requestScheduler = argRequestScheduler;
+            return this;
+        }
+        
+        /**
+         * @param argTransport FetchTransport used for all the webpages - null for the default, the shared
+         *                     OkHttpFetchTransport (or the JsoupFetchTransport if OkHttp is not available).
+         */
+        public Builder transport(FetchTransport argTransport) {
+            transport = argTransport;
+            return this;
+        }
+        
+        /**
+         * @param argRetryPolicy Retries, deadline and hedging of the requests (default RetryPolicy.DEFAULT).
+         */
+        public Builder retryPolicy(RetryPolicy argRetryPolicy) {
+            retryPolicy = argRetryPolicy;
+            return this;
+        }
+        
+        /**
+         * @param argMetrics ScrapeMetrics recording the scrapes - null for a new ScrapeMetrics. Can be shared
+         *                   with other PageScraper objects to add their scrapes together.
+         */
+        public Builder metrics(ScrapeMetrics argMetrics) {
+            metrics = argMetrics;
+            return this;
+        }
+        
+        /**
+         * @param argPreviousSnapshot The ProductSnapshot of the previous run - null to not scrape incrementally.
+         * @param argSnapshotRecorder Records the content hashes of the webpages for the next ProductSnapshot.
+         */
+        Builder incremental(ProductSnapshot argPreviousSnapshot, ProductSnapshot.Recorder argSnapshotRecorder) {
+            previousSnapshot = argPreviousSnapshot;
+            snapshotRecorder = argPreviousSnapshot != null ? argSnapshotRecorder : null;
+            return this;
+        }
+        
+        public Builder productTitleDescriptionContainerLocator(String ptdcl) {
+            productTitleDescriptionContainerLocator = ptdcl;
+            return this;
+        }
+        
+        public Builder productTitleElementTagLocator(String ptl) {
+            productTitleElementTagLocator = ptl;
+            return this;
+        }
+        
+        public Builder productPricePerUnitLocator(String pppul) {
+            productPricePerUnitLocator = pppul;
+            return this;
+        }
+        
+        public Builder productTextDescriptionLocator(String ptdl) {
+            productTextDescriptionLocator = ptdl;
+            return this;
+        }
+        
+        public Builder productListLocator(String pll) {
+            productListLocator = pll;
+            return this;
+        }
+        
+        public Builder productListTag(String plt) {
+            productListTag = plt;
+            return this;
+        }
+        
+        public Builder productInfoLocator(String pil) {
+            productInfoLocator = pil;
+            return this;
+        }
+        
+        public Builder productInfoElementLocator(String piel) {
+            productInfoElementLocator = piel;
+            return this;
+        }
+        
+        /**
+         * Builds the PageScraper, compiling the locators.
+         * 
+         * @throws org.jsoup.select.Selector.SelectorParseException If a locator is not a valid Selector CSS query.
+         */
+        public PageScraper build() {
+            return new PageScraper(this);
+        }
+    }
+    
+    /**
+     * @return A Builder with the steady state values.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * @return A Builder with the values of this PageScraper - For building a PageScraper that differs slightly.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+    
+    // Class constructor - initialised with URL object specifying the webpage to be processed, with the
+    // steady state values for everything else.
     public PageScraper(URL argUrl) {
-        url = argUrl;
+        this(builder().url(argUrl));
+    }
+    
+    private PageScraper(Builder builder) {
+        url = builder.url;
+        plan = new ExtractionPlan(builder.productTitleDescriptionContainerLocator, builder.productTitleElementTagLocator,
+            builder.productPricePerUnitLocator, builder.productTextDescriptionLocator,
+            builder.productListLocator, builder.productListTag,
+            builder.productInfoLocator, builder.productInfoElementLocator);
+        concurrency = builder.concurrency;
+        parseThreads = builder.parseThreads;
+        queueCapacity = builder.queueCapacity;
+        responseCache = builder.responseCache;
+        streamingExtraction = builder.streamingExtraction;
+        requestScheduler = builder.requestScheduler;
+        transport = builder.transport != null ? builder.transport : defaultTransport();
+        retryPolicy = builder.retryPolicy;
+        previousSnapshot = builder.previousSnapshot;
+        snapshotRecorder = builder.snapshotRecorder;
+        contentHashStore = builder.contentHashStore;
+        checkpointLog = builder.checkpointLog;
+        
+        extractionFingerprint = ContentHashStore.hash((EXTRACTION_FORMAT + "\n" + builder.productTitleDescriptionContainerLocator
+            + "\n" + builder.productTitleElementTagLocator + "\n" + builder.productPricePerUnitLocator + "\n"
+            + builder.productTextDescriptionLocator + "\n" + streamingExtraction).getBytes(StandardCharsets.UTF_8));
+        if (contentHashStore != null) {
+            // Throws IllegalArgumentException if the store holds Product Items extracted in a different way.
+            contentHashStore.bindPlan(extractionFingerprint);
+        }
+        metrics = builder.metrics != null ? builder.metrics : new ScrapeMetrics();
+    }
+    
+    /**
+     * @return The shared OkHttpFetchTransport, or a JsoupFetchTransport if OkHttp is not on the classpath.
+     */
+    private static FetchTransport defaultTransport() {
+        try {
+            return OkHttpFetchTransport.shared();
+        } catch (LinkageError le) {
+            Logger.getLogger(PageScraper.class.getName()).log(Level.WARNING, "OkHttp not available - Using jsoup to fetch webpages", le);
+            return new JsoupFetchTransport();
+        }
     }
     
     /**
@@ -58,108 +416,341 @@ public class PageScraper {
      *     Obtains the Description of the Product Item.
      * 
      * @param argUrl A String object holding a page address of the product item.
-     * @return ProductInfo object with data, or null if something went wrong.
+     * @return ProductInfo object with data, or null if something went wrong. An "empty" ProductInfo object
+     *         (Unit Price "0.00") if the webpage could not be fetched.
      */
     public ProductInfo createProductInfo(String argUrl) {
+        try {
+            return fetchProductInfo(argUrl);
+        } catch (IOException ioe) {
+        	// Log IOException exception.
+        	// But return an "empty" ProductInfo object, as this method always has.
+            Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, null, ioe);
+            metrics.failure(ioe);
+            return new ProductInfo("", new BigDecimal("0.0").setScale(1, RoundingMode.UP).toString()+"kb", Price.ZERO, "");
+        }
+    } // createProductInfo() method
+    
+    /**
+     * As createProductInfo(), but a webpage that cannot be fetched (after any retries) is reported to the
+     * caller rather than turned into an "empty" ProductInfo object - So that it is not counted in the Price Total.
+     * 
+     * @param argUrl A String object holding a page address of the product item.
+     * @return ProductInfo object with data, or null if the webpage does not describe a Product Item.
+     * @throws IOException If the webpage could not be fetched.
+     */
+    ProductInfo fetchProductInfo(String argUrl) throws IOException {
+        ProductInfo checkpointed = checkpointedProductInfo(argUrl);
+        if (checkpointed != null) {
+            return checkpointed;
+        }
+        
+        FetchedPage page = fetchProductPage(argUrl);
+        ProductInfo unchanged = unchangedProductInfo(argUrl, page);
+        
+        return unchanged != null ? unchanged : extractProductInfo(argUrl, page);
+    } // fetchProductInfo() method
+    
+    /**
+     * @return The ProductInfo object of a Product Item already completed by the scrape being resumed (see
+     *         CheckpointLog) - No need to fetch it again. Otherwise null.
+     */
+    ProductInfo checkpointedProductInfo(String argUrl) {
+        return checkpointLog != null ? checkpointLog.completed(argUrl) : null;
+    } // checkpointedProductInfo() method
+    
+    /**
+     * Fetches a Product Item webpage, recording the time taken - The I/O-bound half of fetchProductInfo().
+     * 
+     * @throws IOException If the webpage could not be fetched.
+     */
+    FetchedPage fetchProductPage(String argUrl) throws IOException {
+        long stageStart = System.nanoTime();
+        
+        try {
+            return fetchPage(argUrl);
+        } finally {
+            metrics.record(ScrapeMetrics.Stage.FETCH, stageStart);
+        }
+    } // fetchProductPage() method
+    
+    /**
+     * @return The ProductInfo object already extracted from the same webpage body - For an incremental scrape,
+     *         that of the previous run, otherwise that in the ContentHashStore (if any) - No need to extract the
+     *         Product Item again. Otherwise null.
+     */
+    ProductInfo unchangedProductInfo(String argUrl, FetchedPage page) {
+        ProductInfo unchanged = null;
+        
+        if (previousSnapshot != null) {
+            String contentHash = ProductSnapshot.contentHash(page);
+            snapshotRecorder.record(argUrl, contentHash);
+            unchanged = previousSnapshot.unchanged(argUrl, contentHash, extractionFingerprint);
+        }
+        
+        if (unchanged == null && contentHashStore != null) {
+            unchanged = contentHashStore.unchanged(argUrl, page.getContentHash());
+        }
+        
+        if (unchanged != null) {
+            metrics.parseSkipped();
+        }
+        return unchanged;
+    } // unchangedProductInfo() method
+    
+    /**
+     * Extracts the Product Item from its fetched webpage - The CPU-bound half of fetchProductInfo().
+     * 
+     * @param argUrl A String object holding the page address of the product item.
+     * @param page The fetched webpage.
+     * @return ProductInfo object with data, or null if the webpage does not describe a Product Item.
+     */
+    ProductInfo extractProductInfo(String argUrl, FetchedPage page) {
         String title = "";
 
         // Page Size (size) specified as BigDecimal to ensure decimal place precision. One decimal
         // place with rounding up. If float is used, decimal place control is not possible / easy. 
-        BigDecimal size = new BigDecimal("0.0").setScale(1, BigDecimal.ROUND_UP);
+        BigDecimal size = new BigDecimal("0.0").setScale(1, RoundingMode.UP);
 
-        // Unit Price (unitPrice) specified as string (String object) to ensure display of decimal
-        // place precision is possible as in two decimal places for GBP currency. If float is used, decimal
-        // place control is not possible / easy.
-        // Subsequent totals calculation can be done using java.math.BigDecimal on the Unit Price (unitPrice)
-        // String objects - Important that initialised to "0.00" so that the subsequent totals
-        // calculation is safe. 
-        String unitPrice = "0.00";
+        // Unit Price (unitPrice) specified in pence (see Price) so that it is exact, is always output with two
+        // decimal places for GBP currency and can be totalled without creating any objects. If float is used,
+        // decimal place control is not possible / easy. Initialised to 0 (i.e. "0.00") for when the webpage
+        // has no valid Unit Price.
+        long unitPrice = 0;
         String description = "";
+        long stageStart;
         
         try {
-        	// Obtain the webpage document from the connection to the specified url.
-            Document doc = Jsoup.connect(argUrl).get();
+            // Unit Price text of the Product Item - Still to be converted to a Unit Price (unitPrice).
+            String unitPriceTxtWs;
             
-            // Query (Selector CSS queries) the webpage document looking for the Title
-            // Container using the contents of the productTitleDescriptionContainerLocator
-            // class variable (String object).
-            Element el = doc.select(productTitleDescriptionContainerLocator).first();
-
-            if (el == null) {
-            	// No Element object found on the webpage Document for the Title Container.
-                return null;
-            } else {
-                // There is a Title Container - Get the Title Element using the contents of the
-                // productTitleElementTagLocator class variable (String object)
-                Element titleElement = el.getElementsByTag(productTitleElementTagLocator).first();
-                
-                // Get the Title Text.
-                title = titleElement.text();
-                
-                // Get the size of the webpage in kilobytes (kb).
-                // Method used, is to convert the Document object (doc) to a String object and then
-                // use the String objects's length() method to give its size in bytes. Dividing by
-                // 1024 will give the kb value. Use of BigDecimal ensures decimal place precision
-                // (one decimal place).
-                // NOTE: Assuming webpage will never be bigger than available memory or this could be
-                // a problem.
-                size = new BigDecimal(doc.toString().length() / 1024).setScale(1, BigDecimal.ROUND_UP);
+            // Try the streaming extraction first - It stops reading the webpage as soon as the Title, Unit
+            // Price and Description have been found, without building a document. It gives up (null) when the
+            // locators or the webpage cannot be handled that way, and the webpage document is used instead.
+            StreamingProductExtractor.Fields fields = null;
+            stageStart = System.nanoTime();
+            
+            if (streamingExtraction && plan.getStreamingExtractor() != null) {
+                fields = plan.getStreamingExtractor().extract(page);
             }
             
-            // Query (Selector CSS queries) the webpage document to get the Unit Price Element of the
-            // Product Item webpage for the contents of the productPricePerUnitLocator class variable
-            // (String object).
-            el = doc.select(productPricePerUnitLocator).first();
-
-            if (el == null) {
-            	// No Element object found on the webpage Document for the Unit Price.
-                return null;
+            if (fields != null) {
+                title = fields.getTitle();
+                size = sizeInKb(page.getSizeInBytes());
+                unitPriceTxtWs = fields.getUnitPriceText();
+                description = fields.getDescription();
             } else {
-                // There is a Unit Price - Get the Unit Price (unitPrice) from the element
-            	// and place it in Working Storage for further manipulation.
-                String unitPriceTxtWs = el.text();
+                // Parse the webpage into a document.
+                stageStart = System.nanoTime();
+                Document doc = Jsoup.parse(new ByteArrayInputStream(page.getBody()), page.getCharset(), argUrl);
+                metrics.record(ScrapeMetrics.Stage.PARSE, stageStart);
+                stageStart = System.nanoTime();
                 
-                // Remove the "/unit" text from the Unit Price Text Working Storage.
-                unitPriceTxtWs = unitPriceTxtWs.replace("/unit", "");
+                // Query (Selector CSS queries) the webpage document looking for the Title
+                // Container using the compiled productTitleDescriptionContainerLocator.
+                Element el = plan.findTitleContainer(doc);
+    
+                if (el == null) {
+                	// No Element object found on the webpage Document for the Title Container.
+                    return null;
+                } else {
+                    // There is a Title Container - Get the Title Element using the
+                    // productTitleElementTagLocator.
+                    Element titleElement = plan.findTitle(el);
+                    
+                    // Get the Title Text.
+                    title = titleElement.text();
+                    
+                    // Get the size of the webpage in kilobytes (kb).
+                    // Method used, is to take the size in bytes of the response body as received (see
+                    // FetchedPage.getSizeInBytes()) - No need to convert the Document object (doc) back to a
+                    // String object. Dividing by 1024 will give the kb value. Use of BigDecimal ensures decimal
+                    // place precision (one decimal place, rounding up).
+                    size = sizeInKb(page.getSizeInBytes());
+                }
                 
-                // Remove the "£" text from the Unit Price Text Working Storage.
-                unitPriceTxtWs = unitPriceTxtWs.replace("£", "");
-
-                // Now have actual numeric value for Unit Price (unitPrice) in a string form.
-                // Using string (String object) to ensure display of decimal place precision
-                // is possible as in two decimal places for GBP currency.
-                // If float is used, decimal place control is not possible / easy.
-                if (unitPriceTxtWs != null && !unitPriceTxtWs.isEmpty() && unitPriceTxtWs.matches("^(-?0[.]\\d+)$|^(-?[0-9]+\\d*([.]\\d+)?)$|^0$")) {
-                	unitPrice = unitPriceTxtWs;
+                // Query (Selector CSS queries) the webpage document to get the Unit Price Element of the
+                // Product Item webpage using the compiled productPricePerUnitLocator.
+                el = plan.findPricePerUnit(doc);
+    
+                if (el == null) {
+                	// No Element object found on the webpage Document for the Unit Price.
+                    return null;
+                } else {
+                    // There is a Unit Price - Get the Unit Price text from the element and place it in
+                	// Working Storage for further manipulation.
+                    unitPriceTxtWs = el.text();
+                }
+                            
+                // Query (Selector CSS queries) the webpage document to get the Description Element of the
+                // Product Item webpage using the compiled productTextDescriptionLocator.
+                el = plan.findTextDescription(doc);
+                
+                if (el == null) {
+                	// No Element object found on the webpage Document for the Description.
+                    return null;
+                } else {
+                    // There is a Description - Get the Description (description) from the element.
+                    description = el.text();
                 }
             }
-                        
-            // Query (Selector CSS queries) the webpage document to get the Description Element of the
-            // Product Item webpage for the contents of the productTextDescriptionLocator class variable
-            // (String object).
-            el = doc.select(productTextDescriptionLocator).first();
             
-            if (el == null) {
-            	// No Element object found on the webpage Document for the Description.
-                return null;
-            } else {
-                // There is a Description - Get the Description (description) from the element.
-                description = el.text();
+            metrics.record(ScrapeMetrics.Stage.EXTRACT, stageStart);
+            
+            // Convert the Unit Price text (e.g. "£3.50/unit") to the Unit Price (unitPrice) in pence - Left at 0
+            // if the text is not a price.
+            stageStart = System.nanoTime();
+            long pence = Price.parsePence(unitPriceTxtWs);
+            if (pence != Price.INVALID) {
+                unitPrice = pence;
             }
+            metrics.record(ScrapeMetrics.Stage.PRICE, stageStart);
         } catch (Exception ex) {
         	// Log Exception exception.
         	// But continue processing since the method will return an "empty" ProductInfo
         	// object - See below.
             Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, null, ex);
+            metrics.failure(ex);
         }
         
         // Instantiate and return a ProductInfo object.
         // Note: The page size (size) value (argument) is converted from java.math.BigDecimal to a string
         //       (String object) and appended with the "kb" units string. This is safe since the size
         //       (java.math.BigDecimal) value has previously been initialised with 0.0.
-        return new ProductInfo(title, size.toString()+"kb", unitPrice, description);
+        ProductInfo productInfo = new ProductInfo(title, size.toString()+"kb", Price.ofPence(unitPrice), description);
+        
+        if (contentHashStore != null) {
+            // So the webpage need not be parsed again while its body stays the same.
+            contentHashStore.put(argUrl, page.getContentHash(), productInfo);
+        }
+        return productInfo;
+        
+    } // extractProductInfo() method
+    
+    /**
+     * Converts a webpage size in bytes to kilobytes (kb) - One decimal place, rounding up.
+     * 
+     * @param bytes Size in bytes.
+     * @return Size in kb.
+     */
+    static BigDecimal sizeInKb(long bytes) {
+        return BigDecimal.valueOf(bytes).divide(KILOBYTE, 1, RoundingMode.UP);
+    } // sizeInKb() method
+    
+    /**
+     * Fetches a Product Item webpage.
+     * 
+     * Fetched with the FetchTransport. Without a ResponseCache this is a plain GET. With a ResponseCache, a fresh cached response is used as is,
+     * a stale one is revalidated with a conditional GET (If-None-Match / If-Modified-Since) and only fetched in
+     * full again if the server says it has changed. Full responses are stored in the ResponseCache.
+     * 
+     * @param argUrl A String object holding a page address of the product item.
+     * @return FetchedPage holding the webpage response.
+     * @throws IOException If the webpage cannot be fetched (e.g. HttpStatusException for an error status).
+     */
+    FetchedPage fetchPage(String argUrl) throws IOException {
+        ResponseCache.Entry entry = null;
+        Map<String, String> requestHeaders = new HashMap<String, String>();
+        
+        if (responseCache != null) {
+            entry = responseCache.lookup(argUrl);
+            
+            if (entry != null && responseCache.isFresh(entry)) {
+                // Still within its time to live - No need to contact the server.
+                return entry.getPage();
+            }
+            
+            if (entry != null) {
+                // Ask the server to only send the webpage if it has changed.
+                if (entry.getPage().getEtag() != null) {
+                    requestHeaders.put("If-None-Match", entry.getPage().getEtag());
+                }
+                if (entry.getPage().getLastModified() != null) {
+                    requestHeaders.put("If-Modified-Since", entry.getPage().getLastModified());
+                }
+            }
+        }
+        
+        FetchResponse res = execute(argUrl, requestHeaders);
+        
+        if (res.getStatusCode() == 304 && entry != null) {
+            // Not Modified - The cached webpage is still good.
+            return responseCache.revalidated(entry).getPage();
+        }
+        
+        FetchedPage page = new FetchedPage(argUrl, res.getBody(), res.getCharset(), res.header("ETag"), res.header("Last-Modified"), res.getContentLength());
+        
+        if (responseCache != null) {
+            responseCache.store(page);
+        }
+        
+        return page;
+    } // fetchPage() method
+    
+    /**
+     * Sends a request with the FetchTransport, retried and hedged as set out by the RetryPolicy.
+     * 
+     * A 429 Too Many Requests or 503 Service Unavailable response pauses the host in the RequestScheduler, for
+     * the response's Retry-After (in seconds) if given, otherwise for DEFAULT_BACK_OFF_MILLIS.
+     * 
+     * @return The response - Its body already read.
+     * @throws IOException If the request fails - HttpStatusException for an error status and
+     *                     UnsupportedMimeTypeException for a response that is not text / XML, as with jsoup.
+     */
+    private FetchResponse execute(String argUrl, Map<String, String> requestHeaders) throws IOException {
+        // Make the attempts allowed by the RetryPolicy - Each one waits for the RequestScheduler (if any).
+        FetchResponse res = retryPolicy.execute(argUrl, sending -> executeOnce(argUrl, requestHeaders, sending), latencies, retries);
+        
+        if (res.getStatusCode() >= 400) {
+            throw new HttpStatusException("HTTP error fetching URL", res.getStatusCode(), argUrl);
+        }
+        
+        String mimeType = res.getMimeType();
+        
+        if (mimeType != null && !mimeType.startsWith("text/") && !mimeType.matches("(application|text)/\\w*\\+?xml")) {
+            throw new UnsupportedMimeTypeException("Unhandled content type. Must be text/*, application/xml, or application/xhtml+xml", mimeType, argUrl);
+        }
+        
+        return res;
+    } // execute() method
+    
+    /**
+     * Sends a request once with the FetchTransport, first waiting for the RequestScheduler (if any) to allow it.
+     * 
+     * @param sending Run as the request is sent, once the RequestScheduler has allowed it - See RetryPolicy.
+     * @return The response, whatever its status.
+     */
+    private FetchResponse executeOnce(String argUrl, Map<String, String> requestHeaders, Runnable sending) throws IOException {
+        if (requestScheduler == null) {
+            sending.run();
+            FetchResponse res = transport.fetch(argUrl, requestHeaders);
+            metrics.fetched(res.getReceivedBytes(), res.getBody().length);
+            return res;
+        }
         
-    } // getProductInfo() method
+        RequestScheduler.Permit permit;
+        try {
+            permit = requestScheduler.acquire(argUrl);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to request " + argUrl);
+        }
+        
+        // The response body is read by fetch(), so the Permit covers the whole request.
+        try {
+            sending.run();
+            FetchResponse res = transport.fetch(argUrl, requestHeaders);
+            metrics.fetched(res.getReceivedBytes(), res.getBody().length);
+            
+            if (res.getStatusCode() == 429 || res.getStatusCode() == 503) {
+                requestScheduler.backOff(argUrl, RetryPolicy.retryAfterMillis(res, DEFAULT_BACK_OFF_MILLIS));
+            }
+            return res;
+        } finally {
+            permit.close();
+        }
+    } // executeOnce() method
+    
         
     /**
      * Scrapes the webpage and produces the JSON output for the Product Items.
@@ -167,114 +758,322 @@ public class PageScraper {
      * @return String of JSON.
      */   
     public String scrape() {
-        JSONObject json = new JSONObject();
-        JSONArray results = new JSONArray();
-
-        // Price Total (priceTotal) specified as BigDecimal to ensure decimal place precision. Two decimal
-        // places with rounding down - Hope that's okay for profits ;-). If float is used, decimal place
-        // control is not possible / easy. 
-        BigDecimal priceTotal = new BigDecimal("0.00").setScale(2, BigDecimal.ROUND_DOWN); // total unit price.
-        
-        // Get the connection to the webpage using the URL.
-        Connection con = Jsoup.connect(url.toString());
+        return scrape(url);
+    } // scrape() method
+    
+    /**
+     * Scrapes the given webpage and produces the JSON output for the Product Items.
+     * 
+     * @param listingUrl URL of the product listing webpage - For sharing one PageScraper between webpages.
+     * @return String of JSON.
+     */   
+    public String scrape(URL listingUrl) {
+        JsonTreeResultWriter writer = new JsonTreeResultWriter();
         
-        if (con == null) {
-            // If connection not possible, no need to continue. Return an empty JSON document.
-            return "{}";
+        try {
+            scrape(listingUrl, writer);
+        } catch (IOException ioe) {
+            // Not possible - The JsonTreeResultWriter only writes to memory.
+            Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Writing JSON with IOException", ioe);
         }
-
+        
+        // Add the total and results to the json (JSONObject).
+        // The "total" contains the Total Price for all the product Items.
+        // The "results" contain the list of all the items comprising, Product Title, Product Description,
+        // Product Unit Price and the Page Size (kb) for the Product Item's page.
+        // NOTE: The Price Total (priceTotal) is converted to a string (String object) because this ensures
+        //       that the decimal places are preserved (two decimals). If the Price Total (priceTotal) is added
+        //       to the JSON as a BigDecimal, and the 2nd decimal place is zero, the zero is chopped, leaving
+        //       one decimal place which is not acceptable for GBP currency.
+        //       I believe there maybe some parser functionality in Jackson JSON Java libraries to get round this
+        //       issue but had problem creating MAVEN dependency for this library and had to use this workaround
+        //       instead. Means that the "total" value in the JSON is wrapped in quotes i.e. "total": "15.10"
+        //       where answer in example would probably show "total": 15.10
+        //       The same also applies for the individual Unit Price ("unit_price") values for each of the product
+        //       Items.  
+        return writer.toString();
+    } // scrape(URL) method
+    
+    /**
+     * Scrapes the webpage, passing each Product Item to the given ScrapeResultWriter as soon as it has been
+     * processed and the Price Total once all the Product Items are done. Nothing is accumulated in memory
+     * other than the Price Total, so the writer decides what is kept.
+     * 
+     * @param writer The ScrapeResultWriter receiving the output.
+     * @throws IOException If the writer fails - Problems with the webpage are logged instead.
+     */
+    public void scrape(ScrapeResultWriter writer) throws IOException {
+        scrape(url, writer);
+    } // scrape(ScrapeResultWriter) method
+    
+    /**
+     * Scrapes the given webpage, passing each Product Item to the given ScrapeResultWriter - See
+     * scrape(ScrapeResultWriter).
+     * 
+     * @param listingUrl URL of the product listing webpage - For sharing one PageScraper between webpages.
+     * @param writer The ScrapeResultWriter receiving the output.
+     * @throws IOException If the writer fails - Problems with the webpage are logged instead.
+     */
+    public void scrape(URL listingUrl, ScrapeResultWriter writer) throws IOException {
+        // URLs of the specific Product Items in listing order.
+        List<String> prodInfoUrls = new ArrayList<String>();
+        
         try {
-            // Query (Selector CSS queries) the webpage document looking for the Product
-        	// Item List using the contents of the productListLocator class variable
-            // (String object).
-            Element el = con.get().select(productListLocator).first();
+            // Query (Selector CSS queries) the webpage document looking for the Product Item List and
+            // collect the URLs of the specific Product Items.
+            List<String> listedUrls = findProductUrls(fetchListing(listingUrl.toString()));
             
-            if (el == null) {
-                // There is no List of Products, no need to continue. Return an empty JSON document. 
-                return "{}";
+            if (listedUrls == null) {
+                // There is no List of Products, no need to continue. Output an empty JSON document. 
+                writer.empty();
+                return;
             }
             
-            // Get the available Elements from the webpage for the Product Items identified in the List.
-            Elements els = el.getElementsByTag(productListTag);
-
-            // Loop round for each of the Product Item Elements in the List.
-            for (Element element: els) {
-                // Query (Selector CSS queries) the Element to get the Product Info Element using the
-            	// contents of the productInfoLocator class variable (String object).            	
-                Element prodInfoEl = element.select(productInfoLocator).first();
-
-                // Get the Link Element for the Product Item from the Product Info Element.
-                Element linkEl = prodInfoEl.getElementsByTag(productInfoElementLocator).first();
-                
-                // System.out.println(linkel.attr("abs:href")); // if we need absolute URL
-                // Get the URL for the specific Product Item.
-                String prodInfoUrl = linkEl.attr("href");
-                
-                // Create an instance of the ProductInfo class using the URL for the specific Product Item.
-                ProductInfo productInfo = createProductInfo(prodInfoUrl);
-                
-                // Add JSON representation of the ProductInfo object to the results array (JSONArray).
-                results.put(productInfo.toJSON());
-                
-                // Accumulate the Price Total (priceTotal) using the Product Item's Unit Price from the current
-                // ProductInfo class object.
-                // The Unit Price (unitPrice) on the ProductInfo class is stored as a string (String object) for reasons
-                // previously explained (decimal place precision). Consequently, a java.math.BigDecimal is created using the
-                // the unitPrice String object to accumulate the Price Total (priceTotal) value.
-                // Note: This is safe because the Unit Price (unitPrice) on the ProductInfo class is always initialised as
-                // "0.00" - So an invalid number or null pointer will not be possible.
-                priceTotal = priceTotal.add(new BigDecimal(productInfo.getUnitPrice()).setScale(2, BigDecimal.ROUND_DOWN));
-            }
+            prodInfoUrls.addAll(listedUrls);
         } catch (HttpStatusException hse) {
         	// Log HttpStatusException exception.
-        	// But continue processing since the method will return what we have in the form of a JSON string (String object)
-        	// object - See below.
+        	// But continue processing since the method will output what we have in the form of JSON - See below.
             Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Processing Main Page with HttpStatusException", hse);
         }
           catch (MalformedURLException mue) {
           	// Log MalformedURLException exception.
-          	// But continue processing since the method will return what we have in the form of a JSON string (String object)
-          	// object - See below.
+          	// But continue processing since the method will output what we have in the form of JSON - See below.
             Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Processing Main Page with MalformedURLException", mue);
         }
           catch (UnsupportedMimeTypeException umte) {
             // Log UnsupportedMimeTypeException exception.
-          	// But continue processing since the method will return what we have in the form of a JSON string (String object)
-          	// object - See below.
+          	// But continue processing since the method will output what we have in the form of JSON - See below.
             Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Processing Main Page with UnsupportedMimeTypeException", umte);
         }
           catch (SocketTimeoutException ste) {
         	// Log SocketTimeoutException exception.
-          	// But continue processing since the method will return what we have in the form of a JSON string (String object)
-          	// object - See below.
+          	// But continue processing since the method will output what we have in the form of JSON - See below.
             Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Processing Main Page with SocketTimeoutException", ste);
         }
           catch (IOException ioe) {
           	// Log IOException exception.
-          	// But continue processing since the method will return what we have in the form of a JSON string (String object)
-          	// object - See below.
+          	// But continue processing since the method will output what we have in the form of JSON - See below.
             Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Processing Main Page with IOException", ioe);
         }
         
-        // Add the total and results to the json (JSONObject).
-        // The "total" contains the Total Price for all the product Items.
-        // The "results" contain the list of all the items comprising, Product Title, Product Description,
-        // Product Unit Price and the Page Size (kb) for the Product Item's page.
-        // NOTE: The Price Total (priceTotal) is converted to a string (String object) because this ensures
-        //       that the decimal places are preserved (two decimals). If the Price Total (priceTotal) is added
-        //       to the JSON as a BigDecimal, and the 2nd decimal place is zero, the zero is chopped, leaving
-        //       one decimal place which is not acceptable for GBP currency.
-        //       I believe there maybe some parser functionality in Jackson JSON Java libraries to get round this
-        //       issue but had problem creating MAVEN dependency for this library and had to use this workaround
-        //       instead. Means that the "total" value in the JSON is wrapped in quotes i.e. "total": "15.10"
-        //       where answer in example would probably show "total": 15.10
-        //       The same also applies for the individual Unit Price ("unit_price") values for each of the product
-        //       Items.  
-        json.put("total", priceTotal.toString());
-        json.put("results", results);
+        writer.begin();
         
-        return json.toString(4);
-    } // scrape() method
+        // Create the instances of the ProductInfo class using the URLs for the specific Product Items, passing
+        // each one to the writer and accumulating the Price Total (in pence) as they complete. The Price Total
+        // is only converted to a BigDecimal (two decimal places) for the writer at the end.
+        writer.end(BigDecimal.valueOf(writeProductInfos(prodInfoUrls, writer), 2));
+    } // scrape(URL, ScrapeResultWriter) method
+    
+    /**
+     * Fetches a product listing webpage.
+     * 
+     * @param listingUrl A String object holding the page address of the product listing.
+     * @return The webpage document.
+     * @throws IOException If the webpage cannot be fetched.
+     */
+    Document fetchListing(String listingUrl) throws IOException {
+        long stageStart = System.nanoTime();
+        FetchResponse res;
+        
+        try {
+            res = execute(listingUrl, Collections.<String, String>emptyMap());
+        } catch (IOException ioe) {
+            metrics.failure(ioe);
+            throw ioe;
+        } finally {
+            metrics.record(ScrapeMetrics.Stage.LISTING_FETCH, stageStart);
+        }
+        
+        stageStart = System.nanoTime();
+        Document doc = Jsoup.parse(new ByteArrayInputStream(res.getBody()), res.getCharset(), listingUrl);
+        metrics.record(ScrapeMetrics.Stage.LISTING_PARSE, stageStart);
+        
+        return doc;
+    } // fetchListing() method
+    
+    /**
+     * Finds the URLs of the Product Items listed on a product listing webpage.
+     * 
+     * Relative links are resolved against the webpage's URL (absolute links are unchanged).
+     * 
+     * @param doc The product listing webpage document.
+     * @return List of String objects holding the page addresses of the product items in listing order, or null
+     *         if the webpage has no Product List.
+     */
+    List<String> findProductUrls(Document doc) {
+        // Query (Selector CSS queries) the webpage document looking for the Product
+        // Item List using the compiled productListLocator.
+        Element el = plan.findProductList(doc);
+        
+        if (el == null) {
+            return null;
+        }
+        
+        List<String> prodInfoUrls = new ArrayList<String>();
+        
+        // Get the available Elements from the webpage for the Product Items identified in the List.
+        Elements els = plan.findProductItems(el);
+
+        // Loop round for each of the Product Item Elements in the List, collecting the URLs of the
+        // specific Product Items.
+        for (Element element: els) {
+            // Query (Selector CSS queries) the Element to get the Product Info Element using the
+            // compiled productInfoLocator.
+            Element prodInfoEl = plan.findProductInfo(element);
+
+            // Get the Link Element for the Product Item from the Product Info Element.
+            Element linkEl = plan.findProductLink(prodInfoEl);
+            
+            // Get the URL for the specific Product Item.
+            String absUrl = linkEl.absUrl("href");
+            prodInfoUrls.add(absUrl.isEmpty() ? linkEl.attr("href") : absUrl);
+        }
+        
+        return prodInfoUrls;
+    } // findProductUrls() method
+    
+    /**
+     * Creates the ProductInfo objects for the given Product Item URLs, passing each one to the writer in the
+     * same order as the URLs - Or, for a writer that is not ordered, as each one completes.
+     * 
+     * A Product Item whose webpage cannot be fetched (after the retries allowed by the RetryPolicy) is passed to
+     * the writer's failed() method instead, and is not included in the Price Total.
+     * 
+     * When the parseThreads class variable is greater than 0, the Product Items go through a staged pipeline
+     * (see ScrapePipeline) - Fetched by concurrency threads and extracted by parseThreads threads. Otherwise, when
+     * the concurrency class variable is greater than 1, the Product Item webpages are fetched and
+     * processed in parallel using a fixed size thread pool of (at most) that many threads. Otherwise the
+     * webpages are processed one after another on the calling thread.
+     * 
+     * @param prodInfoUrls List of String objects holding the page addresses of the product items.
+     * @param writer The ScrapeResultWriter receiving the ProductInfo objects.
+     * @return The Price Total of the ProductInfo objects written, in pence.
+     * @throws IOException If the writer fails.
+     */
+    long writeProductInfos(List<String> prodInfoUrls, ScrapeResultWriter writer) throws IOException {
+        // Price Total (priceTotal) held in pence - Exact, and adding up a long creates no objects per Product
+        // Item. If float is used, decimal place control is not possible / easy.
+        long priceTotal = 0;
+        
+        if (parseThreads > 0 && prodInfoUrls.size() > 1) {
+            return new ScrapePipeline(this, concurrency, parseThreads, queueCapacity).run(prodInfoUrls, writer);
+        }
+        
+        if (concurrency <= 1 || prodInfoUrls.size() <= 1) {
+            // Serial processing - No need for any threads.
+            for (String prodInfoUrl: prodInfoUrls) {
+                ProductInfo productInfo;
+                
+                try {
+                    productInfo = fetchProductInfo(prodInfoUrl);
+                } catch (IOException ioe) {
+                    writeFailure(prodInfoUrl, ioe, writer);
+                    continue;
+                }
+                priceTotal += writeProductInfo(prodInfoUrl, productInfo, writer);
+            }
+            return priceTotal;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, prodInfoUrls.size()));
+        
+        // A writer that is not ordered is given each Product Item as it completes.
+        CompletionService<ProductInfo> completed = writer.isOrdered() ? null : new ExecutorCompletionService<ProductInfo>(executor);
+        
+        try {
+            // Submit all the Product Items up front - The thread pool size limits how many are in progress.
+            List<Future<ProductInfo>> futures = new ArrayList<Future<ProductInfo>>(prodInfoUrls.size());
+            Map<Future<ProductInfo>, Integer> positions = new HashMap<Future<ProductInfo>, Integer>();
+            
+            for (final String prodInfoUrl: prodInfoUrls) {
+                if (completed == null) {
+                    futures.add(executor.submit(() -> fetchProductInfo(prodInfoUrl)));
+                } else {
+                    positions.put(completed.submit(() -> fetchProductInfo(prodInfoUrl)), futures.size());
+                    futures.add(null);
+                }
+            }
+            
+            // Write the results in submission (listing) order, waiting for each one as required - Or in the order
+            // they complete. Each Future is released once written so that written Product Items can be garbage
+            // collected.
+            for (int n = 0; n < futures.size(); n++) {
+                Future<ProductInfo> future;
+                int i;
+                
+                if (completed == null) {
+                    i = n;
+                    future = futures.get(i);
+                } else {
+                    future = completed.take();
+                    i = positions.remove(future);
+                }
+                
+                ProductInfo productInfo;
+                
+                try {
+                    productInfo = future.get();
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof IOException) {
+                        // The webpage could not be fetched.
+                        writeFailure(prodInfoUrls.get(i), (IOException) ee.getCause(), writer);
+                        futures.set(i, null);
+                        continue;
+                    }
+                    // Anything else is unchecked - Rethrow it as if the Product Item had been processed on the
+                    // calling thread.
+                    if (ee.getCause() instanceof Error) {
+                        throw (Error) ee.getCause();
+                    }
+                    throw (RuntimeException) ee.getCause();
+                }
+                futures.set(i, null);
+                
+                priceTotal += writeProductInfo(prodInfoUrls.get(i), productInfo, writer);
+            }
+        } catch (InterruptedException ie) {
+            // Restore the interrupt and give back what has been written so far.
+            Thread.currentThread().interrupt();
+            Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Interrupted Processing Product Items", ie);
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        return priceTotal;
+    } // writeProductInfos() method
+    
+    /**
+     * Reports a Product Item whose webpage could not be fetched to the writer - It is left out of the results
+     * and the Price Total rather than counted with a Unit Price of "0.00".
+     */
+    void writeFailure(String prodInfoUrl, IOException ioe, ScrapeResultWriter writer) throws IOException {
+        Logger.getLogger(PageScraper.class.getName()).log(Level.SEVERE, "Error Processing Product Item " + prodInfoUrl, ioe);
+        metrics.productFailed(ioe);
+        writer.failed(prodInfoUrl, ioe);
+    } // writeFailure() method
+    
+    /**
+     * Passes a ProductInfo object to the writer, then adds it to the CheckpointLog (if any).
+     * 
+     * @return The Unit Price of the Product Item in pence, to be added to the Price Total.
+     * @throws IOException If the writer or the CheckpointLog fails.
+     */
+    long writeProductInfo(String prodInfoUrl, ProductInfo productInfo, ScrapeResultWriter writer) throws IOException {
+        long stageStart = System.nanoTime();
+        writer.product(prodInfoUrl, productInfo);
+        metrics.record(ScrapeMetrics.Stage.OUTPUT, stageStart);
+        metrics.productScraped();
+        
+        if (checkpointLog != null) {
+            // Only once output - So a resumed scrape outputs everything that was not.
+            checkpointLog.append(prodInfoUrl, productInfo);
+        }
+        
+        // The Unit Price on the ProductInfo class is held in pence (see Price) so accumulating the Price Total
+        // is plain long addition. Note: This is safe because the Unit Price is always set - "0.00" when the
+        // webpage does not have a valid one.
+        return productInfo.getPrice().getPence();
+    } // writeProductInfo() method
     
 
     /**
@@ -284,73 +1083,97 @@ public class PageScraper {
     public URL getUrl() {
         return url;
     }
-
-    public void setUrl(URL argUrl) {
-        url = argUrl;
+    
+    public int getConcurrency() {
+        return concurrency;
     }
     
-    public String getProductTitleDescriptionContainerLocator() {
-    	return productTitleDescriptionContainerLocator;
+    public int getParseThreads() {
+        return parseThreads;
     }
     
-    public void setProductTitleDescriptionContainerLocator(String ptdcl) {
-    	productTitleDescriptionContainerLocator = ptdcl;
+    public ResponseCache getResponseCache() {
+        return responseCache;
     }
     
-    public String getProductTitleElementTagLocator() {
-    	return productTitleElementTagLocator;
+    public ContentHashStore getContentHashStore() {
+        return contentHashStore;
     }
     
-    public void setProductTitleElementTagLocator(String ptl) {
-    	productTitleElementTagLocator = ptl;
+    public CheckpointLog getCheckpointLog() {
+        return checkpointLog;
     }
     
-    public String getProductPricePerUnitLocator() {
-    	return productPricePerUnitLocator;
+    public boolean isStreamingExtraction() {
+        return streamingExtraction;
     }
     
-    public void setProductPricePerUnitLocator(String pppul) {
-    	productPricePerUnitLocator = pppul;
-    }    
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
     
-    public String getProductTextDescriptionLocator() {
-    	return productTextDescriptionLocator;
+    public FetchTransport getTransport() {
+        return transport;
     }
     
-    public void setProductTextDescriptionLocator(String ptdl) {
-    	productTextDescriptionLocator = ptdl;
-    }    
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
     
-    public String getProductListLocator() {
-    	return productListLocator;
-    } 
+    /**
+     * @return Number of retries and hedged requests made so far.
+     */
+    public int getRetries() {
+        return retries.get();
+    }
     
-    public void setProductListLocator(String pll) {
-    	productListLocator = pll;
+    public ScrapeMetrics getMetrics() {
+        return metrics;
     }
     
-    public String getProductListTag() {
-    	return productListTag;
+    public ExtractionPlan getExtractionPlan() {
+        return plan;
     }
     
-    public void setProductListTag(String plt) {
-    	productListTag = plt;
+    /**
+     * @return Fingerprint (a hash) of how the Product Items are extracted from their webpages - The Product Item
+     *         locators and whether the streaming extraction is used. Two PageScrapers with the same fingerprint
+     *         extract the same ProductInfo from the same webpage (see ContentHashStore).
+     */
+    public long getExtractionFingerprint() {
+        return extractionFingerprint;
     }
     
-    public String getProductInfoLocator() {
-    	return productInfoLocator;
+    public String getProductTitleDescriptionContainerLocator() {
+    	return plan.getProductTitleDescriptionContainerLocator();
     }
     
-    public void setProductInfoLocator(String pil) {
-    	productInfoLocator = pil;
+    public String getProductTitleElementTagLocator() {
+    	return plan.getProductTitleElementTagLocator();
     }
     
-    public String getProductInfoElementLocator() {
-    	return productInfoElementLocator;
+    public String getProductPricePerUnitLocator() {
+    	return plan.getProductPricePerUnitLocator();
+    }
+    
+    public String getProductTextDescriptionLocator() {
+    	return plan.getProductTextDescriptionLocator();
     }
     
-    public void setProductInfoElementLocator(String piel) {
-    	productInfoElementLocator = piel;
+    public String getProductListLocator() {
+    	return plan.getProductListLocator();
+    } 
+    
+    public String getProductListTag() {
+    	return plan.getProductListTag();
+    }
+    
+    public String getProductInfoLocator() {
+    	return plan.getProductInfoLocator();
+    }
+    
+    public String getProductInfoElementLocator() {
+    	return plan.getProductInfoElementLocator();
     }
     
 } // PageScraper class
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.math.BigDecimal;
+
+/**
+ * Price Class
+ *
+ * A GBP price held as a whole number of pence (a long), e.g. £15.10 is 1510. Prices are added up as plain
+ * longs, so a Price Total needs no BigDecimal (or any other object) per Product Item, and are always output with
+ * exactly two decimal places ("1.5" on a webpage is output as "1.50").
+ *
+ * The Unit Price text of a Product Item webpage (e.g. "£3.50/unit") is converted in a single pass over its
+ * characters by parsePence() - No regular expression and no intermediate String objects. Accepted (as before):
+ * an optional "£", an optional "-", one or more digits, optionally a "." and one or more digits, and an optional
+ * "/unit". Digits after the second decimal place are dropped (rounding down, as the Price Total always has).
+ *
+ * Immutable.
+ *
+ * @author John Moores
+ */
+public final class Price implements Comparable<Price> {
+
+    /**
+     * Returned by parsePence() for text that is not a price.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final Price ZERO = new Price(0);
+
+    // More digits than this before the decimal point and the pence could overflow a long.
+    private static final int MAX_POUND_DIGITS = 16;
+
+    private static final String UNIT_SUFFIX = "/unit";
+
+    private final long pence;
+
+    private Price(long pence) {
+        this.pence = pence;
+    }
+
+    public static Price ofPence(long pence) {
+        return pence == 0 ? ZERO : new Price(pence);
+    }
+
+    /**
+     * Converts price text (e.g. "£3.50/unit", "3.50" or "1.5") to a Price.
+     *
+     * @throws NumberFormatException If the text is not a price.
+     */
+    public static Price parse(CharSequence text) {
+        long pence = parsePence(text);
+
+        if (pence == INVALID) {
+            throw new NumberFormatException("Not a price: \"" + text + "\"");
+        }
+        return ofPence(pence);
+    } // parse() method
+
+    /**
+     * Converts price text (e.g. "£3.50/unit", "3.50" or "1.5") to pence, without creating any objects.
+     *
+     * @param text The price text - null is not a price.
+     * @return The price in pence, or INVALID if the text is not a price.
+     */
+    public static long parsePence(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+
+        int end = text.length();
+        int i = 0;
+
+        // Optional "/unit" at the end and "£" at the start.
+        if (endsWith(text, end, UNIT_SUFFIX)) {
+            end -= UNIT_SUFFIX.length();
+        }
+        if (i < end && text.charAt(i) == '£') {
+            i++;
+        }
+
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+
+        // Pounds - At least one digit.
+        int poundsStart = i;
+        long pounds = 0;
+
+        while (i < end && isDigit(text.charAt(i))) {
+            if (i - poundsStart == MAX_POUND_DIGITS) {
+                return INVALID;
+            }
+            pounds = pounds * 10 + (text.charAt(i++) - '0');
+        }
+        if (i == poundsStart) {
+            return INVALID;
+        }
+
+        // Pence - If there is a decimal point, at least one digit after it. Only the first two count.
+        long pence = 0;
+
+        if (i < end && text.charAt(i) == '.') {
+            int penceStart = ++i;
+
+            while (i < end && isDigit(text.charAt(i))) {
+                int place = i - penceStart;
+
+                if (place == 0) {
+                    pence = (text.charAt(i) - '0') * 10;
+                } else if (place == 1) {
+                    pence += text.charAt(i) - '0';
+                }
+                i++;
+            }
+            if (i == penceStart) {
+                return INVALID;
+            }
+        }
+
+        if (i != end) {
+            // Anything else is not a price.
+            return INVALID;
+        }
+
+        long total = pounds * 100 + pence;
+        return negative ? -total : total;
+    } // parsePence() method
+
+    /**
+     * Formats pence with exactly two decimal places, e.g. 1510 as "15.10" and -5 as "-0.05".
+     */
+    public static String format(long pence) {
+        long abs = Math.abs(pence);
+        long remainder = abs % 100;
+
+        StringBuilder formatted = new StringBuilder(24);
+        if (pence < 0) {
+            formatted.append('-');
+        }
+        formatted.append(abs / 100).append('.');
+        if (remainder < 10) {
+            formatted.append('0');
+        }
+        return formatted.append(remainder).toString();
+    } // format() method
+
+    private static boolean endsWith(CharSequence text, int end, String suffix) {
+        int start = end - suffix.length();
+
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (text.charAt(start + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    public Price plus(Price other) {
+        return ofPence(pence + other.pence);
+    }
+
+    /**
+     * @return The Price as a BigDecimal with two decimal places.
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(pence, 2);
+    }
+
+    public long getPence() {
+        return pence;
+    }
+
+    @Override
+    public int compareTo(Price other) {
+        return Long.compare(pence, other.pence);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Price && ((Price) obj).pence == pence;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(pence);
+    }
+
+    /**
+     * @return The Price with exactly two decimal places, e.g. "15.10".
+     */
+    @Override
+    public String toString() {
+        return format(pence);
+    }
+
+} // Price class
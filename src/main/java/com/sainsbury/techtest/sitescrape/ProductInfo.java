@@ -18,16 +18,26 @@ public class ProductInfo {
     private String title;
     private String description;
     
-    // NOTE: Size (size) and Unit Price (unitPrice) are specified as string (String) since this helps with
-    //       handling decimal place precision. There are two issues:
+    // NOTE: Size (size) is specified as string (String) since this helps with handling decimal place precision.
+    //       There are two issues:
     //       1. The use of float found to be difficult to ensure required decimal places (1 for size and 2 for Unit Price).
     //       2. Loading JSONObject with a numeric (e.g. java.math.BigDecimal) means that where zero is in the least
     //          significant decimal place, that decimal place will be chopped, which for GBP currency is wrong.
     //          i.e. 15.10 becomes 15.1
+    //       The Unit Price (unitPrice) is held in pence (see Price) and output as a string with two decimal places
+    //       for the same reason.
     private String size;
-    private String unitPrice;
+    private Price unitPrice;
 
+    /**
+     * @param unitPrice The Unit Price, e.g. "3.50".
+     * @throws NumberFormatException If the Unit Price is not a price.
+     */
     public ProductInfo(String title, String size, String unitPrice, String description) {
+        this(title, size, Price.parse(unitPrice), description);
+    }
+
+    public ProductInfo(String title, String size, Price unitPrice, String description) {
         this.title = title;
         this.size = size;
         this.unitPrice = unitPrice;
@@ -44,11 +54,13 @@ public class ProductInfo {
      * @return JSONObject containing all the fields of the ProductInfo object.
      */
     public JSONObject toJSON() throws JSONException {
+        // NOTE: Through the getter methods so that a subclass (e.g. the view of a ProductStore row) need not
+        //       hold the values itself.
         JSONObject job = new JSONObject();
-        job.put("title", title);
-        job.put("size", size);
-        job.put("unit_price", unitPrice);
-        job.put("description", description);
+        job.put("title", getTitle());
+        job.put("size", getSize());
+        job.put("unit_price", getUnitPrice());
+        job.put("description", getDescription());
         
         return job;
     }
@@ -69,11 +81,25 @@ public class ProductInfo {
         this.size = size;
     }
     
+    /**
+     * @return The Unit Price with two decimal places, e.g. "3.50".
+     */
     public String getUnitPrice() {
-        return unitPrice;
+        return unitPrice.toString();
     }
     
+    /**
+     * @throws NumberFormatException If the Unit Price is not a price.
+     */
     public void setUnitPrice(String unitPrice) {
+        this.unitPrice = Price.parse(unitPrice);
+    }
+    
+    public Price getPrice() {
+        return unitPrice;
+    }
+    
+    public void setPrice(Price unitPrice) {
         this.unitPrice = unitPrice;
     }
 
@@ -87,7 +113,7 @@ public class ProductInfo {
 
     @Override
     public String toString() {
-        return "ProductInfo{" + "title=" + title + ", size=" + size + ", unitPrice=" + unitPrice + ", description=" + description + '}';
+        return "ProductInfo{" + "title=" + getTitle() + ", size=" + getSize() + ", unitPrice=" + getUnitPrice() + ", description=" + getDescription() + '}';
     }
     
 }
\ No newline at end of file
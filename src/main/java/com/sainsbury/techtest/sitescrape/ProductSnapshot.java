@@ -0,0 +1,253 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ProductSnapshot Class
+ *
+ * The ProductInfo objects of a scrape, keyed by the Product Item URL (in listing order), each with a hash of
+ * the content of the webpage it was extracted from. Kept in a file between runs by the IncrementalScraper so
+ * that the next run can tell which Product Items have been added, removed or changed, and need not extract
+ * a Product Item again when its webpage has not changed.
+ *
+ * The ProductInfo objects depend on how they were extracted, as well as on the webpages - So a snapshot records
+ * the extraction plan it was written with (see PageScraper.getExtractionFingerprint()), and its ProductInfo
+ * objects are only used for unchanged webpages by a scrape with the same plan. Otherwise (or for a snapshot
+ * written by an earlier version, without a plan) every Product Item is extracted again, and compared with the
+ * snapshot as usual.
+ *
+ * File layout: version (int), plan fingerprint (long), entry count (int), then for each entry - url, content
+ * hash, title, size, unit price and description (each an int length and UTF-8 bytes).
+ *
+ * Immutable once read or built.
+ *
+ * @author John Moores
+ */
+public class ProductSnapshot {
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private final Map<String, Entry> entries;
+
+    // Fingerprint of the extraction plan the ProductInfo objects were extracted with - If known.
+    private final boolean planKnown;
+    private final long planFingerprint;
+
+    /**
+     * ProductSnapshot Entry Class
+     */
+    public static class Entry {
+        private final String contentHash;
+        private final ProductInfo productInfo;
+
+        Entry(String contentHash, ProductInfo productInfo) {
+            this.contentHash = contentHash;
+            this.productInfo = productInfo;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * @return The ProductInfo object. NOTE: Not copied, so must not be modified.
+         */
+        public ProductInfo getProductInfo() {
+            return productInfo;
+        }
+    }
+
+    /**
+     * ProductSnapshot Recorder Class
+     *
+     * Records the content hash of each Product Item webpage as it is fetched, for the snapshot being built.
+     * Thread-safe - Used by all the threads of a scrape.
+     */
+    public static class Recorder {
+        private final Map<String, String> contentHashes = new ConcurrentHashMap<String, String>();
+
+        void record(String url, String contentHash) {
+            contentHashes.put(url, contentHash);
+        }
+
+        String getContentHash(String url) {
+            return contentHashes.get(url);
+        }
+    }
+
+    /**
+     * An empty ProductSnapshot - As for the first run.
+     */
+    public ProductSnapshot() {
+        this(new LinkedHashMap<String, Entry>(), false, 0);
+    }
+
+    /**
+     * @param entries The entries by URL, in listing order.
+     * @param planFingerprint Fingerprint of the extraction plan the ProductInfo objects were extracted with.
+     */
+    ProductSnapshot(Map<String, Entry> entries, long planFingerprint) {
+        this(entries, true, planFingerprint);
+    }
+
+    private ProductSnapshot(Map<String, Entry> entries, boolean planKnown, long planFingerprint) {
+        this.entries = Collections.unmodifiableMap(entries);
+        this.planKnown = planKnown;
+        this.planFingerprint = planFingerprint;
+    }
+
+    /**
+     * Reads a ProductSnapshot from a file.
+     *
+     * @param file The snapshot file.
+     * @return The ProductSnapshot - Empty if the file does not exist.
+     * @throws IOException If the file cannot be read or is not a snapshot file.
+     */
+    public static ProductSnapshot read(File file) throws IOException {
+        if (!file.exists()) {
+            return new ProductSnapshot();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != 1 && version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+
+            // Version 1 has no extraction plan - Its entries are only compared with, never reused.
+            boolean planKnown = version != 1;
+            long planFingerprint = planKnown ? in.readLong() : 0;
+
+            int count = in.readInt();
+            Map<String, Entry> entries = new LinkedHashMap<String, Entry>(Math.max(16, count * 4 / 3 + 1));
+
+            for (int i = 0; i < count; i++) {
+                String url = readString(in);
+                String contentHash = readString(in);
+                ProductInfo productInfo = new ProductInfo(readString(in), readString(in), readString(in), readString(in));
+                entries.put(url, new Entry(contentHash, productInfo));
+            }
+            return new ProductSnapshot(entries, planKnown, planFingerprint);
+        }
+    }
+
+    /**
+     * Writes the ProductSnapshot to a file - Written to a temporary file and moved into place, so the previous
+     * snapshot is kept if anything goes wrong.
+     *
+     * @param file The snapshot file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("snapshot", ".tmp", directory);
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(planFingerprint);
+                out.writeInt(entries.size());
+
+                for (Map.Entry<String, Entry> entry: entries.entrySet()) {
+                    ProductInfo productInfo = entry.getValue().getProductInfo();
+
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue().getContentHash());
+                    writeString(out, productInfo.getTitle());
+                    writeString(out, productInfo.getSize());
+                    writeString(out, productInfo.getUnitPrice());
+                    writeString(out, productInfo.getDescription());
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return true if the ProductInfo objects were extracted with the given extraction plan.
+     */
+    boolean isForPlan(long argPlanFingerprint) {
+        return planKnown && planFingerprint == argPlanFingerprint;
+    }
+
+    /**
+     * @param planFingerprint Fingerprint of the extraction plan of the scrape (see PageScraper.getExtractionFingerprint()).
+     * @return The ProductInfo object for the URL if its webpage content is unchanged (same hash) and it was
+     *         extracted with the same plan, otherwise null.
+     */
+    ProductInfo unchanged(String url, String contentHash, long planFingerprint) {
+        if (!isForPlan(planFingerprint)) {
+            return null;
+        }
+        Entry entry = entries.get(url);
+
+        return entry != null && entry.getContentHash().equals(contentHash) ? entry.getProductInfo() : null;
+    }
+
+    /**
+     * Hashes the content of a webpage (xxHash64 - See ContentHashStore).
+     *
+     * @return The hash as hexadecimal.
+     */
+    static String contentHash(FetchedPage page) {
+        return String.format("%016x", page.getContentHash());
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        // Not writeUTF() - It is limited to 64KB, and a Description could be longer.
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt snapshot - String length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     *  Accessor Methods
+     */
+
+    /**
+     * @return The entries by URL, in listing order - Unmodifiable.
+     */
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry get(String url) {
+        return entries.get(url);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Fingerprint of the extraction plan the ProductInfo objects were extracted with - 0 if not known.
+     */
+    public long getPlanFingerprint() {
+        return planFingerprint;
+    }
+}
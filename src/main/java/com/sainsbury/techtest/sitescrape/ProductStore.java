@@ -0,0 +1,577 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ProductStore Class
+ *
+ * Holds a large catalogue of Product Items in memory in columns rather than as a ProductInfo object (with its
+ * four String objects) per Product Item:
+ *
+ *     Unit Price   - long array of pence.
+ *     Page Size    - int array of tenths of a kb (e.g. "35.0kb" is 350). A size not in that form is kept as text.
+ *     URL, Title   - UTF-8 bytes packed end to end in large shared byte arrays.
+ *     Description  - Dictionary encoded - Each distinct description is packed once and the Product Items hold
+ *                    an int code, since many Product Items share a description (or have none).
+ *
+ * So a Product Item costs its text as UTF-8 plus a few dozen bytes, rather than several hundred, and the
+ * garbage collector has a handful of large arrays to trace rather than millions of small objects.
+ *
+ * Product Items are appended, e.g. by passing the ProductStore to PageScraper.scrape() as its
+ * ScrapeResultWriter, and read back through get(), which returns a ProductInfo view of the row (flyweight) -
+ * Its text is only decoded when asked for. Rows are never changed once appended, so a view stays valid.
+ *
+ * Not thread safe - The PageScraper calls its ScrapeResultWriter from the one thread.
+ *
+ * @author John Moores
+ */
+public class ProductStore implements ScrapeResultWriter {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Page Size column value for a size kept in the sizeTexts overflow map instead.
+    private static final int SIZE_AS_TEXT = -1;
+    private static final String KB = "kb";
+
+    private int count;
+    private long[] prices;
+    private int[] sizes;
+    private final TextColumn urls = new TextColumn(false);
+    private final TextColumn titles = new TextColumn(false);
+    private final TextColumn descriptions = new TextColumn(true);
+
+    // Page Sizes not in the usual form (e.g. "12" or null), by row - Expected to be rare.
+    private final Map<Integer, String> sizeTexts = new HashMap<Integer, String>();
+
+    // URLs of the Product Items whose webpages could not be fetched.
+    private final TextColumn failedUrls = new TextColumn(false);
+    private int failedCount;
+
+    public ProductStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of Product Items expected - The columns grow beyond it as required.
+     */
+    public ProductStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        prices = new long[capacity];
+        sizes = new int[capacity];
+    }
+
+    /**
+     * Appends a Product Item.
+     *
+     * @param url The page address of the Product Item.
+     * @param productInfo The ProductInfo object of the Product Item - Copied, so may be reused by the caller.
+     * @return The row of the Product Item.
+     */
+    public int add(String url, ProductInfo productInfo) {
+        if (count == prices.length) {
+            int capacity = count + (count >> 1);
+            prices = Arrays.copyOf(prices, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+
+        int row = count;
+        prices[row] = productInfo.getPrice().getPence();
+        sizes[row] = encodeSize(productInfo.getSize());
+        if (sizes[row] == SIZE_AS_TEXT) {
+            sizeTexts.put(row, productInfo.getSize());
+        }
+        urls.add(url);
+        titles.add(productInfo.getTitle());
+        descriptions.add(productInfo.getDescription());
+
+        count++;
+        return row;
+    } // add() method
+
+    /**
+     * @return The Page Size as (tenths of a kb << 1) | 1 if it ends in "kb", or SIZE_AS_TEXT if it is not a
+     *         number with one decimal place (optionally followed by "kb").
+     */
+    static int encodeSize(String size) {
+        if (size == null) {
+            return SIZE_AS_TEXT;
+        }
+
+        int end = size.length();
+        boolean kb = size.endsWith(KB);
+        if (kb) {
+            end -= KB.length();
+        }
+
+        // At least one digit, a "." and exactly one digit.
+        if (end < 3 || size.charAt(end - 2) != '.' || !isDigit(size.charAt(end - 1))) {
+            return SIZE_AS_TEXT;
+        }
+
+        long tenths = 0;
+        for (int i = 0; i < end - 2; i++) {
+            char c = size.charAt(i);
+            // A leading zero is only kept as the single digit before the "."
+            if (!isDigit(c) || (c == '0' && i == 0 && end - 2 > 1)) {
+                return SIZE_AS_TEXT;
+            }
+            tenths = tenths * 10 + (c - '0');
+            if (tenths > Integer.MAX_VALUE / 20) {
+                return SIZE_AS_TEXT;
+            }
+        }
+        tenths = tenths * 10 + (size.charAt(end - 1) - '0');
+
+        return (int) (tenths << 1) | (kb ? 1 : 0);
+    } // encodeSize() method
+
+    static String decodeSize(int encoded) {
+        int tenths = encoded >>> 1;
+        String size = (tenths / 10) + "." + (tenths % 10);
+        return (encoded & 1) != 0 ? size + KB : size;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return A ProductInfo view of the row - Its values are read from the ProductStore when asked for. The
+     *         view cannot be modified.
+     */
+    public ProductInfo get(int row) {
+        checkRow(row);
+        return new Row(row);
+    }
+
+    public String getUrl(int row) {
+        checkRow(row);
+        return urls.get(row);
+    }
+
+    /**
+     * @return The Unit Price of the row in pence - For totals without creating any objects.
+     */
+    public long getPricePence(int row) {
+        checkRow(row);
+        return prices[row];
+    }
+
+    /**
+     * @return The Page Size of the row in tenths of a kb, or -1 if the size is not held as a number.
+     */
+    public int getSizeTenthsKb(int row) {
+        checkRow(row);
+        return sizes[row] == SIZE_AS_TEXT ? -1 : sizes[row] >>> 1;
+    }
+
+    /**
+     * @return The Page Size of the row as encoded by encodeSize() - -1 if the size is not held as a number.
+     */
+    int getSizeCode(int row) {
+        checkRow(row);
+        return sizes[row];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + count);
+        }
+    }
+
+    /**
+     * @return The Price Total of all the Product Items, in pence.
+     */
+    public long getPriceTotalPence() {
+        long priceTotal = 0;
+
+        for (int row = 0; row < count; row++) {
+            priceTotal += prices[row];
+        }
+        return priceTotal;
+    }
+
+    /**
+     * Writes the Product Items to a ScrapeResultWriter, in the order they were appended, as if scraped -
+     * begin(), product() for each Product Item, failed() for each failed Product Item and end() with the Price
+     * Total, or empty() if the ProductStore holds nothing.
+     */
+    public void writeTo(ScrapeResultWriter writer) throws IOException {
+        if (count == 0 && failedCount == 0) {
+            writer.empty();
+            return;
+        }
+
+        writer.begin();
+        for (int row = 0; row < count; row++) {
+            writer.product(urls.get(row), new Row(row));
+        }
+        for (int i = 0; i < failedCount; i++) {
+            writer.failed(failedUrls.get(i), new IOException("Failed when scraped"));
+        }
+        writer.end(BigDecimal.valueOf(getPriceTotalPence(), 2));
+    } // writeTo() method
+
+    /**
+     * @return Number of Product Items held.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return Number of failed Product Items held.
+     */
+    public int failedSize() {
+        return failedCount;
+    }
+
+    public String getFailedUrl(int i) {
+        if (i < 0 || i >= failedCount) {
+            throw new IndexOutOfBoundsException("Failed " + i + " of " + failedCount);
+        }
+        return failedUrls.get(i);
+    }
+
+    /**
+     * @return Approximate bytes of heap used by the ProductStore's arrays.
+     */
+    public long getMemoryBytes() {
+        return 8L * prices.length + 4L * sizes.length
+            + urls.getMemoryBytes() + titles.getMemoryBytes() + descriptions.getMemoryBytes() + failedUrls.getMemoryBytes();
+    }
+
+    /**
+     *  ScrapeResultWriter Methods - Appending the Product Items of a scrape. Several scrapes may be appended.
+     */
+
+    @Override
+    public void empty() {
+        // Nothing to append.
+    }
+
+    @Override
+    public void begin() {
+        // Nothing to do - Product Items are appended as they arrive.
+    }
+
+    @Override
+    public void product(String url, ProductInfo productInfo) {
+        add(url, productInfo);
+    }
+
+    @Override
+    public void failed(String url, IOException cause) {
+        failedUrls.add(url);
+        failedCount++;
+    }
+
+    @Override
+    public void end(BigDecimal total) {
+        // Nothing to do - The Price Total is worked out from the Unit Price column (getPriceTotalPence()).
+    }
+
+    /**
+     * ProductStore Row Class
+     *
+     * ProductInfo view of one row of the ProductStore. Holds only the row - Values are read from the columns
+     * each time they are asked for.
+     */
+    private class Row extends ProductInfo {
+        private final int row;
+
+        Row(int row) {
+            super(null, null, Price.ZERO, null);
+            this.row = row;
+        }
+
+        @Override
+        public String getTitle() {
+            return titles.get(row);
+        }
+
+        @Override
+        public String getSize() {
+            return sizes[row] == SIZE_AS_TEXT ? sizeTexts.get(row) : decodeSize(sizes[row]);
+        }
+
+        @Override
+        public String getUnitPrice() {
+            return Price.format(prices[row]);
+        }
+
+        @Override
+        public Price getPrice() {
+            return Price.ofPence(prices[row]);
+        }
+
+        @Override
+        public String getDescription() {
+            return descriptions.get(row);
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw new UnsupportedOperationException("ProductStore rows cannot be modified");
+        }
+
+        @Override
+        public void setSize(String size) {
+            throw new UnsupportedOperationException("ProductStore rows cannot be modified");
+        }
+
+        @Override
+        public void setUnitPrice(String unitPrice) {
+            throw new UnsupportedOperationException("ProductStore rows cannot be modified");
+        }
+
+        @Override
+        public void setPrice(Price unitPrice) {
+            throw new UnsupportedOperationException("ProductStore rows cannot be modified");
+        }
+
+        @Override
+        public void setDescription(String description) {
+            throw new UnsupportedOperationException("ProductStore rows cannot be modified");
+        }
+    } // Row class
+
+    /**
+     * ProductStore TextColumn Class
+     *
+     * A column of Strings held as UTF-8 bytes packed end to end in 1MB byte arrays (chunks), each value
+     * preceded by its length (variable length int). A value never spans two chunks - A value too big for a
+     * chunk gets a chunk of its own.
+     *
+     * A dictionary column packs each distinct value once, finding it again through an open addressing hash
+     * table of value numbers, and holds an int code per row. Otherwise row n is value n.
+     */
+    private static final class TextColumn {
+        private static final int CHUNK_BITS = 20;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+        private static final long NULL_ADDRESS = -1;
+
+        private final boolean dictionary;
+
+        private byte[][] chunks = new byte[4][];
+        private int chunkCount;
+        private int chunkUsed;
+
+        // Address of each value - (chunk << CHUNK_BITS) | offset.
+        private long[] addresses = new long[16];
+        private int valueCount;
+
+        // Dictionary columns only - Value of each row, and the hash table (value number + 1, 0 for empty).
+        private int[] codes;
+        private int rowCount;
+        private int[] table;
+
+        TextColumn(boolean dictionary) {
+            this.dictionary = dictionary;
+            if (dictionary) {
+                codes = new int[16];
+                table = new int[16];
+            }
+        }
+
+        void add(String value) {
+            if (!dictionary) {
+                addValue(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            if (rowCount == codes.length) {
+                codes = Arrays.copyOf(codes, rowCount + (rowCount >> 1));
+            }
+            codes[rowCount++] = lookup(value);
+        }
+
+        String get(int row) {
+            return decode(addresses[dictionary ? codes[row] : row]);
+        }
+
+        /**
+         * @return The value number of a dictionary column value - Packed if not already.
+         */
+        private int lookup(String value) {
+            byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            int mask = table.length - 1;
+            int slot = (bytes == null ? 0 : hash(bytes, 0, bytes.length)) & mask;
+
+            for (; table[slot] != 0; slot = (slot + 1) & mask) {
+                if (matches(addresses[table[slot] - 1], bytes)) {
+                    return table[slot] - 1;
+                }
+            }
+
+            int code = addValue(bytes);
+            table[slot] = code + 1;
+
+            // Keep the hash table at most half full.
+            if (valueCount * 2 > table.length) {
+                rehash();
+            }
+            return code;
+        } // lookup() method
+
+        private void rehash() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            int mask = table.length - 1;
+
+            for (int entry: old) {
+                if (entry != 0) {
+                    long address = addresses[entry - 1];
+                    int slot = 0;
+
+                    if (address != NULL_ADDRESS) {
+                        byte[] chunk = chunk(address);
+                        int offset = offset(address);
+                        int length = readLength(chunk, offset);
+                        slot = hash(chunk, offset + lengthSize(length), length) & mask;
+                    }
+
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        } // rehash() method
+
+        /**
+         * Packs a value.
+         *
+         * @return The value number.
+         */
+        private int addValue(byte[] bytes) {
+            if (valueCount == addresses.length) {
+                addresses = Arrays.copyOf(addresses, valueCount + (valueCount >> 1));
+            }
+
+            if (bytes == null) {
+                addresses[valueCount] = NULL_ADDRESS;
+                return valueCount++;
+            }
+
+            int needed = 5 + bytes.length;
+            if (chunkCount == 0 || chunkUsed + needed > chunks[chunkCount - 1].length) {
+                newChunk(Math.max(CHUNK_SIZE, needed));
+            }
+
+            byte[] chunk = chunks[chunkCount - 1];
+            addresses[valueCount] = ((long) (chunkCount - 1) << CHUNK_BITS) | chunkUsed;
+
+            // Length as a variable length int - 7 bits a byte, high bit set on all but the last.
+            int length = bytes.length;
+            while (length >= 0x80) {
+                chunk[chunkUsed++] = (byte) (length | 0x80);
+                length >>>= 7;
+            }
+            chunk[chunkUsed++] = (byte) length;
+
+            System.arraycopy(bytes, 0, chunk, chunkUsed, bytes.length);
+            chunkUsed += bytes.length;
+
+            return valueCount++;
+        } // addValue() method
+
+        private void newChunk(int size) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            chunks[chunkCount++] = new byte[size];
+            chunkUsed = 0;
+        }
+
+        private String decode(long address) {
+            if (address == NULL_ADDRESS) {
+                return null;
+            }
+
+            byte[] chunk = chunk(address);
+            int offset = offset(address);
+            int length = readLength(chunk, offset);
+
+            return new String(chunk, offset + lengthSize(length), length, StandardCharsets.UTF_8);
+        } // decode() method
+
+        private boolean matches(long address, byte[] bytes) {
+            if (address == NULL_ADDRESS || bytes == null) {
+                return address == NULL_ADDRESS && bytes == null;
+            }
+
+            byte[] chunk = chunk(address);
+            int offset = offset(address);
+            int length = readLength(chunk, offset);
+
+            if (length != bytes.length) {
+                return false;
+            }
+            offset += lengthSize(length);
+            for (int i = 0; i < length; i++) {
+                if (chunk[offset + i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } // matches() method
+
+        private byte[] chunk(long address) {
+            return chunks[(int) (address >>> CHUNK_BITS)];
+        }
+
+        private static int offset(long address) {
+            return (int) (address & (CHUNK_SIZE - 1));
+        }
+
+        private static int readLength(byte[] chunk, int offset) {
+            int length = 0;
+
+            for (int shift = 0; ; shift += 7) {
+                byte b = chunk[offset++];
+                length |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return length;
+                }
+            }
+        }
+
+        private static int lengthSize(int length) {
+            int size = 1;
+
+            while (length >= 0x80) {
+                length >>>= 7;
+                size++;
+            }
+            return size;
+        }
+
+        private static int hash(byte[] bytes, int offset, int length) {
+            int hash = 1;
+
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            // Spread the bits, since the table is indexed by the low bits.
+            return hash * 0x9E3779B9;
+        }
+
+        long getMemoryBytes() {
+            long bytes = 8L * addresses.length + 8L * chunks.length;
+
+            for (int i = 0; i < chunkCount; i++) {
+                bytes += chunks[i].length;
+            }
+            if (dictionary) {
+                bytes += 4L * codes.length + 4L * table.length;
+            }
+            return bytes;
+        }
+    } // TextColumn class
+
+} // ProductStore class
@@ -0,0 +1,319 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RequestScheduler Class
+ *
+ * Sits between the PageScraper and the network and decides when each request may be sent, so that every host
+ * is fetched from as fast as it allows and no faster:
+ *
+ *     Per-host token bucket - Each host gets requestsPerSecond tokens a second, up to burst tokens saved up.
+ *                             A request takes one token.
+ *     Per-host in-flight    - At most maxInFlightPerHost requests to a host at the same time.
+ *     Overall in-flight     - At most maxInFlight requests at the same time (across all hosts).
+ *     Fair queue            - Requests wait in a queue per host (first come, first served) and the hosts take
+ *                             turns (round robin), so one busy host cannot hold up the others.
+ *     Back off              - A host that answers 429 Too Many Requests / 503 Service Unavailable is paused
+ *                             (for its Retry-After, if given) rather than being sent more requests.
+ *
+ * Usage - The Permit is closed once the response has been read:
+ *
+ *     RequestScheduler.Permit permit = scheduler.acquire(url);
+ *     try {
+ *         ...
+ *     } finally {
+ *         permit.close();
+ *     }
+ *
+ * Thread-safe - One RequestScheduler is shared by all the threads fetching webpages.
+ *
+ * @author John Moores
+ */
+public class RequestScheduler {
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxInFlightPerHost;
+    private final int maxInFlight;
+
+    // All guarded by "this".
+    private final Map<String, Host> hosts = new HashMap<String, Host>();
+    private final Deque<Host> readyHosts = new ArrayDeque<Host>();
+    private int inFlight;
+    private int queued;
+    private long throttledMillis;
+
+    /**
+     * Class constructor.
+     *
+     * @param requestsPerSecond Sustained requests per second to each host - 0 for no rate limit.
+     * @param burst Requests that may be sent to a host at once after it has been idle (at least 1).
+     * @param maxInFlightPerHost Maximum requests to each host at the same time (at least 1).
+     * @param maxInFlight Maximum requests at the same time across all hosts (at least 1).
+     */
+    public RequestScheduler(double requestsPerSecond, int burst, int maxInFlightPerHost, int maxInFlight) {
+        if (requestsPerSecond < 0 || burst < 1 || maxInFlightPerHost < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid request schedule " + requestsPerSecond + "/s, burst " + burst
+                + ", " + maxInFlightPerHost + " per host, " + maxInFlight + " in total");
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxInFlightPerHost = maxInFlightPerHost;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Waits until a request to the URL's host may be sent.
+     *
+     * @param url The URL about to be requested.
+     * @return The Permit - To be closed once the request has completed.
+     * @throws InterruptedException If interrupted while waiting (the request must then not be sent).
+     */
+    public Permit acquire(String url) throws InterruptedException {
+        Ticket ticket;
+
+        synchronized (this) {
+            Host host = host(hostOf(url));
+            ticket = new Ticket(host);
+
+            if (host.waiting.isEmpty()) {
+                readyHosts.addLast(host);
+            }
+            host.waiting.addLast(ticket);
+            queued++;
+
+            long waitStart = System.nanoTime();
+
+            try {
+                while (!ticket.granted) {
+                    long waitMillis = dispatch();
+
+                    if (ticket.granted) {
+                        break;
+                    }
+                    // Wait for a Permit to be released, or until the next token is due.
+                    wait(waitMillis);
+                }
+            } catch (InterruptedException ie) {
+                if (ticket.granted) {
+                    // Granted just as interrupted - Give it back.
+                    release(host);
+                } else {
+                    host.waiting.remove(ticket);
+                    queued--;
+                    if (host.waiting.isEmpty()) {
+                        readyHosts.remove(host);
+                    }
+                    // Others may now be able to go.
+                    notifyAll();
+                }
+                throw ie;
+            }
+
+            throttledMillis += (System.nanoTime() - waitStart) / 1000000;
+        }
+
+        return new Permit(ticket.host);
+    } // acquire() method
+
+    /**
+     * Pauses requests to a host - For a host that has answered 429 Too Many Requests or 503 Service Unavailable.
+     *
+     * @param url A URL on the host.
+     * @param millis How long to pause for.
+     */
+    public synchronized void backOff(String url, long millis) {
+        Host host = host(hostOf(url));
+        long until = System.nanoTime() + millis * 1000000;
+        if (until - host.pausedUntil > 0) {
+            host.pausedUntil = until;
+        }
+
+        // Throw away any saved up tokens - Start again slowly once the pause is over.
+        host.tokens = Math.min(host.tokens, 1);
+    } // backOff() method
+
+    /**
+     * Grants Permits to the waiting requests in turn, host by host, for as long as possible.
+     *
+     * @return Milliseconds until a waiting request could next be granted (at least 1), or 0 to wait for a Permit
+     *         to be released.
+     */
+    private long dispatch() {
+        long now = System.nanoTime();
+        long nextDueNanos = Long.MAX_VALUE;
+        boolean granted = true;
+
+        while (granted && inFlight < maxInFlight) {
+            granted = false;
+
+            // One pass round the hosts with waiting requests, starting with the one whose turn it is.
+            for (int i = readyHosts.size(); i > 0; i--) {
+                Host host = readyHosts.pollFirst();
+                long dueNanos = host.dueNanos(now);
+
+                if (dueNanos == 0 && host.inFlight < maxInFlightPerHost) {
+                    Ticket ticket = host.waiting.pollFirst();
+                    ticket.granted = true;
+                    queued--;
+                    inFlight++;
+                    host.inFlight++;
+                    host.takeToken();
+                    granted = true;
+                    notifyAll();
+                } else if (dueNanos > 0) {
+                    nextDueNanos = Math.min(nextDueNanos, dueNanos);
+                }
+
+                // Still waiting requests - The host goes to the back of the queue.
+                if (!host.waiting.isEmpty()) {
+                    readyHosts.addLast(host);
+                }
+                if (granted) {
+                    break;
+                }
+            }
+        }
+
+        return nextDueNanos == Long.MAX_VALUE ? 0 : Math.max(1, nextDueNanos / 1000000);
+    } // dispatch() method
+
+    private synchronized void release(Host host) {
+        inFlight--;
+        host.inFlight--;
+        notifyAll();
+    } // release() method
+
+    private Host host(String name) {
+        Host host = hosts.get(name);
+
+        if (host == null) {
+            host = new Host();
+            hosts.put(name, host);
+        }
+        return host;
+    }
+
+    /**
+     * @return The host (and port) of a URL, as the scheduling key.
+     */
+    static String hostOf(String url) {
+        try {
+            URI uri = new URI(url);
+            String host = uri.getHost();
+
+            if (host != null) {
+                return host.toLowerCase(Locale.ROOT) + (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+            }
+        } catch (URISyntaxException use) {
+            // Scheduled under the URL itself.
+        }
+        return url;
+    }
+
+    /**
+     * Permit Class - Closed once the request it was acquired for has completed.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Host host;
+        private boolean closed;
+
+        private Permit(Host host) {
+            this.host = host;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(host);
+            }
+        }
+    }
+
+    private static final class Ticket {
+        private final Host host;
+        private boolean granted;
+
+        private Ticket(Host host) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * The scheduling state of a host.
+     */
+    private final class Host {
+        private final Deque<Ticket> waiting = new ArrayDeque<Ticket>();
+        private int inFlight;
+        private double tokens = burst;
+        private long lastRefill = System.nanoTime();
+        // Compared by difference, as System.nanoTime() may be negative - Starts at now, i.e. not paused.
+        private long pausedUntil = System.nanoTime();
+
+        /**
+         * @return Nanoseconds until a request may be sent to the host (by token and pause), 0 if now.
+         */
+        private long dueNanos(long now) {
+            if (now - pausedUntil < 0) {
+                return pausedUntil - now;
+            }
+            if (requestsPerSecond == 0) {
+                return 0;
+            }
+
+            tokens = Math.min(burst, tokens + (now - lastRefill) * requestsPerSecond / 1e9);
+            lastRefill = now;
+
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1e9 / requestsPerSecond);
+        }
+
+        private void takeToken() {
+            if (requestsPerSecond > 0) {
+                tokens -= 1;
+            }
+        }
+    }
+
+    /**
+     *  Accessor Methods
+     */
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public int getMaxInFlightPerHost() {
+        return maxInFlightPerHost;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return Total milliseconds requests have spent waiting for their Permit.
+     */
+    public synchronized long getThrottledMillis() {
+        return throttledMillis;
+    }
+
+} // RequestScheduler class
@@ -0,0 +1,296 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ResponseCache Class
+ * 
+ * On-disk cache of webpage responses (FetchedPage objects) keyed by URL. Each entry is held in its own file in the
+ * cache directory, named from a SHA-1 hash of the URL, and records the response body together with its ETag
+ * and Last-Modified values so the webpage can be revalidated with a conditional request
+ * (If-None-Match / If-Modified-Since) instead of being fetched again in full.
+ * 
+ * Entries younger than the time to live (TTL) are considered fresh and can be used without contacting the
+ * server at all. The total size of the cache directory is bounded - When a new entry takes it over the maximum,
+ * the least recently used entries are evicted. The last use of an entry is recorded as its file's
+ * last-modified time.
+ * 
+ * Safe for use by many threads - Entries are written to a temporary file and moved into place, so a reader
+ * never sees a partly written entry.
+ * 
+ * @author John Moores
+ */
+public class ResponseCache {
+    private static final int ENTRY_VERSION = 2;
+    private static final String ENTRY_SUFFIX = ".cache";
+    
+    // Entry file layout: version (int), stored time (long), url, etag, last-modified, charset, content-length, body.
+    private static final long STORED_AT_OFFSET = 4;
+    
+    private final File directory;
+    private final long ttlMillis;
+    private final long maxBytes;
+    
+    // Running total of the size of the entry files in the cache directory.
+    private final AtomicLong currentBytes = new AtomicLong();
+    
+    /**
+     * ResponseCache Entry Class
+     * 
+     * A cached response together with the time it was last stored or revalidated.
+     */
+    public static class Entry {
+        private final FetchedPage page;
+        private final long storedAt;
+        
+        Entry(FetchedPage page, long storedAt) {
+            this.page = page;
+            this.storedAt = storedAt;
+        }
+        
+        public FetchedPage getPage() {
+            return page;
+        }
+        
+        public long getStoredAt() {
+            return storedAt;
+        }
+        
+        /**
+         * @return true if the entry can be revalidated with a conditional request.
+         */
+        public boolean isRevalidatable() {
+            return page.getEtag() != null || page.getLastModified() != null;
+        }
+    }
+    
+    /**
+     * Class constructor.
+     * 
+     * @param directory Directory holding the entry files - Created if it does not exist.
+     * @param ttlMillis Time (milliseconds) for which an entry is used without revalidation. 0 to always revalidate.
+     * @param maxBytes Maximum total size (bytes) of the entry files.
+     * @throws IOException If the directory cannot be created.
+     */
+    public ResponseCache(File directory, long ttlMillis, long maxBytes) throws IOException {
+        if (ttlMillis < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("TTL and maximum size must not be negative");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+        
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        
+        // Pick up the entries left by previous runs.
+        for (File file: entryFiles()) {
+            currentBytes.addAndGet(file.length());
+        }
+    }
+    
+    /**
+     * Looks up the cached response for a URL.
+     * 
+     * @param url The page address.
+     * @return The Entry, or null if the URL is not cached (or its entry cannot be read).
+     */
+    public Entry lookup(String url) {
+        File file = entryFile(url);
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != ENTRY_VERSION) {
+                // Older format - Treat as not cached.
+                return null;
+            }
+            
+            long storedAt = in.readLong();
+            if (!in.readUTF().equals(url)) {
+                // A (very unlikely) hash collision - Treat as not cached.
+                return null;
+            }
+            
+            String etag = readOptional(in);
+            String lastModified = readOptional(in);
+            String charset = readOptional(in);
+            long contentLength = in.readLong();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            
+            // Record the use of the entry for the least recently used eviction.
+            file.setLastModified(System.currentTimeMillis());
+            
+            return new Entry(new FetchedPage(url, body, charset, etag, lastModified, contentLength), storedAt);
+        } catch (FileNotFoundException fnfe) {
+            return null;
+        } catch (IOException ioe) {
+            Logger.getLogger(ResponseCache.class.getName()).log(Level.WARNING, "Unable to read cache entry for " + url, ioe);
+            return null;
+        }
+    }
+    
+    /**
+     * @return true if the entry is young enough to be used without revalidation.
+     */
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.getStoredAt() < ttlMillis;
+    }
+    
+    /**
+     * Stores (or replaces) the cached response for a URL, evicting least recently used entries if the cache
+     * goes over its maximum size.
+     * 
+     * @param page The FetchedPage to store.
+     */
+    public void store(FetchedPage page) {
+        File file = entryFile(page.getUrl());
+        File tmp = null;
+        
+        try {
+            tmp = File.createTempFile("entry", ".tmp", directory);
+            
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(ENTRY_VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeUTF(page.getUrl());
+                writeOptional(out, page.getEtag());
+                writeOptional(out, page.getLastModified());
+                writeOptional(out, page.getCharset());
+                out.writeLong(page.getContentLength());
+                out.writeInt(page.getBody().length);
+                out.write(page.getBody());
+            }
+            
+            long newBytes = tmp.length();
+            
+            // The entry replaced and the size accounting are taken together (with evict()), so concurrent stores
+            // of the same URL each account for the entry they actually replaced.
+            synchronized (this) {
+                long previousBytes = file.length();
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                
+                if (currentBytes.addAndGet(newBytes - previousBytes) > maxBytes) {
+                    evict();
+                }
+            }
+        } catch (IOException ioe) {
+            // The cache is an optimisation only - Log and carry on without it.
+            Logger.getLogger(ResponseCache.class.getName()).log(Level.WARNING, "Unable to store cache entry for " + page.getUrl(), ioe);
+        } finally {
+            // Only still there if it was not moved into place.
+            if (tmp != null && tmp.exists() && !tmp.delete()) {
+                Logger.getLogger(ResponseCache.class.getName()).log(Level.WARNING, "Unable to delete temporary cache file " + tmp);
+            }
+        }
+    }
+    
+    /**
+     * Records that a cached response has been revalidated (304 Not Modified), restarting its time to live.
+     * 
+     * @param entry The revalidated Entry.
+     * @return The Entry with its new stored time.
+     */
+    public Entry revalidated(Entry entry) {
+        long now = System.currentTimeMillis();
+        
+        // Only the stored time changes, so overwrite it in place rather than rewriting the whole entry.
+        try (RandomAccessFile raf = new RandomAccessFile(entryFile(entry.getPage().getUrl()), "rw")) {
+            raf.seek(STORED_AT_OFFSET);
+            raf.writeLong(now);
+        } catch (IOException ioe) {
+            Logger.getLogger(ResponseCache.class.getName()).log(Level.WARNING, "Unable to update cache entry for " + entry.getPage().getUrl(), ioe);
+        }
+        
+        return new Entry(entry.getPage(), now);
+    }
+    
+    /**
+     * @return The total size (bytes) of the entries in the cache.
+     */
+    public long getCurrentBytes() {
+        return currentBytes.get();
+    }
+    
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    /**
+     * Deletes the least recently used entries until the cache is back within its maximum size.
+     */
+    private synchronized void evict() {
+        if (currentBytes.get() <= maxBytes) {
+            // Another thread has already evicted.
+            return;
+        }
+        
+        File[] files = entryFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        
+        for (File file: files) {
+            if (currentBytes.get() <= maxBytes) {
+                break;
+            }
+            
+            long bytes = file.length();
+            if (file.delete()) {
+                currentBytes.addAndGet(-bytes);
+            }
+        }
+    }
+    
+    private File[] entryFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+    
+    private File entryFile(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + ENTRY_SUFFIX.length());
+            
+            for (byte b: hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(ENTRY_SUFFIX).toString());
+        } catch (NoSuchAlgorithmException nsae) {
+            // Every Java platform is required to support SHA-1.
+            throw new IllegalStateException(nsae);
+        }
+    }
+    
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,379 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+/**
+ * RetryPolicy Class
+ *
+ * How hard the PageScraper tries to fetch a webpage:
+ *     Retries  - A request that fails in a way that may not happen again (no response, timed out, or a 408 /
+ *                429 / 500 / 502 / 503 / 504 status) is tried again, up to maxAttempts in all. Before each
+ *                retry it waits a random time (full jitter) of up to baseDelayMillis doubled for each attempt
+ *                so far, capped at maxDelayMillis - or the response's Retry-After, if longer.
+ *     Deadline - All the attempts for a webpage must complete within deadlineMillis (0 for no deadline).
+ *     Hedging  - When an attempt has taken longer than the hedgePercentile (e.g. 95th) of the recent
+ *                attempts, a second, duplicate request is sent and whichever response arrives first is used.
+ *                A few slow responses then no longer decide how long the whole scrape takes. Both are timed
+ *                from when the request is sent - Not from any wait for the RequestScheduler before it, so a
+ *                request held back by the rate limit is not hedged (which would only take another turn).
+ *
+ * Immutable. The latencies for hedging are kept by the caller in a LatencyTracker.
+ *
+ * @author John Moores
+ */
+public final class RetryPolicy {
+    // Attempt threads - Daemon, so that an abandoned (hedged or timed out) request cannot keep the JVM running.
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "RetryPolicy-attempt");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // How often a request that is still waiting to be sent is checked on, for hedging.
+    private static final long SEND_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * 3 attempts with a base delay of 100 milliseconds (up to 2 seconds), no deadline and no hedging.
+     */
+    public static final RetryPolicy DEFAULT = builder().build();
+
+    /**
+     * A single attempt - As before there were retries.
+     */
+    public static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineMillis;
+    private final double hedgePercentile;
+
+    /**
+     * RetryPolicy Builder Class
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long baseDelayMillis = 100;
+        private long maxDelayMillis = 2000;
+        private long deadlineMillis;
+        private double hedgePercentile;
+
+        Builder() {
+        }
+
+        /**
+         * @param argMaxAttempts Attempts in all, including the first (at least 1).
+         */
+        public Builder maxAttempts(int argMaxAttempts) {
+            if (argMaxAttempts < 1) {
+                throw new IllegalArgumentException("Maximum attempts must be at least 1 but was " + argMaxAttempts);
+            }
+            maxAttempts = argMaxAttempts;
+            return this;
+        }
+
+        public Builder backOff(long argBaseDelayMillis, long argMaxDelayMillis) {
+            if (argBaseDelayMillis < 0 || argMaxDelayMillis < argBaseDelayMillis) {
+                throw new IllegalArgumentException("Invalid back off " + argBaseDelayMillis + " to " + argMaxDelayMillis + "ms");
+            }
+            baseDelayMillis = argBaseDelayMillis;
+            maxDelayMillis = argMaxDelayMillis;
+            return this;
+        }
+
+        /**
+         * @param argDeadlineMillis Time allowed for all the attempts for a webpage - 0 for no deadline.
+         */
+        public Builder deadlineMillis(long argDeadlineMillis) {
+            if (argDeadlineMillis < 0) {
+                throw new IllegalArgumentException("Deadline must not be negative but was " + argDeadlineMillis);
+            }
+            deadlineMillis = argDeadlineMillis;
+            return this;
+        }
+
+        /**
+         * @param argHedgePercentile Latency percentile (e.g. 95) after which a duplicate request is sent - 0 for
+         *                           no hedging.
+         */
+        public Builder hedgePercentile(double argHedgePercentile) {
+            if (argHedgePercentile < 0 || argHedgePercentile >= 100) {
+                throw new IllegalArgumentException("Hedge percentile must be from 0 to below 100 but was " + argHedgePercentile);
+            }
+            hedgePercentile = argHedgePercentile;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+    /**
+     * One attempt at a request.
+     */
+    interface Attempt {
+        /**
+         * @param sending To be run as the request is sent - After any wait for the RequestScheduler.
+         */
+        FetchResponse call(Runnable sending) throws IOException;
+    }
+
+    /**
+     * RetryPolicy SendTime Class
+     *
+     * When an attempt's request was sent - Set by the thread making the attempt.
+     */
+    private static final class SendTime implements Runnable {
+        private volatile boolean sent;
+        private volatile long nanos;
+
+        @Override
+        public void run() {
+            nanos = System.nanoTime();
+            sent = true;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private RetryPolicy(Builder builder) {
+        maxAttempts = builder.maxAttempts;
+        baseDelayMillis = builder.baseDelayMillis;
+        maxDelayMillis = builder.maxDelayMillis;
+        deadlineMillis = builder.deadlineMillis;
+        hedgePercentile = builder.hedgePercentile;
+    }
+
+    /**
+     * Makes the attempts at a request, as set out by the policy.
+     *
+     * @param url The page address requested - For the messages.
+     * @param attempt Makes one attempt at the request.
+     * @param latencies The latencies of recent attempts - Added to, and used for hedging.
+     * @param retries Counts the retries and hedged requests made - May be null.
+     * @return The response - The last one when all the attempts got a response with a retryable status.
+     * @throws IOException The exception of the last attempt, SocketTimeoutException if the deadline passed or
+     *                     InterruptedIOException if interrupted.
+     */
+    FetchResponse execute(String url, Attempt attempt, LatencyTracker latencies, AtomicInteger retries) throws IOException {
+        long deadlineNanos = deadlineMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : 0;
+
+        for (int attemptNo = 1; ; attemptNo++) {
+            FetchResponse res = null;
+            IOException failure = null;
+            long delayMillis;
+
+            try {
+                res = attempt(url, attempt, latencies, deadlineNanos, retries);
+
+                if (attemptNo >= maxAttempts || !isRetryable(res.getStatusCode())) {
+                    return res;
+                }
+                delayMillis = Math.max(backOffMillis(attemptNo), retryAfterMillis(res, 0));
+            } catch (IOException ioe) {
+                if (attemptNo >= maxAttempts || !isRetryable(ioe)) {
+                    throw ioe;
+                }
+                failure = ioe;
+                delayMillis = backOffMillis(attemptNo);
+            }
+
+            if (deadlineNanos != 0 && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) - deadlineNanos >= 0) {
+                // No time for another attempt - Give back what there is.
+                if (res != null) {
+                    return res;
+                }
+                throw failure;
+            }
+
+            Logger.getLogger(RetryPolicy.class.getName()).log(Level.FINE, "Retrying " + url + " in " + delayMillis + "ms after "
+                + (res != null ? "status " + res.getStatusCode() : failure.toString()));
+
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to retry " + url);
+            }
+
+            if (retries != null) {
+                retries.incrementAndGet();
+            }
+        }
+    } // execute() method
+
+    /**
+     * Makes one attempt - On the calling thread when there is no deadline or hedging, otherwise on the
+     * EXECUTOR threads so that it can be hedged or abandoned.
+     */
+    private FetchResponse attempt(String url, Attempt attempt, LatencyTracker latencies, long deadlineNanos, AtomicInteger retries) throws IOException {
+        if (deadlineNanos == 0 && hedgePercentile == 0) {
+            return timed(attempt, latencies, new SendTime());
+        }
+
+        CompletionService<FetchResponse> completionService = new ExecutorCompletionService<FetchResponse>(EXECUTOR);
+        List<Future<FetchResponse>> futures = new ArrayList<Future<FetchResponse>>(2);
+
+        long hedgeAfterMillis = hedgePercentile > 0 ? latencies.percentileMillis(hedgePercentile) : -1;
+        long hedgeAfterNanos = TimeUnit.MILLISECONDS.toNanos(hedgeAfterMillis);
+        SendTime sendTime = new SendTime();
+        IOException failure = null;
+        int outstanding = 1;
+
+        futures.add(completionService.submit(() -> timed(attempt, latencies, sendTime)));
+
+        try {
+            while (outstanding > 0) {
+                long now = System.nanoTime();
+                long waitNanos = deadlineNanos != 0 ? deadlineNanos - now : Long.MAX_VALUE;
+                boolean mayHedge = futures.size() == 1 && hedgeAfterMillis >= 0;
+
+                if (mayHedge) {
+                    // Until the hedge is due - Or, while the request is still waiting to be sent, to check again.
+                    waitNanos = Math.min(waitNanos, sendTime.sent ? sendTime.nanos + hedgeAfterNanos - now
+                        : Math.max(hedgeAfterNanos, SEND_CHECK_NANOS));
+                }
+
+                Future<FetchResponse> done = completionService.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+
+                if (done == null) {
+                    if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0) {
+                        throw new SocketTimeoutException("Deadline of " + deadlineMillis + "ms passed fetching " + url);
+                    }
+                    if (mayHedge && sendTime.sent && System.nanoTime() - (sendTime.nanos + hedgeAfterNanos) >= 0) {
+                        // Slower than usual - Send a duplicate request and use whichever responds first.
+                        futures.add(completionService.submit(() -> timed(attempt, latencies, new SendTime())));
+                        outstanding++;
+                        if (retries != null) {
+                            retries.incrementAndGet();
+                        }
+                    }
+                    continue;
+                }
+
+                outstanding--;
+
+                try {
+                    return done.get();
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof IOException) {
+                        // Wait for the other request, if there is one.
+                        failure = (IOException) ee.getCause();
+                    } else if (ee.getCause() instanceof Error) {
+                        throw (Error) ee.getCause();
+                    } else {
+                        throw (RuntimeException) ee.getCause();
+                    }
+                }
+            }
+            throw failure;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching " + url);
+        } finally {
+            // Abandon the request still in progress (if any).
+            for (Future<FetchResponse> future: futures) {
+                future.cancel(true);
+            }
+        }
+    } // attempt() method
+
+    /**
+     * Makes an attempt and records its latency - From when the request was sent to its response.
+     */
+    private static FetchResponse timed(Attempt attempt, LatencyTracker latencies, SendTime sendTime) throws IOException {
+        FetchResponse res = attempt.call(sendTime);
+        if (sendTime.sent) {
+            latencies.record(System.nanoTime() - sendTime.nanos);
+        }
+        return res;
+    }
+
+    /**
+     * @return A random delay (full jitter) before the retry following the given attempt.
+     */
+    long backOffMillis(int attemptNo) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attemptNo - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @return true for failures that may not happen again - Not for ones that will (e.g. a bad URL), nor when
+     *         the thread has been interrupted.
+     */
+    static boolean isRetryable(IOException ioe) {
+        if (ioe instanceof HttpStatusException) {
+            return isRetryable(((HttpStatusException) ioe).getStatusCode());
+        }
+        return !(ioe instanceof MalformedURLException || ioe instanceof UnsupportedMimeTypeException
+            || ioe instanceof BodyReader.BodyTooLargeException
+            || (ioe instanceof InterruptedIOException && !(ioe instanceof SocketTimeoutException))
+            || Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * @return The Retry-After of a response in milliseconds, or defaultMillis if it has none in seconds.
+     */
+    static long retryAfterMillis(FetchResponse res, long defaultMillis) {
+        String retryAfter = res.header("Retry-After");
+
+        try {
+            if (retryAfter != null) {
+                return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+            }
+        } catch (NumberFormatException nfe) {
+            // An HTTP date - Not worth parsing, use the default.
+        }
+        return defaultMillis;
+    }
+
+    /**
+     *  Accessor Methods
+     */
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+} // RetryPolicy class
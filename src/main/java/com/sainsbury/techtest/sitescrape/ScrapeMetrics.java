@@ -0,0 +1,246 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * ScrapeMetrics Class
+ * 
+ * Instrumentation of the scrapes made with a PageScraper, so that it can be seen where the time goes:
+ * 
+ *     Stage timings  - A StageMetrics (count, total, latency histogram) for each Stage.
+ *     Counters       - Product Items output, failed and not parsed (unchanged since extracted), and bytes of response body fetched (decompressed) and
+ *                      received (as sent by the server, e.g. gzip compressed).
+ *     Failures       - Number of failures by exception type (e.g. HttpStatusException, SocketTimeoutException).
+ * 
+ * Exposed over JMX once registered (see register()) as
+ * 
+ *     com.sainsbury.techtest.sitescrape:type=ScrapeMetrics,name=NAME
+ *     com.sainsbury.techtest.sitescrape:type=ScrapeMetrics,name=NAME,stage=STAGE - One per Stage.
+ * 
+ * and as a summary table from getSummary() (e.g. printed at the end of a run).
+ * 
+ * Thread-safe - One ScrapeMetrics is shared by all the threads of a scrape, and by the PageScraper objects
+ * built from one another (toBuilder()).
+ * 
+ * @author John Moores
+ */
+public class ScrapeMetrics implements ScrapeMetricsMBean {
+    private static final String DOMAIN = "com.sainsbury.techtest.sitescrape";
+    
+    /**
+     * The stages of a scrape that are timed.
+     */
+    public enum Stage {
+        LISTING_FETCH("listing-fetch"),  // Fetching a product listing webpage (including retries).
+        LISTING_PARSE("listing-parse"),  // Parsing a product listing webpage into a document.
+        FETCH("fetch"),                  // Fetching a Product Item webpage (including the cache and retries).
+        PARSE("parse"),                  // Parsing a Product Item webpage into a document.
+        EXTRACT("extract"),              // Finding the Title, Unit Price and Description (by document or streaming).
+        PRICE("price"),                  // Converting the Unit Price text to the Unit Price.
+        OUTPUT("output");                // Passing a Product Item to the ScrapeResultWriter (e.g. writing its JSON).
+        
+        private final String label;
+        
+        Stage(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private final Map<Stage, StageMetrics> stages = new EnumMap<Stage, StageMetrics>(Stage.class);
+    private final LongAdder productsScraped = new LongAdder();
+    private final LongAdder productsFailed = new LongAdder();
+    private final LongAdder parsesSkipped = new LongAdder();
+    private final LongAdder bytesFetched = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<String, LongAdder>();
+    
+    // The names registered with JMX - Guarded by "this".
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    
+    public ScrapeMetrics() {
+        for (Stage stage: Stage.values()) {
+            stages.put(stage, new StageMetrics(stage.getLabel()));
+        }
+    }
+    
+    /**
+     * Records a completion of a stage.
+     * 
+     * @param stage The stage.
+     * @param startNanos System.nanoTime() when the stage started.
+     */
+    void record(Stage stage, long startNanos) {
+        stages.get(stage).record(System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Records a response body fetched.
+     * 
+     * @param receivedBytes Bytes of the body as received - Before decompression.
+     * @param bytes Bytes of the body - After decompression.
+     */
+    void fetched(long receivedBytes, long bytes) {
+        bytesReceived.add(receivedBytes);
+        bytesFetched.add(bytes);
+    }
+    
+    /**
+     * Records a Product Item webpage not parsed because its body is unchanged since it was last extracted.
+     */
+    void parseSkipped() {
+        parsesSkipped.increment();
+    }
+    
+    void productScraped() {
+        productsScraped.increment();
+    }
+    
+    /**
+     * Records a Product Item left out because its webpage could not be fetched.
+     */
+    void productFailed(Throwable cause) {
+        productsFailed.increment();
+        failure(cause);
+    }
+    
+    /**
+     * Records a failure by its exception type.
+     */
+    void failure(Throwable cause) {
+        failures.computeIfAbsent(cause.getClass().getSimpleName(), type -> new LongAdder()).increment();
+    }
+    
+    /**
+     * Registers the metrics with the platform MBeanServer, so they can be seen with JMX tools (e.g. JConsole).
+     * 
+     * @param name The name to register under - Distinguishes the ScrapeMetrics of different PageScraper objects.
+     * @throws JMException If they cannot be registered (e.g. the name is already in use).
+     */
+    public synchronized void register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String base = DOMAIN + ":type=ScrapeMetrics,name=" + ObjectName.quote(name);
+        
+        try {
+            ObjectName objectName = new ObjectName(base);
+            server.registerMBean(this, objectName);
+            registered.add(objectName);
+            
+            for (StageMetrics stageMetrics: stages.values()) {
+                objectName = new ObjectName(base + ",stage=" + stageMetrics.getName());
+                server.registerMBean(stageMetrics, objectName);
+                registered.add(objectName);
+            }
+        } catch (JMException jme) {
+            unregister();
+            throw jme;
+        }
+    } // register() method
+    
+    /**
+     * Removes the metrics from the platform MBeanServer - Does nothing if not registered.
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        
+        for (ObjectName objectName: registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException jme) {
+                // Already gone.
+            }
+        }
+        registered.clear();
+    } // unregister() method
+    
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        
+        summary.append(String.format("%-14s %8s %11s %9s %9s %9s %9s %9s%n", "Stage", "Count", "Total ms", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "Max ms"));
+        for (StageMetrics s: stages.values()) {
+            summary.append(String.format("%-14s %8d %11.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", s.getName(), s.getCount(),
+                s.getTotalMillis(), s.getMeanMillis(), s.getP50Millis(), s.getP90Millis(), s.getP99Millis(), s.getMaxMillis()));
+        }
+        
+        summary.append(String.format("Products: %d (%d failed, %d unchanged), bytes fetched: %d (%d received)", getProductsScraped(), getProductsFailed(),
+            getParsesSkipped(), getBytesFetched(), getBytesReceived()));
+        
+        String[] failureCounts = getFailures();
+        if (failureCounts.length > 0) {
+            summary.append(String.format("%nFailures: %s", String.join(", ", failureCounts)));
+        }
+        return summary.toString();
+    } // getSummary() method
+    
+    @Override
+    public void reset() {
+        for (StageMetrics stageMetrics: stages.values()) {
+            stageMetrics.reset();
+        }
+        productsScraped.reset();
+        productsFailed.reset();
+        parsesSkipped.reset();
+        bytesFetched.reset();
+        bytesReceived.reset();
+        failures.clear();
+    }
+    
+    /**
+     *  Accessor Methods
+     */
+    
+    public StageMetrics getStage(Stage stage) {
+        return stages.get(stage);
+    }
+    
+    @Override
+    public long getProductsScraped() {
+        return productsScraped.sum();
+    }
+    
+    @Override
+    public long getProductsFailed() {
+        return productsFailed.sum();
+    }
+    
+    @Override
+    public long getParsesSkipped() {
+        return parsesSkipped.sum();
+    }
+    
+    @Override
+    public long getBytesFetched() {
+        return bytesFetched.sum();
+    }
+    
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+    
+    @Override
+    public String[] getFailures() {
+        List<Map.Entry<String, LongAdder>> entries = new ArrayList<Map.Entry<String, LongAdder>>(failures.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+        
+        String[] failureCounts = new String[entries.size()];
+        for (int i = 0; i < failureCounts.length; i++) {
+            failureCounts[i] = entries.get(i).getKey() + "=" + entries.get(i).getValue().sum();
+        }
+        return failureCounts;
+    }
+    
+} // ScrapeMetrics class
@@ -0,0 +1,54 @@
+package com.sainsbury.techtest.sitescrape;
+
+/**
+ * ScrapeMetricsMBean Interface
+ * 
+ * JMX view of the ScrapeMetrics of the scrapes made with a PageScraper - See ScrapeMetrics. The timings of each
+ * stage are registered as StageMetricsMBean objects alongside.
+ * 
+ * @author John Moores
+ */
+public interface ScrapeMetricsMBean {
+    
+    /**
+     * @return Number of Product Items output.
+     */
+    long getProductsScraped();
+    
+    /**
+     * @return Number of Product Items left out because their webpage could not be fetched.
+     */
+    long getProductsFailed();
+    
+    /**
+     * @return Number of Product Item webpages not parsed because their body was unchanged since they were last
+     *         extracted (see ContentHashStore and IncrementalScraper).
+     */
+    long getParsesSkipped();
+    
+    /**
+     * @return Bytes of response body fetched, after decompression (all the attempts, including retries and
+     *         hedged requests).
+     */
+    long getBytesFetched();
+    
+    /**
+     * @return Bytes of response body received - As getBytesFetched(), but before decompression (e.g. gzip).
+     */
+    long getBytesReceived();
+    
+    /**
+     * @return The failures by exception type, e.g. "HttpStatusException=2" - Most frequent first.
+     */
+    String[] getFailures();
+    
+    /**
+     * @return A summary table of all the metrics - As printed at the end of a run.
+     */
+    String getSummary();
+    
+    /**
+     * Sets all the metrics back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,240 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ScrapePipeline Class
+ *
+ * Processes the Product Items of a scrape in three stages, each with its own threads, so the network and the
+ * CPU are kept busy at the same time rather than taking turns:
+ *
+ *     Fetch  - fetchThreads threads fetching the webpages (I/O-bound - Mostly waiting for the network).
+ *     Parse  - parseThreads threads extracting the Product Items from the fetched webpages (CPU-bound - Sized
+ *              to the number of cores).
+ *     Output - The calling thread, passing the Product Items to the ScrapeResultWriter (in listing order unless
+ *              the writer is not ordered) and adding up the Price Total.
+ *
+ * The stages are connected by bounded queues. A webpage is only fetched once there is room for it - At most
+ * fetchThreads + queueCapacity Product Items are in the pipeline (fetched but not yet written) at a time - So
+ * if parsing or output falls behind, fetching waits rather than holding ever more webpages in memory.
+ *
+ * NOTE: Java 8 has no virtual threads, so the fetch stage uses a pool of platform threads - Its threads spend
+ *       their time blocked on the network, so there can be many more of them than cores.
+ *
+ * @author John Moores
+ */
+final class ScrapePipeline {
+    private final PageScraper pageScraper;
+    private final int fetchThreads;
+    private final int parseThreads;
+    private final int queueCapacity;
+
+    /**
+     * ScrapePipeline Item Class
+     *
+     * A Product Item passing through the pipeline.
+     */
+    private static final class Item {
+        private final int position;
+        private final String url;
+        private FetchedPage page;
+        private ProductInfo productInfo;
+        private IOException failure;
+        private RuntimeException exception;
+        private Error error;
+
+        Item(int position, String url) {
+            this.position = position;
+            this.url = url;
+        }
+    }
+
+    ScrapePipeline(PageScraper pageScraper, int fetchThreads, int parseThreads, int queueCapacity) {
+        this.pageScraper = pageScraper;
+        this.fetchThreads = fetchThreads;
+        this.parseThreads = parseThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Fetches, extracts and writes the Product Items.
+     *
+     * @param prodInfoUrls The page addresses of the Product Items.
+     * @param writer The ScrapeResultWriter receiving the ProductInfo objects.
+     * @return The Price Total of the ProductInfo objects written, in pence.
+     * @throws IOException If the writer fails.
+     */
+    long run(List<String> prodInfoUrls, ScrapeResultWriter writer) throws IOException {
+        int count = prodInfoUrls.size();
+        int window = fetchThreads + queueCapacity;
+
+        // Room in the pipeline - Taken (in listing order) before a webpage is fetched, given back once written.
+        // Taking it in listing order means the next Product Item to be written always has room.
+        Semaphore room = new Semaphore(window);
+        BlockingQueue<Item> parseQueue = new ArrayBlockingQueue<Item>(queueCapacity);
+        BlockingQueue<Item> outputQueue = new ArrayBlockingQueue<Item>(window);
+
+        ExecutorService dispatcher = Executors.newSingleThreadExecutor(threads("pipeline-dispatch"));
+        ExecutorService fetchers = Executors.newFixedThreadPool(fetchThreads, threads("pipeline-fetch"));
+        ExecutorService parsers = Executors.newFixedThreadPool(parseThreads, threads("pipeline-parse"));
+
+        // Price Total (in pence) of the ProductInfo objects written - Kept here, rather than returned by the
+        // output stage, so that it is still known if the output stage is interrupted.
+        long[] priceTotal = new long[1];
+
+        try {
+            // Fetch stage - Started in listing order as there is room.
+            dispatcher.execute(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        room.acquire();
+                        Item item = new Item(i, prodInfoUrls.get(i));
+                        fetchers.execute(() -> fetch(item, parseQueue, outputQueue));
+                    }
+                } catch (InterruptedException ie) {
+                    // Stopped.
+                }
+            });
+
+            // Parse stage.
+            for (int i = 0; i < parseThreads; i++) {
+                parsers.execute(() -> parse(parseQueue, outputQueue));
+            }
+
+            // Output stage - On this thread.
+            output(count, window, outputQueue, room, writer, priceTotal);
+            return priceTotal[0];
+        } catch (InterruptedException ie) {
+            // Restore the interrupt and give back the total of what has been written so far.
+            Thread.currentThread().interrupt();
+            Logger.getLogger(ScrapePipeline.class.getName()).log(Level.SEVERE, "Interrupted Processing Product Items", ie);
+            return priceTotal[0];
+        } finally {
+            dispatcher.shutdownNow();
+            fetchers.shutdownNow();
+            parsers.shutdownNow();
+        }
+    } // run() method
+
+    private void fetch(Item item, BlockingQueue<Item> parseQueue, BlockingQueue<Item> outputQueue) {
+        try {
+            try {
+                // Completed by the scrape being resumed - Nothing to fetch.
+                item.productInfo = pageScraper.checkpointedProductInfo(item.url);
+                
+                if (item.productInfo == null) {
+                    item.page = pageScraper.fetchProductPage(item.url);
+                    item.productInfo = pageScraper.unchangedProductInfo(item.url, item.page);
+                }
+            } catch (IOException ioe) {
+                item.failure = ioe;
+            } catch (RuntimeException re) {
+                item.exception = re;
+            } catch (Error e) {
+                item.error = e;
+            }
+
+            if (item.page != null && item.productInfo == null && item.exception == null && item.error == null) {
+                parseQueue.put(item);
+            } else {
+                // Nothing to parse - Failed, already completed, or unchanged since the previous run.
+                item.page = null;
+                outputQueue.put(item);
+            }
+        } catch (InterruptedException ie) {
+            // Stopped.
+        }
+    } // fetch() method
+
+    private void parse(BlockingQueue<Item> parseQueue, BlockingQueue<Item> outputQueue) {
+        try {
+            // Until stopped (interrupted) once the output stage is done.
+            while (true) {
+                Item item = parseQueue.take();
+
+                try {
+                    item.productInfo = pageScraper.extractProductInfo(item.url, item.page);
+                } catch (RuntimeException re) {
+                    item.exception = re;
+                } catch (Error e) {
+                    item.error = e;
+                }
+                // The webpage is no longer needed.
+                item.page = null;
+                outputQueue.put(item);
+            }
+        } catch (InterruptedException ie) {
+            // Stopped.
+        }
+    } // parse() method
+
+    /**
+     * Writes the Product Items as they come out of the pipeline, adding the Unit Price of each one written to
+     * priceTotal[0] (in pence).
+     */
+    private void output(int count, int window, BlockingQueue<Item> outputQueue, Semaphore room, ScrapeResultWriter writer, long[] priceTotal) throws IOException, InterruptedException {
+        boolean ordered = writer.isOrdered();
+
+        // Product Items that arrived ahead of their turn (ordered writer only), by position - Those in the
+        // pipeline are always within window positions of the next to be written, so a ring of that size will do.
+        Item[] waiting = ordered ? new Item[window] : null;
+        int next = 0;
+
+        for (int written = 0; written < count; ) {
+            Item item = outputQueue.take();
+
+            if (ordered) {
+                waiting[item.position % window] = item;
+                item = waiting[next % window];
+                if (item == null) {
+                    continue;
+                }
+                waiting[next++ % window] = null;
+            }
+
+            do {
+                if (item.error != null) {
+                    throw item.error;
+                }
+                if (item.exception != null) {
+                    // Rethrown as if the Product Item had been processed on the calling thread.
+                    throw item.exception;
+                }
+                if (item.failure != null) {
+                    pageScraper.writeFailure(item.url, item.failure, writer);
+                } else {
+                    priceTotal[0] += pageScraper.writeProductInfo(item.url, item.productInfo, writer);
+                }
+                written++;
+                room.release();
+
+                // An ordered writer may now be able to have the Product Items that were waiting for this one.
+                item = ordered && next < count ? waiting[next % window] : null;
+                if (item != null) {
+                    waiting[next++ % window] = null;
+                }
+            } while (item != null);
+        }
+    } // output() method
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger number = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+} // ScrapePipeline class
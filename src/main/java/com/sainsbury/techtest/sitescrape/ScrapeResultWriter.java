@@ -0,0 +1,66 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * ScrapeResultWriter Interface
+ * 
+ * Receives the output of a PageScraper scrape as it is produced, so the output does not have to be held in
+ * memory until the whole webpage has been processed.
+ * 
+ * The PageScraper calls the methods in the following order:
+ *     empty()                                 - When there is no Product List on the webpage, or
+ *     begin(), product() ... product(), end() - Otherwise, with product() called in listing order (unless the
+ *                                               writer is not ordered - See isOrdered()).
+ * 
+ * failed() is called, between begin() and end(), in place of product() for a Product Item whose webpage could
+ * not be fetched. Such Product Items are not included in the total.
+ * 
+ * @author John Moores
+ */
+public interface ScrapeResultWriter {
+    
+    /**
+     * @return true (the default) if product() and failed() must be called in listing order. Otherwise they are
+     *         called as each Product Item completes, so one slow webpage does not hold up the rest.
+     */
+    default boolean isOrdered() {
+        return true;
+    }
+    
+    /**
+     * Called when the webpage has no Product List - No other methods will be called.
+     */
+    void empty() throws IOException;
+    
+    /**
+     * Called once before the first Product Item.
+     */
+    void begin() throws IOException;
+    
+    /**
+     * Called for each Product Item, in listing order (see isOrdered()), as soon as it has been processed.
+     * 
+     * @param url The page address of the Product Item.
+     * @param productInfo The ProductInfo object created for the Product Item.
+     */
+    void product(String url, ProductInfo productInfo) throws IOException;
+    
+    /**
+     * Called for each Product Item whose webpage could not be fetched - In listing order with the product() calls.
+     * Does nothing unless implemented.
+     * 
+     * @param url The page address of the Product Item.
+     * @param cause Why the webpage could not be fetched.
+     */
+    default void failed(String url, IOException cause) throws IOException {
+    }
+    
+    /**
+     * Called once after the last Product Item.
+     * 
+     * @param total The Price Total of all the Product Items (two decimal places).
+     */
+    void end(BigDecimal total) throws IOException;
+}
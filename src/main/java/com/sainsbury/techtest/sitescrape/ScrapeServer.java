@@ -0,0 +1,363 @@
+package com.sainsbury.techtest.sitescrape;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ScrapeServer Class
+ *
+ * Keeps a PageScraper (with its connection pool, cache and warmed-up JVM) running behind a small local HTTP
+ * API, so a scrape does not pay for starting a new JVM each time:
+ *
+ *     GET /scrape?url=<product listing URL>  - The JSON document of the webpage, as output by scrape().
+ *     GET /metrics                           - The ScrapeMetrics summary (text).
+ *
+ * Results are cached in memory for ttlMillis, and requests for a webpage that is already being scraped wait
+ * for that scrape rather than starting another (request coalescing) - So many requests for the same webpage
+ * cost one scrape per TTL. The X-Cache response header says which: "hit" (cached), "coalesced" (waited for a
+ * scrape in progress) or "miss" (scraped).
+ *
+ * At most workers scrapes run at once, with up to maxQueued more waiting - Beyond that a request is answered
+ * with 503 Service Unavailable. A request whose scrape takes longer than requestTimeoutMillis is answered with
+ * 504 Gateway Timeout (the scrape carries on, and its result is cached).
+ *
+ * Listens on the loopback address only.
+ *
+ * @author John Moores
+ */
+public class ScrapeServer {
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    private final PageScraper pageScraper;
+    private final long ttlNanos;
+    private final long requestTimeoutMillis;
+    private final ThreadPoolExecutor scrapeExecutor;
+    private final ExecutorService requestExecutor;
+    private final HttpServer server;
+
+    // Result (or scrape in progress) for each product listing URL.
+    private final Map<String, CachedResult> results = new ConcurrentHashMap<String, CachedResult>();
+
+    /**
+     * ScrapeServer CachedResult Class
+     *
+     * The JSON document of a product listing webpage - Complete once scraped, and fresh until expiresAtNanos.
+     */
+    private static class CachedResult {
+        private final CompletableFuture<String> json = new CompletableFuture<String>();
+        private volatile long expiresAtNanos;
+
+        boolean isFresh(long now) {
+            // A scrape in progress counts as fresh - It is waited for.
+            return !json.isDone() || (!json.isCompletedExceptionally() && now - expiresAtNanos < 0);
+        }
+    }
+
+    /**
+     * ScrapeServer Builder Class
+     */
+    public static class Builder {
+        private final PageScraper pageScraper;
+        private int port = 8080;
+        private long ttlMillis = 60000;
+        private int workers = 4;
+        private int maxQueued = 64;
+        private long requestTimeoutMillis = 120000;
+
+        Builder(PageScraper pageScraper) {
+            this.pageScraper = pageScraper;
+        }
+
+        /**
+         * @param argPort Port to listen on - 0 for any free port (see getPort()).
+         */
+        public Builder port(int argPort) {
+            if (argPort < 0 || argPort > 65535) {
+                throw new IllegalArgumentException("Port must be between 0 and 65535 but was " + argPort);
+            }
+            port = argPort;
+            return this;
+        }
+
+        /**
+         * @param argTtlMillis How long a result is served from the cache - 0 to only coalesce requests.
+         */
+        public Builder ttlMillis(long argTtlMillis) {
+            if (argTtlMillis < 0) {
+                throw new IllegalArgumentException("TTL must not be negative but was " + argTtlMillis);
+            }
+            ttlMillis = argTtlMillis;
+            return this;
+        }
+
+        /**
+         * @param argWorkers Maximum scrapes at once.
+         */
+        public Builder workers(int argWorkers) {
+            if (argWorkers < 1) {
+                throw new IllegalArgumentException("Workers must be at least 1 but was " + argWorkers);
+            }
+            workers = argWorkers;
+            return this;
+        }
+
+        /**
+         * @param argMaxQueued Maximum scrapes waiting for a worker.
+         */
+        public Builder maxQueued(int argMaxQueued) {
+            if (argMaxQueued < 1) {
+                throw new IllegalArgumentException("Maximum queued must be at least 1 but was " + argMaxQueued);
+            }
+            maxQueued = argMaxQueued;
+            return this;
+        }
+
+        public Builder requestTimeoutMillis(long argRequestTimeoutMillis) {
+            if (argRequestTimeoutMillis < 1) {
+                throw new IllegalArgumentException("Request timeout must be at least 1 but was " + argRequestTimeoutMillis);
+            }
+            requestTimeoutMillis = argRequestTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Creates the ScrapeServer - Not started.
+         *
+         * @throws IOException If the port cannot be listened on.
+         */
+        public ScrapeServer build() throws IOException {
+            return new ScrapeServer(this);
+        }
+    }
+
+    /**
+     * @param pageScraper The PageScraper shared by all the scrapes.
+     * @return A Builder with the steady state values - Port 8080, 60 second TTL and 4 workers.
+     */
+    public static Builder builder(PageScraper pageScraper) {
+        return new Builder(pageScraper);
+    }
+
+    private ScrapeServer(Builder builder) throws IOException {
+        pageScraper = builder.pageScraper;
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(builder.ttlMillis);
+        requestTimeoutMillis = builder.requestTimeoutMillis;
+
+        scrapeExecutor = new ThreadPoolExecutor(builder.workers, builder.workers, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(builder.maxQueued));
+
+        // Request threads mostly wait for scrapes - Enough for every running and queued scrape to be waited on,
+        // with more requests queueing in the HttpServer.
+        requestExecutor = Executors.newFixedThreadPool(builder.workers + builder.maxQueued);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/scrape", this::handleScrape);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops listening and stops the workers - Scrapes in progress are interrupted.
+     */
+    public void stop() {
+        server.stop(0);
+        requestExecutor.shutdownNow();
+        scrapeExecutor.shutdownNow();
+    }
+
+    /**
+     * @return The port listened on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleScrape(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, TEXT_CONTENT_TYPE, "Only GET is supported\n");
+                return;
+            }
+
+            String urlStr = queryParameter(exchange.getRequestURI().getRawQuery(), "url");
+            URL url;
+            try {
+                url = new URL(urlStr == null ? "" : urlStr);
+            } catch (MalformedURLException mue) {
+                send(exchange, 400, TEXT_CONTENT_TYPE, "A product listing URL must be given as ?url=\n");
+                return;
+            }
+
+            String json;
+            try {
+                json = result(url, exchange);
+            } catch (RejectedExecutionException ree) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, TEXT_CONTENT_TYPE, "Too many scrapes in progress\n");
+                return;
+            } catch (TimeoutException te) {
+                send(exchange, 504, TEXT_CONTENT_TYPE, "Scrape not complete within " + requestTimeoutMillis + "ms\n");
+                return;
+            } catch (ExecutionException ee) {
+                Logger.getLogger(ScrapeServer.class.getName()).log(Level.SEVERE, "Error Scraping " + url, ee.getCause());
+                send(exchange, 502, TEXT_CONTENT_TYPE, "Scrape failed: " + ee.getCause() + "\n");
+                return;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, TEXT_CONTENT_TYPE, "Server stopping\n");
+                return;
+            }
+
+            send(exchange, 200, JSON_CONTENT_TYPE, json);
+        } finally {
+            exchange.close();
+        }
+    } // handleScrape() method
+
+    /**
+     * @return The JSON document of the webpage - From the cache, from a scrape already in progress, or scraped.
+     * @throws RejectedExecutionException If there are too many scrapes in progress.
+     */
+    private String result(URL url, HttpExchange exchange) throws InterruptedException, ExecutionException, TimeoutException {
+        String key = url.toString();
+        String cache;
+        CachedResult result;
+
+        while (true) {
+            long now = System.nanoTime();
+            CachedResult current = results.get(key);
+
+            if (current != null && current.isFresh(now)) {
+                result = current;
+                cache = current.json.isDone() ? "hit" : "coalesced";
+                break;
+            }
+
+            // Stale, failed or not cached - Start a scrape, unless another request got there first.
+            CachedResult fresh = new CachedResult();
+            if (current == null ? results.putIfAbsent(key, fresh) == null : results.replace(key, current, fresh)) {
+                try {
+                    scrapeExecutor.execute(() -> scrape(url, fresh));
+                } catch (RejectedExecutionException ree) {
+                    results.remove(key, fresh);
+                    fresh.json.completeExceptionally(ree);
+                    throw ree;
+                }
+                removeExpired(now);
+                result = fresh;
+                cache = "miss";
+                break;
+            }
+        }
+
+        exchange.getResponseHeaders().set("X-Cache", cache);
+        return result.json.get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+    } // result() method
+
+    private void scrape(URL url, CachedResult result) {
+        try {
+            JsonTreeResultWriter writer = new JsonTreeResultWriter();
+            pageScraper.scrape(url, writer);
+
+            result.expiresAtNanos = System.nanoTime() + ttlNanos;
+            result.json.complete(writer.toString());
+        } catch (IOException | RuntimeException ex) {
+            // Not cached - The next request tries again.
+            results.remove(url.toString(), result);
+            result.json.completeExceptionally(ex);
+        }
+    } // scrape() method
+
+    /**
+     * Removes the expired results, so webpages no longer asked for are not held forever.
+     */
+    private void removeExpired(long now) {
+        for (Iterator<CachedResult> it = results.values().iterator(); it.hasNext(); ) {
+            if (!it.next().isFresh(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, TEXT_CONTENT_TYPE, pageScraper.getMetrics().getSummary() + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return The decoded value of a query parameter, or null if not given.
+     */
+    static String queryParameter(String rawQuery, String name) {
+        if (rawQuery == null) {
+            return null;
+        }
+
+        for (String parameter: rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String parameterName = equals < 0 ? parameter : parameter.substring(0, equals);
+
+            if (parameterName.equals(name)) {
+                try {
+                    return equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+                } catch (UnsupportedEncodingException uee) {
+                    // Not possible - Every Java platform supports UTF-8.
+                    throw new IllegalStateException(uee);
+                } catch (IllegalArgumentException iae) {
+                    // Badly encoded - Treated as not given.
+                    return null;
+                }
+            }
+        }
+        return null;
+    } // queryParameter() method
+
+    /**
+     *  Accessor Methods
+     */
+
+    public PageScraper getPageScraper() {
+        return pageScraper;
+    }
+
+} // ScrapeServer class
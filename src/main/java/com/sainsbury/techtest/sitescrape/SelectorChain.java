@@ -0,0 +1,129 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+
+/**
+ * SelectorChain Class
+ *
+ * A CSS selector made of SimpleSelectors joined by descendant (" ") and child (">") combinators - e.g.
+ * "ul.pages li.next a" or "div.productInfo > h3 > a". Anything else (attributes, pseudo selectors, sibling
+ * combinators or groups) is not a SelectorChain.
+ *
+ * Matches elements in the same way as the equivalent jsoup selector - As with jsoup, an ancestor matched by a
+ * descendant combinator may be the element queried from, but no element above it. Built from jsoup's public
+ * Evaluator class only, so the locators can be compiled once without jsoup's (internal) query parser.
+ * Immutable, so can be shared between threads.
+ *
+ * @author John Moores
+ */
+class SelectorChain extends Evaluator {
+    // The SimpleSelectors from left to right, and the combinator before each one after the first.
+    private final List<SimpleSelector> selectors;
+    private final List<Character> combinators;
+
+    private SelectorChain(List<SimpleSelector> selectors, List<Character> combinators) {
+        this.selectors = Collections.unmodifiableList(selectors);
+        this.combinators = Collections.unmodifiableList(combinators);
+    }
+
+    /**
+     * @return The SelectorChain, or null if the locator is not SimpleSelectors joined by descendant and child
+     *         combinators (or is a single SimpleSelector).
+     */
+    static SelectorChain parse(String locator) {
+        if (locator == null) {
+            return null;
+        }
+
+        List<SimpleSelector> selectors = new ArrayList<SimpleSelector>();
+        List<Character> combinators = new ArrayList<Character>();
+        String query = locator.trim();
+        int i = 0;
+
+        while (i < query.length()) {
+            int end = i;
+            while (end < query.length() && query.charAt(end) != '>' && !StreamingProductExtractor.isWhitespace(query.charAt(end))) {
+                end++;
+            }
+
+            SimpleSelector selector = SimpleSelector.parse(query.substring(i, end));
+            if (selector == null) {
+                return null;
+            }
+            selectors.add(selector);
+
+            // The combinator - Whitespace alone, or a '>' with any whitespace around it.
+            char combinator = ' ';
+            while (end < query.length() && (query.charAt(end) == '>' || StreamingProductExtractor.isWhitespace(query.charAt(end)))) {
+                if (query.charAt(end) == '>') {
+                    if (combinator == '>') {
+                        return null;
+                    }
+                    combinator = '>';
+                }
+                end++;
+            }
+            if (end < query.length()) {
+                combinators.add(combinator);
+            } else if (combinator == '>') {
+                // Nothing after the '>'.
+                return null;
+            }
+            i = end;
+        }
+
+        if (selectors.size() < 2) {
+            return null;
+        }
+        return new SelectorChain(selectors, combinators);
+    }
+
+    @Override
+    public boolean matches(Element root, Element element) {
+        return matches(root, element, selectors.size() - 1);
+    }
+
+    /**
+     * @return true if the element matches the SelectorChain up to (and including) the SimpleSelector at index.
+     */
+    private boolean matches(Element root, Element element, int index) {
+        if (!selectors.get(index).matches(root, element)) {
+            return false;
+        }
+        if (index == 0) {
+            return true;
+        }
+        if (element == root) {
+            // Nothing above the element queried from is matched.
+            return false;
+        }
+
+        Element parent = element.parent();
+        if (combinators.get(index - 1) == '>') {
+            return parent != null && matches(root, parent, index - 1);
+        }
+
+        for (Element ancestor = parent; ancestor != null; ancestor = ancestor.parent()) {
+            if (matches(root, ancestor, index - 1)) {
+                return true;
+            }
+            if (ancestor == root) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder query = new StringBuilder(selectors.get(0).toString());
+        for (int i = 1; i < selectors.size(); i++) {
+            query.append(combinators.get(i - 1) == '>' ? " > " : " ").append(selectors.get(i));
+        }
+        return query.toString();
+    }
+}
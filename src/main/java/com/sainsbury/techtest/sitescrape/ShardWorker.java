@@ -0,0 +1,135 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ShardWorker Class
+ *
+ * Entry point of a worker process of a ShardedScraper. Reads the Product Item URLs of its shard from stdin (one
+ * per line, to the end of the input), fetches and extracts them with its own PageScraper, and writes each one to
+ * stdout as a line of NDJSON (see NdjsonResultWriter) as soon as it completes, ending with the summary line - So
+ * the coordinator can tell that the worker finished rather than died.
+ *
+ * The options (set by the ShardedScraper from its PageScraper) are
+ *
+ *     --concurrency=N  --parse-threads=N  --retries=N  --deadline-ms=N  --hedge-percentile=P  --transport=NAME
+ *     --max-body-size=BYTES  --max-rate=R  --burst=N  --max-per-host=N  --no-streaming
+ *     --title-container-locator=CSS  --title-locator=CSS  --price-locator=CSS  --description-locator=CSS
+ *
+ * Logging goes to stderr, which the coordinator passes through. Exits with status 0 once the summary line is
+ * written, 2 for an invalid option and 1 if the output could not be written.
+ *
+ * @author John Moores
+ */
+public class ShardWorker {
+
+    public static final void main(String[] args) {
+        PageScraper pageScraper;
+
+        try {
+            pageScraper = parseOptions(args).build();
+        } catch (IllegalArgumentException iae) {
+            // Includes NumberFormatException for the numeric options.
+            Logger.getLogger(ShardWorker.class.getName()).log(Level.SEVERE, "Invalid Shard Worker Option", iae);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            List<String> prodInfoUrls = new ArrayList<String>();
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (!line.isEmpty()) {
+                    prodInfoUrls.add(line);
+                }
+            }
+
+            // The NdjsonResultWriter is not ordered, so each Product Item is written (and flushed) as it completes.
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            NdjsonResultWriter writer = new NdjsonResultWriter(out);
+            writer.end(BigDecimal.valueOf(pageScraper.writeProductInfos(prodInfoUrls, writer), 2));
+        } catch (IOException ioe) {
+            Logger.getLogger(ShardWorker.class.getName()).log(Level.SEVERE, "Error Writing Shard Results with IOException", ioe);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return A PageScraper Builder set up from the options.
+     * @throws IllegalArgumentException If an option is not known or not valid.
+     */
+    static PageScraper.Builder parseOptions(String[] args) {
+        // The URL is not used - The Product Item URLs are given on stdin.
+        PageScraper.Builder builder = PageScraper.builder();
+        RetryPolicy.Builder retryPolicy = RetryPolicy.builder();
+        String transport = "okhttp";
+        long maxBodySize = BodyReader.DEFAULT_MAX_BODY_SIZE;
+        double maxRate = 0;
+        int burst = 1;
+        int maxPerHost = 0;
+
+        for (String arg: args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            if (arg.startsWith("--concurrency=")) {
+                builder.concurrency(Integer.parseInt(value));
+            } else if (arg.startsWith("--parse-threads=")) {
+                builder.parseThreads(Integer.parseInt(value));
+            } else if (arg.startsWith("--retries=")) {
+                retryPolicy.maxAttempts(Integer.parseInt(value) + 1);
+            } else if (arg.startsWith("--deadline-ms=")) {
+                retryPolicy.deadlineMillis(Long.parseLong(value));
+            } else if (arg.startsWith("--hedge-percentile=")) {
+                retryPolicy.hedgePercentile(Double.parseDouble(value));
+            } else if (arg.startsWith("--transport=")) {
+                transport = value;
+                if (!transport.equals("okhttp") && !transport.equals("jsoup")) {
+                    throw new IllegalArgumentException(arg);
+                }
+            } else if (arg.startsWith("--max-body-size=")) {
+                maxBodySize = Long.parseLong(value);
+            } else if (arg.startsWith("--max-rate=")) {
+                maxRate = Double.parseDouble(value);
+            } else if (arg.startsWith("--burst=")) {
+                burst = Integer.parseInt(value);
+            } else if (arg.startsWith("--max-per-host=")) {
+                maxPerHost = Integer.parseInt(value);
+            } else if (arg.equals("--no-streaming")) {
+                builder.streamingExtraction(false);
+            } else if (arg.startsWith("--title-container-locator=")) {
+                builder.productTitleDescriptionContainerLocator(value);
+            } else if (arg.startsWith("--title-locator=")) {
+                builder.productTitleElementTagLocator(value);
+            } else if (arg.startsWith("--price-locator=")) {
+                builder.productPricePerUnitLocator(value);
+            } else if (arg.startsWith("--description-locator=")) {
+                builder.productTextDescriptionLocator(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        builder.retryPolicy(retryPolicy.build());
+        builder.transport(transport.equals("jsoup") ? new JsoupFetchTransport(maxBodySize)
+            : new OkHttpFetchTransport(OkHttpFetchTransport.DEFAULT_TIMEOUT_MILLIS, maxBodySize));
+
+        if (maxRate > 0 || maxPerHost > 0) {
+            builder.requestScheduler(new RequestScheduler(maxRate, Math.max(1, burst),
+                maxPerHost > 0 ? maxPerHost : Integer.MAX_VALUE, Integer.MAX_VALUE));
+        }
+        return builder;
+    } // parseOptions() method
+
+} // ShardWorker class
@@ -0,0 +1,514 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * ShardedScraper Class
+ *
+ * Scrapes a product listing webpage with several worker processes on the same machine, so that the Product Item
+ * webpages are fetched and extracted with the connections and CPU of more than one JVM:
+ *
+ *     Coordinator - This object. Fetches the product listing webpage, shares the Product Item URLs out
+ *                   between the shards, and merges the results into one output with one Price Total.
+ *     Workers     - One process (see ShardWorker) per shard, started with this JVM's java and classpath. Each
+ *                   one is given the URLs of its shard over its stdin and streams back a line of NDJSON per
+ *                   Product Item over its stdout as each one completes.
+ *
+ * URLs are given to the shards by consistent hashing - Each shard has VIRTUAL_NODES points on a ring of 64-bit
+ * hashes (see ContentHashStore.hash()) and a URL goes to the shard of the first point at or after its own hash.
+ * So a URL always goes to the same shard (e.g. for a per-shard cache), the shards get about the same number of
+ * URLs, and changing the number of shards only moves about 1/N of the URLs.
+ *
+ * The output is the same as PageScraper.scrape() - In listing order for an ordered writer, otherwise as each
+ * Product Item arrives - with the Price Total added up exactly in pence by the coordinator. A Product Item
+ * whose worker dies before reporting it is passed to the writer's failed() method - As are the Product Items
+ * left of a worker that reports nothing for workerIdleMillis, which is then stopped.
+ *
+ * The workers are set up like the PageScraper (concurrency, parse threads, retries, transport, locators),
+ * except that the RequestScheduler's per-host limits are divided between them, so all the workers together stay
+ * within the limits. Each worker needs at least one request to a host at a time (and one token of burst), so
+ * there are no more shards than the RequestScheduler's maxInFlightPerHost (and burst, with a rate limit). There
+ * is no ResponseCache or ContentHashStore in the workers.
+ *
+ * @author John Moores
+ */
+public class ShardedScraper {
+    // Points on the ring for each shard - More evens out the number of URLs per shard.
+    static final int VIRTUAL_NODES = 128;
+
+    // Time allowed for the workers to write their summary lines and exit once all the results are in.
+    private static final long WORKER_EXIT_MILLIS = 5000;
+
+    // Time allowed for a worker to report its next Product Item when there is no RetryPolicy deadline.
+    static final long DEFAULT_WORKER_IDLE_MILLIS = 120000;
+
+    // Time allowed for a worker to start, over and above the RetryPolicy deadline.
+    private static final long WORKER_START_MILLIS = 10000;
+
+    private final PageScraper pageScraper;
+    private final int shards;
+    private final long workerIdleMillis;
+
+    // The ring - Point (hash) to shard.
+    private final TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+
+    /**
+     * ShardedScraper Result Class
+     *
+     * A line from a worker - A Product Item, a failed Product Item, or a worker that has died.
+     */
+    private static final class Result {
+        private final int shard;
+        private final String url;
+        private final ProductInfo productInfo;
+        private final IOException failure;
+
+        Result(int shard, String url, ProductInfo productInfo, IOException failure) {
+            this.shard = shard;
+            this.url = url;
+            this.productInfo = productInfo;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Class constructor - With workers allowed the RetryPolicy deadline (plus time to start) to report each
+     * Product Item, or DEFAULT_WORKER_IDLE_MILLIS if there is no deadline.
+     *
+     * @param pageScraper The PageScraper fetching the product listing webpage, and setting up the workers.
+     * @param shards Number of shards (worker processes) - Must be at least 1.
+     */
+    public ShardedScraper(PageScraper pageScraper, int shards) {
+        this(pageScraper, shards, defaultWorkerIdleMillis(pageScraper));
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param pageScraper The PageScraper fetching the product listing webpage, and setting up the workers.
+     * @param shards Number of shards (worker processes) - Must be at least 1. Capped at the RequestScheduler's
+     *               maxInFlightPerHost (and burst, with a rate limit), if there is one.
+     * @param workerIdleMillis Time allowed for a worker to report its next Product Item before it is stopped and
+     *                         its remaining Product Items failed - Must be at least 1.
+     */
+    public ShardedScraper(PageScraper pageScraper, int shards, long workerIdleMillis) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shards must be at least 1 but was " + shards);
+        }
+        if (workerIdleMillis < 1) {
+            throw new IllegalArgumentException("Worker idle time must be at least 1 but was " + workerIdleMillis);
+        }
+        this.pageScraper = pageScraper;
+        this.shards = maxShards(pageScraper, shards);
+        this.workerIdleMillis = workerIdleMillis;
+
+        if (this.shards < shards) {
+            Logger.getLogger(ShardedScraper.class.getName()).log(Level.INFO, "Using " + this.shards + " shards rather than "
+                + shards + " - Each shard needs at least one request to a host at a time");
+        }
+
+        for (int shard = 0; shard < this.shards; shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.put(hash("shard-" + shard + "-" + node), shard);
+            }
+        }
+    }
+
+    /**
+     * @return The RetryPolicy deadline plus WORKER_START_MILLIS, or DEFAULT_WORKER_IDLE_MILLIS if there is no deadline.
+     */
+    private static long defaultWorkerIdleMillis(PageScraper pageScraper) {
+        long deadlineMillis = pageScraper.getRetryPolicy().getDeadlineMillis();
+        return deadlineMillis > 0 ? deadlineMillis + WORKER_START_MILLIS : DEFAULT_WORKER_IDLE_MILLIS;
+    }
+
+    /**
+     * @return The shards, capped so that each worker's share of the per-host limits is at least 1 - Otherwise
+     *         the workers together would exceed the limits.
+     */
+    private static int maxShards(PageScraper pageScraper, int shards) {
+        RequestScheduler requestScheduler = pageScraper.getRequestScheduler();
+        if (requestScheduler == null) {
+            return shards;
+        }
+        int maxShards = requestScheduler.getMaxInFlightPerHost();
+        if (requestScheduler.getRequestsPerSecond() > 0) {
+            // The burst only counts with a rate limit.
+            maxShards = Math.min(maxShards, requestScheduler.getBurst());
+        }
+        return Math.min(shards, maxShards);
+    }
+
+    /**
+     * @return The shard of a Product Item URL.
+     */
+    int shardOf(String url) {
+        Map.Entry<Long, Integer> point = ring.ceilingEntry(hash(url));
+
+        // Past the last point - Round the ring to the first.
+        return (point != null ? point : ring.firstEntry()).getValue();
+    }
+
+    private static long hash(String value) {
+        return ContentHashStore.hash(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Scrapes the PageScraper's product listing webpage - See scrape(URL, ScrapeResultWriter).
+     */
+    public void scrape(ScrapeResultWriter writer) throws IOException {
+        scrape(pageScraper.getUrl(), writer);
+    }
+
+    /**
+     * Scrapes a product listing webpage, passing each Product Item to the given ScrapeResultWriter and the Price
+     * Total once all the workers are done - As PageScraper.scrape(URL, ScrapeResultWriter).
+     *
+     * @param listingUrl URL of the product listing webpage.
+     * @param writer The ScrapeResultWriter receiving the output.
+     * @throws IOException If the writer fails - Problems with the webpages and the workers are logged instead.
+     */
+    public void scrape(URL listingUrl, ScrapeResultWriter writer) throws IOException {
+        List<String> prodInfoUrls = Collections.<String>emptyList();
+
+        try {
+            prodInfoUrls = pageScraper.findProductUrls(pageScraper.fetchListing(listingUrl.toString()));
+
+            if (prodInfoUrls == null) {
+                // There is no List of Products - Output an empty JSON document.
+                writer.empty();
+                return;
+            }
+        } catch (IOException ioe) {
+            // Log the exception, but carry on and output what we have (nothing) - As PageScraper.scrape().
+            Logger.getLogger(ShardedScraper.class.getName()).log(Level.SEVERE, "Error Processing Main Page with " + ioe.getClass().getSimpleName(), ioe);
+        }
+
+        writer.begin();
+        writer.end(BigDecimal.valueOf(writeProductInfos(prodInfoUrls, writer), 2));
+    } // scrape(URL, ScrapeResultWriter) method
+
+    /**
+     * Shares the Product Item URLs out between the workers and passes their results to the writer.
+     *
+     * @return The Price Total of the ProductInfo objects written, in pence.
+     */
+    long writeProductInfos(List<String> prodInfoUrls, ScrapeResultWriter writer) throws IOException {
+        int count = prodInfoUrls.size();
+
+        // The URLs of each shard, and the positions (in listing order) of each URL - A URL listed twice is in
+        // the same shard both times, and its results come back in turn.
+        List<List<String>> shardUrls = new ArrayList<List<String>>();
+        Map<String, Deque<Integer>> positions = new HashMap<String, Deque<Integer>>();
+        int[] shardOfPosition = new int[count];
+        int[] unreported = new int[shards];
+
+        for (int shard = 0; shard < shards; shard++) {
+            shardUrls.add(new ArrayList<String>());
+        }
+        for (int i = 0; i < count; i++) {
+            String url = prodInfoUrls.get(i);
+            shardOfPosition[i] = shardOf(url);
+            shardUrls.get(shardOfPosition[i]).add(url);
+            unreported[shardOfPosition[i]]++;
+            positions.computeIfAbsent(url, key -> new ArrayDeque<Integer>()).add(i);
+        }
+
+        BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+        Process[] processes = new Process[shards];
+        Thread[] readers = new Thread[shards];
+
+        // The failed Product Items of workers that have died or been stopped, still to be written, and the
+        // workers concerned - Anything more from them is ignored.
+        Deque<Result> failures = new ArrayDeque<Result>();
+        boolean[] stopped = new boolean[shards];
+
+        // When each worker last reported a Product Item (or was started).
+        long[] lastHeard = new long[shards];
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(workerIdleMillis);
+
+        // Results not yet written (ordered writer only) and whether each position has had its result.
+        Result[] waiting = writer.isOrdered() ? new Result[count] : null;
+        boolean[] done = new boolean[count];
+        int next = 0;
+        long priceTotal = 0;
+
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                if (shardUrls.get(shard).isEmpty()) {
+                    continue;
+                }
+
+                Process process = new ProcessBuilder(workerCommand())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                processes[shard] = process;
+                lastHeard[shard] = System.nanoTime();
+
+                int workerShard = shard;
+                List<String> urls = shardUrls.get(shard);
+                Thread reader = new Thread(() -> readWorker(workerShard, process, urls, results), "shard-worker-" + shard);
+                reader.setDaemon(true);
+                reader.start();
+                readers[shard] = reader;
+            }
+
+            for (int written = 0; written < count; ) {
+                Result result = failures.poll();
+
+                if (result == null) {
+                    result = results.poll(nextIdleNanos(lastHeard, stopped, unreported, idleNanos), TimeUnit.NANOSECONDS);
+
+                    if (result == null) {
+                        // A worker has reported nothing for too long - Stop it.
+                        int shard = idleShard(lastHeard, stopped, unreported, idleNanos);
+                        if (shard >= 0) {
+                            String problem = "Shard worker " + shard + " reported nothing for " + workerIdleMillis + "ms";
+                            Logger.getLogger(ShardedScraper.class.getName()).log(Level.SEVERE, problem);
+                            readers[shard].interrupt();
+                            processes[shard].destroyForcibly();
+                            result = new Result(shard, null, null, new IOException(problem));
+                        } else {
+                            continue;
+                        }
+                    } else if (stopped[result.shard]) {
+                        // From a worker already given up on.
+                        continue;
+                    } else {
+                        lastHeard[result.shard] = System.nanoTime();
+                    }
+                }
+
+                if (result.url == null) {
+                    // The worker died (or was stopped) - Its Product Items not yet reported have failed.
+                    stopped[result.shard] = true;
+                    for (int i = 0; i < count; i++) {
+                        if (!done[i] && shardOfPosition[i] == result.shard) {
+                            failures.add(new Result(result.shard, prodInfoUrls.get(i), null, result.failure));
+                        }
+                    }
+                    continue;
+                }
+
+                Deque<Integer> urlPositions = positions.get(result.url);
+                Integer position = urlPositions != null ? urlPositions.poll() : null;
+
+                if (position == null) {
+                    Logger.getLogger(ShardedScraper.class.getName()).log(Level.WARNING, "Unexpected Result from Shard Worker " + result.shard + " for " + result.url);
+                    continue;
+                }
+                done[position] = true;
+                unreported[shardOfPosition[position]]--;
+
+                if (waiting == null) {
+                    priceTotal += write(result, writer);
+                    written++;
+                    continue;
+                }
+
+                // Ordered - Write it, and any after it that were waiting for it, once it is the next.
+                waiting[position] = result;
+                while (next < count && waiting[next] != null) {
+                    priceTotal += write(waiting[next], writer);
+                    waiting[next++] = null;
+                    written++;
+                }
+            }
+
+            // Let the workers finish (their summary lines) rather than stopping them mid-write.
+            for (Thread reader: readers) {
+                if (reader != null) {
+                    reader.join(WORKER_EXIT_MILLIS);
+                }
+            }
+        } catch (InterruptedException ie) {
+            // Restore the interrupt and give back what has been written so far.
+            Thread.currentThread().interrupt();
+            Logger.getLogger(ShardedScraper.class.getName()).log(Level.SEVERE, "Interrupted Processing Product Items", ie);
+        } finally {
+            // Done already, unless interrupted or the writer failed - Interrupted first, so the readers know the
+            // workers are being stopped.
+            for (Thread reader: readers) {
+                if (reader != null) {
+                    reader.interrupt();
+                }
+            }
+            for (Process process: processes) {
+                if (process != null) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        return priceTotal;
+    } // writeProductInfos() method
+
+    /**
+     * @return Time until the first of the workers with Product Items still to report has been idle too long.
+     */
+    private static long nextIdleNanos(long[] lastHeard, boolean[] stopped, int[] unreported, long idleNanos) {
+        long now = System.nanoTime();
+        long wait = idleNanos;
+
+        for (int shard = 0; shard < unreported.length; shard++) {
+            if (unreported[shard] > 0 && !stopped[shard]) {
+                wait = Math.min(wait, lastHeard[shard] + idleNanos - now);
+            }
+        }
+        return Math.max(0, wait);
+    }
+
+    /**
+     * @return A worker with Product Items still to report that has been idle too long, or -1 if none.
+     */
+    private static int idleShard(long[] lastHeard, boolean[] stopped, int[] unreported, long idleNanos) {
+        long now = System.nanoTime();
+
+        for (int shard = 0; shard < unreported.length; shard++) {
+            if (unreported[shard] > 0 && !stopped[shard] && now - lastHeard[shard] >= idleNanos) {
+                return shard;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Passes a Product Item to the writer.
+     *
+     * @return The Unit Price of the Product Item in pence - 0 for a failed Product Item.
+     */
+    private long write(Result result, ScrapeResultWriter writer) throws IOException {
+        if (result.failure != null) {
+            pageScraper.writeFailure(result.url, result.failure, writer);
+            return 0;
+        }
+        return pageScraper.writeProductInfo(result.url, result.productInfo, writer);
+    }
+
+    /**
+     * Gives a worker the URLs of its shard and reads back its results - On a thread of its own for each worker.
+     * Ends with a Result with no URL if the worker stops without its summary line.
+     */
+    private void readWorker(int shard, Process process, List<String> urls, BlockingQueue<Result> results) {
+        boolean finished = false;
+        String problem = null;
+
+        try {
+            // The worker reads all its URLs before writing any results, so writing them first cannot deadlock.
+            try (Writer in = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                for (String url: urls) {
+                    in.write(url);
+                    in.write('\n');
+                }
+            }
+
+            BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+            for (String line = out.readLine(); line != null && !finished; line = out.readLine()) {
+                JSONObject job = new JSONObject(line);
+
+                if (job.has("total")) {
+                    // The summary line - Every Product Item has been reported.
+                    finished = true;
+                } else if (job.has("error")) {
+                    results.add(new Result(shard, job.getString("url"), null, new IOException(job.getString("error"))));
+                } else {
+                    ProductInfo productInfo = new ProductInfo(job.optString("title", ""), job.optString("size", ""),
+                        job.optString("unit_price", "0.00"), job.optString("description", ""));
+                    results.add(new Result(shard, job.getString("url"), productInfo, null));
+                }
+            }
+
+            if (!finished) {
+                problem = "Shard worker " + shard + " exited with status " + process.waitFor();
+            }
+        } catch (IOException | JSONException e) {
+            problem = "Shard worker " + shard + " failed: " + e.getMessage();
+        } catch (InterruptedException ie) {
+            // Stopped.
+            return;
+        }
+
+        if (problem != null && !Thread.currentThread().isInterrupted()) {
+            Logger.getLogger(ShardedScraper.class.getName()).log(Level.SEVERE, problem);
+            results.add(new Result(shard, null, null, new IOException(problem)));
+        }
+    } // readWorker() method
+
+    /**
+     * @return The command starting a worker - This JVM's java and classpath, with the options of the PageScraper.
+     */
+    List<String> workerCommand() {
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+
+        RetryPolicy retryPolicy = pageScraper.getRetryPolicy();
+        command.add("--concurrency=" + pageScraper.getConcurrency());
+        command.add("--parse-threads=" + pageScraper.getParseThreads());
+        command.add("--retries=" + (retryPolicy.getMaxAttempts() - 1));
+        command.add("--deadline-ms=" + retryPolicy.getDeadlineMillis());
+        command.add("--hedge-percentile=" + retryPolicy.getHedgePercentile());
+
+        FetchTransport transport = pageScraper.getTransport();
+        if (transport instanceof JsoupFetchTransport) {
+            command.add("--transport=jsoup");
+            command.add("--max-body-size=" + ((JsoupFetchTransport) transport).getMaxBodySize());
+        } else if (transport instanceof OkHttpFetchTransport) {
+            command.add("--max-body-size=" + ((OkHttpFetchTransport) transport).getMaxBodySize());
+        }
+
+        RequestScheduler requestScheduler = pageScraper.getRequestScheduler();
+        if (requestScheduler != null) {
+            // Each worker gets its share of the per-host limits.
+            command.add("--max-rate=" + requestScheduler.getRequestsPerSecond() / shards);
+            command.add("--burst=" + Math.max(1, requestScheduler.getBurst() / shards));
+            if (requestScheduler.getMaxInFlightPerHost() != Integer.MAX_VALUE) {
+                command.add("--max-per-host=" + Math.max(1, requestScheduler.getMaxInFlightPerHost() / shards));
+            }
+        }
+
+        if (!pageScraper.isStreamingExtraction()) {
+            command.add("--no-streaming");
+        }
+        command.add("--title-container-locator=" + pageScraper.getProductTitleDescriptionContainerLocator());
+        command.add("--title-locator=" + pageScraper.getProductTitleElementTagLocator());
+        command.add("--price-locator=" + pageScraper.getProductPricePerUnitLocator());
+        command.add("--description-locator=" + pageScraper.getProductTextDescriptionLocator());
+
+        return command;
+    } // workerCommand() method
+
+    public int getShards() {
+        return shards;
+    }
+
+    public long getWorkerIdleMillis() {
+        return workerIdleMillis;
+    }
+
+} // ShardedScraper class
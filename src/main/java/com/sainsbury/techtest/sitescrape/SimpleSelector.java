@@ -0,0 +1,154 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+
+/**
+ * SimpleSelector Class
+ * 
+ * A CSS selector made of an optional tag name plus any number of ".class" and "#id" parts - e.g. "div",
+ * "p.pricePerUnit", "#main" or "div.a.b". Anything else (combinators, attributes, pseudo selectors or groups)
+ * is not a SimpleSelector.
+ * 
+ * Matches elements in the same way as the equivalent jsoup selector, both as a jsoup Evaluator (for a
+ * Document) and from the tag name, id and class attributes alone (for the StreamingProductExtractor).
+ * Immutable, so can be shared between threads.
+ * 
+ * @author John Moores
+ */
+class SimpleSelector extends Evaluator {
+    private final String tag;
+    private final String id;
+    private final List<String> classes;
+
+    private SimpleSelector(String tag, String id, List<String> classes) {
+        this.tag = tag;
+        this.id = id;
+        this.classes = Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * @return The SimpleSelector, or null if the locator is not a simple selector.
+     */
+    static SimpleSelector parse(String locator) {
+        if (locator == null) {
+            return null;
+        }
+
+        String query = locator.trim();
+        String tag = null;
+        String id = null;
+        List<String> classes = new ArrayList<String>();
+        int i = 0;
+
+        int end = identifierEnd(query, i);
+        if (end > i) {
+            tag = query.substring(i, end).toLowerCase(Locale.ENGLISH);
+            i = end;
+        }
+
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            end = identifierEnd(query, i + 1);
+
+            if ((c != '.' && c != '#') || end == i + 1) {
+                // Not something that can be handled as a SimpleSelector.
+                return null;
+            }
+
+            if (c == '.') {
+                classes.add(query.substring(i + 1, end));
+            } else if (id == null) {
+                id = query.substring(i + 1, end);
+            } else {
+                return null;
+            }
+            i = end;
+        }
+
+        if (tag == null && id == null && classes.isEmpty()) {
+            return null;
+        }
+
+        return new SimpleSelector(tag, id, classes);
+    }
+
+    private static int identifierEnd(String query, int start) {
+        int i = start;
+        while (i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '-' || query.charAt(i) == '_')) {
+            i++;
+        }
+        return i;
+    }
+
+    String getTag() {
+        return tag;
+    }
+
+    boolean isTagOnly() {
+        return tag != null && id == null && classes.isEmpty();
+    }
+
+    @Override
+    public boolean matches(Element root, Element element) {
+        if (tag != null && !tag.equals(element.tagName())) {
+            return false;
+        }
+        if (id != null && !id.equals(element.id())) {
+            return false;
+        }
+        for (String className: classes) {
+            if (!element.hasClass(className)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches from the tag name (lower case) and the raw id and class attribute values (null if not present).
+     */
+    boolean matches(String tagName, String idAttr, String classAttr) {
+        if (tag != null && !tag.equals(tagName)) {
+            return false;
+        }
+        if (id != null && !id.equals(idAttr)) {
+            return false;
+        }
+        for (String className: classes) {
+            if (!hasClass(classAttr, className)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same as jsoup's Element.hasClass() - Whitespace separated and case insensitive.
+    private static boolean hasClass(String classAttr, String className) {
+        if (classAttr == null) {
+            return false;
+        }
+        for (String name: classAttr.split("[ \\t\\n\\f\\r]+")) {
+            if (name.equalsIgnoreCase(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder query = new StringBuilder(tag == null ? "" : tag);
+        if (id != null) {
+            query.append('#').append(id);
+        }
+        for (String className: classes) {
+            query.append('.').append(className);
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StageMetrics Class
+ * 
+ * The timings of one stage of a scrape (e.g. fetching the Product Item webpages) - How many times it has
+ * completed, the total time and a latency histogram. The histogram has a bucket per power of two microseconds,
+ * so the percentiles are approximate (the upper bound of their bucket - at most twice the actual latency) but
+ * recording costs only a few additions, whatever the number of samples.
+ * 
+ * Thread-safe - Recorded by all the threads of a scrape without locking.
+ * 
+ * @author John Moores
+ */
+public class StageMetrics implements StageMetricsMBean {
+    // Bucket i holds latencies of less than 2^i microseconds (and at least 2^(i-1)) - Enough for days.
+    private static final int BUCKETS = 40;
+    
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    
+    StageMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Records one completion of the stage.
+     * 
+     * @param nanos How long it took.
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        
+        count.increment();
+        totalNanos.add(nanos);
+        buckets[bucket].increment();
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    } // record() method
+    
+    /**
+     * @param percentile e.g. 99 for the 99th percentile.
+     * @return The latency in milliseconds that the given percentage of the completions took no longer than -
+     *         The upper bound of its histogram bucket, but never more than the maximum. 0 if none recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    } // getPercentileMillis() method
+    
+    void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        for (LongAdder bucket: buckets) {
+            bucket.reset();
+        }
+    }
+    
+    /**
+     *  Accessor Methods
+     */
+    
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+    
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1e6;
+    }
+    
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+    }
+    
+    @Override
+    public double getP50Millis() {
+        return getPercentileMillis(50);
+    }
+    
+    @Override
+    public double getP90Millis() {
+        return getPercentileMillis(90);
+    }
+    
+    @Override
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+    
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+    
+} // StageMetrics class
@@ -0,0 +1,28 @@
+package com.sainsbury.techtest.sitescrape;
+
+/**
+ * StageMetricsMBean Interface
+ * 
+ * JMX view of the StageMetrics of one stage of a scrape - See StageMetrics.
+ * 
+ * @author John Moores
+ */
+public interface StageMetricsMBean {
+    
+    /**
+     * @return Number of times the stage has completed.
+     */
+    long getCount();
+    
+    double getTotalMillis();
+    
+    double getMeanMillis();
+    
+    double getP50Millis();
+    
+    double getP90Millis();
+    
+    double getP99Millis();
+    
+    double getMaxMillis();
+}
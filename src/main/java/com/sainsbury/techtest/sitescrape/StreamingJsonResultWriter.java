@@ -0,0 +1,102 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+
+/**
+ * StreamingJsonResultWriter Class
+ * 
+ * ScrapeResultWriter that writes the JSON document to a java.io.Writer as the scrape progresses. Each Product
+ * Item is written (and flushed) as soon as it has been processed and the "total" is written at the end, so
+ * only one Product Item is held in memory at a time.
+ * 
+ * The JSON document has the same content and indentation (4 spaces) as the one returned by the PageScraper's
+ * scrape() method, with "results" always ahead of "total":
+ * 
+ *     {
+ *         "results": [
+ *             {...},
+ *             {...}
+ *         ],
+ *         "total": "15.10"
+ *     }
+ * 
+ * The page addresses of any Product Items that could not be fetched are written in a "failed" array, between
+ * "results" and "total" - They are held in memory until the end.
+ * 
+ * @author John Moores
+ */
+public class StreamingJsonResultWriter implements ScrapeResultWriter {
+    private static final int INDENT = 4;
+    
+    private final Writer writer;
+    private int productCount = 0;
+    private final List<String> failed = new ArrayList<String>();
+    
+    public StreamingJsonResultWriter(Writer argWriter) {
+        writer = argWriter;
+    }
+    
+    @Override
+    public void empty() throws IOException {
+        writer.write("{}");
+        writer.flush();
+    }
+    
+    @Override
+    public void begin() throws IOException {
+        writer.write("{\n    \"results\": [");
+        writer.flush();
+    }
+    
+    @Override
+    public void product(String url, ProductInfo productInfo) throws IOException {
+        // Separate from the previous Product Item (if any) and indent to the array element level.
+        writer.write(productCount == 0 ? "\n" : ",\n");
+        writer.write("        ");
+        
+        // Write the Product Item with the indentation of an array element of "results".
+        JSONObject job = productInfo.toJSON();
+        job.write(writer, INDENT, 2 * INDENT);
+        writer.flush();
+        
+        productCount++;
+    }
+    
+    @Override
+    public void failed(String url, IOException cause) {
+        failed.add(url);
+    }
+    
+    @Override
+    public void end(BigDecimal total) throws IOException {
+        // Close "results" - Matching the JSONArray layout of "[]" when there are no Product Items.
+        writer.write(productCount == 0 ? "]" : "\n    ]");
+        
+        if (!failed.isEmpty()) {
+            writer.write(",\n    \"failed\": [");
+            for (int i = 0; i < failed.size(); i++) {
+                writer.write(i == 0 ? "\n        " : ",\n        ");
+                writer.write(JSONObject.quote(failed.get(i)));
+            }
+            writer.write("\n    ]");
+        }
+        
+        // NOTE: The Price Total (total) is written as a string so the two decimal places are preserved.
+        writer.write(",\n    \"total\": ");
+        writer.write(JSONObject.quote(total.toString()));
+        writer.write("\n}");
+        writer.flush();
+    }
+    
+    /**
+     * @return Number of Product Items written so far.
+     */
+    public int getProductCount() {
+        return productCount;
+    }
+}
@@ -0,0 +1,685 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+/**
+ * StreamingProductExtractor Class
+ *
+ * Extracts the Title, Unit Price text and Description of a Product Item straight from the HTML of its webpage,
+ * in a single pass, without building a jsoup Document. The HTML is decoded and scanned as a stream and the scan
+ * stops as soon as all three have been captured, so the (usually large) remainder of the webpage is never
+ * decoded or parsed.
+ *
+ * The scan is over the body already read by the FetchTransport (FetchedPage.getBody()), not the network stream
+ * - So the saving is the decoded text and the Document tree of the webpage, not its body, which is still held
+ * in full while it is extracted.
+ *
+ * Gives the same text as the jsoup Document path of PageScraper.createProductInfo() - i.e. the first element in
+ * document order matching each locator, with its text as returned by jsoup's Element.text() - Including the
+ * elements the jsoup tree builder closes (or ignores) without an end tag, e.g. a <p> closed by a <div>, a
+ * heading closed by another heading, or a <form> within a form - and the empty <p> it adds for a </p> with no
+ * <p> open. Only simple locators can be handled - a tag name, ".class", "#id" or a combination such as "div.productText". Where a
+ * locator (or the webpage itself) cannot be handled with certainty, extract() returns null and the caller falls
+ * back to the jsoup Document path.
+ *
+ * @author John Moores
+ */
+public class StreamingProductExtractor {
+
+    // Elements which never have content (HTML void elements).
+    private static final Set<String> VOID_TAGS = new HashSet<String>(Arrays.asList(
+        "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"));
+
+    // Elements whose content is not HTML - Skipped up to their end tag.
+    private static final Set<String> RAW_TEXT_TAGS = new HashSet<String>(Arrays.asList(
+        "script", "style", "title", "textarea", "xmp", "iframe", "noembed", "noframes"));
+
+    // Start tags which implicitly close an open <p> element - As the jsoup tree builder (1.9.2).
+    private static final Set<String> P_CLOSING_TAGS = new HashSet<String>(Arrays.asList(
+        "address", "article", "aside", "blockquote", "center", "dd", "details", "dir", "div", "dl", "dt", "fieldset",
+        "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "li",
+        "listing", "menu", "nav", "ol", "p", "pre", "section", "summary", "table", "ul"));
+
+    // Elements beyond which an open <p> is not closed (jsoup's "button scope").
+    private static final String[] P_SCOPE = {"button", "html", "table", "td", "th", "caption", "object", "applet", "marquee"};
+
+    // Heading elements - A heading start tag closes an open heading that is the current element, and a heading
+    // end tag closes the nearest open heading of any level, as with the jsoup tree builder.
+    private static final Set<String> HEADING_TAGS = new HashSet<String>(Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6"));
+
+    // Elements which the jsoup tree builder treats specially (whitespace preservation, table fostering and
+    // foreign content) - If one turns up inside a captured element, the streaming text cannot be trusted.
+    private static final Set<String> UNSUPPORTED_IN_CAPTURE = new HashSet<String>(Arrays.asList(
+        "pre", "plaintext", "listing", "textarea", "table", "svg", "math", "template", "select", "frameset"));
+
+    private static final int CHARSET_SNIFF_BYTES = 4096;
+
+    private final SimpleSelector containerSelector;
+    private final String titleTag;
+    private final SimpleSelector priceSelector;
+    private final SimpleSelector descriptionSelector;
+
+    /**
+     * StreamingProductExtractor Fields Class
+     *
+     * The text extracted from a Product Item webpage.
+     */
+    public static class Fields {
+        private final String title;
+        private final String unitPriceText;
+        private final String description;
+
+        Fields(String title, String unitPriceText, String description) {
+            this.title = title;
+            this.unitPriceText = unitPriceText;
+            this.description = description;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getUnitPriceText() {
+            return unitPriceText;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private StreamingProductExtractor(SimpleSelector containerSelector, String titleTag, SimpleSelector priceSelector, SimpleSelector descriptionSelector) {
+        this.containerSelector = containerSelector;
+        this.titleTag = titleTag;
+        this.priceSelector = priceSelector;
+        this.descriptionSelector = descriptionSelector;
+    }
+
+    /**
+     * Creates a StreamingProductExtractor for the PageScraper locators.
+     *
+     * @param containerLocator Locator of the Title Container (e.g. "div.productTitleDescriptionContainer").
+     * @param titleTag Tag name of the Title Element within the Title Container (e.g. "h1").
+     * @param priceLocator Locator of the Unit Price Element (e.g. "p.pricePerUnit").
+     * @param descriptionLocator Locator of the Description Element (e.g. "div.productText").
+     * @return The StreamingProductExtractor, or null if one of the locators cannot be handled when streaming.
+     */
+    public static StreamingProductExtractor compile(String containerLocator, String titleTag, String priceLocator, String descriptionLocator) {
+        SimpleSelector container = SimpleSelector.parse(containerLocator);
+        SimpleSelector price = SimpleSelector.parse(priceLocator);
+        SimpleSelector description = SimpleSelector.parse(descriptionLocator);
+        SimpleSelector title = SimpleSelector.parse(titleTag);
+
+        return compile(container, title, price, description);
+    }
+    
+    /**
+     * Creates a StreamingProductExtractor for already compiled locators (see ExtractionPlan).
+     *
+     * @return The StreamingProductExtractor, or null if one of the locators cannot be handled when streaming.
+     */
+    static StreamingProductExtractor compile(SimpleSelector container, SimpleSelector title, SimpleSelector price, SimpleSelector description) {
+        if (container == null || price == null || description == null || title == null || !title.isTagOnly()) {
+            return null;
+        }
+
+        return new StreamingProductExtractor(container, title.getTag(), price, description);
+    }
+
+    /**
+     * Extracts the Title, Unit Price text and Description from a Product Item webpage.
+     *
+     * @param page The fetched Product Item webpage.
+     * @return The Fields, or null if they could not all be found with certainty - In which case the jsoup
+     *         Document path must be used instead.
+     */
+    public Fields extract(FetchedPage page) {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(page.getBody()), charsetOf(page))) {
+            return new Scan(reader).run();
+        } catch (IOException ioe) {
+            // Only possible if the charset cannot decode the body - Let the jsoup Document path deal with it.
+            return null;
+        }
+    }
+
+    /**
+     * Works out the charset of the webpage in the same way as jsoup - From the response, or from a <meta>
+     * element near the start of the webpage, or UTF-8 if neither says.
+     */
+    private static Charset charsetOf(FetchedPage page) {
+        String charset = page.getCharset();
+
+        if (charset == null) {
+            // Look for <meta charset="..."> or <meta http-equiv="Content-Type" content="...; charset=...">.
+            byte[] body = page.getBody();
+            String head = new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES), StandardCharsets.ISO_8859_1).toLowerCase(Locale.ENGLISH);
+            int metaAt = head.indexOf("<meta");
+
+            while (metaAt >= 0 && charset == null) {
+                int endAt = head.indexOf('>', metaAt);
+                String meta = endAt < 0 ? head.substring(metaAt) : head.substring(metaAt, endAt);
+                int charsetAt = meta.indexOf("charset=");
+
+                if (charsetAt >= 0) {
+                    int start = charsetAt + "charset=".length();
+                    while (start < meta.length() && (meta.charAt(start) == '"' || meta.charAt(start) == '\'' || meta.charAt(start) == ' ')) {
+                        start++;
+                    }
+                    int end = start;
+                    while (end < meta.length() && (Character.isLetterOrDigit(meta.charAt(end)) || "-_:.".indexOf(meta.charAt(end)) >= 0)) {
+                        end++;
+                    }
+                    charset = meta.substring(start, end);
+                }
+                metaAt = head.indexOf("<meta", metaAt + 1);
+            }
+        }
+
+        try {
+            return charset == null || charset.isEmpty() ? StandardCharsets.UTF_8 : Charset.forName(charset);
+        } catch (RuntimeException re) {
+            // Unknown or illegal charset name - jsoup also falls back to UTF-8.
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * StreamingProductExtractor Capture Class
+     *
+     * The text of one element being captured.
+     */
+    private static class Capture {
+        private final int depth;
+        private final StringBuilder text = new StringBuilder();
+        private boolean done;
+
+        Capture(int depth) {
+            this.depth = depth;
+        }
+
+        String text() {
+            return text.toString().trim();
+        }
+    }
+
+    /**
+     * StreamingProductExtractor Scan Class
+     *
+     * A single scan of one webpage.
+     */
+    private class Scan {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int bufferPos = 0;
+        private int bufferLen = 0;
+
+        // Names of the open elements - The element at index i has depth i + 1.
+        private final List<String> openElements = new ArrayList<String>();
+        private final StringBuilder pendingText = new StringBuilder();
+
+        // Set from a <form> start tag until a </form> end tag - As with jsoup's form element pointer, a <form>
+        // start tag while it is set is ignored.
+        private boolean formOpen = false;
+
+        private int containerDepth = -1;
+        private boolean containerClosed = false;
+        private Capture title;
+        private Capture price;
+        private Capture description;
+
+        // Set when something turns up that cannot be handled with certainty.
+        private boolean unsupported = false;
+
+        Scan(Reader reader) {
+            this.reader = reader;
+        }
+
+        Fields run() throws IOException {
+            int c = next();
+            if (c == '\uFEFF') {
+                // Byte order mark - Not part of the content.
+                c = next();
+            }
+
+            while (c != -1 && !unsupported && !complete()) {
+                if (c == '<') {
+                    flushText();
+                    tag();
+                } else if (isCapturing()) {
+                    pendingText.append((char) c);
+                }
+                c = next();
+            }
+
+            if (unsupported) {
+                return null;
+            }
+
+            // End of the webpage closes any open elements.
+            flushText();
+
+            if (!complete() && !closeAt(1)) {
+                return null;
+            }
+
+            return complete() ? new Fields(title.text(), price.text(), description.text()) : null;
+        }
+
+        private boolean complete() {
+            return title != null && title.done && price != null && price.done && description != null && description.done;
+        }
+
+        private boolean isCapturing() {
+            return isActive(title) || isActive(price) || isActive(description);
+        }
+
+        private boolean isActive(Capture capture) {
+            return capture != null && !capture.done;
+        }
+
+        private int next() throws IOException {
+            if (bufferPos == bufferLen) {
+                bufferLen = reader.read(buffer, 0, buffer.length);
+                bufferPos = 0;
+                if (bufferLen <= 0) {
+                    bufferLen = 0;
+                    return -1;
+                }
+            }
+            return buffer[bufferPos++];
+        }
+
+        private int peek() throws IOException {
+            int c = next();
+            if (c != -1) {
+                bufferPos--;
+            }
+            return c;
+        }
+
+        /**
+         * Passes the text read since the last tag to the active captures - Entities decoded and whitespace
+         * normalised in the same way as jsoup's Element.text().
+         */
+        private void flushText() {
+            if (pendingText.length() == 0) {
+                return;
+            }
+
+            String text = pendingText.indexOf("&") >= 0 ? Parser.unescapeEntities(pendingText.toString(), false) : pendingText.toString();
+            pendingText.setLength(0);
+
+            for (Capture capture: new Capture[] {title, price, description}) {
+                if (isActive(capture)) {
+                    appendNormalisedWhitespace(capture.text, text);
+                }
+            }
+        }
+
+        /**
+         * Reads a tag (the '<' has been read) and updates the open elements and captures.
+         */
+        private void tag() throws IOException {
+            int c = next();
+
+            if (c == '!') {
+                if (peek() == '-') {
+                    next();
+                    if (peek() == '-') {
+                        next();
+                        skipPast("-->");
+                        return;
+                    }
+                }
+                skipPast(">");
+            } else if (c == '?') {
+                skipPast(">");
+            } else if (c == '/') {
+                String name = readName(next());
+                skipPast(">");
+                if (!name.isEmpty()) {
+                    endTag(name);
+                }
+            } else if (isAsciiLetter(c)) {
+                startTag(readName(c));
+            } else {
+                // Not a tag - Just a '<' in the text. The character after it is read again (it may start a tag).
+                if (isCapturing()) {
+                    pendingText.append('<');
+                }
+                if (c != -1) {
+                    bufferPos--;
+                }
+            }
+        }
+
+        private void startTag(String name) throws IOException {
+            String idAttr = null;
+            String classAttr = null;
+            boolean selfClosing = false;
+
+            // Read the attributes up to the end of the tag, keeping the id and class.
+            int c = next();
+            while (c != -1 && c != '>') {
+                if (c == '/') {
+                    selfClosing = peek() == '>';
+                    c = next();
+                    continue;
+                }
+                if (isWhitespace(c)) {
+                    c = next();
+                    continue;
+                }
+
+                StringBuilder attrName = new StringBuilder();
+                while (c != -1 && c != '>' && c != '=' && c != '/' && !isWhitespace(c)) {
+                    attrName.append((char) Character.toLowerCase(c));
+                    c = next();
+                }
+                while (isWhitespace(c)) {
+                    c = next();
+                }
+
+                String value = "";
+                if (c == '=') {
+                    c = next();
+                    while (isWhitespace(c)) {
+                        c = next();
+                    }
+                    StringBuilder attrValue = new StringBuilder();
+                    if (c == '"' || c == '\'') {
+                        int quote = c;
+                        c = next();
+                        while (c != -1 && c != quote) {
+                            attrValue.append((char) c);
+                            c = next();
+                        }
+                        c = next();
+                    } else {
+                        while (c != -1 && c != '>' && !isWhitespace(c)) {
+                            attrValue.append((char) c);
+                            c = next();
+                        }
+                    }
+                    value = attrValue.toString();
+                }
+
+                // The first of a repeated attribute wins, as with jsoup.
+                if (attrName.toString().equals("id") && idAttr == null) {
+                    idAttr = value;
+                } else if (attrName.toString().equals("class") && classAttr == null) {
+                    classAttr = value;
+                }
+                selfClosing = false;
+            }
+
+            openElement(name, idAttr, classAttr, selfClosing);
+        }
+
+        /**
+         * Opens an element - From its start tag, or implied by the webpage.
+         */
+        private void openElement(String name, String idAttr, String classAttr, boolean selfClosing) throws IOException {
+            if (isCapturing() && UNSUPPORTED_IN_CAPTURE.contains(name)) {
+                unsupported = true;
+                return;
+            }
+
+            if (name.equals("form")) {
+                if (formOpen) {
+                    // A form within a form - Ignored altogether by jsoup (no element, no text separation).
+                    return;
+                }
+                formOpen = true;
+            }
+
+            // Implicitly close elements as the jsoup tree builder would.
+            if (P_CLOSING_TAGS.contains(name)) {
+                closeNearest("p", P_SCOPE);
+            }
+            if (HEADING_TAGS.contains(name) && !openElements.isEmpty() && HEADING_TAGS.contains(openElements.get(openElements.size() - 1))) {
+                if (!closeAt(openElements.size())) {
+                    return;
+                }
+            }
+            if (name.equals("li")) {
+                closeNearest("li", "ul", "ol");
+            } else if (name.equals("dd") || name.equals("dt")) {
+                closeNearest("dd", "dl");
+                closeNearest("dt", "dl");
+            }
+
+            // Separate the text of block elements (and <br>), as jsoup's Element.text() does.
+            if (Tag.valueOf(name).isBlock() || name.equals("br")) {
+                for (Capture capture: new Capture[] {title, price, description}) {
+                    if (isActive(capture) && capture.text.length() > 0 && capture.text.charAt(capture.text.length() - 1) != ' ') {
+                        capture.text.append(' ');
+                    }
+                }
+            }
+
+            boolean empty = selfClosing || VOID_TAGS.contains(name);
+            int depth = openElements.size() + 1;
+
+            if (!empty) {
+                openElements.add(name);
+            }
+
+            // Start capturing at the first element matching each locator.
+            if (containerDepth < 0 && !containerClosed && containerSelector.matches(name, idAttr, classAttr)) {
+                containerDepth = depth;
+                if (empty) {
+                    // Empty Title Container - No Title Element within it.
+                    unsupported = true;
+                    return;
+                }
+            }
+            if (title == null && containerDepth > 0 && !containerClosed && name.equals(titleTag)) {
+                title = new Capture(depth);
+                title.done = empty;
+            }
+            if (price == null && priceSelector.matches(name, idAttr, classAttr)) {
+                price = new Capture(depth);
+                price.done = empty;
+            }
+            if (description == null && descriptionSelector.matches(name, idAttr, classAttr)) {
+                description = new Capture(depth);
+                description.done = empty;
+            }
+
+            if (!empty && RAW_TEXT_TAGS.contains(name)) {
+                // Content is not HTML - Skip to the end tag. The content of <script> and <style> is not part
+                // of jsoup's Element.text() but the others (e.g. <title>) are, so cannot be captured here.
+                if (isCapturing() && !name.equals("script") && !name.equals("style")) {
+                    unsupported = true;
+                    return;
+                }
+                skipRawText(name);
+                endTag(name);
+            }
+        }
+
+        private void endTag(String name) throws IOException {
+            if (name.equals("p")) {
+                if (nearest("p", P_SCOPE) < 0) {
+                    // No <p> open - jsoup adds an empty one, which separates the text around it.
+                    openElement("p", null, null, false);
+                }
+                closeNearest("p", P_SCOPE);
+                return;
+            }
+            if (name.equals("form")) {
+                formOpen = false;
+                if (openElements.contains("form") && !openElements.get(openElements.size() - 1).equals("form")) {
+                    // jsoup removes just the form, leaving the elements within it open - Not followed here.
+                    unsupported = true;
+                    return;
+                }
+            }
+
+            for (int i = openElements.size() - 1; i >= 0; i--) {
+                String open = openElements.get(i);
+                if (open.equals(name) || (HEADING_TAGS.contains(name) && HEADING_TAGS.contains(open))) {
+                    closeAt(i + 1);
+                    return;
+                }
+            }
+
+            if (name.equals("br")) {
+                // jsoup treats </br> as <br>.
+                for (Capture capture: new Capture[] {title, price, description}) {
+                    if (isActive(capture) && capture.text.length() > 0 && capture.text.charAt(capture.text.length() - 1) != ' ') {
+                        capture.text.append(' ');
+                    }
+                }
+            }
+            // Otherwise a stray end tag - Ignored.
+        }
+
+        /**
+         * Closes the nearest open element with the given name, unless one of the boundary elements is nearer.
+         */
+        private void closeNearest(String name, String... boundaries) {
+            int i = nearest(name, boundaries);
+            if (i >= 0) {
+                closeAt(i + 1);
+            }
+        }
+
+        /**
+         * @return The index of the nearest open element with the given name, or -1 if there is none or one of the
+         *         boundary elements is nearer.
+         */
+        private int nearest(String name, String... boundaries) {
+            for (int i = openElements.size() - 1; i >= 0; i--) {
+                String open = openElements.get(i);
+                if (open.equals(name)) {
+                    return i;
+                }
+                if (Arrays.asList(boundaries).contains(open)) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Closes the open elements at and below the given depth.
+         *
+         * @return false if the Title Container closes without a Title Element.
+         */
+        private boolean closeAt(int depth) {
+            for (Capture capture: new Capture[] {title, price, description}) {
+                if (isActive(capture) && capture.depth >= depth) {
+                    capture.done = true;
+                }
+            }
+
+            if (containerDepth >= depth && !containerClosed) {
+                containerClosed = true;
+                if (title == null) {
+                    unsupported = true;
+                    return false;
+                }
+            }
+
+            while (openElements.size() >= depth) {
+                openElements.remove(openElements.size() - 1);
+            }
+            return true;
+        }
+
+        private String readName(int first) throws IOException {
+            StringBuilder name = new StringBuilder();
+            int c = first;
+
+            while (c != -1 && c != '>' && c != '/' && !isWhitespace(c)) {
+                name.append((char) Character.toLowerCase(c));
+                c = next();
+            }
+            if (c != -1) {
+                bufferPos--;
+            }
+            return name.toString();
+        }
+
+        private void skipPast(String end) throws IOException {
+            int matched = 0;
+            int c = next();
+
+            while (c != -1) {
+                if (c == end.charAt(matched)) {
+                    if (++matched == end.length()) {
+                        return;
+                    }
+                } else {
+                    matched = c == end.charAt(0) ? 1 : 0;
+                }
+                c = next();
+            }
+        }
+
+        private void skipRawText(String name) throws IOException {
+            String end = "</" + name;
+            int matched = 0;
+            int c = next();
+
+            while (c != -1) {
+                if (Character.toLowerCase(c) == end.charAt(matched)) {
+                    if (++matched == end.length()) {
+                        skipPast(">");
+                        return;
+                    }
+                } else {
+                    matched = c == '<' ? 1 : 0;
+                }
+                c = next();
+            }
+        }
+    }
+
+    static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Same as jsoup's StringUtil.appendNormalisedWhitespace() as used by Element.text().
+     */
+    private static void appendNormalisedWhitespace(StringBuilder accum, String text) {
+        boolean stripLeading = accum.length() > 0 && accum.charAt(accum.length() - 1) == ' ';
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWhitespace(c)) {
+                if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+                    continue;
+                }
+                accum.append(' ');
+                lastWasWhite = true;
+            } else {
+                accum.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * UrlFrontier Class
+ *
+ * The state of a crawl (see ListingCrawler) - The product listing webpages still to be visited, and the set of
+ * every URL (product listing and Product Item webpages) already seen so that no webpage is fetched twice.
+ *
+ * URLs are normalised before they are compared (see normalise()), so that e.g. "HTTP://Host:80/a#top" and
+ * "http://host/a" are the same webpage.
+ *
+ * The seen set is either exact (a hash set of the normalised URLs) or, for very large crawls, a Bloom filter
+ * of fixed size. A Bloom filter never lets a webpage be fetched twice, but may (rarely, at the given false
+ * positive rate) treat a new URL as already seen and so miss it.
+ *
+ * Not thread-safe - A UrlFrontier belongs to a single crawl.
+ *
+ * @author John Moores
+ */
+final class UrlFrontier {
+    // The product listing webpages still to be visited, in the order found (breadth first).
+    private final Deque<String> listings = new ArrayDeque<String>();
+
+    private final SeenSet seen;
+    private int seenCount;
+
+    private UrlFrontier(SeenSet seen) {
+        this.seen = seen;
+    }
+
+    /**
+     * @return A UrlFrontier remembering every URL exactly.
+     */
+    static UrlFrontier exact() {
+        return new UrlFrontier(new HashSeenSet());
+    }
+
+    /**
+     * @param expectedUrls Number of URLs the crawl is expected to see.
+     * @param falsePositiveRate Chance of a new URL being treated as already seen, e.g. 0.0001.
+     * @return A UrlFrontier remembering the URLs in a Bloom filter sized for expectedUrls.
+     */
+    static UrlFrontier bloom(long expectedUrls, double falsePositiveRate) {
+        return new UrlFrontier(new BloomSeenSet(expectedUrls, falsePositiveRate));
+    }
+
+    /**
+     * Adds a product listing webpage to be visited, unless it has been seen already.
+     *
+     * @return true if added.
+     */
+    boolean addListing(String url) {
+        String normalised = normalise(url);
+
+        if (normalised == null || !markSeen(normalised)) {
+            return false;
+        }
+        listings.addLast(normalised);
+        return true;
+    }
+
+    /**
+     * Marks a Product Item webpage as seen.
+     *
+     * @return The normalised URL if it has not been seen before (so should be fetched), otherwise null.
+     */
+    String addProduct(String url) {
+        String normalised = normalise(url);
+
+        if (normalised == null || !markSeen(normalised)) {
+            return null;
+        }
+        return normalised;
+    }
+
+    /**
+     * @return The next product listing webpage to visit, or null if there are none left.
+     */
+    String nextListing() {
+        return listings.pollFirst();
+    }
+
+    /**
+     * @return Number of distinct URLs seen so far.
+     */
+    int getSeenCount() {
+        return seenCount;
+    }
+
+    private boolean markSeen(String normalised) {
+        if (seen.add(normalised)) {
+            seenCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Normalises a URL - Lower case scheme and host, no default port, no fragment, "." and ".." path segments
+     * removed and an empty path made "/". The query is kept as is since it usually matters (e.g. ?page=2).
+     *
+     * @return The normalised URL, or null if it is not a valid absolute http(s) URL.
+     */
+    static String normalise(String url) {
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            URI uri = new URI(url.trim()).normalize();
+            String scheme = uri.getScheme();
+            String host = uri.getHost();
+
+            if (scheme == null || host == null) {
+                return null;
+            }
+
+            scheme = scheme.toLowerCase(Locale.ROOT);
+            if (!scheme.equals("http") && !scheme.equals("https")) {
+                return null;
+            }
+
+            int port = uri.getPort();
+            if ((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) {
+                port = -1;
+            }
+
+            String path = uri.getRawPath();
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            }
+
+            StringBuilder normalised = new StringBuilder(url.length());
+            normalised.append(scheme).append("://");
+            if (uri.getRawUserInfo() != null) {
+                normalised.append(uri.getRawUserInfo()).append('@');
+            }
+            normalised.append(host.toLowerCase(Locale.ROOT));
+            if (port != -1) {
+                normalised.append(':').append(port);
+            }
+            normalised.append(path);
+            if (uri.getRawQuery() != null) {
+                normalised.append('?').append(uri.getRawQuery());
+            }
+            return normalised.toString();
+        } catch (URISyntaxException use) {
+            return null;
+        }
+    } // normalise() method
+
+    /**
+     *  Seen Sets
+     */
+
+    private interface SeenSet {
+        /**
+         * @return true if the URL had not been seen before.
+         */
+        boolean add(String normalisedUrl);
+    }
+
+    private static final class HashSeenSet implements SeenSet {
+        private final Set<String> urls = new HashSet<String>();
+
+        @Override
+        public boolean add(String normalisedUrl) {
+            return urls.add(normalisedUrl);
+        }
+    }
+
+    /**
+     * Bloom filter over 64 bit hashes of the URLs, using double hashing (h1 + i * h2) for the k bit positions.
+     */
+    static final class BloomSeenSet implements SeenSet {
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        BloomSeenSet(long expectedUrls, double falsePositiveRate) {
+            if (expectedUrls < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+                throw new IllegalArgumentException("Invalid Bloom filter size " + expectedUrls + " / " + falsePositiveRate);
+            }
+
+            // Optimal number of bits (m = -n ln p / (ln 2)^2) and of hashes (k = m / n ln 2).
+            long m = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            m = Math.max(64, Math.min(m, (long) Integer.MAX_VALUE * 64));
+
+            bits = new long[(int) ((m + 63) / 64)];
+            bitCount = bits.length * 64L;
+            hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedUrls * Math.log(2)));
+        }
+
+        @Override
+        public boolean add(String normalisedUrl) {
+            long h1 = hash(normalisedUrl, 0x9E3779B97F4A7C15L);
+            long h2 = hash(normalisedUrl, 0xC2B2AE3D27D4EB4FL) | 1;
+            boolean added = false;
+
+            for (int i = 0; i < hashCount; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+
+                if ((bits[word] & mask) == 0) {
+                    bits[word] |= mask;
+                    added = true;
+                }
+            }
+            return added;
+        }
+
+        int getHashCount() {
+            return hashCount;
+        }
+
+        long getBitCount() {
+            return bitCount;
+        }
+
+        private static long hash(String s, long seed) {
+            long h = seed;
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            }
+            // Final mix (from SplitMix64) so that every bit depends on every character.
+            h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+            h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+            return h ^ (h >>> 31);
+        }
+    }
+
+} // UrlFrontier class
@@ -0,0 +1,112 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchScraperTest {
+	private FixtureHttpServer fixtureServer;
+	private BatchScraper batchScraper;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up a fixture server with 4 products.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		fixtureServer = new FixtureHttpServer(4);
+		batchScraper = new BatchScraper(new PageScraper(new URL(fixtureServer.getListingUrl())));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		fixtureServer.stop();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.BatchScraper#readUrls(java.io.Reader)}.
+	 *
+	 * Ensures that blank lines and comments are ignored.
+	 */
+	@Test
+	public void testReadUrls() throws Exception {
+		List<String> urlStrs = BatchScraper.readUrls(new StringReader("# Listings\nhttp://a.example/1\n\n  http://b.example/2  \n"));
+
+		assertEquals(Arrays.asList("http://a.example/1", "http://b.example/2"), urlStrs);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.BatchScraper#scrape(java.util.List, java.io.Writer)}.
+	 *
+	 * Ensures that each listing gets one line of JSON with its own total, in batch order, and that an invalid
+	 * URL is skipped.
+	 */
+	@Test
+	public void testScrapeToWriter() throws Exception {
+		StringWriter out = new StringWriter();
+		int scraped = batchScraper.scrape(Arrays.asList(fixtureServer.getListingUrl(), "not a url", fixtureServer.getCategoriesUrl()), out);
+
+		assertEquals(2, scraped);
+
+		BufferedReader lines = new BufferedReader(new StringReader(out.toString()));
+		JSONObject listing = new JSONObject(lines.readLine());
+		JSONObject categories = new JSONObject(lines.readLine());
+
+		assertNull("Test Failed: More lines than listings", lines.readLine());
+		assertEquals(fixtureServer.getListingUrl(), listing.getString("listing"));
+		assertEquals(4, listing.getJSONArray("results").length());
+		assertEquals(fixtureServer.expectedTotal(), listing.getString("total"));
+
+		// No product list on the categories webpage - Only its URL.
+		assertEquals(fixtureServer.getCategoriesUrl(), categories.getString("listing"));
+		assertFalse(categories.has("total"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.BatchScraper#scrape(java.util.List, java.io.File)}.
+	 *
+	 * Ensures that each listing is written to its own file, in the same format as a single scrape.
+	 */
+	@Test
+	public void testScrapeToDirectory() throws Exception {
+		File outputDir = Files.createTempDirectory("batch").toFile();
+
+		try {
+			batchScraper.scrape(Arrays.asList(fixtureServer.getListingUrl(), fixtureServer.getListingUrl()), outputDir);
+
+			String[] names = outputDir.list();
+			Arrays.sort(names);
+
+			assertEquals(2, names.length);
+			assertEquals(BatchScraper.fileName(1, fixtureServer.getListingUrl()), names[0]);
+			assertTrue("Test Failed: Unexpected file name " + names[0], names[0].matches("0001-[A-Za-z0-9._-]+\\.json"));
+
+			String json = new String(Files.readAllBytes(new File(outputDir, names[1]).toPath()), StandardCharsets.UTF_8);
+			assertEquals(fixtureServer.expectedTotal(), new JSONObject(json).getString("total"));
+		} finally {
+			for (File file: outputDir.listFiles()) {
+				file.delete();
+			}
+			outputDir.delete();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class BinarySnapshotReaderTest {
+	private File dir;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Creates a temporary directory for the binary snapshot files.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("binary-snapshot").toFile();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Removes the temporary directory.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		for (File file: dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Ensures that each Product Item can be read back, by number and by URL, exactly as written - Including
+	 * null and non-ASCII text and a size not in the usual form.
+	 */
+	@Test
+	public void testWriteAndRead() throws Exception {
+		ProductStore store = new ProductStore();
+		store.add("http://localhost/apple.html", new ProductInfo("Apple", "12.0kb", "1.20", "A nice red apple"));
+		store.add("http://localhost/brulee.html", new ProductInfo("Crème Brûlée £", "12", "3.50", null));
+		store.add("http://localhost/pear.html", new ProductInfo("Pear", "0.5kb", "0.99", "A nice red apple"));
+		store.failed("http://localhost/orange.html", new IOException("503"));
+
+		File file = new File(dir, "products.bin");
+		BinarySnapshotWriter.write(store, file);
+
+		try (BinarySnapshotReader reader = new BinarySnapshotReader(file)) {
+			assertEquals(3, reader.size());
+			assertEquals(1, reader.failedSize());
+			assertEquals(120 + 350 + 99, reader.getPriceTotalPence());
+			assertEquals("http://localhost/orange.html", reader.getFailedUrl(0));
+
+			for (int i = 0; i < store.size(); i++) {
+				assertEquals("Test Failed: Product Item " + i + " not as written.", store.get(i).toString(), reader.get(i).toString());
+				assertEquals(i, reader.find(store.getUrl(i)));
+			}
+			assertEquals(350, reader.getPricePence(reader.find("http://localhost/brulee.html")));
+			assertEquals("Pear", reader.get("http://localhost/pear.html").getTitle());
+			assertEquals(-1, reader.find("http://localhost/orange.html"));
+			assertNull(reader.get("http://localhost/banana.html"));
+		}
+	}
+
+	/**
+	 * Ensures that a BinarySnapshotWriter given to a scrape passes the output on to the next writer, and that
+	 * the snapshot gives back the same JSON document.
+	 */
+	@Test
+	public void testScrape() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(25);
+
+		try {
+			PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+			File file = new File(dir, "scrape.bin");
+			StringWriter out = new StringWriter();
+
+			pageScraper.scrape(new BinarySnapshotWriter(file, new StreamingJsonResultWriter(out)));
+
+			try (BinarySnapshotReader reader = new BinarySnapshotReader(file)) {
+				assertEquals(25, reader.size());
+				assertEquals(Price.parse(FixtureHttpServer.unitPrice(7)).getPence(), reader.getPricePence(reader.find(fixtureServer.getProductUrl(7))));
+
+				JsonTreeResultWriter writer = new JsonTreeResultWriter();
+				reader.writeTo(writer);
+				JSONAssert.assertEquals(out.toString(), writer.toString(), true);
+			}
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Ensures that a file that is not a binary snapshot is rejected when opened.
+	 */
+	@Test
+	public void testNotBinarySnapshot() throws Exception {
+		File file = new File(dir, "products.json");
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[100]);
+		}
+
+		try {
+			new BinarySnapshotReader(file).close();
+			fail("Test Failed: Expected IOException.");
+		} catch (IOException ioe) {
+			// Expected.
+		}
+
+		// An empty scrape is still a binary snapshot.
+		BinarySnapshotWriter.write(new ProductStore(), file);
+		try (BinarySnapshotReader reader = new BinarySnapshotReader(file)) {
+			assertEquals(0, reader.size());
+			assertEquals(-1, reader.find("http://localhost/apple.html"));
+		}
+	}
+}
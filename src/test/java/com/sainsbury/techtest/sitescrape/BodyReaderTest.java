@@ -0,0 +1,122 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class BodyReaderTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.BodyReader#read(String, java.io.InputStream, String, long)}.
+	 *
+	 * Ensures that gzip, deflate (zlib wrapped and raw) and uncompressed bodies of several chunks are read back
+	 * exactly, with the bytes received counted before decompression.
+	 */
+	@Test
+	public void testDecompress() throws Exception {
+		byte[] html = html(3 * BodyReader.CHUNK_SIZE + 17);
+		BodyReader reader = new BodyReader();
+
+		BodyReader.Body body = reader.read("http://localhost/", new ByteArrayInputStream(html), null, html.length);
+		assertArrayEquals(html, body.getBytes());
+		assertEquals(html.length, body.getReceivedBytes());
+
+		byte[] gzip = gzip(html);
+		body = reader.read("http://localhost/", new ByteArrayInputStream(gzip), "gzip", gzip.length);
+		assertArrayEquals(html, body.getBytes());
+		assertEquals(gzip.length, body.getReceivedBytes());
+		assertTrue("Test Failed: Not compressed.", body.getReceivedBytes() < html.length);
+
+		byte[] zlib = deflate(html, false);
+		assertArrayEquals(html, reader.read("http://localhost/", new ByteArrayInputStream(zlib), "Deflate", -1).getBytes());
+
+		byte[] raw = deflate(html, true);
+		assertArrayEquals(html, reader.read("http://localhost/", new ByteArrayInputStream(raw), "deflate", -1).getBytes());
+
+		assertEquals(0, reader.read("http://localhost/", new ByteArrayInputStream(new byte[0]), "identity", 0).getBytes().length);
+
+		// The chunks are given back for the next body.
+		assertTrue("Test Failed: No chunks pooled.", BodyReader.getPooledChunks() >= 4);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.BodyReader#read(String, java.io.InputStream, String, long)}.
+	 *
+	 * Ensures that a body over the maximum body size fails - Before reading by its Content-Length, and after
+	 * decompression for a small compressed body that expands past the limit.
+	 */
+	@Test
+	public void testMaxBodySize() throws Exception {
+		BodyReader reader = new BodyReader(1000);
+		byte[] html = html(1000);
+
+		assertEquals(1000, reader.read("http://localhost/", new ByteArrayInputStream(html), null, -1).getBytes().length);
+
+		try {
+			reader.read("http://localhost/", new ByteArrayInputStream(new byte[0]), null, 1001);
+			fail("Test Failed: Expected BodyTooLargeException for the Content-Length.");
+		} catch (BodyReader.BodyTooLargeException btle) {
+			// Expected.
+		}
+
+		byte[] compressed = gzip(new byte[100000]);
+		assertTrue(compressed.length < 1000);
+		try {
+			reader.read("http://localhost/", new ByteArrayInputStream(compressed), "gzip", compressed.length);
+			fail("Test Failed: Expected BodyTooLargeException for the decompressed body.");
+		} catch (BodyReader.BodyTooLargeException btle) {
+			// Expected.
+		}
+
+		try {
+			reader.read("http://localhost/", new ByteArrayInputStream(html), "br", -1);
+			fail("Test Failed: Expected IOException for the Content-Encoding.");
+		} catch (IOException ioe) {
+			assertFalse(ioe instanceof BodyReader.BodyTooLargeException);
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.BodyReader#BodyReader(long)}.
+	 *
+	 * Ensures that a maximum body size of less than 1 is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxBodySize() {
+		new BodyReader(0);
+	}
+
+	private static byte[] html(int size) {
+		// Text that compresses, but not to nothing.
+		Random random = new Random(size);
+		byte[] html = new byte[size];
+		for (int i = 0; i < size; i++) {
+			html[i] = (byte) ('a' + random.nextInt(8));
+		}
+		return html;
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(bytes);
+		}
+		return compressed.toByteArray();
+	}
+
+	private static byte[] deflate(byte[] bytes, boolean raw) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+			out.write(bytes);
+		}
+		return compressed.toByteArray();
+	}
+}
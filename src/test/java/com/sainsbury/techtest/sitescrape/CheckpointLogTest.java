@@ -0,0 +1,183 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class CheckpointLogTest {
+	private File dir;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Creates a temporary directory for the checkpoint logs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("checkpoint").toFile();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Removes the temporary directory.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		for (File file: dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.CheckpointLog#CheckpointLog(File, boolean)}.
+	 *
+	 * Ensures that the Product Items added are read back on resume - But not otherwise - that a record cut short
+	 * by a crash is dropped, and that records added after it are read back.
+	 */
+	@Test
+	public void testAppendAndRecover() throws Exception {
+		File file = new File(dir, "scrape.checkpoint");
+
+		try (CheckpointLog log = new CheckpointLog(file, true, 2, 0)) {
+			log.append("http://localhost/apple.html", new ProductInfo("Apple", "12.0kb", "1.20", "A nice red apple"));
+			log.append("http://localhost/brulee.html", new ProductInfo("Crème Brûlée £", "1.5kb", "3.50", ""));
+			log.append("http://localhost/apple.html", new ProductInfo("Apple", "12.0kb", "9.99", "Not added"));
+			log.append("http://localhost/pear.html", new ProductInfo("Pear", "0.5kb", "0.99", "A nice pear"));
+
+			assertEquals(3, log.size());
+			assertEquals("Test Failed: fsync not batched.", 1, log.getSyncs());
+		}
+
+		// A record cut short - Its length, CRC and part of the content.
+		long goodLength = file.length();
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 0, 0});
+		}
+
+		try (CheckpointLog log = new CheckpointLog(file, true)) {
+			assertEquals(3, log.getRecovered());
+			assertEquals("1.20", log.completed("http://localhost/apple.html").getUnitPrice());
+			assertEquals("Crème Brûlée £", log.completed("http://localhost/brulee.html").getTitle());
+			assertEquals(goodLength, file.length());
+
+			log.append("http://localhost/orange.html", new ProductInfo("Orange", "2.0kb", "0.50", "An orange"));
+		}
+
+		try (CheckpointLog log = new CheckpointLog(file, true)) {
+			assertEquals(4, log.getRecovered());
+			assertEquals("An orange", log.completed("http://localhost/orange.html").getDescription());
+		}
+
+		// Not resumed - Started again.
+		try (CheckpointLog log = new CheckpointLog(file, false)) {
+			assertEquals(0, log.size());
+			assertNull(log.completed("http://localhost/apple.html"));
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#checkpointLog(CheckpointLog)}.
+	 *
+	 * Ensures that a scrape that dies part way through, when resumed, only fetches the Product Items it had not
+	 * output, and gives the same JSON document (and total) as a scrape that was never interrupted - Serially and
+	 * through the staged pipeline.
+	 */
+	@Test
+	public void testResume() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(20);
+
+		try {
+			PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).retryPolicy(RetryPolicy.NONE).build();
+			String expectedJson = pageScraper.scrape();
+
+			for (PageScraper scraper: new PageScraper[] {pageScraper, pageScraper.toBuilder().concurrency(4).parseThreads(2).queueCapacity(2).build()}) {
+				File file = new File(dir, "scrape.checkpoint");
+
+				// Dies after outputting 8 Product Items - The log is not closed, as when the process is killed.
+				CheckpointLog crashed = new CheckpointLog(file, false);
+				JsonTreeResultWriter dying = new JsonTreeResultWriter() {
+					private int products = 0;
+
+					@Override
+					public void product(String url, ProductInfo productInfo) {
+						if (++products > 8) {
+							throw new IllegalStateException("Killed");
+						}
+						super.product(url, productInfo);
+					}
+				};
+
+				try {
+					scraper.toBuilder().checkpointLog(crashed).build().scrape(dying);
+					fail("Test Failed: Expected the scrape to die.");
+				} catch (IllegalStateException ise) {
+					// Expected.
+				}
+
+				// Fetches already under way when the pipeline died may still reach the server.
+				int requestsBefore = settledProductRequests(fixtureServer);
+
+				try (CheckpointLog resumed = new CheckpointLog(file, true)) {
+					assertEquals(8, resumed.getRecovered());
+
+					JsonTreeResultWriter writer = new JsonTreeResultWriter();
+					scraper.toBuilder().checkpointLog(resumed).build().scrape(writer);
+
+					JSONAssert.assertEquals(expectedJson, writer.toString(), true);
+					assertEquals("Test Failed: Completed Product Items fetched again.", 12, fixtureServer.getProductRequests() - requestsBefore);
+					assertEquals(20, resumed.size());
+				}
+				crashed.close();
+			}
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * @return The Product Item requests made to the fixture server, once no more have arrived for 200ms.
+	 */
+	private static int settledProductRequests(FixtureHttpServer fixtureServer) throws InterruptedException {
+		int requests = fixtureServer.getProductRequests();
+		while (true) {
+			Thread.sleep(200);
+			int now = fixtureServer.getProductRequests();
+			if (now == requests) {
+				return requests;
+			}
+			requests = now;
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.CheckpointLog#CheckpointLog(File, boolean)}.
+	 *
+	 * Ensures that a file that is not a checkpoint log is not resumed from (or overwritten).
+	 */
+	@Test
+	public void testNotCheckpointLog() throws Exception {
+		File file = new File(dir, "products.json");
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write("{\"results\": []}".getBytes("UTF-8"));
+		}
+
+		try {
+			new CheckpointLog(file, true).close();
+			fail("Test Failed: Expected IOException.");
+		} catch (IOException ioe) {
+			// Expected.
+		}
+		assertEquals(15, file.length());
+	}
+}
@@ -0,0 +1,151 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ContentHashStoreTest {
+	private FixtureHttpServer fixtureServer;
+	private File dir;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up a fixture server with 6 products, and a temporary directory for the store file.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		fixtureServer = new FixtureHttpServer(6);
+		dir = Files.createTempDirectory("content-hashes").toFile();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server and removes the temporary directory.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		fixtureServer.stop();
+		for (File file: dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ContentHashStore#hash(byte[])}.
+	 *
+	 * Ensures that the hash is xxHash64 - The published values, for short input and input of more than 32 bytes.
+	 */
+	@Test
+	public void testHash() {
+		assertEquals(0xEF46DB3751D8E999L, ContentHashStore.hash(new byte[0]));
+		assertEquals(0xD24EC4F1A98C6E5BL, ContentHashStore.hash("a".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals(0x44BC2CF5AD770999L, ContentHashStore.hash("abc".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals(0xFBCEA83C8A378BF1L, ContentHashStore.hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#contentHashStore(ContentHashStore)}.
+	 *
+	 * Ensures that webpages fetched again with the same body are not parsed again, giving the same JSON, and that
+	 * changed webpages are.
+	 */
+	@Test
+	public void testSkipsUnchanged() throws Exception {
+		PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).contentHashStore(new ContentHashStore()).build();
+		String expected = new PageScraper(new URL(fixtureServer.getListingUrl())).scrape();
+
+		JSONAssert.assertEquals(expected, pageScraper.scrape(), true);
+		assertEquals(0, pageScraper.getMetrics().getParsesSkipped());
+		assertEquals(6, pageScraper.getContentHashStore().size());
+
+		JSONAssert.assertEquals(expected, pageScraper.scrape(), true);
+		assertEquals("Test Failed: Unchanged webpages parsed again.", 6, pageScraper.getMetrics().getParsesSkipped());
+
+		// Changed webpages - Parsed again, and stored for next time.
+		fixtureServer.setVersion(2);
+		pageScraper.scrape();
+		assertEquals(6, pageScraper.getMetrics().getParsesSkipped());
+		pageScraper.scrape();
+		assertEquals(12, pageScraper.getMetrics().getParsesSkipped());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ContentHashStore#write(File)}.
+	 *
+	 * Ensures that the store is read back from its file as written, so a later run skips the unchanged webpages,
+	 * and that a full store only updates the Product Items it has.
+	 */
+	@Test
+	public void testWriteAndRead() throws Exception {
+		File file = new File(dir, "content-hashes.bin");
+		assertEquals(0, ContentHashStore.read(file, 1).size());
+
+		PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).contentHashStore(new ContentHashStore()).build();
+		String expected = pageScraper.scrape();
+		pageScraper.getContentHashStore().write(file);
+
+		PageScraper nextRun = pageScraper.toBuilder().metrics(new ScrapeMetrics())
+			.contentHashStore(ContentHashStore.read(file, pageScraper.getExtractionFingerprint())).build();
+		JSONAssert.assertEquals(expected, nextRun.scrape(), true);
+		assertEquals(6, nextRun.getMetrics().getParsesSkipped());
+
+		ContentHashStore full = new ContentHashStore(1);
+		full.put("http://localhost/apple.html", 1, new ProductInfo("Apple", "12.0kb", "1.20", "A nice red apple"));
+		full.put("http://localhost/pear.html", 2, new ProductInfo("Pear", "12.0kb", "0.99", "A nice pear"));
+		full.put("http://localhost/apple.html", 3, new ProductInfo("Apple", "12.0kb", "1.30", "A nice red apple"));
+
+		assertEquals(1, full.size());
+		assertNull(full.unchanged("http://localhost/pear.html", 2));
+		assertNull(full.unchanged("http://localhost/apple.html", 1));
+		assertEquals("1.30", full.unchanged("http://localhost/apple.html", 3).getUnitPrice());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ContentHashStore#read(File, long)}.
+	 *
+	 * Ensures that a store written for one extraction plan is not used for another - Read back empty from its
+	 * file, and refused by a PageScraper with different locators - So changed locators are applied even to
+	 * unchanged webpages.
+	 */
+	@Test
+	public void testDifferentExtractionPlan() throws Exception {
+		File file = new File(dir, "content-hashes.bin");
+
+		PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).contentHashStore(new ContentHashStore()).build();
+		pageScraper.scrape();
+		pageScraper.getContentHashStore().write(file);
+
+		// Description from the whole webpage body rather than div.productText.
+		PageScraper.Builder otherLocators = pageScraper.toBuilder().metrics(new ScrapeMetrics()).contentHashStore(null).productTextDescriptionLocator("body");
+		PageScraper other = otherLocators.build();
+		assertTrue(pageScraper.getExtractionFingerprint() != other.getExtractionFingerprint());
+		assertTrue(pageScraper.getExtractionFingerprint() != pageScraper.toBuilder().contentHashStore(null).streamingExtraction(false).build().getExtractionFingerprint());
+		assertEquals(pageScraper.getExtractionFingerprint(), pageScraper.toBuilder().contentHashStore(null).concurrency(4).build().getExtractionFingerprint());
+
+		ContentHashStore read = ContentHashStore.read(file, other.getExtractionFingerprint());
+		assertEquals(0, read.size());
+
+		PageScraper nextRun = otherLocators.contentHashStore(read).build();
+		String expected = other.scrape();
+		JSONAssert.assertEquals(expected, nextRun.scrape(), true);
+		assertEquals(0, nextRun.getMetrics().getParsesSkipped());
+
+		try {
+			otherLocators.contentHashStore(pageScraper.getContentHashStore()).build();
+			fail("Test Failed: Expected IllegalArgumentException.");
+		} catch (IllegalArgumentException iae) {
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.Selector.SelectorParseException;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ExtractionPlanTest {
+	private static final String HTML = "<html><body><div id=\"main\" class=\"a b\"><p class=\"b\">one</p>"
+		+ "<ul class=\"productLister\"><li><div class=\"productInfo\"><h3><a href=\"x.html\">X</a></h3></div></li></ul>"
+		+ "<p class=\"c b\">two</p></div><p>three</p></body></html>";
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ExtractionPlan#compile(String)}.
+	 *
+	 * Ensures that a compiled locator finds the same elements as jsoup's select() - From the document and from
+	 * an element within it.
+	 */
+	@Test
+	public void testCompiledMatchesSelect() {
+		Document doc = Jsoup.parse(HTML);
+		Element main = doc.getElementById("main");
+		String[] queries = {"p", "p.b", ".b", "#main", "div.a.b", "ul.productLister", "div.productInfo > h3 > a", "li a",
+			"div p", "body > div p.b", "div>ul  li>div a", "#main > p", "html div.productInfo a", "div h3 > a", "ul > a"};
+
+		for (String query: queries) {
+			Evaluator evaluator = ExtractionPlan.compile(query);
+			assertNotNull("Test Failed: Could not compile "+query, evaluator);
+			assertEquals("Test Failed: Different elements for "+query, doc.select(query), Collector.collect(evaluator, doc));
+			assertEquals("Test Failed: Different elements within #main for "+query, main.select(query), Collector.collect(evaluator, main));
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ExtractionPlan#compile(String)}.
+	 *
+	 * Ensures that locators which are not compiled are still queried with jsoup's select().
+	 */
+	@Test
+	public void testUncompiledQueriedBySelect() throws Exception {
+		String[] queries = {"p:contains(two)", "p, li", "p + p", "[href]", "div > *", "ul.productLister li:first-child div.productInfo"};
+
+		for (String query: queries) {
+			assertNull("Test Failed: Compiled "+query, ExtractionPlan.compile(query));
+		}
+
+		ExtractionPlan plan = PageScraper.builder().url(new URL("http://localhost/"))
+			.productListLocator("ul[class=productLister]").productInfoLocator("li:first-child div.productInfo").build().getExtractionPlan();
+		Document doc = Jsoup.parse(HTML);
+		Element productList = plan.findProductList(doc);
+
+		assertNotNull(productList);
+		assertEquals("x.html", plan.findProductLink(plan.findProductInfo(productList)).attr("href"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#build()}.
+	 *
+	 * Ensures that an invalid locator is reported when the PageScraper is built, rather than when scraping.
+	 */
+	@Test(expected = SelectorParseException.class)
+	public void testInvalidLocatorFailsAtBuild() throws Exception {
+		PageScraper.builder().url(new URL("http://localhost/")).productListLocator("ul:nosuchpseudo").build();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ExtractionPlan#findProductLink(Element)}.
+	 *
+	 * Ensures that the default plan finds the Product Item links.
+	 */
+	@Test
+	public void testFindProductLink() throws Exception {
+		ExtractionPlan plan = new PageScraper(new URL("http://localhost/")).getExtractionPlan();
+		Document doc = Jsoup.parse(HTML);
+
+		Element productList = plan.findProductList(doc);
+		assertNotNull(productList);
+		assertEquals(1, plan.findProductItems(productList).size());
+		assertEquals("x.html", plan.findProductLink(plan.findProductInfo(plan.findProductItems(productList).first())).attr("href"));
+		assertNotNull(plan.getStreamingExtractor());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#scrape()}.
+	 *
+	 * Ensures that one PageScraper can be shared by several threads scraping at the same time.
+	 */
+	@Test
+	public void testSharedScraper() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(5);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			final PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).concurrency(2).build();
+			String expectedJson = pageScraper.scrape();
+
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return pageScraper.scrape();
+					}
+				}));
+			}
+
+			for (Future<String> future: futures) {
+				JSONAssert.assertEquals(expectedJson, future.get(), true);
+			}
+		} finally {
+			executor.shutdownNow();
+			fixtureServer.stop();
+		}
+	}
+}
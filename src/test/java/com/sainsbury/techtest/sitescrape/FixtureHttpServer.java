@@ -0,0 +1,383 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * FixtureHttpServer Class
+ *
+ * In-process HTTP server serving a synthetic product listing webpage and its Product Item webpages, laid out
+ * in the same way as the Sainsbury's webpages. Used so that the PageScraper class can be tested without
+ * depending on the live webpage.
+ *
+ *     /listing.html     - The product listing webpage (ul.productLister). When a listing page size is set,
+ *                         only that many products are listed per webpage (?page=N, 0 based) with a "next page"
+ *                         link (ul.pages li.next a) to the following webpage.
+ *     /categories.html  - A category index webpage, without a product list, linking (ul.categories a) to
+ *                         /listing.html and /offers.html.
+ *     /offers.html      - A sub-category product listing webpage for the even numbered products (so they also
+ *                         appear on /listing.html), linking back to /categories.html.
+ *     /product-N.html   - The Product Item webpage for product N (0 based). Served with an ETag, and
+ *                         answered with 304 Not Modified when the request's If-None-Match matches it. When a
+ *                         product page size is set, padded (after the product details) to that many bytes.
+ *
+ * @author John Moores
+ */
+class FixtureHttpServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int productCount;
+
+    // Delay applied to every Product Item webpage response (milliseconds) - The median, when spread (log-normal
+    // distribution with this sigma, 0 for always the same).
+    private volatile long latencyMillis;
+    private volatile double latencySigma;
+
+    // Number of products per product listing webpage - 0 for all of them on one webpage.
+    private volatile int listingPageSize;
+
+    // Size (bytes) the Product Item webpages are padded to - 0 for no padding.
+    private volatile int productPageBytes;
+
+    // Request counters - Used by the tests to check how the webpages were fetched.
+    private final AtomicInteger listingRequests = new AtomicInteger();
+    private final AtomicInteger productRequests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    // Failures - The next N Product Item requests answered with an error status, a Product Item that is
+    // always Not Found, and Product Items whose next request is slow (index to milliseconds).
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile int brokenProduct = -1;
+    private final Map<Integer, Long> slowOnce = new ConcurrentHashMap<Integer, Long>();
+
+    // Fraction of Product Item requests answered with an error status, at random.
+    private volatile double errorRate;
+    private volatile int errorStatus;
+
+    // Whether responses are gzip compressed for requests that accept it.
+    private volatile boolean gzip;
+
+    // Version of the Product Item webpages - Changing it changes their content and ETag.
+    private volatile int version = 1;
+
+    static {
+        // Send each response as soon as it is written - Otherwise Nagle's algorithm holds back the body until the
+        // client's delayed ACK of the headers, adding ~40ms to every request and swamping the load being measured.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public FixtureHttpServer(int productCount) throws IOException {
+        this.productCount = productCount;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getListingUrl() {
+        return getBaseUrl() + "/listing.html";
+    }
+
+    public String getProductUrl(int index) {
+        return getBaseUrl() + "/product-" + index + ".html";
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Spreads the Product Item webpage latency - Log-normal around the latency set, so most responses are near
+     * it with a long tail of slow ones (e.g. sigma 0.5 gives a 99th percentile about 3 times the median).
+     */
+    public void setLatencySigma(double latencySigma) {
+        this.latencySigma = latencySigma;
+    }
+
+    /**
+     * Answers the given fraction (0 to 1) of Product Item requests with the error status, at random.
+     */
+    public void setErrorRate(double errorRate, int status) {
+        this.errorStatus = status;
+        this.errorRate = errorRate;
+    }
+
+    public void failProductRequests(int count, int status) {
+        failureStatus = status;
+        failuresRemaining.set(count);
+    }
+
+    public void setBrokenProduct(int index) {
+        brokenProduct = index;
+    }
+
+    public void slowOnce(int index, long millis) {
+        slowOnce.put(index, millis);
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public void setListingPageSize(int listingPageSize) {
+        this.listingPageSize = listingPageSize;
+    }
+
+    /**
+     * Pads the Product Item webpages to the given size (bytes) - So memory use can be measured against the size
+     * of the webpages. 0 (the default) for no padding.
+     */
+    public void setProductPageBytes(int productPageBytes) {
+        this.productPageBytes = productPageBytes;
+    }
+
+    public String getCategoriesUrl() {
+        return getBaseUrl() + "/categories.html";
+    }
+
+    public int getListingRequests() {
+        return listingRequests.get();
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    public int getProductRequests() {
+        return productRequests.get();
+    }
+
+    public int getNotModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     *  Expected values for the synthetic products.
+     */
+
+    public static String title(int index) {
+        return "Fixture Product " + index;
+    }
+
+    public static String unitPrice(int index) {
+        // Cycle through a few prices, including one with a single decimal place.
+        String[] prices = {"3.50", "1.5", "1.80", "0.99", "12.00"};
+        return prices[index % prices.length];
+    }
+
+    public static String description(int index) {
+        return "Description of fixture product " + index;
+    }
+
+    public String expectedTotal() {
+        BigDecimal total = new BigDecimal("0.00");
+        for (int i = 0; i < productCount; i++) {
+            total = total.add(new BigDecimal(unitPrice(i)).setScale(2, BigDecimal.ROUND_DOWN));
+        }
+        return total.toString();
+    }
+
+    /**
+     *  Webpage content.
+     */
+
+    String listingHtml() {
+        return listingHtml(0);
+    }
+
+    String listingHtml(int page) {
+        int from = listingPageSize > 0 ? page * listingPageSize : 0;
+        int to = listingPageSize > 0 ? Math.min(productCount, from + listingPageSize) : productCount;
+
+        StringBuilder html = new StringBuilder("<html><head><title>Listing</title></head><body><ul class=\"productLister\">");
+        for (int i = from; i < to; i++) {
+            appendProductItem(html, i);
+        }
+        html.append("</ul>");
+
+        if (to < productCount) {
+            // Relative link, as on the Sainsbury's webpages.
+            html.append("<ul class=\"pages\"><li class=\"next\"><a href=\"listing.html?page=").append(page + 1).append("\">Next</a></li></ul>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    String categoriesHtml() {
+        return "<html><head><title>Categories</title></head><body><ul class=\"categories\">"
+            + "<li><a href=\"/listing.html\">All</a></li><li><a href=\"/offers.html#top\">Offers</a></li>"
+            + "</ul></body></html>";
+    }
+
+    String offersHtml() {
+        StringBuilder html = new StringBuilder("<html><head><title>Offers</title></head><body><ul class=\"categories\">"
+            + "<li><a href=\"/categories.html\">Back</a></li></ul><ul class=\"productLister\">");
+        for (int i = 0; i < productCount; i += 2) {
+            appendProductItem(html, i);
+        }
+        return html.append("</ul></body></html>").toString();
+    }
+
+    private void appendProductItem(StringBuilder html, int index) {
+        html.append("<li><div class=\"productInner\"><div class=\"productInfo\"><h3><a href=\"")
+            .append(getProductUrl(index)).append("\">").append(title(index)).append("</a></h3></div></div></li>");
+    }
+
+    String productHtml(int index) {
+        String html = "<html><head><title>" + title(index) + "</title></head><body>"
+            + "<div class=\"productTitleDescriptionContainer\"><h1>" + title(index) + "</h1></div>"
+            + "<div class=\"pricing\"><p class=\"pricePerUnit\">&pound;" + unitPrice(index)
+            + "<abbr title=\"per\">/</abbr><abbr title=\"unit\"><span class=\"pricePerUnitUnit\">unit</span></abbr></p></div>"
+            + "<div class=\"productText\"><p>" + description(index) + "</p></div>"
+            + "<div class=\"version\">" + version + "</div>";
+        String end = "</body></html>";
+
+        // Padded as the rest of a real webpage would be (reviews, recommendations, ...) - All ASCII, so one
+        // byte per character.
+        int padding = productPageBytes - html.length() - end.length() - "<div class=\"padding\"></div>".length();
+        if (padding <= 0) {
+            return html + end;
+        }
+
+        StringBuilder padded = new StringBuilder(productPageBytes).append(html).append("<div class=\"padding\">");
+        for (int i = 0; i < padding; i++) {
+            padded.append(i % 64 == 63 ? ' ' : 'x');
+        }
+        return padded.append("</div>").append(end).toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+
+        try {
+            if (path.equals("/listing.html")) {
+                listingRequests.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                int page = query != null && query.startsWith("page=") ? Integer.parseInt(query.substring("page=".length())) : 0;
+                respond(exchange, 200, listingHtml(page));
+            } else if (path.equals("/categories.html")) {
+                listingRequests.incrementAndGet();
+                respond(exchange, 200, categoriesHtml());
+            } else if (path.equals("/offers.html")) {
+                listingRequests.incrementAndGet();
+                respond(exchange, 200, offersHtml());
+            } else if (path.startsWith("/product-") && path.endsWith(".html")) {
+                int index = Integer.parseInt(path.substring("/product-".length(), path.length() - ".html".length()));
+                productRequests.incrementAndGet();
+
+                // The response is decided while "in flight" but sent afterwards - So the request is no longer
+                // counted by the time the client can have received the response and sent its next request.
+                int status;
+                String html;
+
+                int current = inFlight.incrementAndGet();
+                peakInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    Long slowMillis = slowOnce.remove(index);
+                    long delayMillis = slowMillis != null ? slowMillis : latencyMillis();
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+
+                    String etag = "\"product-" + index + "-v" + version + "\"";
+
+                    if (index == brokenProduct) {
+                        status = 404;
+                        html = "<html><body>Not Found</body></html>";
+                    } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                        status = errorStatus;
+                        html = "<html><body>Failed</body></html>";
+                    } else if (failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                        status = failureStatus;
+                        html = "<html><body>Failed</body></html>";
+                    } else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.getResponseHeaders().set("ETag", etag);
+                        notModifiedResponses.incrementAndGet();
+                        status = 304;
+                        html = null;
+                    } else {
+                        exchange.getResponseHeaders().set("ETag", etag);
+                        status = 200;
+                        html = productHtml(index);
+                    }
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+
+                if (html == null) {
+                    exchange.sendResponseHeaders(status, -1);
+                    exchange.close();
+                } else {
+                    respond(exchange, status, html);
+                }
+            } else {
+                respond(exchange, 404, "<html><body>Not Found</body></html>");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    private long latencyMillis() {
+        if (latencySigma <= 0 || latencyMillis <= 0) {
+            return latencyMillis;
+        }
+        return Math.round(latencyMillis * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private void respond(HttpExchange exchange, int status, String html) throws IOException {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed)) {
+                gzipOut.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+}
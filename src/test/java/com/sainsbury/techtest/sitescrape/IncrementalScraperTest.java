@@ -0,0 +1,194 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncrementalScraperTest {
+	private FixtureHttpServer fixtureServer;
+	private File snapshotFile;
+	private IncrementalScraper incrementalScraper;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up a fixture server with 5 products and a snapshot file that does not exist yet.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		fixtureServer = new FixtureHttpServer(5);
+		snapshotFile = File.createTempFile("snapshot", ".bin");
+		snapshotFile.delete();
+		incrementalScraper = new IncrementalScraper(new PageScraper(new URL(fixtureServer.getListingUrl())), snapshotFile);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server and deletes the snapshot file.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		fixtureServer.stop();
+		snapshotFile.delete();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.IncrementalScraper#scrape()}.
+	 *
+	 * Ensures that every product is added on the first run, and that nothing has changed on the second.
+	 */
+	@Test
+	public void testFirstRunThenUnchanged() throws Exception {
+		JSONObject first = new JSONObject(incrementalScraper.scrape());
+
+		assertEquals(5, first.getJSONArray("added").length());
+		assertEquals(0, first.getJSONArray("changed").length());
+		assertEquals(0, first.getJSONArray("removed").length());
+		assertEquals(FixtureHttpServer.title(0), first.getJSONArray("added").getJSONObject(0).getString("title"));
+		assertEquals(fixtureServer.getProductUrl(0), first.getJSONArray("added").getJSONObject(0).getString("url"));
+		assertEquals(fixtureServer.expectedTotal(), first.getString("total"));
+		assertTrue("Test Failed: Snapshot not written", snapshotFile.exists());
+
+		JSONObject second = new JSONObject(incrementalScraper.scrape());
+
+		assertEquals(0, second.getJSONArray("added").length());
+		assertEquals(0, second.getJSONArray("changed").length());
+		assertEquals(0, second.getJSONArray("removed").length());
+		assertEquals("Test Failed: Total must include the unchanged products", fixtureServer.expectedTotal(), second.getString("total"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.IncrementalScraper#scrape()}.
+	 *
+	 * Ensures that a product whose details differ from the snapshot is changed, and that a product no longer
+	 * listed is removed.
+	 */
+	@Test
+	public void testChangedAndRemoved() throws Exception {
+		incrementalScraper.scrape();
+		ProductSnapshot snapshot = ProductSnapshot.read(snapshotFile);
+
+		// Product 1 as previously described differently, and a product that is no longer listed.
+		Map<String, ProductSnapshot.Entry> entries = new LinkedHashMap<String, ProductSnapshot.Entry>(snapshot.getEntries());
+		entries.put(fixtureServer.getProductUrl(1), new ProductSnapshot.Entry("stale", new ProductInfo("Old Title", "1.0kb", "9.99", "Old")));
+		entries.put(fixtureServer.getBaseUrl() + "/product-99.html", new ProductSnapshot.Entry("gone", new ProductInfo("Gone", "1.0kb", "1.00", "Gone")));
+		new ProductSnapshot(entries, snapshot.getPlanFingerprint()).write(snapshotFile);
+
+		JSONObject delta = new JSONObject(incrementalScraper.scrape());
+
+		assertEquals(0, delta.getJSONArray("added").length());
+		assertEquals(1, delta.getJSONArray("changed").length());
+		assertEquals(FixtureHttpServer.title(1), delta.getJSONArray("changed").getJSONObject(0).getString("title"));
+		assertEquals(1, delta.getJSONArray("removed").length());
+		assertEquals(fixtureServer.getBaseUrl() + "/product-99.html", delta.getJSONArray("removed").getString(0));
+
+		// The snapshot now matches the webpages.
+		ProductSnapshot next = ProductSnapshot.read(snapshotFile);
+		assertEquals(5, next.size());
+		assertEquals(FixtureHttpServer.title(1), next.get(fixtureServer.getProductUrl(1)).getProductInfo().getTitle());
+		assertEquals(snapshot.get(fixtureServer.getProductUrl(1)).getContentHash(), next.get(fixtureServer.getProductUrl(1)).getContentHash());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.IncrementalScraper#scrape()}.
+	 *
+	 * Ensures that a product that cannot be fetched is listed as failed, not removed, and keeps its snapshot entry.
+	 */
+	@Test
+	public void testFailedProductKept() throws Exception {
+		incrementalScraper.scrape();
+		fixtureServer.setBrokenProduct(2);
+
+		JSONObject delta = new JSONObject(incrementalScraper.scrape());
+
+		assertEquals(0, delta.getJSONArray("removed").length());
+		assertEquals(1, delta.getJSONArray("failed").length());
+		assertNotNull("Test Failed: Snapshot entry lost", ProductSnapshot.read(snapshotFile).get(fixtureServer.getProductUrl(2)));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ProductSnapshot#write(java.io.File)}.
+	 *
+	 * Ensures that a snapshot is read back as it was written, in the same order.
+	 */
+	@Test
+	public void testSnapshotRoundTrip() throws Exception {
+		Map<String, ProductSnapshot.Entry> entries = new LinkedHashMap<String, ProductSnapshot.Entry>();
+		entries.put("http://example.com/b", new ProductSnapshot.Entry("hash-b", new ProductInfo("B £", "2.0kb", "2.00", "")));
+		entries.put("http://example.com/a", new ProductSnapshot.Entry("hash-a", new ProductInfo("A", "1.0kb", "1.50", "Description A")));
+		new ProductSnapshot(entries, 42).write(snapshotFile);
+
+		ProductSnapshot snapshot = ProductSnapshot.read(snapshotFile);
+		assertEquals(42, snapshot.getPlanFingerprint());
+
+		assertEquals(2, snapshot.size());
+		assertEquals("http://example.com/b", snapshot.getEntries().keySet().iterator().next());
+		assertEquals("B £", snapshot.get("http://example.com/b").getProductInfo().getTitle());
+		assertEquals("hash-a", snapshot.get("http://example.com/a").getContentHash());
+		assertEquals("Description A", snapshot.get("http://example.com/a").getProductInfo().getDescription());
+		assertEquals(0, ProductSnapshot.read(new File(snapshotFile.getPath() + ".missing")).size());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.IncrementalScraper#scrape()}.
+	 *
+	 * Ensures that the Product Items of unchanged webpages are extracted again once the locators have changed -
+	 * Rather than taken from the snapshot of the previous plan - and reused again on the next run.
+	 */
+	@Test
+	public void testDifferentExtractionPlan() throws Exception {
+		incrementalScraper.scrape();
+
+		PageScraper pageScraper = incrementalScraper.getPageScraper().toBuilder().productTextDescriptionLocator("div.pricing").build();
+		IncrementalScraper changedLocator = new IncrementalScraper(pageScraper, snapshotFile);
+
+		long skipped = pageScraper.getMetrics().getParsesSkipped();
+		JSONObject delta = new JSONObject(changedLocator.scrape());
+
+		assertEquals("Test Failed: Extracted with the previous plan.", 5, delta.getJSONArray("changed").length());
+		assertTrue(delta.getJSONArray("changed").getJSONObject(0).getString("description").contains(FixtureHttpServer.unitPrice(0)));
+		assertEquals(skipped, pageScraper.getMetrics().getParsesSkipped());
+		assertEquals(pageScraper.getExtractionFingerprint(), ProductSnapshot.read(snapshotFile).getPlanFingerprint());
+
+		// Same plan again - Reused.
+		delta = new JSONObject(changedLocator.scrape());
+		assertEquals(0, delta.getJSONArray("changed").length());
+		assertEquals(skipped + 5, pageScraper.getMetrics().getParsesSkipped());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ProductSnapshot#read(java.io.File)}.
+	 *
+	 * Ensures that a snapshot written without an extraction plan (version 1) is still compared with, but its
+	 * Product Items are not reused.
+	 */
+	@Test
+	public void testVersion1Snapshot() throws Exception {
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(snapshotFile))) {
+			out.writeInt(1);
+			out.writeInt(1);
+			ProductSnapshot.writeString(out, "http://example.com/a");
+			ProductSnapshot.writeString(out, "hash-a");
+			ProductSnapshot.writeString(out, "A");
+			ProductSnapshot.writeString(out, "1.0kb");
+			ProductSnapshot.writeString(out, "1.50");
+			ProductSnapshot.writeString(out, "Description A");
+		}
+
+		ProductSnapshot snapshot = ProductSnapshot.read(snapshotFile);
+
+		assertEquals("A", snapshot.get("http://example.com/a").getProductInfo().getTitle());
+		assertNull(snapshot.unchanged("http://example.com/a", "hash-a", snapshot.getPlanFingerprint()));
+	}
+}
@@ -0,0 +1,121 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ListingCrawlerTest {
+	private FixtureHttpServer fixtureServer;
+	private PageScraper pageScraper;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up a fixture server with 7 products, listed 3 to a page.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		fixtureServer = new FixtureHttpServer(7);
+		fixtureServer.setListingPageSize(3);
+		pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		fixtureServer.stop();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ListingCrawler#crawl(java.util.List)}.
+	 *
+	 * Ensures that the "next page" links are followed, giving all the products in listing order with one total.
+	 */
+	@Test
+	public void testFollowsPagination() throws Exception {
+		String json = ListingCrawler.builder(pageScraper).build().crawl(Collections.singletonList(pageScraper.getUrl()));
+
+		JSONObject result = new JSONObject(json);
+		JSONArray results = result.getJSONArray("results");
+
+		assertEquals(7, results.length());
+		for (int i = 0; i < results.length(); i++) {
+			assertEquals(FixtureHttpServer.title(i), results.getJSONObject(i).getString("title"));
+		}
+		assertEquals(fixtureServer.expectedTotal(), result.getString("total"));
+		assertEquals(3, fixtureServer.getListingRequests());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ListingCrawler#crawl(java.util.List)}.
+	 *
+	 * Ensures that sub-category links are followed and that a product in several categories, or a webpage
+	 * linked more than once, is only fetched once.
+	 */
+	@Test
+	public void testSubCategoriesFetchedOnce() throws Exception {
+		ListingCrawler crawler = ListingCrawler.builder(pageScraper.toBuilder().concurrency(2).build()).subCategoryLocator("ul.categories a").build();
+		String json = crawler.crawl(Arrays.asList(new URL(fixtureServer.getCategoriesUrl()), new URL(fixtureServer.getCategoriesUrl())));
+
+		JSONObject result = new JSONObject(json);
+
+		assertEquals(7, result.getJSONArray("results").length());
+		assertEquals(fixtureServer.expectedTotal(), result.getString("total"));
+		assertEquals("Test Failed: Product Item webpage fetched more than once", 7, fixtureServer.getProductRequests());
+
+		// categories.html, offers.html and the 3 pages of listing.html - Each once.
+		assertEquals(5, fixtureServer.getListingRequests());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ListingCrawler.Builder#bloomFilter(long)}.
+	 *
+	 * Ensures that a Bloom filter frontier gives the same result.
+	 */
+	@Test
+	public void testBloomFilterFrontier() throws Exception {
+		ListingCrawler exact = ListingCrawler.builder(pageScraper).subCategoryLocator("ul.categories a").build();
+		ListingCrawler bloom = ListingCrawler.builder(pageScraper).subCategoryLocator("ul.categories a").bloomFilter(1000).build();
+
+		JSONAssert.assertEquals(exact.crawl(Collections.singletonList(new URL(fixtureServer.getCategoriesUrl()))),
+			bloom.crawl(Collections.singletonList(new URL(fixtureServer.getCategoriesUrl()))), true);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ListingCrawler.Builder#maxListingPages(int)}.
+	 *
+	 * Ensures that the crawl stops after the maximum number of listing webpages.
+	 */
+	@Test
+	public void testMaxListingPages() throws Exception {
+		String json = ListingCrawler.builder(pageScraper).maxListingPages(2).build().crawl(Collections.singletonList(pageScraper.getUrl()));
+
+		assertEquals(6, new JSONObject(json).getJSONArray("results").length());
+		assertEquals(2, fixtureServer.getListingRequests());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ListingCrawler#crawl(java.util.List)}.
+	 *
+	 * Ensures that a crawl which finds no product list gives the same empty JSON as scrape().
+	 */
+	@Test
+	public void testNoProductList() throws Exception {
+		String json = ListingCrawler.builder(pageScraper).build().crawl(Collections.singletonList(new URL(fixtureServer.getCategoriesUrl())));
+
+		assertEquals("{}", json);
+	}
+}
@@ -0,0 +1,308 @@
+package com.sainsbury.techtest.sitescrape;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadTestHarness Class
+ *
+ * Load-test harness - Starts a FixtureHttpServer with synthetic product listing and Product Item webpages and
+ * drives the PageScraper against it end to end (fetching, extraction and JSON output), with no network needed:
+ *
+ *     mvn test-compile exec:exec@load-test -Dload.args="--products=10000 --listing-page-size=100 --latency-ms=20"
+ *
+ * Options:
+ *
+ *     --products=N           Number of Product Items (default 1000).
+ *     --listing-page-size=N  Product Items per product listing webpage, the pages being crawled (default 0 -
+ *                            all of them on one webpage).
+ *     --page-bytes=N         Size (bytes) of each Product Item webpage, padded after the product details
+ *                            (default 0 - not padded, about 500 bytes).
+ *     --latency-ms=N         Median latency of a Product Item webpage (default 0).
+ *     --latency-sigma=S      Spread of the latency - Log-normal, 0 for always the median (default 0).
+ *     --error-rate=R         Fraction of Product Item requests answered with 503 Service Unavailable (default 0).
+ *     --concurrency=N        PageScraper concurrency (default 16).
+ *     --parse-threads=N      Parse threads of the staged pipeline (default 0 - No pipeline).
+ *     --retries=N            Retries of a failed request (default 2).
+ *     --transport=NAME       okhttp (default) or jsoup.
+ *
+ * Reports the Product Items per second, the request latency percentiles (as seen by the PageScraper), the
+ * bytes fetched and the peak heap used, followed by the PageScraper's ScrapeMetrics (the time taken by each
+ * stage).
+ *
+ * @author John Moores
+ */
+public class LoadTestHarness {
+    // How often the heap used is sampled (milliseconds).
+    private static final long HEAP_SAMPLE_MILLIS = 5;
+
+    /**
+     * LoadTestHarness Config Class - The load to run.
+     */
+    static class Config {
+        int products = 1000;
+        int listingPageSize = 0;
+        int productPageBytes = 0;
+        long latencyMillis = 0;
+        double latencySigma = 0;
+        double errorRate = 0;
+        int concurrency = 16;
+        int parseThreads = 0;
+        int retries = 2;
+        String transport = "okhttp";
+    }
+
+    /**
+     * LoadTestHarness Report Class - What was measured.
+     */
+    static class Report {
+        int products;
+        int failed;
+        int requests;
+        long bytesFetched;
+        long elapsedNanos;
+        long[] latencyNanos;
+        long peakHeapBytes;
+        String stageSummary;
+
+        double productsPerSecond() {
+            return products * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * @return The latency (milliseconds) the given percentage of the requests completed within.
+         */
+        double latencyPercentileMillis(double percentile) {
+            if (latencyNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencyNanos.length) - 1;
+            return latencyNanos[Math.max(0, Math.min(index, latencyNanos.length - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Products:      %d (%d failed)%n"
+                + "Requests:      %d%n"
+                + "Elapsed:       %.2f s%n"
+                + "Throughput:    %.1f products/s%n"
+                + "Latency (ms):  p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n"
+                + "Fetched:       %.1f MB (%.1f kb per request)%n"
+                + "Peak heap:     %.1f MB%n%n%s",
+                products, failed, requests, elapsedNanos / 1e9, productsPerSecond(),
+                latencyPercentileMillis(50), latencyPercentileMillis(90), latencyPercentileMillis(99), latencyPercentileMillis(100),
+                bytesFetched / (1024.0 * 1024.0), bytesFetched / 1024.0 / Math.max(1, requests),
+                peakHeapBytes / (1024.0 * 1024.0), stageSummary);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = new Config();
+
+        for (String arg: args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            if (arg.startsWith("--products=")) {
+                config.products = Integer.parseInt(value);
+            } else if (arg.startsWith("--listing-page-size=")) {
+                config.listingPageSize = Integer.parseInt(value);
+            } else if (arg.startsWith("--page-bytes=")) {
+                config.productPageBytes = Integer.parseInt(value);
+            } else if (arg.startsWith("--latency-ms=")) {
+                config.latencyMillis = Long.parseLong(value);
+            } else if (arg.startsWith("--latency-sigma=")) {
+                config.latencySigma = Double.parseDouble(value);
+            } else if (arg.startsWith("--error-rate=")) {
+                config.errorRate = Double.parseDouble(value);
+            } else if (arg.startsWith("--concurrency=")) {
+                config.concurrency = Integer.parseInt(value);
+            } else if (arg.startsWith("--parse-threads=")) {
+                config.parseThreads = Integer.parseInt(value);
+            } else if (arg.startsWith("--retries=")) {
+                config.retries = Integer.parseInt(value);
+            } else if (arg.startsWith("--transport=")) {
+                config.transport = value;
+            } else {
+                System.out.println("The option \"" + arg + "\" is invalid. Exiting....");
+                return;
+            }
+        }
+
+        System.out.println(run(config));
+    } // main() method
+
+    /**
+     * Runs the load - Starts the FixtureHttpServer, scrapes it once and stops it.
+     */
+    static Report run(Config config) throws IOException {
+        FixtureHttpServer fixtureServer = new FixtureHttpServer(config.products);
+        HeapSampler heapSampler = new HeapSampler();
+
+        try {
+            fixtureServer.setListingPageSize(config.listingPageSize);
+            fixtureServer.setProductPageBytes(config.productPageBytes);
+            fixtureServer.setLatencyMillis(config.latencyMillis);
+            fixtureServer.setLatencySigma(config.latencySigma);
+            fixtureServer.setErrorRate(config.errorRate, 503);
+
+            TimingTransport transport = new TimingTransport(config.transport.equals("jsoup") ? new JsoupFetchTransport() : OkHttpFetchTransport.shared());
+            PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl()))
+                .concurrency(config.concurrency).parseThreads(config.parseThreads).transport(transport)
+                .retryPolicy(RetryPolicy.builder().maxAttempts(config.retries + 1).build()).build();
+
+            CountingResultWriter writer = new CountingResultWriter();
+
+            System.gc();
+            heapSampler.start();
+            long start = System.nanoTime();
+
+            if (config.listingPageSize > 0) {
+                ListingCrawler.builder(pageScraper).build().crawl(Collections.singletonList(pageScraper.getUrl()), writer);
+            } else {
+                pageScraper.scrape(writer);
+            }
+
+            Report report = new Report();
+            report.elapsedNanos = System.nanoTime() - start;
+            report.peakHeapBytes = heapSampler.stop();
+            report.products = writer.getProductCount();
+            report.failed = writer.failed;
+            report.latencyNanos = transport.getLatencyNanos();
+            report.requests = report.latencyNanos.length;
+            report.bytesFetched = pageScraper.getMetrics().getBytesFetched();
+            report.stageSummary = pageScraper.getMetrics().getSummary();
+            return report;
+        } finally {
+            heapSampler.stop();
+            fixtureServer.stop();
+        }
+    } // run() method
+
+    /**
+     * FetchTransport recording the latency of every request it passes on.
+     */
+    private static final class TimingTransport implements FetchTransport {
+        private final FetchTransport transport;
+        private long[] latencyNanos = new long[1024];
+        private int count;
+
+        TimingTransport(FetchTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return transport.fetch(url, requestHeaders);
+            } finally {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        private synchronized void record(long nanos) {
+            if (count == latencyNanos.length) {
+                latencyNanos = Arrays.copyOf(latencyNanos, count * 2);
+            }
+            latencyNanos[count++] = nanos;
+        }
+
+        /**
+         * @return The latencies, sorted.
+         */
+        synchronized long[] getLatencyNanos() {
+            long[] sorted = Arrays.copyOf(latencyNanos, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * StreamingJsonResultWriter writing to nowhere, counting the failed Product Items.
+     */
+    private static final class CountingResultWriter extends StreamingJsonResultWriter {
+        private int failed;
+
+        CountingResultWriter() {
+            super(new Writer() {
+                @Override
+                public void write(char[] cbuf, int off, int len) {
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+        }
+
+        @Override
+        public void failed(String url, IOException cause) {
+            super.failed(url, cause);
+            failed++;
+        }
+    }
+
+    /**
+     * Samples the heap used on a background thread, keeping the peak.
+     */
+    private static final class HeapSampler implements Runnable {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peakBytes = new AtomicLong();
+        private volatile Thread thread;
+
+        void start() {
+            thread = new Thread(this, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * @return The peak heap used (bytes) since started.
+         */
+        long stop() {
+            Thread sampling = thread;
+
+            if (sampling != null) {
+                thread = null;
+                sampling.interrupt();
+                try {
+                    sampling.join();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                sample();
+            }
+            return peakBytes.get();
+        }
+
+        @Override
+        public void run() {
+            while (thread != null) {
+                sample();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(HEAP_SAMPLE_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            long used = memory.getHeapMemoryUsage().getUsed();
+            peakBytes.accumulateAndGet(used, Math::max);
+        }
+    }
+
+} // LoadTestHarness class
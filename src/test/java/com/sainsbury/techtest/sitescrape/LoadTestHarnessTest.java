@@ -0,0 +1,55 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LoadTestHarnessTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.LoadTestHarness#run(com.sainsbury.techtest.sitescrape.LoadTestHarness.Config)}.
+	 *
+	 * Ensures that a small load, crawled page by page with spread latencies and errors, is scraped completely
+	 * (the errors being retried) and that its measurements are reported.
+	 */
+	@Test
+	public void testRun() throws Exception {
+		LoadTestHarness.Config config = new LoadTestHarness.Config();
+		config.products = 200;
+		config.listingPageSize = 50;
+		config.latencyMillis = 1;
+		config.latencySigma = 0.5;
+		config.errorRate = 0.05;
+		config.retries = 6;
+		config.concurrency = 8;
+
+		LoadTestHarness.Report report = LoadTestHarness.run(config);
+
+		assertEquals(200, report.products);
+		assertEquals(0, report.failed);
+		assertTrue("Test Failed: Errors not retried", report.requests > 200);
+		assertTrue(report.productsPerSecond() > 0);
+		assertTrue(report.latencyPercentileMillis(50) <= report.latencyPercentileMillis(99));
+		assertTrue(report.peakHeapBytes > 0);
+		assertTrue(report.toString().contains("products/s"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.LoadTestHarness#run(com.sainsbury.techtest.sitescrape.LoadTestHarness.Config)}.
+	 *
+	 * Ensures that the Product Item webpages are padded to the page size given, and still scraped.
+	 */
+	@Test
+	public void testPageBytes() throws Exception {
+		LoadTestHarness.Config config = new LoadTestHarness.Config();
+		config.products = 20;
+		config.productPageBytes = 64 * 1024;
+		config.concurrency = 4;
+
+		LoadTestHarness.Report report = LoadTestHarness.run(config);
+
+		assertEquals(20, report.products);
+		assertTrue("Test Failed: Product Item webpages not padded - " + report.bytesFetched + " bytes", report.bytesFetched >= 20 * 64 * 1024);
+		assertTrue("Test Failed: Product Item webpages padded too much - " + report.bytesFetched + " bytes", report.bytesFetched < 21 * 64 * 1024);
+	}
+}
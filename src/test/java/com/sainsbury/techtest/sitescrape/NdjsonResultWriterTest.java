@@ -0,0 +1,93 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class NdjsonResultWriterTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.NdjsonResultWriter#product(String, ProductInfo)}.
+	 *
+	 * Ensures that each Product Item is written as one compact line as soon as it is given to the writer, and
+	 * that the summary line comes last.
+	 */
+	@Test
+	public void testLines() throws Exception {
+		StringWriter out = new StringWriter();
+		NdjsonResultWriter writer = new NdjsonResultWriter(out);
+
+		writer.begin();
+		writer.product("http://localhost/apple.html", new ProductInfo("Apple", "12.0kb", "1.20", "A nice red apple"));
+		assertTrue("Test Failed: Product Item not written as a line. Found "+out, out.toString().endsWith("}\n"));
+
+		writer.failed("http://localhost/orange.html", new IOException("503 Service Unavailable"));
+		writer.end(new BigDecimal("1.20"));
+
+		String[] lines = out.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertFalse("Test Failed: Line is indented. Found "+lines[0], lines[0].contains("\n") || lines[0].contains("  "));
+
+		JSONObject product = new JSONObject(lines[0]);
+		assertEquals("http://localhost/apple.html", product.getString("url"));
+		assertEquals("1.20", product.getString("unit_price"));
+
+		assertEquals("http://localhost/orange.html", new JSONObject(lines[1]).getString("url"));
+		assertEquals("503 Service Unavailable", new JSONObject(lines[1]).getString("error"));
+
+		JSONObject summary = new JSONObject(lines[2]);
+		assertEquals("1.20", summary.getString("total"));
+		assertEquals(1, summary.getInt("products"));
+		assertEquals(1, summary.getInt("failed"));
+
+		StringWriter emptyOut = new StringWriter();
+		new NdjsonResultWriter(emptyOut).empty();
+		assertEquals("0.00", new JSONObject(emptyOut.toString().trim()).getString("total"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#scrape(ScrapeResultWriter)}.
+	 *
+	 * Ensures that a concurrent scrape writes each Product Item as it completes - A slow first Product Item
+	 * does not hold up the others - and that the lines hold the same Product Items and total as scrape().
+	 */
+	@Test
+	public void testCompletionOrder() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(6);
+
+		try {
+			PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).concurrency(3).build();
+			JSONObject expected = new JSONObject(pageScraper.scrape());
+
+			fixtureServer.slowOnce(0, 1000);
+			StringWriter out = new StringWriter();
+			pageScraper.scrape(new NdjsonResultWriter(out));
+
+			String[] lines = out.toString().split("\n");
+			assertEquals(7, lines.length);
+			assertEquals("Test Failed: Slow Product Item written first.", -1, lines[0].indexOf(fixtureServer.getProductUrl(0)));
+			assertEquals(fixtureServer.getProductUrl(0), new JSONObject(lines[5]).getString("url"));
+
+			Set<String> titles = new HashSet<String>();
+			for (int i = 0; i < 6; i++) {
+				titles.add(new JSONObject(lines[i]).getString("title"));
+			}
+			JSONArray results = expected.getJSONArray("results");
+			for (int i = 0; i < results.length(); i++) {
+				assertTrue(titles.contains(results.getJSONObject(i).getString("title")));
+			}
+			assertEquals(expected.getString("total"), new JSONObject(lines[6]).getString("total"));
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+}
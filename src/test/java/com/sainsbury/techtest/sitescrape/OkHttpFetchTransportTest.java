@@ -0,0 +1,128 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class OkHttpFetchTransportTest {
+	private FixtureHttpServer fixtureServer;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up a fixture server with 6 products.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		fixtureServer = new FixtureHttpServer(6);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		fixtureServer.stop();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.OkHttpFetchTransport#fetch(String, java.util.Map)}.
+	 *
+	 * Ensures that the pooled transport gives the same JSON as the jsoup transport, with and without gzip.
+	 */
+	@Test
+	public void testSameAsJsoup() throws Exception {
+		PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+		String jsoupJson = pageScraper.toBuilder().transport(new JsoupFetchTransport()).build().scrape();
+
+		assertTrue(pageScraper.getTransport() instanceof OkHttpFetchTransport);
+		JSONAssert.assertEquals(jsoupJson, pageScraper.scrape(), true);
+
+		fixtureServer.setGzip(true);
+		JSONAssert.assertEquals(jsoupJson, pageScraper.toBuilder().transport(new OkHttpFetchTransport()).build().scrape(), true);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.OkHttpFetchTransport#fetch(String, java.util.Map)}.
+	 *
+	 * Ensures that a single connection is kept alive and reused for all the webpages of a serial scrape.
+	 */
+	@Test
+	public void testConnectionReused() throws Exception {
+		OkHttpFetchTransport transport = new OkHttpFetchTransport();
+		PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).transport(transport).build().scrape();
+
+		assertEquals(1, transport.getConnectionCount());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.OkHttpFetchTransport#fetch(String, java.util.Map)}.
+	 *
+	 * Ensures that gzip responses are decompressed, and that the headers describe the decompressed body.
+	 */
+	@Test
+	public void testGzip() throws Exception {
+		fixtureServer.setGzip(true);
+
+		FetchResponse response = new OkHttpFetchTransport().fetch(fixtureServer.getProductUrl(2), Collections.<String, String>emptyMap());
+
+		assertEquals(200, response.getStatusCode());
+		assertEquals(fixtureServer.productHtml(2), new String(response.getBody(), "UTF-8"));
+		assertEquals("UTF-8", response.getCharset());
+		assertNull(response.header("Content-Encoding"));
+		assertEquals(-1, response.getContentLength());
+		assertTrue("Test Failed: Bytes received not compressed.", response.getReceivedBytes() < response.getBody().length);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.OkHttpFetchTransport#OkHttpFetchTransport(int, long)}.
+	 *
+	 * Ensures that a Product Item webpage over the maximum body size fails, compressed or not and with either
+	 * transport, and that it is not retried.
+	 */
+	@Test
+	public void testMaxBodySize() throws Exception {
+		long maxBodySize = fixtureServer.productHtml(0).length() - 1;
+		PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl()))
+			.transport(new OkHttpFetchTransport(OkHttpFetchTransport.DEFAULT_TIMEOUT_MILLIS, maxBodySize)).build();
+
+		for (boolean gzip: new boolean[] {false, true}) {
+			fixtureServer.setGzip(gzip);
+
+			for (PageScraper scraper: new PageScraper[] {pageScraper, pageScraper.toBuilder().transport(new JsoupFetchTransport(maxBodySize)).build()}) {
+				try {
+					scraper.fetchProductInfo(fixtureServer.getProductUrl(0));
+					fail("Test Failed: Expected BodyTooLargeException.");
+				} catch (BodyReader.BodyTooLargeException btle) {
+					// Expected.
+				}
+			}
+		}
+
+		// Not retried - The webpage will be no smaller next time.
+		assertEquals(4, fixtureServer.getProductRequests());
+		assertNotNull(pageScraper.toBuilder().transport(new OkHttpFetchTransport(OkHttpFetchTransport.DEFAULT_TIMEOUT_MILLIS, maxBodySize + 1)).build()
+			.fetchProductInfo(fixtureServer.getProductUrl(0)));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.FetchResponse#charsetOf(String)}.
+	 *
+	 * Ensures that the charset is taken from the Content-Type.
+	 */
+	@Test
+	public void testCharsetOf() {
+		assertEquals("UTF-8", FetchResponse.charsetOf("text/html; charset=UTF-8"));
+		assertEquals("ISO-8859-1", FetchResponse.charsetOf("text/html;Charset=\"ISO-8859-1\""));
+		assertNull(FetchResponse.charsetOf("text/html"));
+		assertNull(FetchResponse.charsetOf(null));
+	}
+}
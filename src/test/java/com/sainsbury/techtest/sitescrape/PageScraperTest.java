@@ -7,13 +7,19 @@ import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
 
 public class PageScraperTest {
 	private PageScraper pgeScraper;
 	
+	// Local fixture webpages - Used by the tests that must not depend on the live webpage.
+	private FixtureHttpServer fixtureServer;
+	
 	private String specifiedUrlString = "http://hiring-tests.s3-website-eu-west-1.amazonaws.com/2015_Developer_Scrape/5_products.html";
 	
 	// Declarations and Initialisation of assertion reference values - follow:
@@ -39,6 +45,8 @@ public class PageScraperTest {
         } catch (MalformedURLException muex) {
             Logger.getLogger(PageScraperTest.class.getName()).log(Level.SEVERE, null, muex);
         }
+        
+        fixtureServer = new FixtureHttpServer(12);
 	}
 
 	/**
@@ -49,6 +57,9 @@ public class PageScraperTest {
 	@After
 	public void tearDown() throws Exception {
 		pgeScraper = null;
+		
+		fixtureServer.stop();
+		fixtureServer = null;
 	}
 
 	/**
@@ -132,7 +143,7 @@ public class PageScraperTest {
         // Override the "Product List Locator" on the pageScraper object, giving it
         // an invalid identifier for locating the Product List, forcing it to NOT return
         // the product list.
-	    pgeScraper.setProductListLocator("ul.NOTproductLister");
+	    pgeScraper = pgeScraper.toBuilder().productListLocator("ul.NOTproductLister").build();
 	    
 	    // Now the "Product List Locator" is overridden - repeat the page Scrape with the
 	    // PageScraper class's pageScrape method.
@@ -155,4 +166,86 @@ public class PageScraperTest {
 			assertTrue("Test Passed: Trapped expected MalformedURLException.", true);
 		}
 	}	
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#concurrency(int)}.
+	 * 
+	 * Ensures that the concurrent scrape produces exactly the same JSON as the serial scrape - Same
+	 * "results" in the same (listing) order and the same "total".
+	 */
+	@Test
+	public void testScrapeConcurrentMatchesSerial() throws Exception {
+		PageScraper serialScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+		String serialJson = serialScraper.scrape();
+		
+		PageScraper concurrentScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).concurrency(4).build();
+		String concurrentJson = concurrentScraper.scrape();
+		
+		JSONAssert.assertEquals(serialJson, concurrentJson, true);
+		
+		JSONObject json = new JSONObject(concurrentJson);
+		assertEquals(fixtureServer.expectedTotal(), json.getString("total"));
+		
+		JSONArray results = json.getJSONArray("results");
+		assertEquals(fixtureServer.getProductCount(), results.length());
+		for (int i = 0; i < results.length(); i++) {
+			assertEquals(FixtureHttpServer.title(i), results.getJSONObject(i).getString("title"));
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#concurrency(int)}.
+	 * 
+	 * Ensures that the Product Item webpages are fetched in parallel, but never more at a time than the
+	 * configured concurrency limit.
+	 */
+	@Test
+	public void testScrapeConcurrencyLimit() throws Exception {
+		fixtureServer.setLatencyMillis(100);
+		
+		PageScraper concurrentScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).concurrency(3).build();
+		concurrentScraper.scrape();
+		
+		assertEquals(fixtureServer.getProductCount(), fixtureServer.getProductRequests());
+		assertTrue("Test Failed: Expected parallel fetches but peak was "+fixtureServer.getPeakInFlight(), fixtureServer.getPeakInFlight() > 1);
+		assertTrue("Test Failed: Concurrency limit exceeded, peak was "+fixtureServer.getPeakInFlight(), fixtureServer.getPeakInFlight() <= 3);
+	}
+	
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#concurrency(int)}.
+	 * 
+	 * Ensures that a concurrency of less than 1 is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetConcurrencyInvalid() {
+		PageScraper.builder().concurrency(0);
+	}
+	
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#createProductInfo(String)}.
+	 * 
+	 * Ensures that the Page Size is the size of the webpage in bytes as received, in kb to one decimal
+	 * place (rounding up).
+	 */
+	@Test
+	public void testCreateProductInfoPageSize() throws Exception {
+		int bytes = fixtureServer.productHtml(3).getBytes("UTF-8").length;
+		
+		ProductInfo prodInfo = pgeScraper.createProductInfo(fixtureServer.getProductUrl(3));
+		
+		assertEquals(PageScraper.sizeInKb(bytes).toString()+"kb", prodInfo.getSize());
+	}
+	
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#sizeInKb(long)}.
+	 * 
+	 * Ensures that sizes are converted to kb with one decimal place, rounding up.
+	 */
+	@Test
+	public void testSizeInKb() {
+		assertEquals("0.0", PageScraper.sizeInKb(0).toString());
+		assertEquals("0.1", PageScraper.sizeInKb(1).toString());
+		assertEquals("1.0", PageScraper.sizeInKb(1024).toString());
+		assertEquals("34.7", PageScraper.sizeInKb(35500).toString());
+	}
 }
@@ -0,0 +1,63 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+/**
+ * Tests the Price class - Parsing the Unit Price text of a Product Item webpage and formatting with two
+ * decimal places.
+ *
+ * @author John Moores
+ */
+public class PriceTest {
+
+	/**
+	 * Unit Price texts as found on the webpages, and as output.
+	 */
+	@Test
+	public void testParsePence() {
+		assertEquals("Test Failed: Unit Price text not parsed.", 350, Price.parsePence("£3.50/unit"));
+		assertEquals("Test Failed: Price without £ or /unit not parsed.", 1510, Price.parsePence("15.10"));
+		assertEquals("Test Failed: Single decimal place not parsed as tens of pence.", 150, Price.parsePence("£1.5/unit"));
+		assertEquals("Test Failed: Whole pounds not parsed.", 1200, Price.parsePence("12"));
+		assertEquals("Test Failed: Negative price not parsed.", -5, Price.parsePence("-0.05"));
+		assertEquals("Test Failed: Third decimal place not dropped.", 199, Price.parsePence("1.999"));
+	}
+
+	/**
+	 * Texts that are not a price.
+	 */
+	@Test
+	public void testParsePenceInvalid() {
+		String[] invalid = {null, "", "£", "/unit", "£Free/unit", "1.", ".50", "1.50p", "1,50", " 1.50", "1.5.0", "--1", "12345678901234567"};
+
+		for (String text: invalid) {
+			assertEquals("Test Failed: \"" + text + "\" parsed as a price.", Price.INVALID, Price.parsePence(text));
+		}
+
+		try {
+			Price.parse("£Free/unit");
+			fail("Test Failed: Expected NumberFormatException.");
+		} catch (NumberFormatException nfe) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Always two decimal places, whatever the text parsed.
+	 */
+	@Test
+	public void testFormat() {
+		assertEquals("1.50", Price.parse("1.5").toString());
+		assertEquals("15.10", Price.parse("£15.10/unit").toString());
+		assertEquals("0.00", Price.ZERO.toString());
+		assertEquals("0.05", Price.format(5));
+		assertEquals("-0.05", Price.format(-5));
+		assertEquals("-12.30", Price.format(-1230));
+		assertEquals(new BigDecimal("15.10"), Price.ofPence(1510).toBigDecimal());
+		assertEquals(Price.ofPence(1860), Price.parse("3.50").plus(Price.parse("15.10")));
+	}
+}
@@ -0,0 +1,102 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ProductStoreTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ProductStore#get(int)}.
+	 *
+	 * Ensures that the ProductInfo view of each row gives back exactly what was appended - Including sizes not
+	 * in the usual form, null and non-ASCII text and a description shared between rows.
+	 */
+	@Test
+	public void testAddAndGet() {
+		ProductInfo[] productInfos = {
+			new ProductInfo("Apple", "12.0kb", "1.20", "A nice red apple"),
+			new ProductInfo("Crème Brûlée £", "0.5kb", "3.50", ""),
+			new ProductInfo("Orange", "12", "0.80", ""),
+			new ProductInfo(null, null, "0.00", null),
+			new ProductInfo("Pear", "7.7", "-0.05", "A nice red apple")
+		};
+
+		ProductStore store = new ProductStore(2);
+		for (int i = 0; i < productInfos.length; i++) {
+			assertEquals(i, store.add("http://localhost/" + i + ".html", productInfos[i]));
+		}
+
+		assertEquals(productInfos.length, store.size());
+		for (int i = 0; i < productInfos.length; i++) {
+			assertEquals("Test Failed: Row " + i + " not as appended.", productInfos[i].toString(), store.get(i).toString());
+			assertEquals("http://localhost/" + i + ".html", store.getUrl(i));
+		}
+		assertEquals(120, store.getSizeTenthsKb(0));
+		assertEquals(-1, store.getSizeTenthsKb(2));
+		assertEquals(-5, store.getPricePence(4));
+		assertEquals(120 + 350 + 80 - 5, store.getPriceTotalPence());
+
+		try {
+			store.get(0).setTitle("Banana");
+			fail("Test Failed: Expected UnsupportedOperationException.");
+		} catch (UnsupportedOperationException uoe) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ProductStore#writeTo(ScrapeResultWriter)}.
+	 *
+	 * Ensures that a ProductStore filled by a scrape writes the same JSON document as the scrape itself.
+	 */
+	@Test
+	public void testScrapeAndWriteTo() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(7);
+
+		try {
+			PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+			ProductStore store = new ProductStore();
+			pageScraper.scrape(store);
+
+			assertEquals(7, store.size());
+
+			JsonTreeResultWriter writer = new JsonTreeResultWriter();
+			store.writeTo(writer);
+
+			JSONAssert.assertEquals(pageScraper.scrape(), writer.toString(), true);
+			assertEquals(fixtureServer.expectedTotal(), new JSONObject(writer.toString()).getString("total"));
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Ensures that many rows can be held (across several 1MB chunks) and that a dictionary encoded description
+	 * is only held once.
+	 */
+	@Test
+	public void testManyRows() throws IOException {
+		int rows = 200000;
+		String description = "A description shared by every Product Item in the store";
+		ProductStore store = new ProductStore();
+
+		for (int i = 0; i < rows; i++) {
+			store.add("http://localhost/product-" + i + ".html", new ProductInfo("Product " + i, (i % 1000) + ".5kb", "1.99", description));
+		}
+
+		assertEquals(rows, store.size());
+		assertEquals("Product 123456", store.get(123456).getTitle());
+		assertEquals("456.5kb", store.get(123456).getSize());
+		assertEquals(description, store.get(rows - 1).getDescription());
+		assertEquals(199L * rows, store.getPriceTotalPence());
+
+		// URLs and titles (about 50 bytes a row) plus the columns - Nowhere near a ProductInfo object per row.
+		assertTrue("Test Failed: ProductStore uses " + store.getMemoryBytes() + " bytes.", store.getMemoryBytes() < 120L * rows);
+	}
+}
@@ -0,0 +1,124 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class RequestSchedulerTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RequestScheduler#acquire(String)}.
+	 *
+	 * Ensures that requests to a host are sent no faster than the rate, after the burst.
+	 */
+	@Test
+	public void testRateLimit() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(20, 2, 10, 10);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < 8; i++) {
+			scheduler.acquire("http://host/" + i).close();
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		// 2 at once, then 6 more at 20 a second.
+		assertTrue("Test Failed: Rate not limited, took "+elapsedMillis+"ms", elapsedMillis >= 270);
+
+		// Another host has its own tokens.
+		start = System.nanoTime();
+		scheduler.acquire("http://other/1").close();
+		scheduler.acquire("http://other/2").close();
+		assertTrue((System.nanoTime() - start) / 1000000 < 40);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RequestScheduler#acquire(String)}.
+	 *
+	 * Ensures that, with requests waiting for several hosts, the hosts take turns.
+	 */
+	@Test
+	public void testHostsTakeTurns() throws Exception {
+		final RequestScheduler scheduler = new RequestScheduler(0, 1, 10, 1);
+		final List<String> granted = Collections.synchronizedList(new ArrayList<String>());
+
+		RequestScheduler.Permit first = scheduler.acquire("http://a/0");
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final String url: Arrays.asList("http://a/1", "http://a/2", "http://a/3", "http://b/1", "http://b/2")) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						RequestScheduler.Permit permit = scheduler.acquire(url);
+						granted.add(url.substring(7, 8));
+						permit.close();
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+
+			// Queue them in order.
+			while (scheduler.getQueued() < threads.size()) {
+				Thread.sleep(1);
+			}
+		}
+
+		first.close();
+		for (Thread thread: threads) {
+			thread.join(5000);
+		}
+
+		assertEquals(Arrays.asList("a", "b", "a", "b", "a"), granted);
+		assertEquals(0, scheduler.getInFlight());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RequestScheduler#backOff(String, long)}.
+	 *
+	 * Ensures that a paused host is not sent requests until the pause is over.
+	 */
+	@Test
+	public void testBackOff() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(0, 1, 10, 10);
+		scheduler.backOff("http://host/a", 200);
+
+		long start = System.nanoTime();
+		scheduler.acquire("http://host/b").close();
+		assertTrue((System.nanoTime() - start) / 1000000 >= 190);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#requestScheduler(RequestScheduler)}.
+	 *
+	 * Ensures that a concurrent scrape keeps within the maximum in-flight requests for the host, and gives the
+	 * same JSON.
+	 */
+	@Test
+	public void testScrapeMaxInFlightPerHost() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(8);
+		fixtureServer.setLatencyMillis(50);
+
+		try {
+			PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+			String expectedJson = pageScraper.scrape();
+
+			RequestScheduler scheduler = new RequestScheduler(0, 1, 2, 10);
+			String json = pageScraper.toBuilder().concurrency(6).requestScheduler(scheduler).build().scrape();
+
+			JSONAssert.assertEquals(expectedJson, json, true);
+			assertTrue("Test Failed: Too many in flight "+fixtureServer.getPeakInFlight(), fixtureServer.getPeakInFlight() <= 2);
+			assertEquals(0, scheduler.getInFlight());
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ResponseCacheTest {
+	private File cacheDir;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up an empty cache directory.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = Files.createTempDirectory("responsecache").toFile();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Deletes the cache directory.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file: files) {
+				file.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	private static FetchedPage page(String url, String body) {
+		return new FetchedPage(url, body.getBytes(StandardCharsets.UTF_8), "UTF-8", "\"etag-" + url + "\"", "Sat, 24 Sep 2016 10:00:00 GMT");
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ResponseCache#store(FetchedPage)}.
+	 *
+	 * Ensures that a stored response can be looked up again - Including by a new ResponseCache on the same
+	 * directory (i.e. the next run).
+	 */
+	@Test
+	public void testStoreAndLookup() throws Exception {
+		ResponseCache cache = new ResponseCache(cacheDir, 60000, 1024 * 1024);
+		assertNull(cache.lookup("http://localhost/a.html"));
+
+		cache.store(page("http://localhost/a.html", "<html>a</html>"));
+
+		ResponseCache.Entry entry = new ResponseCache(cacheDir, 60000, 1024 * 1024).lookup("http://localhost/a.html");
+		assertNotNull(entry);
+		assertEquals("<html>a</html>", new String(entry.getPage().getBody(), StandardCharsets.UTF_8));
+		assertEquals("\"etag-http://localhost/a.html\"", entry.getPage().getEtag());
+		assertEquals("Sat, 24 Sep 2016 10:00:00 GMT", entry.getPage().getLastModified());
+		assertEquals("UTF-8", entry.getPage().getCharset());
+		assertTrue(entry.isRevalidatable());
+		assertTrue(cache.isFresh(entry));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ResponseCache#isFresh(ResponseCache.Entry)}.
+	 *
+	 * Ensures that a TTL of 0 means the entry must always be revalidated.
+	 */
+	@Test
+	public void testZeroTtlNeverFresh() throws Exception {
+		ResponseCache cache = new ResponseCache(cacheDir, 0, 1024 * 1024);
+		cache.store(page("http://localhost/a.html", "<html>a</html>"));
+
+		assertFalse(cache.isFresh(cache.lookup("http://localhost/a.html")));
+		assertFalse(cache.isFresh(cache.revalidated(cache.lookup("http://localhost/a.html"))));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ResponseCache#store(FetchedPage)}.
+	 *
+	 * Ensures that the least recently used entries are evicted to keep the cache within its maximum size.
+	 */
+	@Test
+	public void testEviction() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			body.append('x');
+		}
+
+		ResponseCache cache = new ResponseCache(cacheDir, 60000, 2500);
+		cache.store(page("http://localhost/a.html", body.toString()));
+		cache.store(page("http://localhost/b.html", body.toString()));
+
+		// Make "a" the least recently used.
+		new File(cacheDir, cacheDir.list()[0]).setLastModified(0);
+		new File(cacheDir, cacheDir.list()[1]).setLastModified(0);
+		cache.lookup("http://localhost/b.html");
+
+		cache.store(page("http://localhost/c.html", body.toString()));
+
+		assertTrue("Test Failed: Cache over maximum size "+cache.getCurrentBytes(), cache.getCurrentBytes() <= 2500);
+		assertNull(cache.lookup("http://localhost/a.html"));
+		assertNotNull(cache.lookup("http://localhost/b.html"));
+		assertNotNull(cache.lookup("http://localhost/c.html"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ResponseCache#store(FetchedPage)}.
+	 *
+	 * Ensures that concurrent stores of the same URL keep the size accounting equal to the entry files on disk,
+	 * and leave no temporary files behind.
+	 */
+	@Test
+	public void testConcurrentStores() throws Exception {
+		final ResponseCache cache = new ResponseCache(cacheDir, 60000, 1024 * 1024);
+		Thread[] threads = new Thread[8];
+
+		for (int t = 0; t < threads.length; t++) {
+			final int size = 100 * (t + 1);
+			threads[t] = new Thread(() -> {
+				StringBuilder body = new StringBuilder();
+				for (int i = 0; i < size; i++) {
+					body.append('x');
+				}
+				for (int i = 0; i < 50; i++) {
+					cache.store(page("http://localhost/a.html", body.toString()));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		long onDisk = 0;
+		for (File file: cacheDir.listFiles()) {
+			assertTrue("Test Failed: Temporary file left " + file, file.getName().endsWith(".cache"));
+			onDisk += file.length();
+		}
+		assertEquals(onDisk, cache.getCurrentBytes());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#responseCache(ResponseCache)}.
+	 *
+	 * Ensures that a repeat scrape revalidates the cached Product Item webpages (304 Not Modified) and produces
+	 * the same JSON, and that a changed webpage is fetched again in full.
+	 */
+	@Test
+	public void testScrapeRevalidates() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(4);
+
+		try {
+			PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl()))
+				.responseCache(new ResponseCache(cacheDir, 0, 1024 * 1024)).build();
+
+			String firstJson = pageScraper.scrape();
+			assertEquals(0, fixtureServer.getNotModifiedResponses());
+
+			String secondJson = pageScraper.scrape();
+			assertEquals(4, fixtureServer.getNotModifiedResponses());
+			JSONAssert.assertEquals(firstJson, secondJson, true);
+
+			fixtureServer.setVersion(2);
+			pageScraper.scrape();
+			assertEquals(4, fixtureServer.getNotModifiedResponses());
+			assertEquals(12, fixtureServer.getProductRequests());
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper.Builder#responseCache(ResponseCache)}.
+	 *
+	 * Ensures that fresh cached Product Item webpages are used without contacting the server.
+	 */
+	@Test
+	public void testScrapeUsesFreshEntries() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(4);
+
+		try {
+			PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl()))
+				.responseCache(new ResponseCache(cacheDir, 60000, 1024 * 1024)).build();
+
+			pageScraper.scrape();
+			pageScraper.scrape();
+
+			assertEquals(4, fixtureServer.getProductRequests());
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.jsoup.HttpStatusException;
+import org.junit.After;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class RetryPolicyTest {
+	private FixtureHttpServer fixtureServer;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server (if started).
+	 */
+	@After
+	public void tearDown() throws Exception {
+		if (fixtureServer != null) {
+			fixtureServer.stop();
+		}
+	}
+
+	private PageScraper pageScraper(int productCount, RetryPolicy retryPolicy) throws Exception {
+		fixtureServer = new FixtureHttpServer(productCount);
+		return PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).retryPolicy(retryPolicy).build();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RetryPolicy#backOffMillis(int)}.
+	 *
+	 * Ensures that the back off is random, but within the doubling delay and the maximum delay.
+	 */
+	@Test
+	public void testBackOffMillis() {
+		RetryPolicy retryPolicy = RetryPolicy.builder().backOff(100, 500).build();
+
+		for (int i = 0; i < 100; i++) {
+			assertTrue(retryPolicy.backOffMillis(1) <= 100);
+			assertTrue(retryPolicy.backOffMillis(2) <= 200);
+			assertTrue(retryPolicy.backOffMillis(10) <= 500);
+			assertTrue(retryPolicy.backOffMillis(40) >= 0);
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RetryPolicy#isRetryable(IOException)}.
+	 *
+	 * Ensures that only failures which may not happen again are retried.
+	 */
+	@Test
+	public void testIsRetryable() {
+		assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException()));
+		assertTrue(RetryPolicy.isRetryable(new IOException("Connection reset")));
+		assertTrue(RetryPolicy.isRetryable(new HttpStatusException("", 503, "http://host/")));
+		assertFalse(RetryPolicy.isRetryable(new HttpStatusException("", 404, "http://host/")));
+		assertTrue(RetryPolicy.isRetryable(429));
+		assertFalse(RetryPolicy.isRetryable(304));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#scrape()}.
+	 *
+	 * Ensures that failed requests are retried, giving the same JSON as if they had not failed.
+	 */
+	@Test
+	public void testRetriesRecover() throws Exception {
+		PageScraper pageScraper = pageScraper(4, RetryPolicy.builder().maxAttempts(3).backOff(10, 50).build());
+		String expectedJson = pageScraper.scrape();
+
+		fixtureServer.failProductRequests(2, 503);
+		JSONAssert.assertEquals(expectedJson, pageScraper.scrape(), true);
+		assertEquals(2, pageScraper.getRetries());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#scrape(ScrapeResultWriter)}.
+	 *
+	 * Ensures that a Product Item whose webpage cannot be fetched is listed as failed and left out of the
+	 * total, rather than counted with a Unit Price of "0.00".
+	 */
+	@Test
+	public void testFailedLeftOutOfTotal() throws Exception {
+		PageScraper pageScraper = pageScraper(6, RetryPolicy.DEFAULT);
+		fixtureServer.setBrokenProduct(1);
+
+		String json = pageScraper.scrape();
+		JSONObject result = new JSONObject(json);
+
+		BigDecimal expectedTotal = new BigDecimal(fixtureServer.expectedTotal()).subtract(new BigDecimal(FixtureHttpServer.unitPrice(1)).setScale(2));
+		assertEquals(expectedTotal.toString(), result.getString("total"));
+		assertEquals(5, result.getJSONArray("results").length());
+		assertEquals(fixtureServer.getProductUrl(1), result.getJSONArray("failed").getString(0));
+
+		// Not retried - 404 will not go away.
+		assertEquals(0, pageScraper.getRetries());
+
+		StringWriter out = new StringWriter();
+		pageScraper.toBuilder().concurrency(3).build().scrape(new StreamingJsonResultWriter(out));
+		JSONAssert.assertEquals(json, out.toString(), true);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RetryPolicy.Builder#deadlineMillis(long)}.
+	 *
+	 * Ensures that a request which takes longer than the deadline is abandoned.
+	 */
+	@Test
+	public void testDeadline() throws Exception {
+		PageScraper pageScraper = pageScraper(2, RetryPolicy.builder().maxAttempts(1).deadlineMillis(200).build());
+		fixtureServer.setLatencyMillis(2000);
+
+		long start = System.nanoTime();
+		JSONObject result = new JSONObject(pageScraper.scrape());
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		assertTrue("Test Failed: Deadline not kept, took "+elapsedMillis+"ms", elapsedMillis < 1500);
+		assertEquals("0.00", result.getString("total"));
+		assertEquals(2, result.getJSONArray("failed").length());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RetryPolicy.Builder#hedgePercentile(double)}.
+	 *
+	 * Ensures that an unusually slow request is hedged with a duplicate request, so that the scrape does not
+	 * wait for it.
+	 */
+	@Test
+	public void testHedging() throws Exception {
+		PageScraper pageScraper = pageScraper(LatencyTracker.MIN_SAMPLES + 5, RetryPolicy.builder().maxAttempts(1).hedgePercentile(90).build());
+		fixtureServer.setLatencyMillis(5);
+
+		// Warm up - Enough latencies for the percentile.
+		String expectedJson = pageScraper.scrape();
+
+		fixtureServer.slowOnce(3, 3000);
+
+		long start = System.nanoTime();
+		String json = pageScraper.scrape();
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		JSONAssert.assertEquals(expectedJson, json, true);
+		assertTrue("Test Failed: Slow request not hedged, took "+elapsedMillis+"ms", elapsedMillis < 2500);
+		assertTrue(pageScraper.getRetries() >= 1);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.RetryPolicy.Builder#hedgePercentile(double)}.
+	 *
+	 * Ensures that a request held back by a slow rate limit is not hedged - Its latency is timed from when it is
+	 * sent, not from when it started waiting for the RequestScheduler.
+	 */
+	@Test
+	public void testNoHedgingWhileThrottled() throws Exception {
+		RetryPolicy retryPolicy = RetryPolicy.builder().maxAttempts(1).hedgePercentile(90).build();
+		LatencyTracker latencies = new LatencyTracker(100);
+		for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+			latencies.record(TimeUnit.MILLISECONDS.toNanos(20));
+		}
+
+		// 5 requests a second, one at a time - Each request after the first waits about 200ms to be sent.
+		RequestScheduler scheduler = new RequestScheduler(5, 1, 1, 1);
+		String url = "http://localhost/product.html";
+		AtomicInteger sent = new AtomicInteger();
+		AtomicInteger retries = new AtomicInteger();
+
+		RetryPolicy.Attempt attempt = sending -> {
+			RequestScheduler.Permit permit;
+			try {
+				permit = scheduler.acquire(url);
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			}
+			try {
+				sending.run();
+				sent.incrementAndGet();
+				Thread.sleep(5);
+				return new FetchResponse(url, 200, Collections.<String, String>emptyMap(), new byte[0]);
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			} finally {
+				permit.close();
+			}
+		};
+
+		for (int i = 0; i < 4; i++) {
+			assertEquals(200, retryPolicy.execute(url, attempt, latencies, retries).getStatusCode());
+		}
+
+		assertEquals("Test Failed: Throttled requests hedged.", 0, retries.get());
+		assertEquals(4, sent.get());
+		assertTrue("Test Failed: Wait for the rate limit timed.", latencies.percentileMillis(100) < 100);
+	}
+}
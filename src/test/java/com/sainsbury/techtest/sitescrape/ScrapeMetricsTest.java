@@ -0,0 +1,119 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScrapeMetricsTest {
+	private FixtureHttpServer fixtureServer;
+	private PageScraper pageScraper;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up a fixture server with 5 products, product 2 of which is always Not Found.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		fixtureServer = new FixtureHttpServer(5);
+		fixtureServer.setBrokenProduct(2);
+		pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Stops the fixture server.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		pageScraper.getMetrics().unregister();
+		fixtureServer.stop();
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ScrapeMetrics}.
+	 *
+	 * Ensures that each stage of a scrape is counted, with the products, failures and bytes fetched.
+	 */
+	@Test
+	public void testScrapeRecorded() throws Exception {
+		pageScraper.scrape();
+		ScrapeMetrics metrics = pageScraper.getMetrics();
+
+		assertEquals(4, metrics.getProductsScraped());
+		assertEquals(1, metrics.getProductsFailed());
+		assertEquals(Arrays.asList("HttpStatusException=1"), Arrays.asList(metrics.getFailures()));
+		assertTrue("Test Failed: No bytes fetched", metrics.getBytesFetched() > 0);
+
+		assertEquals(1, metrics.getStage(ScrapeMetrics.Stage.LISTING_FETCH).getCount());
+		assertEquals(1, metrics.getStage(ScrapeMetrics.Stage.LISTING_PARSE).getCount());
+		assertEquals(5, metrics.getStage(ScrapeMetrics.Stage.FETCH).getCount());
+		assertEquals(4, metrics.getStage(ScrapeMetrics.Stage.EXTRACT).getCount());
+		assertEquals(4, metrics.getStage(ScrapeMetrics.Stage.PRICE).getCount());
+		assertEquals(4, metrics.getStage(ScrapeMetrics.Stage.OUTPUT).getCount());
+
+		String summary = metrics.getSummary();
+		assertTrue("Test Failed: Summary missing a stage\n" + summary, summary.contains("listing-fetch") && summary.contains("output"));
+		assertTrue("Test Failed: Summary missing the failures\n" + summary, summary.contains("HttpStatusException=1"));
+
+		// Shared by a PageScraper built from this one.
+		pageScraper.toBuilder().build().scrape();
+		assertEquals(8, metrics.getProductsScraped());
+
+		metrics.reset();
+		assertEquals(0, metrics.getProductsScraped());
+		assertEquals(0, metrics.getStage(ScrapeMetrics.Stage.FETCH).getCount());
+		assertEquals(0, metrics.getFailures().length);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ScrapeMetrics#register(java.lang.String)}.
+	 *
+	 * Ensures that the metrics, and each stage, can be read over JMX.
+	 */
+	@Test
+	public void testRegister() throws Exception {
+		pageScraper.getMetrics().register("test");
+		pageScraper.scrape();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.sainsbury.techtest.sitescrape:type=ScrapeMetrics,name=\"test\"");
+
+		assertEquals(4L, server.getAttribute(name, "ProductsScraped"));
+		assertEquals(5L, server.getAttribute(new ObjectName(name + ",stage=fetch"), "Count"));
+
+		pageScraper.getMetrics().unregister();
+		assertFalse(server.isRegistered(name));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.StageMetrics#getPercentileMillis(double)}.
+	 *
+	 * Ensures that the percentiles are within a factor of two of the actual latency, and never above the maximum.
+	 */
+	@Test
+	public void testPercentiles() {
+		StageMetrics stage = new StageMetrics("test");
+		assertEquals(0, stage.getP99Millis(), 0);
+
+		for (int i = 1; i <= 100; i++) {
+			stage.record(i * 1000000L);
+		}
+
+		assertEquals(100, stage.getCount());
+		assertEquals(50.5, stage.getMeanMillis(), 0.001);
+		assertEquals(100, stage.getMaxMillis(), 0.001);
+		assertTrue("Test Failed: p50 " + stage.getP50Millis(), stage.getP50Millis() >= 50 && stage.getP50Millis() <= 100);
+		assertTrue("Test Failed: p99 " + stage.getP99Millis(), stage.getP99Millis() >= 99 && stage.getP99Millis() <= 100);
+	}
+}
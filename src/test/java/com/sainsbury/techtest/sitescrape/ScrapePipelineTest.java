@@ -0,0 +1,144 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ScrapePipelineTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ScrapePipeline#run(java.util.List, ScrapeResultWriter)}.
+	 *
+	 * Ensures that a scrape through the staged pipeline gives the same JSON document as the serial scrape -
+	 * In listing order, with failed Product Items listed and left out of the total.
+	 */
+	@Test
+	public void testMatchesSerialScrape() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(40);
+
+		try {
+			PageScraper serial = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).retryPolicy(RetryPolicy.NONE).build();
+			PageScraper pipelined = serial.toBuilder().concurrency(8).parseThreads(2).queueCapacity(4).build();
+
+			fixtureServer.setBrokenProduct(5);
+			String expectedJson = serial.scrape();
+
+			JsonTreeResultWriter writer = new JsonTreeResultWriter();
+			pipelined.scrape(writer);
+			JSONAssert.assertEquals(expectedJson, writer.toString(), true);
+			assertEquals(1, writer.getJSON().getJSONArray("failed").length());
+
+			// Not ordered - Same Product Items and total.
+			StringWriter out = new StringWriter();
+			pipelined.scrape(new NdjsonResultWriter(out));
+			String[] lines = out.toString().split("\n");
+			JSONObject summary = new JSONObject(lines[lines.length - 1]);
+			assertEquals(39, summary.getInt("products"));
+			assertEquals(new JSONObject(expectedJson).getString("total"), summary.getString("total"));
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ScrapePipeline#run(java.util.List, ScrapeResultWriter)}.
+	 *
+	 * Ensures that when the scrape is interrupted part way through, the total given is that of the Product Items
+	 * written so far (in listing order, so the first ones).
+	 */
+	@Test
+	public void testInterruptedTotal() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(30);
+
+		try {
+			PageScraper pipelined = PageScraper.builder().url(new URL(fixtureServer.getListingUrl()))
+				.retryPolicy(RetryPolicy.NONE).concurrency(2).parseThreads(1).queueCapacity(2).build();
+
+			// Interrupts the scrape once 10 Product Items have been written.
+			JsonTreeResultWriter interrupting = new JsonTreeResultWriter() {
+				private int products = 0;
+
+				@Override
+				public void product(String url, ProductInfo productInfo) {
+					super.product(url, productInfo);
+					if (++products == 10) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+
+			pipelined.scrape(interrupting);
+			assertTrue("Test Failed: Interrupt not restored.", Thread.interrupted());
+
+			// Any already waiting their turn may also have been written, but not all of them.
+			int written = interrupting.getJSON().getJSONArray("results").length();
+			assertTrue("Test Failed: " + written + " Product Items written.", written >= 10 && written < 30);
+			long expectedPence = 0;
+			for (int i = 0; i < written; i++) {
+				expectedPence += Price.parse(FixtureHttpServer.unitPrice(i)).getPence();
+			}
+			assertEquals(BigDecimal.valueOf(expectedPence, 2).toString(), interrupting.getJSON().getString("total"));
+		} finally {
+			Thread.interrupted();
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Ensures that when the output stage falls behind, no more webpages are fetched than there is room for in
+	 * the pipeline (fetch threads + queue capacity).
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(50);
+		CountDownLatch release = new CountDownLatch(1);
+
+		try {
+			PageScraper pipelined = PageScraper.builder().url(new URL(fixtureServer.getListingUrl()))
+				.concurrency(2).parseThreads(1).queueCapacity(3).build();
+
+			// A writer that holds up the first Product Item until released.
+			JsonTreeResultWriter blocked = new JsonTreeResultWriter() {
+				@Override
+				public void product(String url, ProductInfo productInfo) {
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+					super.product(url, productInfo);
+				}
+			};
+
+			Thread scrape = new Thread(() -> {
+				try {
+					pipelined.scrape(blocked);
+				} catch (IOException ioe) {
+					throw new IllegalStateException(ioe);
+				}
+			});
+			scrape.start();
+
+			Thread.sleep(1000);
+			int fetched = fixtureServer.getProductRequests();
+			assertTrue("Test Failed: " + fetched + " webpages fetched while the output was held up.", fetched > 0 && fetched <= 5);
+
+			release.countDown();
+			scrape.join(30000);
+			assertEquals(50, blocked.getJSON().getJSONArray("results").length());
+			assertEquals(fixtureServer.expectedTotal(), blocked.getJSON().getString("total"));
+		} finally {
+			release.countDown();
+			fixtureServer.stop();
+		}
+	}
+}
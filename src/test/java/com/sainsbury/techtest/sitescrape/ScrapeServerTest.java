@@ -0,0 +1,115 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ScrapeServerTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ScrapeServer#start()}.
+	 *
+	 * Ensures that concurrent requests for the same webpage are answered by one scrape (coalesced), that a
+	 * later request is answered from the cache, and that the JSON document is as returned by scrape().
+	 */
+	@Test
+	public void testCoalescedAndCached() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(5);
+		fixtureServer.setLatencyMillis(200);
+		PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+		ScrapeServer server = ScrapeServer.builder(pageScraper).port(0).ttlMillis(60000).workers(2).build();
+		server.start();
+		ExecutorService clients = Executors.newFixedThreadPool(5);
+
+		try {
+			String scrapeUrl = scrapeUrl(server, fixtureServer.getListingUrl());
+			List<Future<String>> responses = new ArrayList<Future<String>>();
+
+			for (int i = 0; i < 5; i++) {
+				responses.add(clients.submit(() -> get(scrapeUrl, 200)));
+			}
+
+			String expectedJson = new PageScraper(new URL(fixtureServer.getListingUrl())).scrape();
+
+			for (Future<String> response: responses) {
+				JSONAssert.assertEquals(expectedJson, response.get(), true);
+			}
+			int productRequests = fixtureServer.getProductRequests();
+			assertEquals("Test Failed: Concurrent requests not coalesced.", 2, fixtureServer.getListingRequests());
+
+			HttpURLConnection connection = (HttpURLConnection) new URL(scrapeUrl).openConnection();
+			assertEquals(200, connection.getResponseCode());
+			assertEquals("hit", connection.getHeaderField("X-Cache"));
+			connection.disconnect();
+
+			assertEquals("Test Failed: Cached result not used.", productRequests, fixtureServer.getProductRequests());
+		} finally {
+			clients.shutdownNow();
+			server.stop();
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Ensures that a request without a valid URL is answered with 400 Bad Request, and that with a TTL of 0 each
+	 * request scrapes the webpage again.
+	 */
+	@Test
+	public void testBadRequestAndNoTtl() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(2);
+		PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+		ScrapeServer server = ScrapeServer.builder(pageScraper).port(0).ttlMillis(0).build();
+		server.start();
+
+		try {
+			get("http://localhost:" + server.getPort() + "/scrape", 400);
+			get(scrapeUrl(server, "not a url"), 400);
+
+			get(scrapeUrl(server, fixtureServer.getListingUrl()), 200);
+			get(scrapeUrl(server, fixtureServer.getListingUrl()), 200);
+			assertEquals(2, fixtureServer.getListingRequests());
+
+			assertTrue(get("http://localhost:" + server.getPort() + "/metrics", 200).contains("fetch"));
+		} finally {
+			server.stop();
+			fixtureServer.stop();
+		}
+	}
+
+	private static String scrapeUrl(ScrapeServer server, String listingUrl) throws IOException {
+		return "http://localhost:" + server.getPort() + "/scrape?url=" + URLEncoder.encode(listingUrl, "UTF-8");
+	}
+
+	private static String get(String url, int expectedStatus) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+		try {
+			assertEquals("Test Failed: Unexpected status for " + url, expectedStatus, connection.getResponseCode());
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				byte[] buffer = new byte[8192];
+				for (int n; (n = in.read(buffer)) > 0; ) {
+					body.write(buffer, 0, n);
+				}
+			}
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
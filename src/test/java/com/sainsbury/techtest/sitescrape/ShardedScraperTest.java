@@ -0,0 +1,168 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class ShardedScraperTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ShardedScraper#shardOf(String)}.
+	 *
+	 * Ensures that the URLs are shared out about evenly, always to the same shard, and that adding a shard only
+	 * moves URLs to the new shard - About 1/N of them.
+	 */
+	@Test
+	public void testShardOf() {
+		ShardedScraper four = new ShardedScraper(new PageScraper(null), 4);
+		ShardedScraper five = new ShardedScraper(new PageScraper(null), 5);
+		int[] counts = new int[4];
+		int moved = 0;
+
+		for (int i = 0; i < 4000; i++) {
+			String url = "http://localhost/products/item-" + i + ".html";
+			int shard = four.shardOf(url);
+
+			assertEquals(shard, four.shardOf(url));
+			counts[shard]++;
+
+			if (five.shardOf(url) != shard) {
+				assertEquals("Test Failed: URL moved between the old shards.", 4, five.shardOf(url));
+				moved++;
+			}
+		}
+
+		for (int count: counts) {
+			assertTrue("Test Failed: Uneven shards " + Arrays.toString(counts), count > 600 && count < 1400);
+		}
+		assertTrue("Test Failed: " + moved + " URLs moved.", moved > 400 && moved < 1400);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ShardedScraper#scrape(ScrapeResultWriter)}.
+	 *
+	 * Ensures that a scrape shared out between worker processes gives the same JSON document as the serial
+	 * scrape - In listing order, with failed Product Items listed and left out of the total - and that a writer
+	 * that is not ordered gets the same Product Items and total.
+	 */
+	@Test
+	public void testMatchesSerialScrape() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(20);
+
+		try {
+			PageScraper serial = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).retryPolicy(RetryPolicy.NONE).build();
+			ShardedScraper sharded = new ShardedScraper(serial.toBuilder().concurrency(2).build(), 3);
+
+			fixtureServer.setBrokenProduct(5);
+			String expectedJson = serial.scrape();
+
+			JsonTreeResultWriter writer = new JsonTreeResultWriter();
+			sharded.scrape(writer);
+			JSONAssert.assertEquals(expectedJson, writer.toString(), true);
+			assertEquals(1, writer.getJSON().getJSONArray("failed").length());
+
+			StringWriter out = new StringWriter();
+			sharded.scrape(new NdjsonResultWriter(out));
+			String[] lines = out.toString().split("\n");
+			JSONObject summary = new JSONObject(lines[lines.length - 1]);
+			assertEquals(19, summary.getInt("products"));
+			assertEquals(1, summary.getInt("failed"));
+			assertEquals(new JSONObject(expectedJson).getString("total"), summary.getString("total"));
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ShardedScraper#scrape(ScrapeResultWriter)}.
+	 *
+	 * Ensures that the Product Items of workers that exit without reporting them are listed as failed, and left
+	 * out of the total.
+	 */
+	@Test
+	public void testWorkerDies() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(6);
+
+		try {
+			// Workers given an option they do not know exit at once.
+			ShardedScraper sharded = new ShardedScraper(new PageScraper(new URL(fixtureServer.getListingUrl())), 2) {
+				@Override
+				List<String> workerCommand() {
+					List<String> command = super.workerCommand();
+					command.add("--not-an-option");
+					return command;
+				}
+			};
+
+			JsonTreeResultWriter writer = new JsonTreeResultWriter();
+			sharded.scrape(writer);
+
+			assertEquals("0.00", writer.getJSON().getString("total"));
+			assertEquals(0, writer.getJSON().getJSONArray("results").length());
+			assertEquals(6, writer.getJSON().getJSONArray("failed").length());
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ShardedScraper#ShardedScraper(PageScraper, int, long)}.
+	 *
+	 * Ensures that a worker that reports nothing for the idle time (here, stuck on a slow Product Item webpage)
+	 * is stopped rather than waited for, with its Product Items not yet reported listed as failed.
+	 */
+	@Test
+	public void testWorkerHangs() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(6);
+
+		try {
+			PageScraper pageScraper = PageScraper.builder().url(new URL(fixtureServer.getListingUrl())).retryPolicy(RetryPolicy.NONE).build();
+			ShardedScraper sharded = new ShardedScraper(pageScraper, 2, 3000);
+			fixtureServer.slowOnce(3, 20000);
+
+			long start = System.nanoTime();
+			JsonTreeResultWriter writer = new JsonTreeResultWriter();
+			sharded.scrape(writer);
+			long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+			assertTrue("Test Failed: Waited " + elapsedMillis + "ms for the worker.", elapsedMillis < 15000);
+
+			JSONArray results = writer.getJSON().getJSONArray("results");
+			JSONArray failed = writer.getJSON().getJSONArray("failed");
+			assertEquals(6, results.length() + failed.length());
+			assertTrue("Test Failed: Slow Product Item not failed.", failed.toString().contains(fixtureServer.getProductUrl(3)));
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.ShardedScraper#ShardedScraper(PageScraper, int)}.
+	 *
+	 * Ensures that there are no more shards than the per-host limits allow, so that the workers together stay
+	 * within them, and that the idle time follows the RetryPolicy deadline.
+	 */
+	@Test
+	public void testShardsWithinPerHostLimit() throws Exception {
+		PageScraper pageScraper = PageScraper.builder().url(new URL("http://localhost/listing.html"))
+			.requestScheduler(new RequestScheduler(10, 4, 2, 10)).build();
+
+		ShardedScraper sharded = new ShardedScraper(pageScraper, 4);
+		assertEquals(2, sharded.getShards());
+		assertTrue(sharded.workerCommand().contains("--max-per-host=1"));
+		assertTrue(sharded.workerCommand().contains("--burst=2"));
+		assertEquals(ShardedScraper.DEFAULT_WORKER_IDLE_MILLIS, sharded.getWorkerIdleMillis());
+
+		sharded = new ShardedScraper(pageScraper.toBuilder().retryPolicy(RetryPolicy.builder().deadlineMillis(5000).build()).build(), 1);
+		assertEquals(1, sharded.getShards());
+		assertTrue(sharded.getWorkerIdleMillis() > 5000);
+	}
+}
@@ -0,0 +1,109 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URL;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class StreamingJsonResultWriterTest {
+	private StringWriter out;
+	private StreamingJsonResultWriter writer;
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up the reference instance of the StreamingJsonResultWriter class, writing to memory.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		out = new StringWriter();
+		writer = new StreamingJsonResultWriter(out);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Tears down the reference instance of the StreamingJsonResultWriter class.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		writer = null;
+		out = null;
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.StreamingJsonResultWriter#product(String, ProductInfo)}.
+	 *
+	 * Ensures that each Product Item is written out as soon as it is given to the writer, and that the finished
+	 * output is a valid JSON document with the "results" and "total".
+	 */
+	@Test
+	public void testProductWrittenImmediately() throws Exception {
+		writer.begin();
+		writer.product("http://localhost/apple.html", new ProductInfo("Apple", "12.0kb", "1.20", "A nice red apple"));
+
+		assertTrue("Test Failed: Product Item not written immediately. Found "+out, out.toString().contains("A nice red apple"));
+
+		writer.product("http://localhost/orange.html", new ProductInfo("Orange", "9.0kb", "0.80", "A nice juicy orange"));
+		writer.end(new BigDecimal("2.00"));
+
+		JSONObject json = new JSONObject(out.toString());
+		assertEquals("2.00", json.getString("total"));
+		assertEquals(2, json.getJSONArray("results").length());
+		assertEquals("Orange", json.getJSONArray("results").getJSONObject(1).getString("title"));
+		assertEquals(2, writer.getProductCount());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.StreamingJsonResultWriter#end(BigDecimal)}.
+	 *
+	 * Ensures that the output matches the in-memory JSON when there are no Product Items, or no Product List.
+	 */
+	@Test
+	public void testNoProducts() throws Exception {
+		writer.begin();
+		writer.end(new BigDecimal("0.00"));
+
+		JsonTreeResultWriter treeWriter = new JsonTreeResultWriter();
+		treeWriter.begin();
+		treeWriter.end(new BigDecimal("0.00"));
+
+		JSONAssert.assertEquals(treeWriter.toString(), out.toString(), true);
+
+		StringWriter emptyOut = new StringWriter();
+		new StreamingJsonResultWriter(emptyOut).empty();
+		assertEquals("{}", emptyOut.toString());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#scrape(ScrapeResultWriter)}.
+	 *
+	 * Ensures that the streamed JSON has the same content as the JSON returned by scrape(), for both the serial
+	 * and concurrent scrape.
+	 */
+	@Test
+	public void testMatchesScrape() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(6);
+
+		try {
+			PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+			String expectedJson = pageScraper.scrape();
+
+			pageScraper.scrape(writer);
+			JSONAssert.assertEquals(expectedJson, out.toString(), true);
+
+			StringWriter concurrentOut = new StringWriter();
+			pageScraper.toBuilder().concurrency(3).build().scrape(new StreamingJsonResultWriter(concurrentOut));
+			JSONAssert.assertEquals(expectedJson, concurrentOut.toString(), true);
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingProductExtractorTest {
+	private StreamingProductExtractor extractor;
+
+	// Product Item webpages - Each one checked against the jsoup Document path.
+	private String[] pages = {
+		// Laid out like the Sainsbury's webpages.
+		"<html><head><title>Apricots</title><script>var x = '<div class=\"productText\">';</script></head><body>"
+			+ "<div class=\"productTitleDescriptionContainer\">\n  <h1>Sainsbury's Apricot Ripe &amp; Ready x5</h1>\n</div>"
+			+ "<div class=\"pricing\"><p class=\"pricePerUnit\">\n&pound;3.50<abbr title=\"per\">/</abbr><abbr title=\"unit\"><span class=\"pricePerUnitUnit\">unit</span></abbr>\n</p></div>"
+			+ "<div class=\"productText\"><p>Apricots</p><p>Country of Origin: <b>Spain</b></p></div>"
+			+ "<div class=\"productText\">Not this one</div></body></html>",
+		// Upper case tags, unquoted attributes, comments, several classes and line breaks.
+		"<HTML><BODY><!-- <p class=pricePerUnit>not me</p> -->"
+			+ "<DIV CLASS='big productTitleDescriptionContainer'><span>Brand</span><H1>Kiwi<br>Fruit</H1></DIV>"
+			+ "<p class=PricePerUnit>&pound;1.80/unit"
+			+ "<div class=productText>Kiwi   <i>fruit</i>\n\n from <u>NZ</u></div></BODY></HTML>",
+		// Unclosed elements closed by the end of the webpage.
+		"<div class=\"productTitleDescriptionContainer\"><h1>Pears</h1></div><p class=\"pricePerUnit\">1.5</p>"
+			+ "<div class=\"productText\"><p>Conference<p>Pears",
+		// Headings closed by another heading start tag, or by the end tag of another level.
+		"<div class=\"productTitleDescriptionContainer\"><h1>Name<h2>Sub</h2></h1></div><p class=\"pricePerUnit\">1.00</p>"
+			+ "<div class=\"productText\"><h3>About<h4>More</h3>Text<h5>Five<b>bold</h6>After</div>",
+		// A form within a form - Ignored.
+		"<div class=\"productTitleDescriptionContainer\"><h1>Figs</h1></div><p class=\"pricePerUnit\">2.00</p>"
+			+ "<div class=\"productText\">A<form>f<form>g</form>B</div>",
+		// A form left open by its parent - Another form is still ignored, until a form end tag.
+		"<div><form>x</div><div class=\"productTitleDescriptionContainer\"><h1>Dates</h1></div><p class=\"pricePerUnit\">3.00</p>"
+			+ "<div class=\"productText\">C<form>d</form>E<form>f</form>G</div>",
+		// A </p> with no <p> open - An empty <p> is added, also within a <button> that holds the open <p>.
+		"<div class=\"productTitleDescriptionContainer\"><h1>Apricots</h1></div><p class=\"pricePerUnit\">1.20</p>"
+			+ "<div class=\"productText\"><p>Apricots<div>Ripe</div></p>Great<p>A<button>B</p>C</button>D</div>",
+		// <dd> and <dt> close an open <p>.
+		"<div class=\"productTitleDescriptionContainer\"><h1>Limes</h1></div><p class=\"pricePerUnit\">0.40<dd>Each</dd>"
+			+ "<div class=\"productText\"><p>Zest<dt>Juice<p>Pith</div>",
+		// A '<' that does not start a tag, followed by one that does.
+		"<div class=\"productTitleDescriptionContainer\"><h1>Less <</h1>Than</div><p class=\"pricePerUnit\">a <3<<b>b</b></p>"
+			+ "<div class=\"productText\">x < y<</div>",
+	};
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Sets up the reference instance of the StreamingProductExtractor class, with the PageScraper locators.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		PageScraper pageScraper = new PageScraper(new URL("http://localhost/"));
+		extractor = StreamingProductExtractor.compile(pageScraper.getProductTitleDescriptionContainerLocator(),
+			pageScraper.getProductTitleElementTagLocator(), pageScraper.getProductPricePerUnitLocator(), pageScraper.getProductTextDescriptionLocator());
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 *
+	 * Tears down the reference instance of the StreamingProductExtractor class.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		extractor = null;
+	}
+
+	private static FetchedPage page(String html) {
+		return new FetchedPage("http://localhost/product.html", html.getBytes(StandardCharsets.UTF_8), "UTF-8", null, null);
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.StreamingProductExtractor#extract(FetchedPage)}.
+	 *
+	 * Ensures that the streamed text is the same as the text from the jsoup Document.
+	 */
+	@Test
+	public void testMatchesDocument() {
+		assertNotNull(extractor);
+
+		for (String html: pages) {
+			Document doc = Jsoup.parse(html);
+			StreamingProductExtractor.Fields fields = extractor.extract(page(html));
+
+			assertNotNull("Test Failed: Could not stream "+html, fields);
+			assertEquals(doc.select("div.productTitleDescriptionContainer").first().getElementsByTag("h1").first().text(), fields.getTitle());
+			assertEquals(doc.select("p.pricePerUnit").first().text(), fields.getUnitPriceText());
+			assertEquals(doc.select("div.productText").first().text(), fields.getDescription());
+		}
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.StreamingProductExtractor#compile(String, String, String, String)}.
+	 *
+	 * Ensures that locators which cannot be handled when streaming are refused.
+	 */
+	@Test
+	public void testCompileUnsupported() {
+		assertNull(StreamingProductExtractor.compile("div > h1", "h1", "p.pricePerUnit", "div.productText"));
+		assertNull(StreamingProductExtractor.compile("div.a", "h1", "p[class=pricePerUnit]", "div.productText"));
+		assertNull(StreamingProductExtractor.compile("div.a", "h1", "p.pricePerUnit", "div.productText:first-child"));
+		assertNull(StreamingProductExtractor.compile("div.a", "h1.title", "p.pricePerUnit", "div.productText"));
+		assertNotNull(StreamingProductExtractor.compile("#main", "h1", "p.a.b", ".productText"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.StreamingProductExtractor#extract(FetchedPage)}.
+	 *
+	 * Ensures that webpages which cannot be handled with certainty are left to the jsoup Document path.
+	 */
+	@Test
+	public void testExtractFallsBack() {
+		// Missing Description.
+		assertNull(extractor.extract(page("<div class=\"productTitleDescriptionContainer\"><h1>T</h1></div><p class=\"pricePerUnit\">1</p>")));
+
+		// Title Container without a Title Element.
+		assertNull(extractor.extract(page("<div class=\"productTitleDescriptionContainer\">T</div><h1>X</h1><p class=\"pricePerUnit\">1</p><div class=\"productText\">D</div>")));
+
+		// Form end tag with an element still open within the form - jsoup leaves that element open.
+		assertNull(extractor.extract(page("<div class=\"productTitleDescriptionContainer\"><h1>T</h1></div><p class=\"pricePerUnit\">1</p><div class=\"productText\"><form><div>D</form>E</div></div>")));
+
+		// Table within a captured element.
+		assertNull(extractor.extract(page("<div class=\"productTitleDescriptionContainer\"><h1>T</h1></div><p class=\"pricePerUnit\">1</p><div class=\"productText\"><table><tr><td>D</td></tr></table></div>")));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.PageScraper#createProductInfo(String)}.
+	 *
+	 * Ensures that the streaming and jsoup Document paths give the same ProductInfo.
+	 */
+	@Test
+	public void testCreateProductInfoSameBothWays() throws Exception {
+		FixtureHttpServer fixtureServer = new FixtureHttpServer(2);
+
+		try {
+			PageScraper pageScraper = new PageScraper(new URL(fixtureServer.getListingUrl()));
+			ProductInfo streamed = pageScraper.createProductInfo(fixtureServer.getProductUrl(1));
+
+			ProductInfo parsed = pageScraper.toBuilder().streamingExtraction(false).build().createProductInfo(fixtureServer.getProductUrl(1));
+
+			assertEquals(parsed.toString(), streamed.toString());
+			assertEquals(FixtureHttpServer.title(1), streamed.getTitle());
+			assertEquals(Price.parse(FixtureHttpServer.unitPrice(1)).toString(), streamed.getUnitPrice());
+			assertEquals(FixtureHttpServer.description(1), streamed.getDescription());
+		} finally {
+			fixtureServer.stop();
+		}
+	}
+}
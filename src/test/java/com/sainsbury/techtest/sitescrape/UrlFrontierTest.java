@@ -0,0 +1,68 @@
+package com.sainsbury.techtest.sitescrape;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class UrlFrontierTest {
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.UrlFrontier#normalise(String)}.
+	 *
+	 * Ensures that different spellings of the same webpage are normalised to the same URL.
+	 */
+	@Test
+	public void testNormalise() {
+		assertEquals("http://host/a", UrlFrontier.normalise("HTTP://Host:80/a#top"));
+		assertEquals("https://host/", UrlFrontier.normalise("https://HOST:443"));
+		assertEquals("http://host:8080/b/c?page=2", UrlFrontier.normalise("http://host:8080/a/../b/./c?page=2"));
+		assertNull(UrlFrontier.normalise("/relative.html"));
+		assertNull(UrlFrontier.normalise("mailto:someone@host"));
+		assertNull(UrlFrontier.normalise("http://host/a b"));
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.UrlFrontier#addListing(String)}.
+	 *
+	 * Ensures that listing webpages are visited once, in the order found, and that a Product Item is only
+	 * fetched once.
+	 */
+	@Test
+	public void testSeenOnce() {
+		UrlFrontier frontier = UrlFrontier.exact();
+
+		assertTrue(frontier.addListing("http://host/1"));
+		assertTrue(frontier.addListing("http://host/2"));
+		assertFalse(frontier.addListing("http://HOST/1#again"));
+		assertEquals("http://host/1", frontier.nextListing());
+		assertEquals("http://host/2", frontier.nextListing());
+		assertNull(frontier.nextListing());
+
+		assertEquals("http://host/p", frontier.addProduct("http://host/p"));
+		assertNull(frontier.addProduct("http://host:80/p"));
+		assertEquals(3, frontier.getSeenCount());
+	}
+
+	/**
+	 * Test method for {@link com.sainsbury.techtest.sitescrape.UrlFrontier#bloom(long, double)}.
+	 *
+	 * Ensures that the Bloom filter never lets a URL be seen twice, and its false positives are about as
+	 * expected.
+	 */
+	@Test
+	public void testBloomFilter() {
+		UrlFrontier frontier = UrlFrontier.bloom(10000, 0.01);
+
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (frontier.addProduct("http://host/product-" + i + ".html") == null) {
+				falsePositives++;
+			}
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertNull(frontier.addProduct("http://host/product-" + i + ".html"));
+		}
+
+		assertTrue("Test Failed: Too many false positives " + falsePositives, falsePositives < 200);
+	}
+}